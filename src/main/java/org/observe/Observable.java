@@ -12,6 +12,7 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
+import org.observe.util.TimerWheel;
 import org.qommons.Causable;
 import org.qommons.Identifiable;
 import org.qommons.LambdaUtils;
@@ -444,6 +445,24 @@ public interface Observable<T> extends Lockable, Identifiable, Eventable {
 		return new IntervalObservable<>(QommonsTimer.getCommonInstance(), initDelay, interval, until, value, dispose);
 	}
 
+	/**
+	 * Same as {@link #every(Duration, Duration, Duration, Function, Consumer)}, but scheduled on a {@link TimerWheel}, which is much cheaper
+	 * than the common {@link QommonsTimer} when many interval observables are in use at once
+	 *
+	 * @param wheel The timer wheel to schedule the observable's firing on
+	 * @param initDelay The initial delay before firing the first value
+	 * @param interval The interval at which to fire values
+	 * @param until The duration after which values will stop being fired (and an {@link Observer#onCompleted(Causable) onCompleted} event
+	 *        will be fired)
+	 * @param value The function to produce values for the observable
+	 * @param dispose An action to be taken on each generated value after it is used by all listeners (e.g. {@link AutoCloseable#close()})
+	 * @return The (configurable) observable
+	 */
+	static <T> IntervalObservable<T> every(TimerWheel wheel, Duration initDelay, Duration interval, Duration until,
+		Function<? super Duration, ? extends T> value, Consumer<? super T> dispose) {
+		return new IntervalObservable<>(wheel, initDelay, interval, until, value, dispose);
+	}
+
 	/**
 	 * An abstract class that handles some code needed for wrapping a single observable to produce another
 	 *
@@ -1291,8 +1310,8 @@ public interface Observable<T> extends Lockable, Identifiable, Eventable {
 	 * @param <T> The type of value the observable publishes
 	 */
 	class IntervalObservable<T> implements Observable<T> {
-		private final QommonsTimer theTimer;
-		private final QommonsTimer.TaskHandle theTask;
+		private final Supplier<Instant> theClock;
+		private final TimerWheel.ScheduledTask theTask;
 		private final Function<? super Duration, ? extends T> theValue;
 		private final Consumer<? super T> thePostAction;
 		private final ListenerList<Observer<? super T>> theObservers;
@@ -1305,12 +1324,23 @@ public interface Observable<T> extends Lockable, Identifiable, Eventable {
 
 		public IntervalObservable(QommonsTimer timer, Duration initDelay, Duration interval, Duration until,
 			Function<? super Duration, ? extends T> value, Consumer<? super T> postAction) {
-			theTimer = timer;
-			theTask = QommonsTimer.getCommonInstance().build(this::fire, interval, true);
+			this(() -> timer.getClock().now(), fire -> TimerWheel.forTimer(timer.build(fire, interval, true)), initDelay, interval, until,
+				value, postAction);
+		}
+
+		public IntervalObservable(TimerWheel wheel, Duration initDelay, Duration interval, Duration until,
+			Function<? super Duration, ? extends T> value, Consumer<? super T> postAction) {
+			this(Instant::now, fire -> wheel.build(fire, interval), initDelay, interval, until, value, postAction);
+		}
+
+		private IntervalObservable(Supplier<Instant> clock, Function<Runnable, TimerWheel.ScheduledTask> scheduler, Duration initDelay,
+			Duration interval, Duration until, Function<? super Duration, ? extends T> value, Consumer<? super T> postAction) {
+			theClock = clock;
+			theTask = scheduler.apply(this::fire);
 			theInitDelay = initDelay;
 			theObservers = ListenerList.build().withInUse(inUse -> {
 				if (inUse) {
-					theStartTime = QommonsTimer.getCommonInstance().getClock().now();
+					theStartTime = theClock.get();
 					theTask.resetExecutionCount();
 				}
 				theTask.setActive(inUse);
@@ -1327,7 +1357,7 @@ public interface Observable<T> extends Lockable, Identifiable, Eventable {
 			theValue = value;
 			thePostAction = postAction;
 			if (until != null)
-				theTask.endIn(until, true);
+				theTask.endIn(until);
 		}
 
 		@Override
@@ -1368,7 +1398,7 @@ public interface Observable<T> extends Lockable, Identifiable, Eventable {
 		void fire() {
 			Duration valueTime;
 			if (isActual)
-				valueTime = TimeUtils.between(theStartTime, theTimer.getClock().now());
+				valueTime = TimeUtils.between(theStartTime, theClock.get());
 			else
 				valueTime = theTask.getFrequency().multipliedBy(theTask.getExecutionCount());
 			T value = theValue == null ? null : theValue.apply(valueTime);
@@ -1383,7 +1413,7 @@ public interface Observable<T> extends Lockable, Identifiable, Eventable {
 
 		@Override
 		public ThreadConstraint getThreadConstraint() {
-			if (theTask.getThreading() == QommonsTimer.TaskThreading.EDT)
+			if (theTask.isOnEdt())
 				return ThreadConstraint.EDT;
 			else
 				return ThreadConstraint.ANY;
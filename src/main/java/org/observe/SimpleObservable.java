@@ -4,6 +4,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+import org.observe.util.SubscriptionDiagnostics;
 import org.qommons.Causable;
 import org.qommons.Identifiable;
 import org.qommons.ThreadConstraint;
@@ -190,7 +191,7 @@ public class SimpleObservable<T> implements Observable<T>, Observer<T> {
 			Runnable unsub = theListeners.add(observer, isInternalState);
 			if (theOnSubscribe != null)
 				theOnSubscribe.accept(observer);
-			return unsub::run;
+			return SubscriptionDiagnostics.track(this, unsub::run);
 		}
 	}
 
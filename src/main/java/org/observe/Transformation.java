@@ -15,6 +15,7 @@ import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import org.observe.util.MemoCache;
 import org.observe.util.TypeTokens;
 import org.qommons.*;
 import org.qommons.collect.ListenerList;
@@ -1377,6 +1378,19 @@ public class Transformation<S, T> extends XformOptions.XformDef implements Ident
 			return build(LambdaUtils.toBiFunction1(map));
 		}
 
+		/**
+		 * Creates a transformation whose results are shared through a memo cache, so that the mapping function is only evaluated once for
+		 * each distinct source value (until evicted from the cache), no matter how many elements or values map it
+		 *
+		 * @param map The function to create result values from source values
+		 * @param cache The cache to store results in, keyed by source value. The cache may be shared between transformations that use the
+		 *        same function.
+		 * @return The transformation
+		 */
+		public Transformation<S, T> map(Function<? super S, ? extends T> map, MemoCache<? super S, T> cache) {
+			return map(cache.<S> memoize(map));
+		}
+
 		/**
 		 * Creates a transformation
 		 *
@@ -1419,6 +1433,11 @@ public class Transformation<S, T> extends XformOptions.XformDef implements Ident
 			return (MaybeReversibleMapping<S, T>) super.map(map);
 		}
 
+		@Override
+		public MaybeReversibleMapping<S, T> map(Function<? super S, ? extends T> map, MemoCache<? super S, T> cache) {
+			return (MaybeReversibleMapping<S, T>) super.map(map, cache);
+		}
+
 		@Override
 		public MaybeReversibleMapping<S, T> map(BiFunction<? super S, ? super T, ? extends T> map) {
 			return (MaybeReversibleMapping<S, T>) super.map(map);
@@ -5,6 +5,7 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.function.Function;
 
+import org.observe.util.SubscriptionDiagnostics;
 import org.observe.util.TypeTokens;
 import org.qommons.CausalLock;
 import org.qommons.Identifiable;
@@ -237,7 +238,8 @@ public class VetoableSettableValue<T> implements SettableValue<T> {
 		public Subscription subscribe(Observer<? super ObservableValueEvent<T>> observer) {
 			try (Transaction lock = theLock == null ? Transaction.NONE : theLock.lock(false, null)) {
 				if (isAlive)
-					return theListeners.add(new ListenerHolder<>(observer, theStamp, theValue), false)::run;
+					return SubscriptionDiagnostics.track(VetoableSettableValue.this,
+						theListeners.add(new ListenerHolder<>(observer, theStamp, theValue), false)::run);
 				else
 					return Subscription.NONE;
 			}
@@ -1,12 +1,16 @@
 package org.observe.assoc;
 
+import java.util.List;
 import java.util.Objects;
+import java.util.function.ToDoubleFunction;
 
 import org.observe.Eventable;
 import org.observe.Observable;
 import org.observe.ObservableValue;
 import org.observe.ObservableValueEvent;
 import org.observe.SettableValue;
+import org.observe.assoc.impl.IncrementalShortestPaths;
+import org.observe.assoc.impl.IncrementalTopologicalOrder;
 import org.observe.collect.ObservableCollection;
 import org.qommons.Lockable.CoreId;
 import org.qommons.Transaction;
@@ -233,6 +237,61 @@ public interface ObservableGraph<N, E> extends TransactableGraph<N, E>, Eventabl
 		}
 	}
 
+	/**
+	 * The shortest paths from a source node to all other reachable nodes in a graph, maintained as the graph changes
+	 *
+	 * @param <N> The type of values stored in the nodes of the graph
+	 * @param <E> The type of values stored in the edges of the graph
+	 * @see ObservableGraph#shortestPaths(Node, ToDoubleFunction, Observable)
+	 */
+	interface ShortestPaths<N, E> {
+		/** @return The node that all paths start from */
+		Node<N, E> getSource();
+
+		/** @return All nodes that are reachable from the source, including the source itself */
+		ObservableCollection<Node<N, E>> getReached();
+
+		/**
+		 * @param node The node to get the distance to
+		 * @return The length of the shortest path from the source to the given node, or {@link Double#POSITIVE_INFINITY} if the node is
+		 *         not reachable
+		 */
+		double getDistance(Node<N, E> node);
+
+		/**
+		 * @param node The node to observe the distance to
+		 * @return A value containing the {@link #getDistance(Node) distance} to the given node
+		 */
+		ObservableValue<Double> observeDistance(Node<N, E> node);
+
+		/**
+		 * @param node The node to get the path to
+		 * @return The edges of the shortest path from the source to the given node, or null if the node is not reachable
+		 */
+		List<Edge<N, E>> getPath(Node<N, E> node);
+	}
+
+	/**
+	 * A topological ordering of the nodes of a graph, maintained as the graph changes
+	 *
+	 * @param <N> The type of values stored in the nodes of the graph
+	 * @param <E> The type of values stored in the edges of the graph
+	 * @see ObservableGraph#topologicalOrder(Observable)
+	 */
+	interface TopologicalOrder<N, E> {
+		/**
+		 * @return All nodes in the graph, ordered so that for every directed edge except the {@link #getCycleEdges() cycle edges}, the
+		 *         edge's start comes before its end
+		 */
+		ObservableCollection<Node<N, E>> getOrder();
+
+		/** @return Directed edges which would create a cycle in the order, and so are not respected by it */
+		ObservableCollection<Edge<N, E>> getCycleEdges();
+
+		/** @return Whether the graph currently contains a directed cycle */
+		ObservableValue<Boolean> hasCycle();
+	}
+
 	@Override
 	ObservableCollection<? extends Node<N, E>> getNodes();
 
@@ -303,6 +362,36 @@ public interface ObservableGraph<N, E> extends TransactableGraph<N, E>, Eventabl
 		};
 	}
 
+	/**
+	 * Computes the shortest paths from a node to all other nodes reachable from it. The result is maintained incrementally as nodes and
+	 * edges are added to and removed from this graph, re-computing only the paths affected by each change.
+	 *
+	 * @param source The node to compute the paths from
+	 * @param weight The weight of each edge. Must be non-negative--edges with a negative or NaN weight are not traversed.
+	 * @param until An observable that stops the maintenance of the paths when it fires
+	 * @return The shortest paths from the source
+	 */
+	default ShortestPaths<N, E> shortestPaths(Node<N, E> source, ToDoubleFunction<? super Edge<N, E>> weight, Observable<?> until) {
+		return new IncrementalShortestPaths<>(this, source, weight, until);
+	}
+
+	/**
+	 * @param source The node to search from
+	 * @param until An observable that stops the maintenance of the collection when it fires
+	 * @return All nodes reachable from the source, maintained incrementally as this graph changes
+	 */
+	default ObservableCollection<Node<N, E>> reachableFrom(Node<N, E> source, Observable<?> until) {
+		return shortestPaths(source, e -> 0, until).getReached();
+	}
+
+	/**
+	 * @param until An observable that stops the maintenance of the order when it fires
+	 * @return A topological order of this graph's nodes, maintained incrementally as this graph changes
+	 */
+	default TopologicalOrder<N, E> topologicalOrder(Observable<?> until) {
+		return new IncrementalTopologicalOrder<>(this, until);
+	}
+
 	/**
 	 * @param <N> The type of node values in the graph
 	 * @param <E> The type of edge values in the graph
@@ -16,6 +16,7 @@ import org.observe.ObservableValue;
 import org.observe.ObservableValueEvent;
 import org.observe.Observer;
 import org.observe.Subscription;
+import org.observe.assoc.impl.ConcurrentObservableMap;
 import org.observe.collect.CollectionChangeType;
 import org.observe.collect.CollectionSubscription;
 import org.observe.collect.ObservableCollection;
@@ -554,6 +555,21 @@ public interface ObservableMap<K, V> extends BetterMap<K, V>, Eventable, Causabl
 				entryBuilder = entryBuilder.sortBy((entry1, entry2) -> compare.compare(entry1.getKey(), entry2.getKey()));
 			return new DefaultObservableMap<>(getType(), theValueType, getEquivalence(), entryBuilder.build());
 		}
+
+		/**
+		 * Builds a map for use by many threads at once, e.g. as a cache. Reads do not block, and writes to different keys seldom contend.
+		 * Keys are compared by {@link Object#equals(Object) equality}, and are ordered by insertion only among keys in the same lock
+		 * stripe. Listeners may be notified on another thread, after the modifying call returns. Backing, sorting, and locking options on
+		 * this builder are not used.
+		 *
+		 * @return The new concurrent map
+		 * @see ConcurrentObservableMap
+		 */
+		public ObservableMap<K, V> buildConcurrentMap() {
+			if (getEquivalence() != Equivalence.DEFAULT)
+				throw new IllegalArgumentException("Concurrent maps only support default key equivalence");
+			return new ConcurrentObservableMap<>(getType(), theValueType, ConcurrentObservableMap.DEFAULT_STRIPES, getDescription());
+		}
 	}
 
 	/**
@@ -426,6 +426,7 @@ public interface ObservableMultiMap<K, V> extends BetterMultiMap<K, V>, Eventabl
 		private final ObservableCollectionBuilder<MapEntry<K, V>, ?> theBackingBuilder;
 		private Equivalence<? super K> theKeyEquivalence;
 		private Equivalence<? super V> theValueEquivalence;
+		private boolean isKeyHashed;
 
 		Builder(ObservableCollectionBuilder<MapEntry<K, V>, ?> backingBuilder, //
 			TypeToken<K> keyType, TypeToken<V> valueType, String defaultDescrip) {
@@ -480,6 +481,16 @@ public interface ObservableMultiMap<K, V> extends BetterMultiMap<K, V>, Eventabl
 			return (B) this;
 		}
 
+		/**
+		 * @param hashed Whether the multi-map should index its keys in a hash table for constant-time lookups by key (see
+		 *        {@link MultiMapFlow#gatherHashed(Observable)}). Ignored for {@link #sortedBy(Comparator) sorted} maps.
+		 * @return This builder
+		 */
+		public B withHashedKeys(boolean hashed) {
+			isKeyHashed = hashed;
+			return (B) this;
+		}
+
 		@Override
 		public B withDescription(String description) {
 			theBackingBuilder.withDescription(description);
@@ -540,11 +551,11 @@ public interface ObservableMultiMap<K, V> extends BetterMultiMap<K, V>, Eventabl
 						.transform(theKeyType, tx -> tx.map(keyMap).modifySource(keySet).withEquivalence(theKeyEquivalence)).distinct(),
 						keyReverse);
 			}
-			return mapFlow.withValues(entries -> entries.transform(theValueType, //
+			MultiMapFlow<K, V> flow = mapFlow.withValues(entries -> entries.transform(theValueType, //
 				tx -> tx.map(valueMap).modifySource(valueSet, //
 					rvrs -> rvrs.createWith(addition))//
-				.withEquivalence(theValueEquivalence)))//
-				.gatherActive(until);
+				.withEquivalence(theValueEquivalence)));
+			return isKeyHashed ? flow.gatherHashed(until) : flow.gatherActive(until);
 		}
 	}
 
@@ -1445,5 +1456,18 @@ public interface ObservableMultiMap<K, V> extends BetterMultiMap<K, V>, Eventabl
 		 * @return An ObservableMultiMap derived from this flow's source by this flow's configuration
 		 */
 		ObservableMultiMap<K, V> gatherActive(Observable<?> until);
+
+		/**
+		 * Like {@link #gatherActive(Observable)}, but the gathered map additionally indexes its keys in a hash table so that lookups by key
+		 * are constant-time. This is best for maps with very many keys that are frequently accessed by value. The index takes memory in
+		 * addition to that of the {@link #gatherActive(Observable) actively-gathered} map. Flows with sorted keys, or that do not support
+		 * hashed gathering, gather normally.
+		 *
+		 * @param until The observable to terminate the active map's listening (to its source data)
+		 * @return An ObservableMultiMap derived from this flow's source by this flow's configuration
+		 */
+		default ObservableMultiMap<K, V> gatherHashed(Observable<?> until) {
+			return gatherActive(until);
+		}
 	}
 }
@@ -0,0 +1,242 @@
+package org.observe.assoc.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.observe.Observable;
+import org.observe.Subscription;
+import org.observe.assoc.ObservableGraph;
+import org.observe.assoc.ObservableGraph.Edge;
+import org.observe.assoc.ObservableGraph.Node;
+import org.qommons.Transaction;
+
+/**
+ * <p>
+ * Common implementation for algorithm results on an {@link ObservableGraph} that are maintained incrementally as the graph changes.
+ * </p>
+ * <p>
+ * This class keeps its own adjacency index of the graph's edges, updated from the graph's node and edge events. This way algorithms may
+ * examine the neighborhood of a node during an event without depending on the state of the graph's own inward/outward edge collections at
+ * that time. An undirected edge is traversable from either of its nodes.
+ * </p>
+ * <p>
+ * Nodes and edges are tracked by identity, so the graph's node and edge objects must be stable, as they are for
+ * {@link DefaultObservableGraph}.
+ * </p>
+ *
+ * @param <N> The type of node values in the graph
+ * @param <E> The type of edge values in the graph
+ */
+public abstract class AbstractIncrementalGraphAlgorithm<N, E> {
+	/**
+	 * The edges of a node
+	 *
+	 * @param <N> The type of node values in the graph
+	 * @param <E> The type of edge values in the graph
+	 */
+	protected static class Adjacency<N, E> {
+		/** Edges that may be traversed from the node */
+		public final Set<Edge<N, E>> outward = Collections.newSetFromMap(new IdentityHashMap<>());
+		/** Edges that may be traversed to the node */
+		public final Set<Edge<N, E>> inward = Collections.newSetFromMap(new IdentityHashMap<>());
+	}
+
+	private final ObservableGraph<N, E> theGraph;
+	private final Map<Node<N, E>, Adjacency<N, E>> theAdjacency;
+	private final Set<Edge<N, E>> theEdges;
+
+	/** @param graph The graph to run the algorithm on */
+	protected AbstractIncrementalGraphAlgorithm(ObservableGraph<N, E> graph) {
+		theGraph = graph;
+		theAdjacency = new IdentityHashMap<>();
+		theEdges = Collections.newSetFromMap(new IdentityHashMap<>());
+	}
+
+	/** @return The graph this algorithm runs on */
+	public ObservableGraph<N, E> getGraph() {
+		return theGraph;
+	}
+
+	/**
+	 * Indexes the graph, {@link #initialize() initializes} the algorithm's result, and begins listening to the graph. Must be called at
+	 * the end of the constructor of the concrete implementation.
+	 *
+	 * @param until An observable that stops the maintenance of the algorithm's result when it fires
+	 */
+	protected void start(Observable<?> until) {
+		Subscription sub;
+		try (Transaction t = theGraph.lock(false, null)) {
+			for (Node<N, E> node : theGraph.getNodes())
+				theAdjacency.put(node, new Adjacency<>());
+			for (Edge<N, E> edge : theGraph.getEdges())
+				index(edge);
+			initialize();
+			Subscription nodeSub = theGraph.getNodes().onChange(evt -> {
+				switch (evt.getType()) {
+				case add:
+					nodeAdded(evt.getNewValue());
+					break;
+				case remove:
+					nodeRemoved(evt.getOldValue());
+					break;
+				case set:
+					if (evt.getOldValue() != evt.getNewValue()) {
+						nodeRemoved(evt.getOldValue());
+						nodeAdded(evt.getNewValue());
+					}
+					break;
+				}
+			});
+			Subscription edgeSub = theGraph.getEdges().onChange(evt -> {
+				switch (evt.getType()) {
+				case add:
+					edgeAdded(evt.getNewValue());
+					break;
+				case remove:
+					edgeRemoved(evt.getOldValue());
+					break;
+				case set:
+					// Even if the edge is the same, its value and therefore its weight may have changed
+					edgeRemoved(evt.getOldValue());
+					edgeAdded(evt.getNewValue());
+					break;
+				}
+			});
+			sub = Subscription.forAll(nodeSub, edgeSub);
+		}
+		if (until != null)
+			until.take(1).act(__ -> sub.unsubscribe());
+	}
+
+	/** Computes the initial result of the algorithm from the indexed graph */
+	protected abstract void initialize();
+
+	/** @return All nodes in the graph */
+	protected Set<Node<N, E>> getNodes() {
+		return theAdjacency.keySet();
+	}
+
+	/**
+	 * @param node The node to get the adjacency for
+	 * @return The edges of the node, or null if the node is not in the graph
+	 */
+	protected Adjacency<N, E> getAdjacency(Node<N, E> node) {
+		return theAdjacency.get(node);
+	}
+
+	/**
+	 * @param edge The edge to check
+	 * @return Whether the edge is currently present in the graph
+	 */
+	protected boolean containsEdge(Edge<N, E> edge) {
+		return theEdges.contains(edge);
+	}
+
+	/**
+	 * @param edge The edge
+	 * @param node One of the edge's nodes
+	 * @return The edge's other node
+	 */
+	protected static <N, E> Node<N, E> getOther(Edge<N, E> edge, Node<N, E> node) {
+		return edge.getStart() == node ? edge.getEnd() : edge.getStart();
+	}
+
+	/**
+	 * Called when a node is added to the graph, after it is indexed
+	 *
+	 * @param node The added node
+	 */
+	protected void onNodeAdded(Node<N, E> node) {
+	}
+
+	/**
+	 * Called when a node is removed from the graph, after any remaining edges of the node have been {@link #onEdgeRemoved(Edge) removed}
+	 * and the node itself is no longer indexed
+	 *
+	 * @param node The removed node
+	 */
+	protected abstract void onNodeRemoved(Node<N, E> node);
+
+	/**
+	 * Called when an edge is added to the graph (or its value changes), after it is indexed
+	 *
+	 * @param edge The added edge
+	 */
+	protected abstract void onEdgeAdded(Edge<N, E> edge);
+
+	/**
+	 * Called when an edge is removed from the graph (or its value changes), after it is no longer indexed
+	 *
+	 * @param edge The removed edge
+	 */
+	protected abstract void onEdgeRemoved(Edge<N, E> edge);
+
+	private void index(Edge<N, E> edge) {
+		if (!theEdges.add(edge))
+			return;
+		Adjacency<N, E> start = theAdjacency.computeIfAbsent(edge.getStart(), __ -> new Adjacency<>());
+		Adjacency<N, E> end = theAdjacency.computeIfAbsent(edge.getEnd(), __ -> new Adjacency<>());
+		start.outward.add(edge);
+		end.inward.add(edge);
+		if (!edge.isDirected()) {
+			end.outward.add(edge);
+			start.inward.add(edge);
+		}
+	}
+
+	private boolean unindex(Edge<N, E> edge) {
+		if (!theEdges.remove(edge))
+			return false;
+		Adjacency<N, E> start = theAdjacency.get(edge.getStart());
+		Adjacency<N, E> end = theAdjacency.get(edge.getEnd());
+		if (start != null) {
+			start.outward.remove(edge);
+			start.inward.remove(edge);
+		}
+		if (end != null) {
+			end.outward.remove(edge);
+			end.inward.remove(edge);
+		}
+		return true;
+	}
+
+	private void nodeAdded(Node<N, E> node) {
+		if (theAdjacency.containsKey(node))
+			return;
+		theAdjacency.put(node, new Adjacency<>());
+		onNodeAdded(node);
+	}
+
+	private void nodeRemoved(Node<N, E> node) {
+		Adjacency<N, E> adj = theAdjacency.get(node);
+		if (adj == null)
+			return;
+		// The graph may remove the node's edges after the node itself
+		ArrayList<Edge<N, E>> edges = new ArrayList<>(adj.outward);
+		for (Edge<N, E> edge : adj.inward) {
+			if (!adj.outward.contains(edge))
+				edges.add(edge);
+		}
+		for (Edge<N, E> edge : edges)
+			edgeRemoved(edge);
+		theAdjacency.remove(node);
+		onNodeRemoved(node);
+	}
+
+	private void edgeAdded(Edge<N, E> edge) {
+		if (!theAdjacency.containsKey(edge.getStart()) || !theAdjacency.containsKey(edge.getEnd()))
+			return; // Edge to a node that has been removed
+		if (theEdges.contains(edge))
+			return;
+		index(edge);
+		onEdgeAdded(edge);
+	}
+
+	private void edgeRemoved(Edge<N, E> edge) {
+		if (unindex(edge))
+			onEdgeRemoved(edge);
+	}
+}
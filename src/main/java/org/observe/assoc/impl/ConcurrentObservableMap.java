@@ -0,0 +1,1236 @@
+package org.observe.assoc.impl;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.observe.Equivalence;
+import org.observe.Subscription;
+import org.observe.assoc.ObservableMap;
+import org.observe.assoc.ObservableMapEvent;
+import org.observe.collect.CollectionChangeType;
+import org.observe.collect.ObservableCollection;
+import org.observe.collect.ObservableCollectionEvent;
+import org.observe.collect.ObservableSet;
+import org.observe.util.TypeTokens;
+import org.qommons.Identifiable;
+import org.qommons.Identifiable.AbstractIdentifiable;
+import org.qommons.Lockable.CoreId;
+import org.qommons.ThreadConstraint;
+import org.qommons.Transaction;
+import org.qommons.collect.BetterCollection;
+import org.qommons.collect.BetterList;
+import org.qommons.collect.BetterMap;
+import org.qommons.collect.BetterSet;
+import org.qommons.collect.CollectionElement;
+import org.qommons.collect.ElementId;
+import org.qommons.collect.ListenerList;
+import org.qommons.collect.MapEntryHandle;
+import org.qommons.collect.MutableCollectionElement;
+import org.qommons.collect.MutableCollectionElement.StdMsg;
+import org.qommons.collect.MutableMapEntryHandle;
+import org.qommons.tree.BetterTreeList;
+
+import com.google.common.reflect.TypeToken;
+
+/**
+ * <p>
+ * An {@link ObservableMap} intended to be shared by many threads, e.g. as a cache.
+ * </p>
+ * <p>
+ * Entries are stored in a concurrent hash table, so {@link #get(Object) reads} of individual keys never block. Modifications lock only one
+ * of several stripes, chosen by the key's hash, so writers of different keys rarely contend. The atomic operations of {@link Map}
+ * ({@link #computeIfAbsent(Object, Function) computeIfAbsent}, {@link #compute(Object, BiFunction) compute},
+ * {@link #merge(Object, Object, BiFunction) merge}, {@link #putIfAbsent(Object, Object) putIfAbsent}, etc.) are atomic with respect to all
+ * other modifications of the same key. {@link #lock(boolean, Object) Locking} the map locks every stripe, so code that needs a consistent
+ * view of the whole map may still obtain one.
+ * </p>
+ * <p>
+ * Each stripe keeps the order of its own entries, so no modification takes a lock shared by the whole map. Entries are ordered in the key
+ * set by stripe, then by insertion within each stripe. Keys are compared with {@link Object#equals(Object)}.
+ * </p>
+ * <p>
+ * Events are queued without blocking as changes are made, in order for each key. They are delivered from that single queue by one thread
+ * at a time, so listeners see a serial sequence of events whose indexes are consistent with each other, as for any other map. An event's
+ * index is computed as it is delivered, from the events delivered before it.
+ * </p>
+ * <p>
+ * <b>Listeners may be notified on a thread other than the one that made the change.</b> An event is not delivered while a stripe's lock
+ * is held, and if another thread is already delivering events when a change is made, that thread delivers the new event as well, so the
+ * modifying call may return before its event is delivered. A listener is only notified of changes made after it was
+ * {@link #onChange(Consumer) added}, even if earlier changes are still queued, so {@link #subscribe(Consumer, boolean) subscribing}
+ * reports each entry exactly once.
+ * </p>
+ *
+ * @param <K> The key type of the map
+ * @param <V> The value type of the map
+ */
+public class ConcurrentObservableMap<K, V> extends AbstractIdentifiable implements ObservableMap<K, V> {
+	/** The default number of lock stripes for a concurrent map */
+	public static final int DEFAULT_STRIPES = 16;
+
+	private final TypeToken<K> theKeyType;
+	private final TypeToken<V> theValueType;
+	private TypeToken<Map.Entry<K, V>> theEntryType;
+	private final String theDescription;
+
+	private final ConcurrentHashMap<K, Entry> theEntries;
+	private final Stripe[] theStripes;
+	private final AtomicLong theStamp;
+	private final ListenerList<Listener> theListeners;
+	private final ConcurrentLinkedQueue<QueuedEvent> theEvents;
+	private final AtomicBoolean isDelivering;
+	/** The sequence number of the next event to be queued */
+	private final AtomicLong theEventSequence;
+	/**
+	 * The number of entries in each stripe as of the last delivered event, used to compute the index of each event as it is delivered.
+	 * Only used by the thread delivering events.
+	 */
+	private final int[] theDeliveredSizes;
+
+	private final KeySet theKeySet;
+	private ObservableCollection<V> theValues;
+	private ObservableSet<Map.Entry<K, V>> theEntrySet;
+
+	/**
+	 * @param keyType The key type for the map
+	 * @param valueType The value type for the map
+	 * @param stripes The number of lock stripes for the map. More stripes allow more concurrent modification, at a greater cost to
+	 *        {@link #lock(boolean, Object) lock} the whole map.
+	 * @param description The description for the map
+	 */
+	public ConcurrentObservableMap(TypeToken<K> keyType, TypeToken<V> valueType, int stripes, String description) {
+		if (stripes <= 0)
+			throw new IllegalArgumentException("Stripe count must be positive: " + stripes);
+		theKeyType = keyType;
+		theValueType = valueType;
+		theDescription = description;
+		theEntries = new ConcurrentHashMap<>();
+		theStripes = new Stripe[stripes];
+		for (int i = 0; i < stripes; i++)
+			theStripes[i] = new Stripe(i);
+		theStamp = new AtomicLong();
+		theListeners = ListenerList.build().build();
+		theEvents = new ConcurrentLinkedQueue<>();
+		isDelivering = new AtomicBoolean();
+		theEventSequence = new AtomicLong();
+		theDeliveredSizes = new int[stripes];
+		theKeySet = new KeySet();
+	}
+
+	@Override
+	protected Object createIdentity() {
+		return Identifiable.baseId(theDescription != null ? theDescription : "concurrent-map", this);
+	}
+
+	@Override
+	public boolean isEventing() {
+		return isDelivering.get();
+	}
+
+	@Override
+	public TypeToken<K> getKeyType() {
+		return theKeyType;
+	}
+
+	@Override
+	public TypeToken<V> getValueType() {
+		return theValueType;
+	}
+
+	@Override
+	public TypeToken<Map.Entry<K, V>> getEntryType() {
+		if (theEntryType == null)
+			theEntryType = ObservableMap.buildEntryType(theKeyType, theValueType);
+		return theEntryType;
+	}
+
+	@Override
+	public Equivalence<? super V> equivalence() {
+		return Equivalence.DEFAULT;
+	}
+
+	@Override
+	public ThreadConstraint getThreadConstraint() {
+		return ThreadConstraint.ANY;
+	}
+
+	@Override
+	public boolean isLockSupported() {
+		return true;
+	}
+
+	@Override
+	public Transaction lock(boolean write, Object cause) {
+		Lock[] locks = new Lock[theStripes.length];
+		for (int i = 0; i < theStripes.length; i++) {
+			locks[i] = write ? theStripes[i].lock.writeLock() : theStripes[i].lock.readLock();
+			locks[i].lock();
+		}
+		return () -> {
+			for (int i = locks.length - 1; i >= 0; i--)
+				locks[i].unlock();
+			if (write)
+				deliver(null);
+		};
+	}
+
+	@Override
+	public Transaction tryLock(boolean write, Object cause) {
+		Lock[] locks = new Lock[theStripes.length];
+		for (int i = 0; i < theStripes.length; i++) {
+			locks[i] = write ? theStripes[i].lock.writeLock() : theStripes[i].lock.readLock();
+			if (!locks[i].tryLock()) {
+				for (int j = i - 1; j >= 0; j--)
+					locks[j].unlock();
+				return null;
+			}
+		}
+		return () -> {
+			for (int i = locks.length - 1; i >= 0; i--)
+				locks[i].unlock();
+			if (write)
+				deliver(null);
+		};
+	}
+
+	@Override
+	public CoreId getCoreId() {
+		return new CoreId(this);
+	}
+
+	@Override
+	public long getStamp() {
+		return theStamp.get();
+	}
+
+	@Override
+	public int size() {
+		return theEntries.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return theEntries.isEmpty();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return theEntries.containsKey(key);
+	}
+
+	@Override
+	public V get(Object key) {
+		Entry entry = theEntries.get(key);
+		return entry == null ? null : entry.theValue;
+	}
+
+	@Override
+	public ObservableSet<K> keySet() {
+		return theKeySet;
+	}
+
+	@Override
+	public ObservableCollection<V> values() {
+		if (theValues == null)
+			theValues = ObservableMap.super.values();
+		return theValues;
+	}
+
+	@Override
+	public ObservableSet<Map.Entry<K, V>> entrySet() {
+		if (theEntrySet == null)
+			theEntrySet = ObservableMap.super.entrySet();
+		return theEntrySet;
+	}
+
+	@Override
+	public MapEntryHandle<K, V> getEntry(K key) {
+		return theEntries.get(key);
+	}
+
+	@Override
+	public MapEntryHandle<K, V> getEntryById(ElementId entryId) {
+		return entryFor(entryId);
+	}
+
+	@Override
+	public MutableMapEntryHandle<K, V> mutableEntry(ElementId entryId) {
+		return entryFor(entryId).new MutableEntry();
+	}
+
+	@Override
+	public String canPut(K key, V value) {
+		if (key != null && !TypeTokens.get().isInstance(theKeyType, key))
+			return StdMsg.BAD_TYPE;
+		else if (value != null && !TypeTokens.get().isInstance(theValueType, value))
+			return StdMsg.BAD_TYPE;
+		return null;
+	}
+
+	@Override
+	public MapEntryHandle<K, V> putEntry(K key, V value, ElementId after, ElementId before, boolean first) {
+		checkPut(key, value);
+		Stripe stripe = stripeFor(key);
+		Entry entry;
+		stripe.lock.writeLock().lock();
+		try {
+			entry = theEntries.get(key);
+			if (entry != null)
+				entry.setValue(value);
+			else
+				entry = insert(stripe, key, value, after, before, first);
+		} finally {
+			stripe.lock.writeLock().unlock();
+		}
+		deliver(stripe);
+		return entry;
+	}
+
+	@Override
+	public MapEntryHandle<K, V> getOrPutEntry(K key, Function<? super K, ? extends V> value, ElementId afterKey, ElementId beforeKey,
+		boolean first, Runnable preAdd, Runnable postAdd) {
+		Entry entry = theEntries.get(key);
+		if (entry != null)
+			return entry;
+		Stripe stripe = stripeFor(key);
+		stripe.lock.writeLock().lock();
+		try {
+			entry = theEntries.get(key);
+			if (entry == null) {
+				V newValue = value.apply(key);
+				checkPut(key, newValue);
+				if (preAdd != null)
+					preAdd.run();
+				entry = insert(stripe, key, newValue, afterKey, beforeKey, first);
+				if (postAdd != null)
+					postAdd.run();
+			}
+		} finally {
+			stripe.lock.writeLock().unlock();
+		}
+		deliver(stripe);
+		return entry;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		checkPut(key, value);
+		Stripe stripe = stripeFor(key);
+		V old;
+		stripe.lock.writeLock().lock();
+		try {
+			Entry entry = theEntries.get(key);
+			if (entry != null)
+				old = entry.setValue(value);
+			else {
+				old = null;
+				insert(stripe, key, value, null, null, false);
+			}
+		} finally {
+			stripe.lock.writeLock().unlock();
+		}
+		deliver(stripe);
+		return old;
+	}
+
+	@Override
+	public V putIfAbsent(K key, V value) {
+		Entry entry = theEntries.get(key);
+		if (entry != null)
+			return entry.theValue;
+		checkPut(key, value);
+		Stripe stripe = stripeFor(key);
+		V old;
+		stripe.lock.writeLock().lock();
+		try {
+			entry = theEntries.get(key);
+			if (entry != null)
+				old = entry.theValue;
+			else {
+				old = null;
+				insert(stripe, key, value, null, null, false);
+			}
+		} finally {
+			stripe.lock.writeLock().unlock();
+		}
+		deliver(stripe);
+		return old;
+	}
+
+	@Override
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		Entry entry = theEntries.get(key);
+		if (entry != null && entry.theValue != null)
+			return entry.theValue;
+		return compute(key, (k, oldValue) -> oldValue != null ? oldValue : mappingFunction.apply(k));
+	}
+
+	@Override
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		if (!theEntries.containsKey(key))
+			return null;
+		return compute(key, (k, oldValue) -> oldValue == null ? null : remappingFunction.apply(k, oldValue));
+	}
+
+	@Override
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		Objects.requireNonNull(value);
+		return compute(key, (k, oldValue) -> oldValue == null ? value : remappingFunction.apply(oldValue, value));
+	}
+
+	/**
+	 * Atomically computes the value for a key. As for {@link Map#compute(Object, BiFunction)}, an entry whose computed value is null is
+	 * removed. The function is called while the key's stripe is locked, so it should be quick and must not modify this map.
+	 */
+	@Override
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		Stripe stripe = stripeFor(key);
+		V newValue;
+		stripe.lock.writeLock().lock();
+		try {
+			Entry entry = theEntries.get(key);
+			V oldValue = entry == null ? null : entry.theValue;
+			newValue = remappingFunction.apply(key, oldValue);
+			if (newValue == null) {
+				if (entry != null)
+					remove(entry);
+			} else {
+				checkPut(key, newValue);
+				if (entry != null) {
+					if (newValue != oldValue)
+						entry.setValue(newValue);
+				} else
+					insert(stripe, key, newValue, null, null, false);
+			}
+		} finally {
+			stripe.lock.writeLock().unlock();
+		}
+		deliver(stripe);
+		return newValue;
+	}
+
+	@Override
+	public V remove(Object key) {
+		Entry entry = theEntries.get(key);
+		if (entry == null)
+			return null;
+		Stripe stripe = stripeFor(key);
+		V old;
+		stripe.lock.writeLock().lock();
+		try {
+			entry = theEntries.get(key);
+			if (entry == null)
+				old = null;
+			else {
+				old = entry.theValue;
+				remove(entry);
+			}
+		} finally {
+			stripe.lock.writeLock().unlock();
+		}
+		deliver(stripe);
+		return old;
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		Entry entry = theEntries.get(key);
+		if (entry == null)
+			return false;
+		Stripe stripe = stripeFor(key);
+		boolean removed;
+		stripe.lock.writeLock().lock();
+		try {
+			entry = theEntries.get(key);
+			removed = entry != null && Objects.equals(entry.theValue, value);
+			if (removed)
+				remove(entry);
+		} finally {
+			stripe.lock.writeLock().unlock();
+		}
+		deliver(stripe);
+		return removed;
+	}
+
+	@Override
+	public boolean replace(K key, V oldValue, V newValue) {
+		checkPut(key, newValue);
+		Stripe stripe = stripeFor(key);
+		boolean replaced;
+		stripe.lock.writeLock().lock();
+		try {
+			Entry entry = theEntries.get(key);
+			replaced = entry != null && Objects.equals(entry.theValue, oldValue);
+			if (replaced)
+				entry.setValue(newValue);
+		} finally {
+			stripe.lock.writeLock().unlock();
+		}
+		deliver(stripe);
+		return replaced;
+	}
+
+	@Override
+	public V replace(K key, V value) {
+		checkPut(key, value);
+		Stripe stripe = stripeFor(key);
+		V old;
+		stripe.lock.writeLock().lock();
+		try {
+			Entry entry = theEntries.get(key);
+			old = entry == null ? null : entry.setValue(value);
+		} finally {
+			stripe.lock.writeLock().unlock();
+		}
+		deliver(stripe);
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		for (Entry entry : theEntries.values()) {
+			Stripe stripe = stripeFor(entry.theKey);
+			stripe.lock.writeLock().lock();
+			try {
+				remove(entry);
+			} finally {
+				stripe.lock.writeLock().unlock();
+			}
+			deliver(stripe);
+		}
+	}
+
+	@Override
+	public Subscription onChange(Consumer<? super ObservableMapEvent<? extends K, ? extends V>> action) {
+		// Changes already made (whose events may still be queued) are not reported to the new listener
+		Runnable remove = theListeners.add(new Listener(action, theEventSequence.get()), true);
+		return remove::run;
+	}
+
+	@Override
+	public int hashCode() {
+		return BetterMap.hashCode(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return BetterMap.equals(this, obj);
+	}
+
+	@Override
+	public String toString() {
+		return entrySet().toString();
+	}
+
+	private Stripe stripeFor(Object key) {
+		int hash = Objects.hashCode(key);
+		hash ^= hash >>> 16;
+		return theStripes[(hash & 0x7fffffff) % theStripes.length];
+	}
+
+	private void checkPut(K key, V value) {
+		String msg = canPut(key, value);
+		if (msg != null)
+			throw new IllegalArgumentException(msg);
+	}
+
+	private EntryId idFor(ElementId entryId) {
+		if (!(entryId instanceof ConcurrentObservableMap.EntryId) || ((EntryId) entryId).getMap() != this)
+			throw new IllegalArgumentException(StdMsg.ILLEGAL_ELEMENT);
+		return (EntryId) entryId;
+	}
+
+	private Entry entryFor(ElementId entryId) {
+		EntryId id = idFor(entryId);
+		if (!id.isPresent())
+			throw new IllegalArgumentException(StdMsg.ELEMENT_REMOVED);
+		return id.entry;
+	}
+
+	/**
+	 * Must be called while the key's stripe is write-locked
+	 *
+	 * @param stripe The key's stripe
+	 * @param key The key to insert
+	 * @param value The value for the key
+	 * @param after The entry to insert the key after, if any
+	 * @param before The entry to insert the key before, if any
+	 * @param first Whether to insert the key as close to the beginning of the allowed range as possible
+	 * @return The new entry
+	 */
+	private Entry insert(Stripe stripe, K key, V value, ElementId after, ElementId before, boolean first) {
+		// An entry can only be placed among the entries of its own stripe
+		ElementId afterInStripe = null, beforeInStripe = null;
+		if (after != null) {
+			EntryId afterId = idFor(after);
+			if (afterId.stripe.index > stripe.index)
+				throw new IllegalArgumentException(StdMsg.ILLEGAL_ELEMENT_POSITION);
+			else if (afterId.stripe == stripe)
+				afterInStripe = afterId.orderId;
+		}
+		if (before != null) {
+			EntryId beforeId = idFor(before);
+			if (beforeId.stripe.index < stripe.index)
+				throw new IllegalArgumentException(StdMsg.ILLEGAL_ELEMENT_POSITION);
+			else if (beforeId.stripe == stripe)
+				beforeInStripe = beforeId.orderId;
+		}
+		Entry entry = new Entry(key, value);
+		ElementId orderId = stripe.order.addElement(entry, afterInStripe, beforeInStripe, first).getElementId();
+		entry.theId = new EntryId(entry, stripe, orderId);
+		stripe.size = stripe.order.size();
+		theEntries.put(key, entry);
+		enqueue(entry, CollectionChangeType.add, null, value);
+		theStamp.incrementAndGet();
+		return entry;
+	}
+
+	/** Must be called while the key's stripe is write-locked */
+	private void remove(Entry entry) {
+		if (!theEntries.remove(entry.theKey, entry))
+			return;
+		Stripe stripe = entry.theId.stripe;
+		enqueue(entry, CollectionChangeType.remove, entry.theValue, entry.theValue);
+		stripe.order.mutableElement(entry.theId.orderId).remove();
+		stripe.size = stripe.order.size();
+		theStamp.incrementAndGet();
+	}
+
+	/**
+	 * Queues an event for a change to an entry. Must be called while the entry's stripe is write-locked, before the entry is removed from
+	 * the stripe's order, so that the events of each stripe are queued in the order of its changes.
+	 */
+	private void enqueue(Entry entry, CollectionChangeType type, V oldValue, V newValue) {
+		EntryId id = entry.theId;
+		theEvents.add(new QueuedEvent(theEventSequence.getAndIncrement(), id, id.stripe.order.getElementsBefore(id.orderId), type,
+			entry.theKey, oldValue, newValue));
+	}
+
+	/**
+	 * Fires queued events to listeners. Only one thread delivers events at a time, so events are always delivered in the order they were
+	 * queued. If another thread (or an outer call on this thread) is already delivering, it will deliver the queued events.
+	 *
+	 * @param stripe The stripe that was just modified, or null if the whole map was locked
+	 */
+	private void deliver(Stripe stripe) {
+		if ((stripe == null ? theStripes[0] : stripe).lock.isWriteLockedByCurrentThread())
+			return; // Deliver when the whole-map lock is released
+		while (!theEvents.isEmpty() && isDelivering.compareAndSet(false, true)) {
+			try {
+				QueuedEvent queued = theEvents.poll();
+				while (queued != null) {
+					long sequence = queued.sequence;
+					ObservableMapEvent<K, V> event = queued.toEvent();
+					try (Transaction t = event.use()) {
+						theListeners.forEach(//
+							listener -> {
+								if (sequence >= listener.firstSequence)
+									listener.action.accept(event);
+							});
+					}
+					queued = theEvents.poll();
+				}
+			} finally {
+				isDelivering.set(false);
+			}
+		}
+	}
+
+	/** A lock for a portion of the map's keys, and the order of their entries */
+	private class Stripe {
+		final int index;
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		/** The insertion order of this stripe's entries. Guarded by {@link #lock}. */
+		final BetterTreeList<Entry> order = BetterTreeList.<Entry> build().build();
+		/** The number of entries in this stripe, readable without the lock */
+		volatile int size;
+
+		Stripe(int index) {
+			this.index = index;
+		}
+
+		/** Must be called while this stripe is read-locked */
+		CollectionElement<K> terminal(boolean first) {
+			CollectionElement<Entry> el = order.getTerminalElement(first);
+			return el == null ? null : el.get().keyElement();
+		}
+	}
+
+	private class QueuedEvent {
+		final long sequence;
+		final EntryId id;
+		/** The index of the entry among the entries of its stripe, as of the change */
+		final int indexInStripe;
+		final CollectionChangeType type;
+		final K key;
+		final V oldValue;
+		final V newValue;
+
+		QueuedEvent(long sequence, EntryId id, int indexInStripe, CollectionChangeType type, K key, V oldValue, V newValue) {
+			this.sequence = sequence;
+			this.id = id;
+			this.indexInStripe = indexInStripe;
+			this.type = type;
+			this.key = key;
+			this.oldValue = oldValue;
+			this.newValue = newValue;
+		}
+
+		/**
+		 * Must be called by the delivering thread, in queue order
+		 *
+		 * @return The event to deliver, with its index in the map as of the events delivered before it
+		 */
+		ObservableMapEvent<K, V> toEvent() {
+			int index = indexInStripe;
+			for (int s = 0; s < id.stripe.index; s++)
+				index += theDeliveredSizes[s];
+			if (type == CollectionChangeType.add)
+				theDeliveredSizes[id.stripe.index]++;
+			else if (type == CollectionChangeType.remove)
+				theDeliveredSizes[id.stripe.index]--;
+			return new ObservableMapEvent<>(id, index, type, key, key, oldValue, newValue);
+		}
+	}
+
+	/** The ID of an entry in the map, ordered by stripe, then by the entry's position within its stripe */
+	class EntryId implements ElementId {
+		final Entry entry;
+		final Stripe stripe;
+		/** The entry's element in its stripe's {@link Stripe#order order} */
+		final ElementId orderId;
+
+		EntryId(Entry entry, Stripe stripe, ElementId orderId) {
+			this.entry = entry;
+			this.stripe = stripe;
+			this.orderId = orderId;
+		}
+
+		ConcurrentObservableMap<K, V> getMap() {
+			return ConcurrentObservableMap.this;
+		}
+
+		@Override
+		public int compareTo(ElementId o) {
+			EntryId other = (EntryId) o;
+			if (stripe != other.stripe)
+				return Integer.compare(stripe.index, other.stripe.index);
+			return orderId.compareTo(other.orderId);
+		}
+
+		@Override
+		public boolean isPresent() {
+			return orderId.isPresent();
+		}
+
+		@Override
+		public int hashCode() {
+			return orderId.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof ConcurrentObservableMap.EntryId && orderId.equals(((EntryId) obj).orderId);
+		}
+
+		@Override
+		public String toString() {
+			return stripe.index + ":" + orderId;
+		}
+	}
+
+	private class Listener {
+		final Consumer<? super ObservableMapEvent<? extends K, ? extends V>> action;
+		/** The sequence of the first event this listener is to be notified of */
+		final long firstSequence;
+
+		Listener(Consumer<? super ObservableMapEvent<? extends K, ? extends V>> action, long firstSequence) {
+			this.action = action;
+			this.firstSequence = firstSequence;
+		}
+	}
+
+	/** An entry in the map */
+	class Entry implements MapEntryHandle<K, V> {
+		final K theKey;
+		volatile V theValue;
+		EntryId theId;
+
+		Entry(K key, V value) {
+			theKey = key;
+			theValue = value;
+		}
+
+		@Override
+		public ElementId getElementId() {
+			return theId;
+		}
+
+		@Override
+		public K getKey() {
+			return theKey;
+		}
+
+		@Override
+		public V get() {
+			return theValue;
+		}
+
+		/** Must be called while the key's stripe is write-locked */
+		V setValue(V value) {
+			V old = theValue;
+			theValue = value;
+			enqueue(this, CollectionChangeType.set, old, value);
+			theStamp.incrementAndGet();
+			return old;
+		}
+
+		CollectionElement<K> keyElement() {
+			return new CollectionElement<K>() {
+				@Override
+				public ElementId getElementId() {
+					return theId;
+				}
+
+				@Override
+				public K get() {
+					return theKey;
+				}
+
+				@Override
+				public int hashCode() {
+					return theId.hashCode();
+				}
+
+				@Override
+				public boolean equals(Object obj) {
+					return obj instanceof CollectionElement && theId.equals(((CollectionElement<?>) obj).getElementId());
+				}
+
+				@Override
+				public String toString() {
+					return String.valueOf(theKey);
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return theKey + "=" + theValue;
+		}
+
+		class MutableEntry implements MutableMapEntryHandle<K, V> {
+			@Override
+			public ElementId getElementId() {
+				return theId;
+			}
+
+			@Override
+			public K getKey() {
+				return theKey;
+			}
+
+			@Override
+			public V get() {
+				return theValue;
+			}
+
+			@Override
+			public BetterCollection<V> getCollection() {
+				return values();
+			}
+
+			@Override
+			public String isEnabled() {
+				return null;
+			}
+
+			@Override
+			public String isAcceptable(V value) {
+				if (value != null && !TypeTokens.get().isInstance(theValueType, value))
+					return StdMsg.BAD_TYPE;
+				return null;
+			}
+
+			@Override
+			public void set(V value) throws UnsupportedOperationException, IllegalArgumentException {
+				if (value != null && !TypeTokens.get().isInstance(theValueType, value))
+					throw new IllegalArgumentException(StdMsg.BAD_TYPE);
+				Stripe stripe = stripeFor(theKey);
+				stripe.lock.writeLock().lock();
+				try {
+					if (!theId.isPresent())
+						throw new IllegalStateException(StdMsg.ELEMENT_REMOVED);
+					setValue(value);
+				} finally {
+					stripe.lock.writeLock().unlock();
+				}
+				deliver(stripe);
+			}
+
+			@Override
+			public String canRemove() {
+				return null;
+			}
+
+			@Override
+			public void remove() throws UnsupportedOperationException {
+				Stripe stripe = stripeFor(theKey);
+				stripe.lock.writeLock().lock();
+				try {
+					if (!theId.isPresent())
+						throw new IllegalStateException(StdMsg.ELEMENT_REMOVED);
+					ConcurrentObservableMap.this.remove(Entry.this);
+				} finally {
+					stripe.lock.writeLock().unlock();
+				}
+				deliver(stripe);
+			}
+
+			@Override
+			public String toString() {
+				return Entry.this.toString();
+			}
+		}
+	}
+
+	/** Implements {@link ConcurrentObservableMap#keySet()} */
+	class KeySet extends AbstractIdentifiable implements ObservableSet<K> {
+		@Override
+		protected Object createIdentity() {
+			return Identifiable.wrap(ConcurrentObservableMap.this.getIdentity(), "keySet");
+		}
+
+		@Override
+		public TypeToken<K> getType() {
+			return theKeyType;
+		}
+
+		@Override
+		public Equivalence<? super K> equivalence() {
+			return Equivalence.DEFAULT;
+		}
+
+		@Override
+		public boolean isContentControlled() {
+			return false;
+		}
+
+		@Override
+		public ThreadConstraint getThreadConstraint() {
+			return ConcurrentObservableMap.this.getThreadConstraint();
+		}
+
+		@Override
+		public boolean isEventing() {
+			return ConcurrentObservableMap.this.isEventing();
+		}
+
+		@Override
+		public boolean isLockSupported() {
+			return true;
+		}
+
+		@Override
+		public Transaction lock(boolean write, Object cause) {
+			return ConcurrentObservableMap.this.lock(write, cause);
+		}
+
+		@Override
+		public Transaction tryLock(boolean write, Object cause) {
+			return ConcurrentObservableMap.this.tryLock(write, cause);
+		}
+
+		@Override
+		public CoreId getCoreId() {
+			return ConcurrentObservableMap.this.getCoreId();
+		}
+
+		@Override
+		public long getStamp() {
+			return ConcurrentObservableMap.this.getStamp();
+		}
+
+		@Override
+		public int size() {
+			return theEntries.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return theEntries.isEmpty();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return theEntries.containsKey(o);
+		}
+
+		@Override
+		public CollectionElement<K> getElement(ElementId id) {
+			return entryFor(id).keyElement();
+		}
+
+		@Override
+		public CollectionElement<K> getElement(K value, boolean first) {
+			Entry entry = theEntries.get(value);
+			return entry == null ? null : entry.keyElement();
+		}
+
+		@Override
+		public CollectionElement<K> getElement(int index) throws IndexOutOfBoundsException {
+			if (index < 0)
+				throw new IndexOutOfBoundsException(index + " of " + size());
+			int remaining = index;
+			for (Stripe stripe : theStripes) {
+				stripe.lock.readLock().lock();
+				try {
+					if (remaining < stripe.order.size())
+						return stripe.order.get(remaining).keyElement();
+					remaining -= stripe.order.size();
+				} finally {
+					stripe.lock.readLock().unlock();
+				}
+			}
+			throw new IndexOutOfBoundsException(index + " of " + size());
+		}
+
+		@Override
+		public CollectionElement<K> getTerminalElement(boolean first) {
+			for (int s = 0; s < theStripes.length; s++) {
+				Stripe stripe = theStripes[first ? s : theStripes.length - s - 1];
+				stripe.lock.readLock().lock();
+				try {
+					CollectionElement<K> terminal = stripe.terminal(first);
+					if (terminal != null)
+						return terminal;
+				} finally {
+					stripe.lock.readLock().unlock();
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public CollectionElement<K> getAdjacentElement(ElementId elementId, boolean next) {
+			EntryId id = idFor(elementId);
+			id.stripe.lock.readLock().lock();
+			try {
+				CollectionElement<Entry> el = id.stripe.order.getAdjacentElement(id.orderId, next);
+				if (el != null)
+					return el.get().keyElement();
+			} finally {
+				id.stripe.lock.readLock().unlock();
+			}
+			// Continue into the following (or preceding) stripes
+			for (int s = id.stripe.index + (next ? 1 : -1); s >= 0 && s < theStripes.length; s += next ? 1 : -1) {
+				Stripe stripe = theStripes[s];
+				stripe.lock.readLock().lock();
+				try {
+					CollectionElement<K> terminal = stripe.terminal(next);
+					if (terminal != null)
+						return terminal;
+				} finally {
+					stripe.lock.readLock().unlock();
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public int getElementsBefore(ElementId id) {
+			EntryId entryId = idFor(id);
+			int before = 0;
+			for (int s = 0; s < entryId.stripe.index; s++)
+				before += theStripes[s].size;
+			entryId.stripe.lock.readLock().lock();
+			try {
+				return before + entryId.stripe.order.getElementsBefore(entryId.orderId);
+			} finally {
+				entryId.stripe.lock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public int getElementsAfter(ElementId id) {
+			EntryId entryId = idFor(id);
+			int after = 0;
+			for (int s = entryId.stripe.index + 1; s < theStripes.length; s++)
+				after += theStripes[s].size;
+			entryId.stripe.lock.readLock().lock();
+			try {
+				return after + entryId.stripe.order.getElementsAfter(entryId.orderId);
+			} finally {
+				entryId.stripe.lock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public MutableCollectionElement<K> mutableElement(ElementId id) {
+			Entry entry = entryFor(id);
+			Entry.MutableEntry mutable = entry.new MutableEntry();
+			return new MutableCollectionElement<K>() {
+				@Override
+				public ElementId getElementId() {
+					return id;
+				}
+
+				@Override
+				public K get() {
+					return entry.theKey;
+				}
+
+				@Override
+				public BetterCollection<K> getCollection() {
+					return KeySet.this;
+				}
+
+				@Override
+				public String isEnabled() {
+					return StdMsg.UNSUPPORTED_OPERATION;
+				}
+
+				@Override
+				public String isAcceptable(K value) {
+					return StdMsg.UNSUPPORTED_OPERATION;
+				}
+
+				@Override
+				public void set(K value) throws UnsupportedOperationException, IllegalArgumentException {
+					throw new UnsupportedOperationException(StdMsg.UNSUPPORTED_OPERATION);
+				}
+
+				@Override
+				public String canRemove() {
+					return mutable.canRemove();
+				}
+
+				@Override
+				public void remove() throws UnsupportedOperationException {
+					mutable.remove();
+				}
+			};
+		}
+
+		@Override
+		public BetterList<CollectionElement<K>> getElementsBySource(ElementId sourceEl, BetterCollection<?> sourceCollection) {
+			if (sourceCollection == this)
+				return BetterList.of(getElement(sourceEl));
+			return BetterList.empty();
+		}
+
+		@Override
+		public BetterList<ElementId> getSourceElements(ElementId localElement, BetterCollection<?> sourceCollection) {
+			if (sourceCollection == this)
+				return BetterList.of(localElement);
+			return BetterList.empty();
+		}
+
+		@Override
+		public ElementId getEquivalentElement(ElementId equivalentEl) {
+			if (!(equivalentEl instanceof ConcurrentObservableMap.EntryId))
+				return null;
+			return ((EntryId) equivalentEl).getMap() == ConcurrentObservableMap.this ? equivalentEl : null;
+		}
+
+		@Override
+		public String canAdd(K value, ElementId after, ElementId before) {
+			if (theEntries.containsKey(value))
+				return StdMsg.ELEMENT_EXISTS;
+			return StdMsg.UNSUPPORTED_OPERATION;
+		}
+
+		@Override
+		public CollectionElement<K> addElement(K value, ElementId after, ElementId before, boolean first)
+			throws UnsupportedOperationException, IllegalArgumentException {
+			if (theEntries.containsKey(value))
+				return null;
+			throw new UnsupportedOperationException(StdMsg.UNSUPPORTED_OPERATION);
+		}
+
+		@Override
+		public CollectionElement<K> getOrAdd(K value, ElementId after, ElementId before, boolean first, Runnable preAdd, Runnable postAdd) {
+			return getElement(value, first); // A key cannot be added without a value
+		}
+
+		@Override
+		public String canMove(ElementId valueEl, ElementId after, ElementId before) {
+			return StdMsg.UNSUPPORTED_OPERATION;
+		}
+
+		@Override
+		public CollectionElement<K> move(ElementId valueEl, ElementId after, ElementId before, boolean first, Runnable afterRemove)
+			throws UnsupportedOperationException, IllegalArgumentException {
+			throw new UnsupportedOperationException(StdMsg.UNSUPPORTED_OPERATION);
+		}
+
+		@Override
+		public void setValue(Collection<ElementId> elements, K value) {
+			if (!elements.isEmpty())
+				throw new UnsupportedOperationException(StdMsg.UNSUPPORTED_OPERATION);
+		}
+
+		@Override
+		public void clear() {
+			ConcurrentObservableMap.this.clear();
+		}
+
+		@Override
+		public boolean isConsistent(ElementId element) {
+			return true;
+		}
+
+		@Override
+		public boolean checkConsistency() {
+			return false;
+		}
+
+		@Override
+		public <X> boolean repair(ElementId element, RepairListener<K, X> listener) {
+			return false;
+		}
+
+		@Override
+		public <X> boolean repair(RepairListener<K, X> listener) {
+			return false;
+		}
+
+		@Override
+		public Subscription onChange(Consumer<? super ObservableCollectionEvent<? extends K>> observer) {
+			return ConcurrentObservableMap.this.onChange(mapEvt -> {
+				if (mapEvt.getType() == CollectionChangeType.set)
+					return; // Value change only
+				ObservableCollectionEvent<K> keyEvt = new ObservableCollectionEvent<>(mapEvt.getElementId(), mapEvt.getIndex(),
+					mapEvt.getType(), mapEvt.getType() == CollectionChangeType.add ? null : mapEvt.getKey(), mapEvt.getKey(), mapEvt);
+				try (Transaction t = keyEvt.use()) {
+					observer.accept(keyEvt);
+				}
+			});
+		}
+
+		@Override
+		public int hashCode() {
+			return BetterSet.hashCode(this);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return BetterSet.equals(this, obj);
+		}
+
+		@Override
+		public String toString() {
+			return BetterSet.toString(this);
+		}
+	}
+}
@@ -1,10 +1,12 @@
 package org.observe.assoc.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
@@ -44,7 +46,6 @@ import org.qommons.Transaction;
 import org.qommons.collect.*;
 import org.qommons.collect.BetterSortedList.SortedSearchFilter;
 import org.qommons.collect.MutableCollectionElement.StdMsg;
-import org.qommons.tree.BetterTreeMap;
 import org.qommons.tree.BetterTreeSet;
 
 import com.google.common.reflect.TypeToken;
@@ -57,6 +58,8 @@ import com.google.common.reflect.TypeToken;
  * @param <V> The value type of the map
  */
 public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMultiMap<S, K, V> {
+	private static final ElementId[] NO_SOURCES = new ElementId[0];
+
 	private final ActiveValueStoredManager<S, ?, K> theKeyManager;
 	private final ActiveCollectionManager<S, ?, V> theValueManager;
 
@@ -66,7 +69,8 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 
 	private final ObservableSet<K> theKeySet;
 
-	private final BetterMap<ElementId, Set<KeyEntry>> theKeysBySourceElement;
+	/** Values are the {@link KeyEntry} for each source element, or a KeyEntry[] for the rare source element that maps to multiple keys */
+	private final Map<ElementId, Object> theKeysBySourceElement;
 
 	private long theStamp;
 	private int theValueSize;
@@ -92,7 +96,7 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 		theValueManager = valueFlow.manageActive();
 
 		theActiveEntries = BetterTreeSet.<KeyEntry> buildTreeSet(KeyEntry::compareBySource).build();
-		theKeysBySourceElement = BetterHashMap.build().build();
+		theKeysBySourceElement = new HashMap<>();
 
 		theMapListeners = ListenerList.build().withFastSize(false).build();
 		theKeySetListeners = ListenerList.build().withFastSize(false).build();
@@ -286,6 +290,43 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 		return entry.theValues.theValues.getTerminalElement(firstValue).get().theValueElement;
 	}
 
+	/**
+	 * @param key The key to find
+	 * @return The entry for the given key in this map's key set, or null if the key has no values in this map
+	 */
+	protected KeyEntry findActiveEntry(K key) {
+		Comparable<ObservableCollectionActiveManagers.DerivedCollectionElement<K>> finder = theKeyManager.getElementFinder(key);
+		return theActiveEntries.searchValue(entry -> finder.compareTo(entry.theKeyElement), SortedSearchFilter.OnlyMatch);
+	}
+
+	/**
+	 * Called when a key gains its first value and so is added to this map's key set
+	 *
+	 * @param entry The entry for the key
+	 * @param key The key
+	 */
+	protected void entryActivated(KeyEntry entry, K key) {
+	}
+
+	/**
+	 * Called when a key loses its last value and so is removed from this map's key set
+	 *
+	 * @param entry The entry for the key
+	 * @param key The key
+	 */
+	protected void entryDeactivated(KeyEntry entry, K key) {
+	}
+
+	/**
+	 * Called when the value of a key in this map's key set changes to a non-equivalent value
+	 *
+	 * @param entry The entry for the key
+	 * @param oldKey The previous value of the key
+	 * @param newKey The new value of the key
+	 */
+	protected void entryKeyChanged(KeyEntry entry, K oldKey, K newKey) {
+	}
+
 	// These are synchronized because even though the keys and values are from the same source,
 	// other sources of change or updates may have been introduced to the key or value flows.
 	// Without protection, one of these other sources could potentially fire during a source change,
@@ -301,6 +342,48 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 		return ref;
 	}
 
+	private void getSourceKeys(ElementId source, Collection<KeyEntry> keys) {
+		Object sourceKeys = theKeysBySourceElement.get(source);
+		if (sourceKeys instanceof DefaultActiveMultiMap.KeyEntry)
+			keys.add((KeyEntry) sourceKeys);
+		else if (sourceKeys != null) {
+			for (Object key : (Object[]) sourceKeys)
+				keys.add((KeyEntry) key);
+		}
+	}
+
+	private void addSourceKey(ElementId source, KeyEntry key) {
+		theKeysBySourceElement.merge(source, key, (old, k) -> {
+			if (old instanceof DefaultActiveMultiMap.KeyEntry)
+				return old == k ? old : new Object[] { old, k };
+			else if (ArrayUtils.contains((Object[]) old, k))
+				return old;
+			else
+				return ArrayUtils.add((Object[]) old, k);
+		});
+	}
+
+	private void removeSourceKey(ElementId source, KeyEntry key) {
+		theKeysBySourceElement.computeIfPresent(source, (__, old) -> {
+			if (old == key)
+				return null;
+			else if (old instanceof DefaultActiveMultiMap.KeyEntry)
+				return old;
+			Object[] oldKeys = (Object[]) old;
+			int index = 0;
+			while (index < oldKeys.length && oldKeys[index] != key)
+				index++;
+			if (index == oldKeys.length)
+				return old;
+			else if (oldKeys.length == 2)
+				return oldKeys[1 - index];
+			Object[] newKeys = new Object[oldKeys.length - 1];
+			System.arraycopy(oldKeys, 0, newKeys, 0, index);
+			System.arraycopy(oldKeys, index + 1, newKeys, index, newKeys.length - index);
+			return newKeys;
+		});
+	}
+
 	/** Implements ElementId for key and entry elements */
 	protected class KeyEntryId implements ElementId {
 		final KeyEntry entry;
@@ -347,8 +430,8 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 	 */
 	protected class KeyEntry implements MultiEntryHandle<K, V> {
 		final ObservableCollectionActiveManagers.DerivedCollectionElement<K> theKeyElement;
-		/** These entries are references into {@link DefaultActiveMultiMap#theKeysBySourceElement}, not the source elements themselves */
-		final Set<ElementId> theSources;
+		/** The source elements this key represents, registered in {@link DefaultActiveMultiMap#theKeysBySourceElement} */
+		ElementId[] theSources;
 		final ValueCollection theValues;
 		final KeyEntryId theExposedId;
 
@@ -360,7 +443,7 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 
 		KeyEntry(ObservableCollectionActiveManagers.DerivedCollectionElement<K> keyElement) {
 			theKeyElement = keyElement;
-			theSources = new HashSet<>();
+			theSources = NO_SOURCES;
 			theValues = new ValueCollection(this);
 			theExposedId = new KeyEntryId(this);
 			updateSources();
@@ -375,7 +458,7 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 		}
 
 		boolean isPresent() {
-			return !theSources.isEmpty();
+			return theSources.length > 0;
 		}
 
 		@Override
@@ -400,6 +483,7 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 			if (activeEntryId != null && activeEntryId.isPresent())
 				return false;
 			activeEntryId = theActiveEntries.addElement(this, false).getElementId();
+			entryActivated(this, key);
 			return true;
 		}
 
@@ -407,6 +491,7 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 			if (activeEntryId == null || !activeEntryId.isPresent())
 				return; // Already removed
 			theActiveEntries.mutableElement(activeEntryId).remove();
+			entryDeactivated(this, key);
 			if (!theKeySetListeners.isEmpty()) {
 				ObservableCollectionEvent<K> keyEvent = new ObservableCollectionEvent<>(theExposedId, keyIndex, CollectionChangeType.remove,
 					key, key, causes);
@@ -418,40 +503,41 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 		}
 
 		private void updateSources() {
-			SortedSet<ElementId> newSources = new TreeSet<>();
-			for (ElementId source : getKeyManager().getSourceElements(theKeyElement, getSourceCollection())) {
-				if (source.isPresent())
-					newSources.add(source);
+			BetterList<ElementId> sourceEls = getKeyManager().getSourceElements(theKeyElement, getSourceCollection());
+			ElementId[] newSources = new ElementId[sourceEls.size()];
+			int sourceCount = 0;
+			for (ElementId source : sourceEls) {
+				if (source.isPresent() && !ArrayUtils.contains(newSources, source))
+					newSources[sourceCount++] = source;
 			}
 			// Remove sources the key no longer represents
-			Iterator<ElementId> oldSourceIter = theSources.iterator();
-			while (oldSourceIter.hasNext()) {
-				ElementId source = oldSourceIter.next();
-				MapEntryHandle<ElementId, Set<KeyEntry>> sourceEntry = theKeysBySourceElement.getEntryById(source);
-				if (!newSources.remove(sourceEntry.getKey())) { // Remove so we don't add it next
-					// This key no longer represents the source
-					sourceEntry.getValue().remove(this);
-					if (sourceEntry.getValue().isEmpty())
-						theKeysBySourceElement.mutableEntry(source).remove();
-					oldSourceIter.remove();
-				}
+			for (ElementId source : theSources) {
+				if (!ArrayUtils.contains(newSources, source))
+					removeSourceKey(source, this);
 			}
 			// Register this key for new source elements
-			for (ElementId source : newSources) {
-				MapEntryHandle<ElementId, Set<KeyEntry>> sourceEntry = theKeysBySourceElement.getOrPutEntry(source, __ -> new HashSet<>(),
-					null, null, false, null, null);
-				sourceEntry.getValue().add(this);
-				theSources.add(sourceEntry.getElementId());
-			}
+			for (int i = 0; i < sourceCount; i++) {
+				if (!ArrayUtils.contains(theSources, newSources[i]))
+					addSourceKey(newSources[i], this);
+			}
+			if (sourceCount == 0)
+				theSources = NO_SOURCES;
+			else if (sourceCount < newSources.length)
+				theSources = Arrays.copyOf(newSources, sourceCount);
+			else
+				theSources = newSources;
 		}
 
 		void updated(K oldKey, K newKey, boolean internalOnly, Object... causes) {
 			synchronized (DefaultActiveMultiMap.this) {
-				if (!getActiveKeyFlow().equivalence().elementEquals(oldKey, newKey))
+				if (!getActiveKeyFlow().equivalence().elementEquals(oldKey, newKey)) {
 					keyStamp++;
+					if (activeEntryId != null && activeEntryId.isPresent())
+						entryKeyChanged(this, oldKey, newKey);
+				}
 				updateSources();
 
-				if (!internalOnly && !theSources.isEmpty() && activeEntryId != null && activeEntryId.isPresent()) {
+				if (!internalOnly && isPresent() && activeEntryId != null && activeEntryId.isPresent()) {
 					int keyIndex = theActiveEntries.getElementsBefore(activeEntryId);
 					if (!theMapListeners.isEmpty()) {
 						ObservableMultiMapEvent<K, V> mapEvent = new ObservableMultiMapEvent<>(theExposedId, null, keyIndex, -1, //
@@ -504,16 +590,10 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 		void removed(K key, Object... causes) {
 			synchronized (DefaultActiveMultiMap.this) {
 				theRemovedKey = key;
-				Iterator<ElementId> oldSourceIter = theSources.iterator();
-				while (oldSourceIter.hasNext()) {
-					ElementId source = oldSourceIter.next();
-					// This key no longer represents the source
-					MapEntryHandle<ElementId, Set<KeyEntry>> sourceEntry = theKeysBySourceElement.getEntryById(source);
-					sourceEntry.getValue().remove(this);
-					if (sourceEntry.getValue().isEmpty())
-						theKeysBySourceElement.mutableEntry(source).remove();
-					oldSourceIter.remove();
-				}
+				// This key no longer represents its sources
+				for (ElementId source : theSources)
+					removeSourceKey(source, this);
+				theSources = NO_SOURCES;
 			}
 		}
 
@@ -577,26 +657,29 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 	 */
 	protected class ValueRef implements Comparable<ValueRef> {
 		final ObservableCollectionActiveManagers.DerivedCollectionElement<V> theValueElement;
-		/** Values are the reference into {@link ValueCollection#theValues} for each key */
-		final BetterSortedMap<KeyEntry, ElementId> theKeyMembership;
+		/** The first key this value belongs to, or null if it belongs to no keys */
+		private KeyEntry theKey;
+		/** The reference into {@link ValueCollection#theValues} for {@link #theKey} */
+		private ElementId theKeyValueId;
+		/**
+		 * Further keys that this value belongs to, alternating with the reference into {@link ValueCollection#theValues} for each. Null
+		 * unless the value belongs to more than one key, which is uncommon.
+		 */
+		private Object[] theMoreKeys;
 
 		ValueRef(ObservableCollectionActiveManagers.DerivedCollectionElement<V> valueElement, Object... causes) {
 			theValueElement = valueElement;
-			theKeyMembership = BetterTreeMap.<KeyEntry> build(KeyEntry::compareByEntry).buildMap();
 
 			// Initialize and insert into all keys the new value belongs to
 			SortedSet<KeyEntry> newKeys = new TreeSet<>(KeyEntry::compareBySource);
 			for (ElementId source : getValueManager().getSourceElements(theValueElement, getSourceCollection())) {
-				if (source.isPresent()) {
-					Set<KeyEntry> sourceKeys = theKeysBySourceElement.get(source);
-					if (sourceKeys != null)
-						newKeys.addAll(sourceKeys);
-				}
+				if (source.isPresent())
+					getSourceKeys(source, newKeys);
 			}
 			if (!newKeys.isEmpty()) {
 				V value = theValueElement.get();
 				for (KeyEntry key : newKeys)
-					theKeyMembership.put(key, key.theValues.addValue(this, value, causes).getElementId());
+					addMembership(key, key.theValues.addValue(this, value, causes).getElementId());
 			}
 		}
 
@@ -610,25 +693,80 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 			return theValueElement.get();
 		}
 
+		/**
+		 * Adds a key membership to this value. Memberships are kept in key order, so that events for a value under multiple keys are fired
+		 * in the same order as the keys appear in the key set.
+		 *
+		 * @param key The key the value now belongs to
+		 * @param valueId The reference into the key's {@link ValueCollection#theValues} for this value
+		 */
+		private void addMembership(KeyEntry key, ElementId valueId) {
+			if (theKey == null) {
+				theKey = key;
+				theKeyValueId = valueId;
+				return;
+			} else if (key.theExposedId.compareTo(theKey.theExposedId) < 0) {
+				// Displace the first key into the overflow array
+				KeyEntry firstKey = theKey;
+				ElementId firstValueId = theKeyValueId;
+				theKey = key;
+				theKeyValueId = valueId;
+				key = firstKey;
+				valueId = firstValueId;
+			}
+			if (theMoreKeys == null) {
+				theMoreKeys = new Object[] { key, valueId };
+				return;
+			}
+			int index = 0;
+			while (index < theMoreKeys.length && ((KeyEntry) theMoreKeys[index]).theExposedId.compareTo(key.theExposedId) < 0)
+				index += 2;
+			Object[] moreKeys = new Object[theMoreKeys.length + 2];
+			System.arraycopy(theMoreKeys, 0, moreKeys, 0, index);
+			moreKeys[index] = key;
+			moreKeys[index + 1] = valueId;
+			System.arraycopy(theMoreKeys, index, moreKeys, index + 2, theMoreKeys.length - index);
+			theMoreKeys = moreKeys;
+		}
+
+		/**
+		 * Removes all key memberships from this value
+		 *
+		 * @return The keys this value belonged to, alternating with the reference into {@link ValueCollection#theValues} for each
+		 */
+		private Object[] clearMembership() {
+			Object[] membership;
+			if (theKey == null)
+				return null;
+			else if (theMoreKeys == null)
+				membership = new Object[] { theKey, theKeyValueId };
+			else
+				membership = ArrayUtils.addAll(new Object[] { theKey, theKeyValueId }, theMoreKeys);
+			theKey = null;
+			theKeyValueId = null;
+			theMoreKeys = null;
+			return membership;
+		}
+
 		void updated(V oldValue, V newValue, boolean internalOnly, Object... causes) {
 			synchronized (DefaultActiveMultiMap.this) {
 				// Check source elements and adjust against keys
 				Set<ElementId> sources = new HashSet<>();
-				SortedSet<KeyEntry> newKeys = new TreeSet<>();
+				SortedSet<KeyEntry> newKeys = new TreeSet<>(KeyEntry::compareBySource);
 				for (ElementId source : getValueManager().getSourceElements(theValueElement, getSourceCollection())) {
-					if (sources.add(source) && source.isPresent()) {
-						Set<KeyEntry> sourceKeys = theKeysBySourceElement.get(source);
-						if (sourceKeys != null)
-							newKeys.addAll(sourceKeys);
-					}
+					if (sources.add(source) && source.isPresent())
+						getSourceKeys(source, newKeys);
 				}
 				// Remove this value from keys it no longer belongs to
 				TypeToken<K> keyType = null;
 				TypeToken<V> valueType = null;
-				MapEntryHandle<KeyEntry, ElementId> oldKey = theKeyMembership.getTerminalEntry(true);
-				List<MapEntryHandle<KeyEntry, ElementId>> updated = null;
-				while (oldKey != null) {
-					if (oldKey.getKey().isPresent() && newKeys.remove(oldKey.getKey())) {
+				Object[] oldMembership = clearMembership();
+				List<KeyEntry> updated = null;
+				for (int i = 0; oldMembership != null && i < oldMembership.length; i += 2) {
+					KeyEntry oldKey = (KeyEntry) oldMembership[i];
+					ElementId oldId = (ElementId) oldMembership[i + 1];
+					if (oldKey.isPresent() && newKeys.remove(oldKey)) {
+						addMembership(oldKey, oldId);
 						if (!internalOnly) {
 							if (updated == null)
 								updated = new ArrayList<>();
@@ -636,37 +774,44 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 						}
 					} else {
 						// This key no longer represents the source
-						oldKey.getKey().theValues.valueRemoved(oldKey.getValue(), oldKey.getKey().get(), oldValue, //
+						oldKey.theValues.valueRemoved(oldId, oldKey.get(), oldValue, //
 							(keyType != null ? keyType : (keyType = getKeyType())),
 							(valueType != null ? valueType : (valueType = getValueType())), //
 							-1, causes);
-						theKeyMembership.mutableEntry(oldKey.getElementId()).remove();
 					}
-					oldKey = theKeyMembership.getAdjacentEntry(oldKey.getElementId(), true);
 				}
 				if (updated != null) {
 					// Fire updates for keys that this value still belongs to
-					for (MapEntryHandle<KeyEntry, ElementId> key : updated)
-						key.getKey().theValues.valueUpdated(key.getValue(), oldValue, newValue, causes);
+					for (KeyEntry key : updated)
+						key.theValues.valueUpdated(getMembership(key), oldValue, newValue, causes);
 				}
 				// Register this key for new source elements
 				for (KeyEntry key : newKeys)
-					theKeyMembership.put(key, key.theValues.addValue(this, newValue, causes).getElementId());
+					addMembership(key, key.theValues.addValue(this, newValue, causes).getElementId());
+			}
+		}
+
+		private ElementId getMembership(KeyEntry key) {
+			if (theKey == key)
+				return theKeyValueId;
+			for (int i = 0; theMoreKeys != null && i < theMoreKeys.length; i += 2) {
+				if (theMoreKeys[i] == key)
+					return (ElementId) theMoreKeys[i + 1];
 			}
+			return null;
 		}
 
 		void removed(V value, Object... causes) {
 			synchronized (DefaultActiveMultiMap.this) {
 				TypeToken<K> keyType = null;
 				TypeToken<V> valueType = null;
-				MapEntryHandle<KeyEntry, ElementId> oldKey = theKeyMembership.getTerminalEntry(true);
-				while (oldKey != null) {
-					oldKey.getKey().theValues.valueRemoved(oldKey.getValue(), oldKey.getKey().get(), value, //
+				Object[] oldMembership = clearMembership();
+				for (int i = 0; oldMembership != null && i < oldMembership.length; i += 2) {
+					KeyEntry oldKey = (KeyEntry) oldMembership[i];
+					oldKey.theValues.valueRemoved((ElementId) oldMembership[i + 1], oldKey.get(), value, //
 						(keyType != null ? keyType : (keyType = getKeyType())),
 						(valueType != null ? valueType : (valueType = getValueType())), //
 						-1, causes);
-					theKeyMembership.mutableEntry(oldKey.getElementId()).remove();
-					oldKey = theKeyMembership.getAdjacentEntry(oldKey.getElementId(), true);
 				}
 			}
 		}
@@ -1259,8 +1404,7 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 
 		@Override
 		public CollectionElement<K> getElement(K value, boolean first) {
-			Comparable<ObservableCollectionActiveManagers.DerivedCollectionElement<K>> finder = theKeyManager.getElementFinder(value);
-			return theActiveEntries.searchValue(entry -> finder.compareTo(entry.theKeyElement), SortedSearchFilter.OnlyMatch);
+			return findActiveEntry(value);
 		}
 
 		@Override
@@ -1511,11 +1655,8 @@ public class DefaultActiveMultiMap<S, K, V> extends AbstractDerivedObservableMul
 
 		KeyEntry getCurrentEntry(boolean throwIfEmpty) {
 			if (theCurrentEntry == null || theCurrentEntry.activeEntryId == null || !theCurrentEntry.activeEntryId.isPresent()
-				|| !getKeyManager().equivalence().elementEquals(theCurrentEntry.get(), theKey)) {
-				Comparable<ObservableCollectionActiveManagers.DerivedCollectionElement<K>> finder = getKeyManager().getElementFinder(theKey);
-				theCurrentEntry = theActiveEntries.searchValue(entry -> finder.compareTo(entry.theKeyElement),
-					SortedSearchFilter.OnlyMatch);
-			}
+				|| !getKeyManager().equivalence().elementEquals(theCurrentEntry.get(), theKey))
+				theCurrentEntry = findActiveEntry(theKey);
 			if (theCurrentEntry != null)
 				return theCurrentEntry;
 			if (throwIfEmpty)
@@ -255,4 +255,13 @@ public class DefaultMultiMapFlow<S, K0, V0, K, V> implements MultiMapFlow<K, V>
 		else
 			return new DefaultActiveMultiMap<>(theSource, theKeyFlow, theValueFlow, until, theAddKey);
 	}
+
+	@Override
+	public ObservableMultiMap<K, V> gatherHashed(Observable<?> until) {
+		if (theKeyFlow instanceof DistinctSortedDataFlow)
+			return gatherActive(until); // Sorted maps are indexed by their key order
+		if (until == null)
+			until = Observable.empty();
+		return new HashedActiveMultiMap<>(theSource, theKeyFlow, theValueFlow, until, theAddKey);
+	}
 }
@@ -11,6 +11,7 @@ import org.observe.collect.CollectionChangeType;
 import org.observe.collect.ObservableCollection;
 import org.qommons.Transaction;
 import org.qommons.collect.CollectionElement;
+import org.qommons.collect.ElementId;
 import org.qommons.collect.Graph;
 import org.qommons.collect.MutableCollectionElement.StdMsg;
 import org.qommons.collect.MutableGraph;
@@ -19,7 +20,13 @@ import com.google.common.reflect.TypeParameter;
 import com.google.common.reflect.TypeToken;
 
 /**
+ * <p>
  * Default mutable implementation of {@link ObservableGraph}
+ * </p>
+ * <p>
+ * Each node keeps its own collections of outward and inward edges. The inward collections are maintained from the outward ones using
+ * the element IDs of each edge in both collections, so adding or removing an edge costs the same regardless of the size of the graph.
+ * </p>
  *
  * @param <N> The type of values associated with nodes
  * @param <E> The type of values associated with edges
@@ -28,11 +35,75 @@ public class DefaultObservableGraph<N, E> implements ObservableGraph<N, E>, Muta
 	private class DefaultNode extends SimpleSettableValue<N> implements ObservableGraph.Node<N, E> {
 		private final ObservableCollection<ObservableGraph.Edge<N, E>> theOutgoingEdges;
 		private ObservableCollection<ObservableGraph.Edge<N, E>> theIncomingEdges;
+		private ObservableCollection<ObservableGraph.Edge<N, E>> theExposedIncomingEdges;
 		private ObservableCollection<ObservableGraph.Edge<N, E>> theBiEdges;
+		ElementId theNodeId;
 
 		DefaultNode(DefaultObservableGraph<N, ?> graph, N value, ObservableCollection<ObservableGraph.Edge<N, E>> outEdges) {
 			super(theNodeType, null, true, __ -> graph, null, value);
 			theOutgoingEdges = outEdges;
+			theOutgoingEdges.onChange(evt -> {
+				switch (evt.getType()) {
+				case add:
+					edgeAdded(evt.getNewValue(), evt.getElementId());
+					break;
+				case remove:
+					edgeRemoved(evt.getOldValue());
+					break;
+				case set:
+					if (evt.getOldValue() != evt.getNewValue()) {
+						edgeRemoved(evt.getOldValue());
+						edgeAdded(evt.getNewValue(), evt.getElementId());
+					} else if (evt.getNewValue() instanceof DefaultObservableGraph.DefaultEdge) {
+						DefaultEdge edge = (DefaultEdge) evt.getNewValue();
+						if (edge.theInwardId != null)
+							((DefaultNode) edge.getEnd()).theIncomingEdges.mutableElement(edge.theInwardId).set(edge);
+					}
+					break;
+				}
+			});
+		}
+
+		boolean isIn(DefaultObservableGraph<?, ?> graph) {
+			return DefaultObservableGraph.this == graph && theNodeId != null && theNodeId.isPresent();
+		}
+
+		private void edgeAdded(ObservableGraph.Edge<N, E> e, ElementId outwardId) {
+			if (!(e instanceof DefaultObservableGraph.DefaultEdge) || !(e.getEnd() instanceof DefaultObservableGraph.DefaultNode))
+				return;
+			DefaultEdge edge = (DefaultEdge) e;
+			edge.theOutwardId = outwardId;
+			edge.theInwardId = ((DefaultNode) edge.getEnd()).getIncoming().addElement(edge, false).getElementId();
+		}
+
+		private void edgeRemoved(ObservableGraph.Edge<N, E> e) {
+			if (!(e instanceof DefaultObservableGraph.DefaultEdge))
+				return;
+			DefaultEdge edge = (DefaultEdge) e;
+			edge.theOutwardId = null;
+			ElementId inwardId = edge.theInwardId;
+			if (inwardId != null) {
+				edge.theInwardId = null;
+				((DefaultNode) edge.getEnd()).theIncomingEdges.mutableElement(inwardId).remove();
+			}
+		}
+
+		ObservableCollection<ObservableGraph.Edge<N, E>> getIncoming() {
+			if (theIncomingEdges == null) {
+				theIncomingEdges = theEdgeCreator.apply(theEdgeHolderType);
+				theIncomingEdges.onChange(evt -> {
+					// Edges removed from the inward collection directly are removed from the graph
+					if (evt.getType() != CollectionChangeType.remove || !(evt.getOldValue() instanceof DefaultObservableGraph.DefaultEdge))
+						return;
+					DefaultEdge edge = (DefaultEdge) evt.getOldValue();
+					if (edge.theInwardId == null)
+						return; // Removed as a result of removal from the outward collection
+					edge.theInwardId = null;
+					if (edge.theOutwardId != null)
+						((DefaultNode) edge.getStart()).theOutgoingEdges.mutableElement(edge.theOutwardId).remove();
+				});
+			}
+			return theIncomingEdges;
 		}
 
 		@Override
@@ -42,9 +113,9 @@ public class DefaultObservableGraph<N, E> implements ObservableGraph<N, E>, Muta
 
 		@Override
 		public ObservableCollection<? extends ObservableGraph.Edge<N, E>> getInward() {
-			if (theIncomingEdges == null)
-				theIncomingEdges = theEdges.flow().filter(edge -> edge.getEnd() == this ? null : StdMsg.WRONG_GROUP).collect();
-			return theIncomingEdges;
+			if (theExposedIncomingEdges == null)
+				theExposedIncomingEdges = getIncoming().flow().filterMod(fm -> fm.noAdd(StdMsg.UNSUPPORTED_OPERATION)).collectPassive();
+			return theExposedIncomingEdges;
 		}
 
 		@Override
@@ -65,6 +136,8 @@ public class DefaultObservableGraph<N, E> implements ObservableGraph<N, E>, Muta
 		private final ObservableGraph.Node<N, E> theEnd;
 
 		private final boolean isDirected;
+		ElementId theOutwardId;
+		ElementId theInwardId;
 
 		DefaultEdge(DefaultObservableGraph<N, ?> graph, ObservableGraph.Node<N, E> start, ObservableGraph.Node<N, E> end, boolean directed,
 			E value) {
@@ -139,11 +212,27 @@ public class DefaultObservableGraph<N, E> implements ObservableGraph<N, E>, Muta
 		theEdges = theNodes.flow().flatMap(theEdgeHolderType, n -> n.getOutward().flow()).collect();
 		theExposedEdges = theEdges.flow().filterMod(fm -> fm.noAdd(StdMsg.UNSUPPORTED_OPERATION)).collectPassive();
 		theNodes.onChange(evt -> {
-			if (evt.getType() == CollectionChangeType.remove) {
+			switch (evt.getType()) {
+			case add:
+				if (evt.getNewValue() instanceof DefaultObservableGraph.DefaultNode)
+					((DefaultNode) evt.getNewValue()).theNodeId = evt.getElementId();
+				break;
+			case remove:
+				if (evt.getOldValue() instanceof DefaultObservableGraph.DefaultNode)
+					((DefaultNode) evt.getOldValue()).theNodeId = null;
 				try (Transaction t = theEdges.lock(true, evt)) {
 					evt.getOldValue().getOutward().clear();
 					evt.getOldValue().getInward().clear();
 				}
+				break;
+			case set:
+				if (evt.getOldValue() != evt.getNewValue()) {
+					if (evt.getOldValue() instanceof DefaultObservableGraph.DefaultNode)
+						((DefaultNode) evt.getOldValue()).theNodeId = null;
+					if (evt.getNewValue() instanceof DefaultObservableGraph.DefaultNode)
+						((DefaultNode) evt.getNewValue()).theNodeId = evt.getElementId();
+				}
+				break;
 			}
 		});
 	}
@@ -205,7 +294,7 @@ public class DefaultObservableGraph<N, E> implements ObservableGraph<N, E>, Muta
 	@Override
 	public ObservableGraph.Edge<N, E> addEdge(Graph.Node<N, E> start, Graph.Node<N, E> end, boolean directed, E value) {
 		try (Transaction nodeT = theNodes.lock(false, null)) {
-			if (!theNodes.contains(start) || !theNodes.contains(end))
+			if (!contains(start) || !contains(end))
 				throw new IllegalArgumentException("Edges may only be created between nodes already present in the graph");
 			if (start.equals(end))
 				throw new IllegalArgumentException("An edge may not start and end at the same node");
@@ -219,20 +308,47 @@ public class DefaultObservableGraph<N, E> implements ObservableGraph<N, E>, Muta
 		}
 	}
 
+	private boolean contains(Graph.Node<N, E> node) {
+		if (node instanceof DefaultObservableGraph.DefaultNode)
+			return ((DefaultNode) node).isIn(this);
+		return theNodes.contains(node);
+	}
+
 	@Override
 	public boolean removeNode(Graph.Node<N, E> node) {
+		if (node instanceof DefaultObservableGraph.DefaultNode) {
+			DefaultNode dn = (DefaultNode) node;
+			try (Transaction t = theNodes.lock(true, null)) {
+				if (!dn.isIn(this))
+					return false;
+				theNodes.mutableElement(dn.theNodeId).remove();
+				return true;
+			}
+		}
 		return theNodes.remove(node);
 	}
 
 	@Override
 	public boolean removeEdge(Graph.Edge<N, E> edge) {
+		if (edge instanceof DefaultObservableGraph.DefaultEdge && edge.getStart() instanceof DefaultObservableGraph.DefaultNode) {
+			DefaultEdge de = (DefaultEdge) edge;
+			DefaultNode start = (DefaultNode) edge.getStart();
+			if (!start.isIn(this))
+				return false;
+			try (Transaction t = start.theOutgoingEdges.lock(true, null)) {
+				if (de.theOutwardId == null || !de.theOutwardId.isPresent())
+					return false;
+				start.theOutgoingEdges.mutableElement(de.theOutwardId).remove();
+				return true;
+			}
+		}
 		CollectionElement<ObservableGraph.Node<N, E>> nodeEl = theNodes.getElement((ObservableGraph.Node<N, E>) edge.getStart(), true);
 		return nodeEl != null && nodeEl.get().getOutward().remove(edge);
 	}
 
 	@Override
 	public ObservableGraph.Node<N, E> replaceNode(Graph.Node<N, E> node, N newValue) {
-		if (!theNodes.contains(node))
+		if (!contains(node))
 			throw new IllegalArgumentException("Unrecognized node");
 		((DefaultNode) node).set(newValue, null);
 		return (ObservableGraph.Node<N, E>) node;
@@ -244,6 +360,14 @@ public class DefaultObservableGraph<N, E> implements ObservableGraph<N, E>, Muta
 	 * @param node The node to fire the event on
 	 */
 	public void reset(ObservableGraph.Node<N, E> node) {
+		if (node instanceof DefaultObservableGraph.DefaultNode) {
+			DefaultNode dn = (DefaultNode) node;
+			try (Transaction t = theNodes.lock(true, null)) {
+				if (dn.isIn(this))
+					theNodes.mutableElement(dn.theNodeId).set(node);
+			}
+			return;
+		}
 		CollectionElement<ObservableGraph.Node<N, E>> nodeEl = theNodes.getElement(node, true);
 		if (nodeEl == null)
 			return;
@@ -256,6 +380,15 @@ public class DefaultObservableGraph<N, E> implements ObservableGraph<N, E>, Muta
 	 * @param edge The edge to fire the event on
 	 */
 	public void reset(ObservableGraph.Edge<N, E> edge) {
+		if (edge instanceof DefaultObservableGraph.DefaultEdge && edge.getStart() instanceof DefaultObservableGraph.DefaultNode) {
+			DefaultEdge de = (DefaultEdge) edge;
+			DefaultNode start = (DefaultNode) edge.getStart();
+			try (Transaction t = start.theOutgoingEdges.lock(true, null)) {
+				if (start.isIn(this) && de.theOutwardId != null && de.theOutwardId.isPresent())
+					start.theOutgoingEdges.mutableElement(de.theOutwardId).set(edge);
+			}
+			return;
+		}
 		CollectionElement<ObservableGraph.Node<N, E>> nodeEl = theNodes.getElement(edge.getStart(), true);
 		if (nodeEl == null)
 			return;
@@ -0,0 +1,81 @@
+package org.observe.assoc.impl;
+
+import org.observe.Observable;
+import org.observe.assoc.ObservableMultiMap;
+import org.observe.collect.ObservableCollection;
+import org.observe.collect.ObservableCollection.CollectionDataFlow;
+import org.observe.collect.ObservableCollection.DistinctDataFlow;
+import org.qommons.collect.BetterMap;
+
+/**
+ * <p>
+ * An actively-gathered implementation of {@link ObservableMultiMap} whose keys are additionally indexed in a hash table by the key flow's
+ * {@link DistinctDataFlow#equivalence() equivalence}.
+ * </p>
+ * <p>
+ * Lookups by key value ({@link #get(Object)}, {@link #watch(Object)}, {@link #getEntry(Object)} and the key set's
+ * {@link org.qommons.collect.BetterCollection#getElement(Object, boolean) getElement}) are constant-time, instead of a search through the
+ * key set by source order. This is most useful for maps with a great many keys which are accessed by value frequently, e.g. a map with
+ * hundreds of thousands of keys used as an index.
+ * </p>
+ * <p>
+ * This map trades memory for lookup speed. It holds everything {@link DefaultActiveMultiMap} does, plus an entry in the hash index for
+ * each key, so it always uses more memory than {@link DefaultActiveMultiMap} for the same data.
+ * </p>
+ * <p>
+ * The index is only used for lookups. The key set is still iterated in the order of the source collection, exactly as in
+ * {@link DefaultActiveMultiMap}, and events and all other behavior are identical as well.
+ * </p>
+ *
+ * @param <S> The type of the source collection whose data the map is gathered from
+ * @param <K> The key type of the map
+ * @param <V> The value type of the map
+ * @see ObservableMultiMap.MultiMapFlow#gatherHashed(Observable)
+ */
+public class HashedActiveMultiMap<S, K, V> extends DefaultActiveMultiMap<S, K, V> {
+	private BetterMap<K, KeyEntry> theKeyIndex;
+
+	/**
+	 * @param source The source collection whose data the map is to be gathered from
+	 * @param keyFlow The data flow for the map's key set
+	 * @param valueFlow The data flow for all the map's values
+	 * @param until The observable that, when fired, will release all of this map's resources
+	 * @param addKey Stores the key for which the next value is to be added
+	 */
+	public HashedActiveMultiMap(ObservableCollection<S> source, DistinctDataFlow<S, ?, K> keyFlow, CollectionDataFlow<S, ?, V> valueFlow,
+		Observable<?> until, AddKeyHolder<K> addKey) {
+		super(source, keyFlow, valueFlow, until, addKey);
+	}
+
+	private BetterMap<K, KeyEntry> getKeyIndex() {
+		// This is called from the super constructor as the initial keys are activated, so it can't be initialized in this constructor
+		if (theKeyIndex == null)
+			theKeyIndex = getActiveKeyFlow().equivalence().createMap();
+		return theKeyIndex;
+	}
+
+	@Override
+	protected synchronized KeyEntry findActiveEntry(K key) {
+		return getKeyIndex().get(key);
+	}
+
+	@Override
+	protected synchronized void entryActivated(KeyEntry entry, K key) {
+		getKeyIndex().put(key, entry);
+	}
+
+	@Override
+	protected synchronized void entryDeactivated(KeyEntry entry, K key) {
+		BetterMap<K, KeyEntry> index = getKeyIndex();
+		if (index.get(key) == entry)
+			index.remove(key);
+	}
+
+	@Override
+	protected synchronized void entryKeyChanged(KeyEntry entry, K oldKey, K newKey) {
+		BetterMap<K, KeyEntry> index = getKeyIndex();
+		if (index.get(oldKey) == entry)
+			index.remove(oldKey);
+		index.put(newKey, entry);
+	}
+}
@@ -0,0 +1,379 @@
+package org.observe.assoc.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+import org.observe.Observable;
+import org.observe.ObservableValue;
+import org.observe.SettableValue;
+import org.observe.assoc.ObservableGraph;
+import org.observe.assoc.ObservableGraph.Edge;
+import org.observe.assoc.ObservableGraph.Node;
+import org.observe.collect.ObservableCollection;
+import org.qommons.Transaction;
+import org.qommons.collect.ElementId;
+
+import com.google.common.reflect.TypeToken;
+
+/**
+ * <p>
+ * Implements {@link ObservableGraph#shortestPaths(Node, ToDoubleFunction, Observable)} and
+ * {@link ObservableGraph#reachableFrom(Node, Observable)}.
+ * </p>
+ * <p>
+ * The shortest-path tree from the source is computed with Dijkstra's algorithm, then maintained dynamically:
+ * <ul>
+ * <li>When an edge is added that shortens the path to its end node, the search resumes from that node, visiting only nodes whose distance
+ * improves.</li>
+ * <li>When an edge in the shortest-path tree is removed, only the subtree beneath it is affected. Each affected node is re-attached through
+ * its best edge from an unaffected node and the search resumes from those, so the work is proportional to the size of the affected
+ * subtree and its edges. Affected nodes that cannot be re-attached become unreachable.</li>
+ * <li>Edges not in the tree can be removed without any work.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Edge weights must be non-negative. Edges with a negative or NaN weight are not traversed.
+ * </p>
+ *
+ * @param <N> The type of node values in the graph
+ * @param <E> The type of edge values in the graph
+ */
+public class IncrementalShortestPaths<N, E> extends AbstractIncrementalGraphAlgorithm<N, E> implements ObservableGraph.ShortestPaths<N, E> {
+	private static class PathState<N, E> {
+		final Node<N, E> node;
+		double distance = Double.POSITIVE_INFINITY;
+		Edge<N, E> parentEdge;
+		PathState<N, E> parent;
+		Set<PathState<N, E>> children;
+		ElementId reachedId;
+		SettableValue<Double> distanceValue;
+		boolean affected;
+
+		PathState(Node<N, E> node) {
+			this.node = node;
+		}
+
+		boolean isReached() {
+			return distance < Double.POSITIVE_INFINITY;
+		}
+	}
+
+	private static class QueueEntry<N, E> implements Comparable<QueueEntry<N, E>> {
+		final PathState<N, E> state;
+		final double distance;
+
+		QueueEntry(PathState<N, E> state, double distance) {
+			this.state = state;
+			this.distance = distance;
+		}
+
+		@Override
+		public int compareTo(QueueEntry<N, E> o) {
+			return Double.compare(distance, o.distance);
+		}
+	}
+
+	private final Node<N, E> theSource;
+	private final ToDoubleFunction<? super Edge<N, E>> theWeight;
+	private final Map<Node<N, E>, PathState<N, E>> theStates;
+	private final ObservableCollection<Node<N, E>> theReached;
+	private final ObservableCollection<Node<N, E>> theExposedReached;
+	private final Set<PathState<N, E>> theDirty;
+	private boolean isSourcePresent;
+
+	/**
+	 * @param graph The graph to find paths in
+	 * @param source The node to find paths from
+	 * @param weight The weight (length) of each edge. Must be non-negative.
+	 * @param until An observable that stops the maintenance of the paths when it fires
+	 */
+	public IncrementalShortestPaths(ObservableGraph<N, E> graph, Node<N, E> source, ToDoubleFunction<? super Edge<N, E>> weight,
+		Observable<?> until) {
+		super(graph);
+		theSource = source;
+		theWeight = weight;
+		theStates = new IdentityHashMap<>();
+		theReached = ObservableCollection.build((TypeToken<Node<N, E>>) graph.getNodes().getType()).build();
+		theExposedReached = theReached.flow().unmodifiable(false).collectPassive();
+		theDirty = new LinkedHashSet<>();
+		start(until);
+	}
+
+	@Override
+	public Node<N, E> getSource() {
+		return theSource;
+	}
+
+	@Override
+	public ObservableCollection<Node<N, E>> getReached() {
+		return theExposedReached;
+	}
+
+	@Override
+	public double getDistance(Node<N, E> node) {
+		try (Transaction t = getGraph().lock(false, null)) {
+			PathState<N, E> state = theStates.get(node);
+			return state == null ? Double.POSITIVE_INFINITY : state.distance;
+		}
+	}
+
+	@Override
+	public ObservableValue<Double> observeDistance(Node<N, E> node) {
+		try (Transaction t = getGraph().lock(false, null)) {
+			PathState<N, E> state = getState(node);
+			if (state == null)
+				return ObservableValue.of(Double.class, Double.POSITIVE_INFINITY);
+			if (state.distanceValue == null)
+				state.distanceValue = SettableValue.build(Double.class).withValue(state.distance).build();
+			return state.distanceValue.unsettable();
+		}
+	}
+
+	@Override
+	public List<Edge<N, E>> getPath(Node<N, E> node) {
+		try (Transaction t = getGraph().lock(false, null)) {
+			PathState<N, E> state = theStates.get(node);
+			if (state == null || !state.isReached())
+				return null;
+			ArrayList<Edge<N, E>> path = new ArrayList<>();
+			for (; state.parentEdge != null; state = state.parent)
+				path.add(state.parentEdge);
+			Collections.reverse(path);
+			return path;
+		}
+	}
+
+	@Override
+	protected void initialize() {
+		isSourcePresent = getAdjacency(theSource) != null;
+		if (!isSourcePresent)
+			return;
+		PathState<N, E> source = getState(theSource);
+		source.distance = 0;
+		theDirty.add(source);
+		search(Collections.singletonList(source));
+		publish();
+	}
+
+	@Override
+	protected void onNodeAdded(Node<N, E> node) {
+		if (node == theSource) // Source re-added to the graph
+			initialize();
+	}
+
+	@Override
+	protected void onNodeRemoved(Node<N, E> node) {
+		PathState<N, E> state = theStates.remove(node);
+		if (node == theSource) {
+			isSourcePresent = false;
+			for (PathState<N, E> s : theStates.values()) {
+				if (s.isReached()) {
+					s.distance = Double.POSITIVE_INFINITY;
+					s.parent = null;
+					s.parentEdge = null;
+					s.children = null;
+					theDirty.add(s);
+				}
+			}
+		}
+		if (state != null) {
+			state.distance = Double.POSITIVE_INFINITY;
+			theDirty.add(state);
+		}
+		publish();
+	}
+
+	@Override
+	protected void onEdgeAdded(Edge<N, E> edge) {
+		if (!isSourcePresent)
+			return;
+		double weight = weight(edge);
+		if (weight < 0)
+			return;
+		List<PathState<N, E>> improved = new ArrayList<>(2);
+		relax(edge, edge.getStart(), edge.getEnd(), weight, improved);
+		if (!edge.isDirected())
+			relax(edge, edge.getEnd(), edge.getStart(), weight, improved);
+		if (!improved.isEmpty()) {
+			search(improved);
+			publish();
+		}
+	}
+
+	@Override
+	protected void onEdgeRemoved(Edge<N, E> edge) {
+		if (!isSourcePresent)
+			return;
+		PathState<N, E> end = theStates.get(edge.getEnd());
+		if (end != null && end.parentEdge == edge)
+			repair(end);
+		else if (!edge.isDirected()) {
+			PathState<N, E> start = theStates.get(edge.getStart());
+			if (start != null && start.parentEdge == edge)
+				repair(start);
+		}
+		publish();
+	}
+
+	private PathState<N, E> getState(Node<N, E> node) {
+		PathState<N, E> state = theStates.get(node);
+		if (state == null && getAdjacency(node) != null) {
+			state = new PathState<>(node);
+			theStates.put(node, state);
+		}
+		return state;
+	}
+
+	private double weight(Edge<N, E> edge) {
+		double weight = theWeight.applyAsDouble(edge);
+		return Double.isNaN(weight) ? -1 : weight;
+	}
+
+	private void relax(Edge<N, E> edge, Node<N, E> from, Node<N, E> to, double weight, List<PathState<N, E>> improved) {
+		PathState<N, E> fromState = theStates.get(from);
+		if (fromState == null || !fromState.isReached())
+			return;
+		PathState<N, E> toState = getState(to);
+		double distance = fromState.distance + weight;
+		if (distance < toState.distance) {
+			setParent(toState, fromState, edge, distance);
+			improved.add(toState);
+		}
+	}
+
+	private void setParent(PathState<N, E> state, PathState<N, E> parent, Edge<N, E> edge, double distance) {
+		if (state.parent != null && state.parent.children != null)
+			state.parent.children.remove(state);
+		state.parent = parent;
+		state.parentEdge = edge;
+		state.distance = distance;
+		if (parent != null) {
+			if (parent.children == null)
+				parent.children = Collections.newSetFromMap(new IdentityHashMap<>());
+			parent.children.add(state);
+		}
+		theDirty.add(state);
+	}
+
+	/**
+	 * Runs Dijkstra's algorithm from the given nodes, whose distances have been set
+	 *
+	 * @param seeds The nodes to search from
+	 */
+	private void search(Iterable<PathState<N, E>> seeds) {
+		PriorityQueue<QueueEntry<N, E>> queue = new PriorityQueue<>();
+		for (PathState<N, E> seed : seeds)
+			queue.add(new QueueEntry<>(seed, seed.distance));
+		while (!queue.isEmpty()) {
+			QueueEntry<N, E> entry = queue.poll();
+			PathState<N, E> state = entry.state;
+			if (entry.distance > state.distance)
+				continue; // Stale entry
+			Adjacency<N, E> adj = getAdjacency(state.node);
+			if (adj == null)
+				continue;
+			for (Edge<N, E> edge : adj.outward) {
+				double weight = weight(edge);
+				if (weight < 0)
+					continue;
+				PathState<N, E> next = getState(getOther(edge, state.node));
+				if (next == null)
+					continue;
+				double distance = state.distance + weight;
+				if (distance < next.distance) {
+					setParent(next, state, edge, distance);
+					queue.add(new QueueEntry<>(next, distance));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Re-computes the distances of the subtree of the shortest-path tree under the given node, whose parent edge has been removed or has
+	 * become longer
+	 *
+	 * @param root The root of the affected subtree
+	 */
+	private void repair(PathState<N, E> root) {
+		// Collect and detach the affected subtree
+		List<PathState<N, E>> affected = new ArrayList<>();
+		ArrayDeque<PathState<N, E>> stack = new ArrayDeque<>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			PathState<N, E> state = stack.pop();
+			affected.add(state);
+			state.affected = true;
+			if (state.children != null) {
+				for (PathState<N, E> child : state.children)
+					stack.push(child);
+			}
+		}
+		for (PathState<N, E> state : affected) {
+			if (state.parent != null && !state.parent.affected && state.parent.children != null)
+				state.parent.children.remove(state);
+			state.parent = null;
+			state.parentEdge = null;
+			state.children = null;
+			state.distance = Double.POSITIVE_INFINITY;
+			theDirty.add(state);
+		}
+		// Re-attach each affected node through its best edge from an unaffected node
+		List<PathState<N, E>> seeds = new ArrayList<>();
+		for (PathState<N, E> state : affected) {
+			Adjacency<N, E> adj = getAdjacency(state.node);
+			if (adj == null)
+				continue;
+			PathState<N, E> bestParent = null;
+			Edge<N, E> bestEdge = null;
+			double best = Double.POSITIVE_INFINITY;
+			for (Edge<N, E> edge : adj.inward) {
+				PathState<N, E> from = theStates.get(getOther(edge, state.node));
+				if (from == null || from.affected || !from.isReached())
+					continue;
+				double weight = weight(edge);
+				if (weight >= 0 && from.distance + weight < best) {
+					best = from.distance + weight;
+					bestParent = from;
+					bestEdge = edge;
+				}
+			}
+			if (bestParent != null) {
+				setParent(state, bestParent, bestEdge, best);
+				seeds.add(state);
+			}
+		}
+		for (PathState<N, E> state : affected)
+			state.affected = false;
+		search(seeds);
+	}
+
+	/** Publishes changes in reachability and distance to the observable results */
+	private void publish() {
+		if (theDirty.isEmpty())
+			return;
+		try (Transaction t = theReached.lock(true, null)) {
+			for (PathState<N, E> state : theDirty) {
+				boolean present = theStates.get(state.node) == state;
+				if (present && state.isReached()) {
+					if (state.reachedId == null)
+						state.reachedId = theReached.addElement(state.node, false).getElementId();
+				} else if (state.reachedId != null) {
+					theReached.mutableElement(state.reachedId).remove();
+					state.reachedId = null;
+				}
+				if (state.distanceValue != null && state.distanceValue.get().doubleValue() != state.distance)
+					state.distanceValue.set(state.distance, null);
+			}
+		} finally {
+			theDirty.clear();
+		}
+	}
+}
@@ -0,0 +1,321 @@
+package org.observe.assoc.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.observe.Observable;
+import org.observe.ObservableValue;
+import org.observe.assoc.ObservableGraph;
+import org.observe.assoc.ObservableGraph.Edge;
+import org.observe.assoc.ObservableGraph.Node;
+import org.observe.collect.ObservableCollection;
+import org.qommons.Transaction;
+import org.qommons.collect.ElementId;
+
+import com.google.common.reflect.TypeToken;
+
+/**
+ * <p>
+ * Implements {@link ObservableGraph#topologicalOrder(Observable)}.
+ * </p>
+ * <p>
+ * The order is maintained with the dynamic topological sort algorithm of Pearce and Kelly. When a directed edge is added whose end node
+ * is ordered before its start node, only the nodes between the two in the current order that are reachable forward from the end or
+ * backward from the start are visited. These are re-ordered among the positions they already occupy, so the order changes only in the
+ * affected region. Removing an edge never invalidates the order.
+ * </p>
+ * <p>
+ * If the forward search from the end of a new edge reaches its start, the edge would close a cycle. Such edges are excluded from the order
+ * and are reported as {@link #getCycleEdges() cycle edges}. When an ordered edge is removed, only the cycle edges whose cycle may have
+ * passed through it are re-evaluated. Since ordered edges follow the order, a path through the removed edge can only connect a cycle
+ * edge's end to its start if the end is ordered no later than the removed edge's start and the start no earlier than the removed edge's
+ * end.
+ * </p>
+ * <p>
+ * Undirected edges do not participate in the order.
+ * </p>
+ *
+ * @param <N> The type of node values in the graph
+ * @param <E> The type of edge values in the graph
+ */
+public class IncrementalTopologicalOrder<N, E> extends AbstractIncrementalGraphAlgorithm<N, E>
+implements ObservableGraph.TopologicalOrder<N, E> {
+	private static class OrderState<N, E> {
+		final Node<N, E> node;
+		ElementId orderId;
+		boolean visited;
+
+		OrderState(Node<N, E> node) {
+			this.node = node;
+		}
+	}
+
+	private final Map<Node<N, E>, OrderState<N, E>> theStates;
+	private final ObservableCollection<Node<N, E>> theOrder;
+	private final ObservableCollection<Node<N, E>> theExposedOrder;
+	private final Set<Edge<N, E>> theCycleEdgeSet;
+	private final ObservableCollection<Edge<N, E>> theCycleEdges;
+	private final ObservableCollection<Edge<N, E>> theExposedCycleEdges;
+	private final ObservableValue<Boolean> hasCycle;
+
+	/**
+	 * @param graph The graph to order
+	 * @param until An observable that stops the maintenance of the order when it fires
+	 */
+	public IncrementalTopologicalOrder(ObservableGraph<N, E> graph, Observable<?> until) {
+		super(graph);
+		theStates = new IdentityHashMap<>();
+		theOrder = ObservableCollection.build((TypeToken<Node<N, E>>) graph.getNodes().getType()).build();
+		theExposedOrder = theOrder.flow().unmodifiable(false).collectPassive();
+		theCycleEdgeSet = Collections.newSetFromMap(new IdentityHashMap<>());
+		theCycleEdges = ObservableCollection.build((TypeToken<Edge<N, E>>) graph.getEdges().getType()).build();
+		theExposedCycleEdges = theCycleEdges.flow().unmodifiable(false).collectPassive();
+		hasCycle = theCycleEdges.observeSize().map(Boolean.class, sz -> sz > 0);
+		start(until);
+	}
+
+	@Override
+	public ObservableCollection<Node<N, E>> getOrder() {
+		return theExposedOrder;
+	}
+
+	@Override
+	public ObservableCollection<Edge<N, E>> getCycleEdges() {
+		return theExposedCycleEdges;
+	}
+
+	@Override
+	public ObservableValue<Boolean> hasCycle() {
+		return hasCycle;
+	}
+
+	@Override
+	protected void initialize() {
+		// Kahn's algorithm for the initial order
+		Map<Node<N, E>, int[]> inDegrees = new IdentityHashMap<>();
+		ArrayDeque<Node<N, E>> ready = new ArrayDeque<>();
+		for (Node<N, E> node : getGraph().getNodes()) {
+			int inDegree = 0;
+			for (Edge<N, E> edge : getAdjacency(node).inward) {
+				if (edge.isDirected())
+					inDegree++;
+			}
+			if (inDegree == 0)
+				ready.add(node);
+			else
+				inDegrees.put(node, new int[] { inDegree });
+		}
+		try (Transaction t = theOrder.lock(true, null)) {
+			while (!ready.isEmpty()) {
+				Node<N, E> node = ready.poll();
+				append(node);
+				for (Edge<N, E> edge : getAdjacency(node).outward) {
+					if (!edge.isDirected())
+						continue;
+					int[] inDegree = inDegrees.get(edge.getEnd());
+					if (inDegree != null && --inDegree[0] == 0) {
+						inDegrees.remove(edge.getEnd());
+						ready.add(edge.getEnd());
+					}
+				}
+			}
+		}
+		if (!inDegrees.isEmpty()) {
+			// The remaining nodes are on or downstream of cycles. Order them ignoring edges between them, then add the edges back.
+			List<Edge<N, E>> deferred = new ArrayList<>();
+			try (Transaction t = theOrder.lock(true, null)) {
+				for (Node<N, E> node : getGraph().getNodes()) {
+					if (!inDegrees.containsKey(node))
+						continue;
+					append(node);
+					for (Edge<N, E> edge : getAdjacency(node).inward) {
+						if (edge.isDirected() && inDegrees.containsKey(edge.getStart()))
+							deferred.add(edge);
+					}
+				}
+			}
+			// Exclude the deferred edges from the searches until each is inserted
+			theCycleEdgeSet.addAll(deferred);
+			for (Edge<N, E> edge : deferred) {
+				if (insert(edge))
+					theCycleEdgeSet.remove(edge);
+				else
+					theCycleEdges.add(edge);
+			}
+		}
+	}
+
+	@Override
+	protected void onNodeAdded(Node<N, E> node) {
+		append(node);
+	}
+
+	@Override
+	protected void onNodeRemoved(Node<N, E> node) {
+		OrderState<N, E> state = theStates.remove(node);
+		if (state != null && state.orderId != null && state.orderId.isPresent())
+			theOrder.mutableElement(state.orderId).remove();
+	}
+
+	@Override
+	protected void onEdgeAdded(Edge<N, E> edge) {
+		if (edge.isDirected() && !insert(edge))
+			addCycleEdge(edge);
+	}
+
+	@Override
+	protected void onEdgeRemoved(Edge<N, E> edge) {
+		if (theCycleEdgeSet.remove(edge)) {
+			ElementId cycleId = theCycleEdges.getElement(edge, true).getElementId();
+			theCycleEdges.mutableElement(cycleId).remove();
+			return; // An unordered edge is on no path that makes another edge a cycle edge
+		} else if (!edge.isDirected() || theCycleEdgeSet.isEmpty())
+			return;
+		// Removing an edge may have broken a cycle that passed through it
+		OrderState<N, E> removedStart = theStates.get(edge.getStart());
+		OrderState<N, E> removedEnd = theStates.get(edge.getEnd());
+		List<Edge<N, E>> cycleEdges = new ArrayList<>();
+		for (Edge<N, E> cycleEdge : theCycleEdgeSet) {
+			if (mayPassThrough(cycleEdge, removedStart, removedEnd))
+				cycleEdges.add(cycleEdge);
+		}
+		for (Edge<N, E> cycleEdge : cycleEdges) {
+			if (insert(cycleEdge)) {
+				theCycleEdgeSet.remove(cycleEdge);
+				theCycleEdges.remove(cycleEdge);
+			}
+		}
+	}
+
+	/**
+	 * @param cycleEdge The cycle edge to test
+	 * @param removedStart The state of the start node of an ordered edge that was removed
+	 * @param removedEnd The state of the end node of the removed edge
+	 * @return Whether the path from the cycle edge's end to its start may have passed through the removed edge
+	 */
+	private boolean mayPassThrough(Edge<N, E> cycleEdge, OrderState<N, E> removedStart, OrderState<N, E> removedEnd) {
+		if (removedStart == null || removedEnd == null)
+			return true; // Can't tell
+		OrderState<N, E> start = theStates.get(cycleEdge.getStart());
+		OrderState<N, E> end = theStates.get(cycleEdge.getEnd());
+		if (start == null || end == null)
+			return true;
+		return end.orderId.compareTo(removedStart.orderId) <= 0 && start.orderId.compareTo(removedEnd.orderId) >= 0;
+	}
+
+	private void addCycleEdge(Edge<N, E> edge) {
+		if (theCycleEdgeSet.add(edge))
+			theCycleEdges.add(edge);
+	}
+
+	private void append(Node<N, E> node) {
+		OrderState<N, E> state = theStates.computeIfAbsent(node, OrderState::new);
+		if (state.orderId == null || !state.orderId.isPresent())
+			state.orderId = theOrder.addElement(node, false).getElementId();
+	}
+
+	private boolean isOrdered(Edge<N, E> edge) {
+		return edge.isDirected() && !theCycleEdgeSet.contains(edge);
+	}
+
+	/**
+	 * Adds a directed edge to the order, re-ordering the affected region if needed
+	 *
+	 * @param edge The edge to insert
+	 * @return Whether the edge could be ordered, false if it would create a cycle
+	 */
+	private boolean insert(Edge<N, E> edge) {
+		OrderState<N, E> start = theStates.get(edge.getStart());
+		OrderState<N, E> end = theStates.get(edge.getEnd());
+		if (start == null || end == null)
+			return true;
+		else if (start == end)
+			return false;
+		else if (start.orderId.compareTo(end.orderId) < 0)
+			return true; // Already consistent
+		// Forward search from the end, limited to nodes ordered before the start
+		List<OrderState<N, E>> forward = new ArrayList<>();
+		boolean cycle = search(end, start.orderId, true, forward, start);
+		if (cycle) {
+			clearVisited(forward);
+			return false;
+		}
+		// Backward search from the start, limited to nodes ordered after the end
+		List<OrderState<N, E>> backward = new ArrayList<>();
+		search(start, end.orderId, false, backward, null);
+		clearVisited(forward);
+		clearVisited(backward);
+
+		// Re-order the affected nodes among the positions they occupy: the backward set, then the forward set
+		Collections.sort(forward, (s1, s2) -> s1.orderId.compareTo(s2.orderId));
+		Collections.sort(backward, (s1, s2) -> s1.orderId.compareTo(s2.orderId));
+		List<ElementId> positions = new ArrayList<>(forward.size() + backward.size());
+		for (OrderState<N, E> state : backward)
+			positions.add(state.orderId);
+		for (OrderState<N, E> state : forward)
+			positions.add(state.orderId);
+		Collections.sort(positions);
+		try (Transaction t = theOrder.lock(true, null)) {
+			int p = 0;
+			for (OrderState<N, E> state : backward)
+				place(state, positions.get(p++));
+			for (OrderState<N, E> state : forward)
+				place(state, positions.get(p++));
+		}
+		return true;
+	}
+
+	private void place(OrderState<N, E> state, ElementId position) {
+		state.orderId = position;
+		if (theOrder.getElement(position).get() != state.node)
+			theOrder.mutableElement(position).set(state.node);
+	}
+
+	/**
+	 * Depth-first search through ordered, directed edges
+	 *
+	 * @param from The node to search from
+	 * @param bound The position bounding the search: only nodes before it (forward) or after it (backward) are visited
+	 * @param forward Whether to search forward along edges or backward against them
+	 * @param visited The list to add visited nodes to
+	 * @param target The node whose discovery would signal a cycle, or null
+	 * @return Whether the target was discovered
+	 */
+	private boolean search(OrderState<N, E> from, ElementId bound, boolean forward, List<OrderState<N, E>> visited,
+		OrderState<N, E> target) {
+		ArrayDeque<OrderState<N, E>> stack = new ArrayDeque<>();
+		from.visited = true;
+		visited.add(from);
+		stack.push(from);
+		while (!stack.isEmpty()) {
+			OrderState<N, E> state = stack.pop();
+			Adjacency<N, E> adj = getAdjacency(state.node);
+			for (Edge<N, E> edge : (forward ? adj.outward : adj.inward)) {
+				if (!isOrdered(edge))
+					continue;
+				OrderState<N, E> next = theStates.get(forward ? edge.getEnd() : edge.getStart());
+				if (next == null || next.visited)
+					continue;
+				if (next == target)
+					return true;
+				int comp = next.orderId.compareTo(bound);
+				if (forward ? comp >= 0 : comp <= 0)
+					continue;
+				next.visited = true;
+				visited.add(next);
+				stack.push(next);
+			}
+		}
+		return false;
+	}
+
+	private static <N, E> void clearVisited(List<OrderState<N, E>> states) {
+		for (OrderState<N, E> state : states)
+			state.visited = false;
+	}
+}
@@ -1,6 +1,8 @@
 package org.observe.collect;
 
 import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
 
 import org.observe.ObservableValue;
 import org.qommons.ex.CheckedExceptionWrapper;
@@ -51,6 +53,145 @@ public interface DataControlledCollection<E, V> extends ObservableCollection<E>
 	/** @return An observable value that is true when this collection is refreshing */
 	ObservableValue<Boolean> isRefreshing();
 
+	/**
+	 * <p>
+	 * A source of data for a {@link DataControlledCollection} that can report what has changed since a previous version of its data,
+	 * e.g. a database table with a modification log, or an append-only file. A collection whose
+	 * {@link ObservableCollectionBuilder#withData(Supplier) data} is a delta source only retrieves and applies the changes on each
+	 * refresh.
+	 * </p>
+	 * <p>
+	 * Removed and updated values are matched to the collection's values by key if the collection is
+	 * {@link ObservableCollectionBuilder.DataControlledCollectionBuilder#withKey(java.util.function.Function, java.util.function.Function)
+	 * keyed}, or by its equals tester otherwise, which requires a search of the collection for each such value. Added values are appended
+	 * to the collection (or inserted in order for sorted collections).
+	 * </p>
+	 * <p>
+	 * For a keyed collection, each key may occur at most once in the source's data, since a removed or updated value could not otherwise
+	 * be matched to a single element. A refresh fails with an {@link IllegalStateException} if a full delta contains duplicate keys, and
+	 * an added value whose key is already present is treated as an update.
+	 * </p>
+	 *
+	 * @param <V> The type of the source data
+	 */
+	public interface DeltaSource<V> extends Supplier<List<? extends V>> {
+		/** The version to pass to {@link #since(long)} to request all the source's data */
+		long NO_VERSION = Long.MIN_VALUE;
+
+		/**
+		 * @param version The version of the data previously retrieved from this source, or {@link #NO_VERSION}
+		 * @return The changes to the data since the given version, a {@link Delta#full(List, long) full} delta containing all the data
+		 *         (required if the version is {@link #NO_VERSION}), or a {@link Delta#gap() gap} if the changes since the given version are
+		 *         not available
+		 */
+		Delta<V> since(long version);
+
+		/** @return All the source's current data */
+		@Override
+		default List<? extends V> get() {
+			return since(NO_VERSION).getAdds();
+		}
+	}
+
+	/**
+	 * Changes to the data of a {@link DeltaSource}
+	 *
+	 * @param <V> The type of the source data
+	 */
+	public static final class Delta<V> {
+		private static final Delta<?> GAP = new Delta<>(false, true, Collections.emptyList(), Collections.emptyList(),
+			Collections.emptyList(), DeltaSource.NO_VERSION);
+
+		private final boolean isFull;
+		private final boolean isGap;
+		private final List<? extends V> theAdds;
+		private final List<? extends V> theRemoves;
+		private final List<? extends V> theUpdates;
+		private final long theVersion;
+
+		private Delta(boolean full, boolean gap, List<? extends V> adds, List<? extends V> removes, List<? extends V> updates,
+			long version) {
+			isFull = full;
+			isGap = gap;
+			theAdds = adds;
+			theRemoves = removes;
+			theUpdates = updates;
+			theVersion = version;
+		}
+
+		/**
+		 * @param <V> The type of the source data
+		 * @param values All the source's data
+		 * @param version The version of the data
+		 * @return A delta that replaces all the collection's data
+		 */
+		public static <V> Delta<V> full(List<? extends V> values, long version) {
+			return new Delta<>(true, false, values, Collections.emptyList(), Collections.emptyList(), version);
+		}
+
+		/**
+		 * @param <V> The type of the source data
+		 * @param adds Values added to the source since the requested version
+		 * @param removes Values removed from the source since the requested version
+		 * @param updates Values changed in the source since the requested version
+		 * @param version The version of the data after the changes
+		 * @return A delta with the given changes
+		 */
+		public static <V> Delta<V> changes(List<? extends V> adds, List<? extends V> removes, List<? extends V> updates, long version) {
+			return new Delta<>(false, false, adds == null ? Collections.emptyList() : adds,
+				removes == null ? Collections.emptyList() : removes, updates == null ? Collections.emptyList() : updates, version);
+		}
+
+		/**
+		 * @param <V> The type of the source data
+		 * @return A delta signifying that the changes since the requested version are not available, so the collection must retrieve all
+		 *         the data
+		 */
+		public static <V> Delta<V> gap() {
+			return (Delta<V>) GAP;
+		}
+
+		/** @return Whether this delta contains all the source's data in its {@link #getAdds() adds} */
+		public boolean isFull() {
+			return isFull;
+		}
+
+		/** @return Whether the changes since the requested version were not available */
+		public boolean isGap() {
+			return isGap;
+		}
+
+		/** @return The values added to the source, or all the source's values if this delta is {@link #isFull() full} */
+		public List<? extends V> getAdds() {
+			return theAdds;
+		}
+
+		/** @return The values removed from the source */
+		public List<? extends V> getRemoves() {
+			return theRemoves;
+		}
+
+		/** @return The values changed in the source */
+		public List<? extends V> getUpdates() {
+			return theUpdates;
+		}
+
+		/** @return The version of the source's data after these changes */
+		public long getVersion() {
+			return theVersion;
+		}
+
+		@Override
+		public String toString() {
+			if (isGap)
+				return "gap";
+			else if (isFull)
+				return "full(" + theAdds.size() + ")@" + theVersion;
+			else
+				return "+" + theAdds.size() + " -" + theRemoves.size() + " ~" + theUpdates.size() + "@" + theVersion;
+		}
+	}
+
 	/**
 	 * A {@link DataControlledCollection} that is also an {@link ObservableSet}
 	 * 
@@ -6,6 +6,7 @@ import java.util.function.Consumer;
 
 import org.observe.Equivalence;
 import org.observe.Subscription;
+import org.observe.util.SubscriptionDiagnostics;
 import org.qommons.Causable;
 import org.qommons.CausalLock;
 import org.qommons.Lockable.CoreId;
@@ -267,7 +268,7 @@ public class DefaultObservableCollection<E> implements ObservableCollection<E> {
 
 	@Override
 	public Subscription onChange(Consumer<? super ObservableCollectionEvent<? extends E>> observer) {
-		return theObservers.add(observer, true)::run;
+		return SubscriptionDiagnostics.track(this, theObservers.add(observer, true)::run);
 	}
 
 	@Override
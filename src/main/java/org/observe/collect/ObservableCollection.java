@@ -31,6 +31,7 @@ import org.observe.collect.FlowOptions.UniqueOptions;
 import org.observe.collect.ObservableCollectionActiveManagers.ActiveCollectionManager;
 import org.observe.collect.ObservableCollectionActiveManagers.ActiveValueStoredManager;
 import org.observe.collect.ObservableCollectionPassiveManagers.PassiveCollectionManager;
+import org.observe.util.MemoCache;
 import org.observe.util.ObservableUtils;
 import org.observe.util.SafeObservableCollection;
 import org.observe.util.TypeTokens;
@@ -1014,6 +1015,21 @@ public interface ObservableCollection<E> extends BetterList<E>, TypedValueContai
 			return transform(target, tx -> tx.map(map));
 		}
 
+		/**
+		 * Like {@link #map(TypeToken, Function)}, but results are shared through a memo cache, so that the mapping function is evaluated
+		 * once per distinct source value instead of once per element
+		 *
+		 * @param <X> The type to map to
+		 * @param target The type to map to
+		 * @param map The mapping function to apply to each element
+		 * @param cache The cache to store mapped values in, keyed by source value. May be shared between flows that use the same function.
+		 * @return The mapped flow
+		 */
+		default <X> CollectionDataFlow<E, T, X> map(TypeToken<X> target, Function<? super T, ? extends X> map,
+			MemoCache<? super T, X> cache) {
+			return transform(target, tx -> tx.map(map, cache));
+		}
+
 		/**
 		 * @param target The target type
 		 * @param map A function that produces observable values from each element of the source
@@ -8,10 +8,12 @@ import java.util.Objects;
 import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import org.observe.Equivalence;
 import org.observe.Equivalence.SortedEquivalence;
+import org.observe.util.TimerWheel;
 import org.observe.util.TypeTokens;
 import org.qommons.collect.BetterCollection;
 import org.qommons.collect.BetterList;
@@ -24,7 +26,6 @@ import org.qommons.collect.ElementId;
 import org.qommons.collect.ListenerList;
 import org.qommons.ex.ExFunction;
 import org.qommons.threading.QommonsTimer;
-import org.qommons.threading.QommonsTimer.TaskHandle;
 import org.qommons.tree.BetterTreeList;
 import org.qommons.tree.BetterTreeSet;
 import org.qommons.tree.RedBlackNodeList;
@@ -132,7 +133,8 @@ public interface ObservableCollectionBuilder<E, B extends ObservableCollectionBu
 	ObservableCollection<E> build();
 
 	/**
-	 * Creates a builder for an observable collection whose data is controlled
+	 * Creates a builder for an observable collection whose data is controlled. If the data source is a
+	 * {@link DataControlledCollection.DeltaSource}, each refresh will retrieve and apply only the changes since the previous one.
 	 *
 	 * @param <V> The type of the backing data
 	 * @param data The data source for the collection
@@ -163,6 +165,21 @@ public interface ObservableCollectionBuilder<E, B extends ObservableCollectionBu
 		 */
 		B withEquals(BiPredicate<? super E, ? super V> equals);
 
+		/**
+		 * Causes the collection to match its values to source data by key. Refreshes then compute each value's key once and match values
+		 * through hash tables in O(n) time (plus O(n log n) to keep the order of the data with the fewest moves), instead of comparing
+		 * values pair-wise with an equals test, which may be much faster for large, unsorted data sets. Values with the same key are
+		 * matched in order. Keys must be consistent with {@link Object#hashCode()} and {@link Object#equals(Object)}.
+		 *
+		 * @param <K> The type of the key
+		 * @param elementKey Produces the key for a value in the collection
+		 * @param dataKey Produces the key for a source data value
+		 * @return This builder
+		 */
+		default <K> B withKey(Function<? super E, ? extends K> elementKey, Function<? super V, ? extends K> dataKey) {
+			return withEquals(new ObservableCollectionImpl.KeyedDataEquals<>(elementKey, dataKey));
+		}
+
 		/**
 		 * @param adjustmentOrder The adjustment order for refreshes
 		 * @see org.qommons.collect.CollectionUtils.CollectionAdjustment#adjust(CollectionSynchronizerE,
@@ -768,15 +785,16 @@ public interface ObservableCollectionBuilder<E, B extends ObservableCollectionBu
 	public static class DefaultDataControlAutoRefresher implements DataControlAutoRefresher {
 		private static class CollectionRefresher {
 			final DataControlledCollection<?, ?> collection;
-			final QommonsTimer.TaskHandle taskHandle;
+			final TimerWheel.ScheduledTask taskHandle;
 
-			CollectionRefresher(DataControlledCollection<?, ?> collection, TaskHandle taskHandle) {
+			CollectionRefresher(DataControlledCollection<?, ?> collection, TimerWheel.ScheduledTask taskHandle) {
 				this.collection = collection;
 				this.taskHandle = taskHandle;
 			}
 		}
 
 		private final QommonsTimer theTimer;
+		private final TimerWheel theWheel;
 		private final ListenerList<CollectionRefresher> theRefreshers;
 		private Duration theFrequency;
 		private boolean isInitRefresh;
@@ -794,7 +812,23 @@ public interface ObservableCollectionBuilder<E, B extends ObservableCollectionBu
 		 * @param frequency Global auto-refresh frequency
 		 */
 		public DefaultDataControlAutoRefresher(QommonsTimer timer, Duration frequency) {
+			this(timer, null, frequency);
+		}
+
+		/**
+		 * Creates a refresher that schedules its refreshes on a {@link TimerWheel}, which batches the refreshes of all collections with the
+		 * same refresh frequency. This is much cheaper than a {@link QommonsTimer} when many collections are refreshed.
+		 *
+		 * @param wheel The timer wheel to auto-refresh with
+		 * @param frequency Global auto-refresh frequency
+		 */
+		public DefaultDataControlAutoRefresher(TimerWheel wheel, Duration frequency) {
+			this(null, wheel, frequency);
+		}
+
+		private DefaultDataControlAutoRefresher(QommonsTimer timer, TimerWheel wheel, Duration frequency) {
 			theTimer = timer;
+			theWheel = wheel;
 			theRefreshers = ListenerList.build().build();
 			theFrequency = frequency;
 			isActive = true;
@@ -903,10 +937,10 @@ public interface ObservableCollectionBuilder<E, B extends ObservableCollectionBu
 		public Runnable add(DataControlledCollection<?, ?> collection) {
 			if (isClosed)
 				throw new IllegalStateException("This refresher is closed");
-			QommonsTimer.TaskHandle[] handle = new QommonsTimer.TaskHandle[1];
+			TimerWheel.ScheduledTask[] handle = new TimerWheel.ScheduledTask[1];
 			long[] refreshTimes = new long[4];
 			Arrays.fill(refreshTimes, -1);
-			handle[0] = theTimer.build(() -> {
+			handle[0] = schedule(() -> {
 				if (theAdaptive > 0) {
 					System.arraycopy(refreshTimes, 1, refreshTimes, 0, refreshTimes.length - 1);
 					refreshTimes[refreshTimes.length - 1] = -1;
@@ -928,7 +962,7 @@ public interface ObservableCollectionBuilder<E, B extends ObservableCollectionBu
 					handle[0].setFrequency(Duration.ofMillis(maxFreq), false);
 				} else
 					collection.refresh();
-			}, theFrequency, false);
+			}, theFrequency);
 			Runnable remove = theRefreshers.add(new CollectionRefresher(collection, handle[0]), true);
 			if (isActive) {
 				handle[0].setActive(true);
@@ -940,5 +974,12 @@ public interface ObservableCollectionBuilder<E, B extends ObservableCollectionBu
 				handle[0].setActive(false);
 			};
 		}
+
+		private TimerWheel.ScheduledTask schedule(Runnable task, Duration frequency) {
+			if (theWheel != null)
+				return theWheel.build(task, frequency);
+			else
+				return TimerWheel.forTimer(theTimer.build(task, frequency, false));
+		}
 	}
 }
@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -36,6 +37,7 @@ import org.observe.collect.ObservableCollectionDataFlowImpl.FilterMapResult;
 import org.observe.collect.ObservableCollectionPassiveManagers.PassiveCollectionManager;
 import org.observe.util.ObservableCollectionWrapper;
 import org.observe.util.ObservableUtils;
+import org.observe.util.SubscriptionDiagnostics;
 import org.observe.util.TypeTokens;
 import org.observe.util.WeakListening;
 import org.qommons.*;
@@ -2749,11 +2751,11 @@ public final class ObservableCollectionImpl {
 			// Otherwise, this collection could be GC'd and listeners (which may not reference this collection) would just be left hanging
 			if (withStrongRef && theListenerCount.getAndIncrement() == 0)
 				STRONG_REFS.add(new IdentityKey<>(this));
-			return () -> {
+			return SubscriptionDiagnostics.track(this, () -> {
 				remove.run();
 				if (withStrongRef && theListenerCount.decrementAndGet() == 0)
 					STRONG_REFS.remove(new IdentityKey<>(this));
-			};
+			});
 		}
 
 		@Override
@@ -4492,6 +4494,51 @@ public final class ObservableCollectionImpl {
 		}
 	}
 
+	/**
+	 * An equals tester for a {@link DataControlledCollection} that matches collection values to source data by key. A data-controlled
+	 * collection configured with one of these (via
+	 * {@link ObservableCollectionBuilder.DataControlledCollectionBuilder#withKey(Function, Function)}) reconciles itself with its data
+	 * using hash tables instead of pair-wise comparison.
+	 *
+	 * @param <E> The type of the collection values
+	 * @param <V> The type of the source data
+	 * @param <K> The type of the key
+	 */
+	public static class KeyedDataEquals<E, V, K> implements BiPredicate<E, V> {
+		private final Function<? super E, ? extends K> theElementKey;
+		private final Function<? super V, ? extends K> theDataKey;
+
+		/**
+		 * @param elementKey Produces the key for a collection value
+		 * @param dataKey Produces the key for a source data value
+		 */
+		public KeyedDataEquals(Function<? super E, ? extends K> elementKey, Function<? super V, ? extends K> dataKey) {
+			theElementKey = elementKey;
+			theDataKey = dataKey;
+		}
+
+		/**
+		 * @param element The collection value
+		 * @return The key for the value
+		 */
+		public K getElementKey(E element) {
+			return theElementKey.apply(element);
+		}
+
+		/**
+		 * @param data The source data value
+		 * @return The key for the data value
+		 */
+		public K getDataKey(V data) {
+			return theDataKey.apply(data);
+		}
+
+		@Override
+		public boolean test(E element, V data) {
+			return Objects.equals(theElementKey.apply(element), theDataKey.apply(data));
+		}
+	}
+
 	/**
 	 * Default {@link DataControlledCollection} implementation
 	 *
@@ -4511,6 +4558,9 @@ public final class ObservableCollectionImpl {
 		private final SettableValue<Boolean> isRefreshing;
 
 		private volatile long theLastRefresh;
+		private long theDataVersion;
+		/** Only used for a keyed collection whose data is a {@link DataControlledCollection.DeltaSource} */
+		private Map<Object, ElementId> theKeyIndex;
 		private final AtomicInteger theListeningCount;
 		private volatile Runnable theAutoRefreshTerminate;
 
@@ -4535,6 +4585,7 @@ public final class ObservableCollectionImpl {
 			theSynchronizer = synchronizer;
 			theAdjustmentOrder = adjustmentOrder;
 			theListeningCount = theAutoRefresh == null ? null : new AtomicInteger();
+			theDataVersion = DataControlledCollection.DeltaSource.NO_VERSION;
 			isRefreshing = SettableValue.build(boolean.class).withLocking(backing).withValue(false).build();
 
 			init(backing// TODO Maybe one day add capability for callers to affect the backing data
@@ -4585,23 +4636,248 @@ public final class ObservableCollectionImpl {
 			isRefreshing.set(true, null);
 			try {
 				// System.out.println("Refreshing " + getIdentity());
+				if (theBackingData instanceof DataControlledCollection.DeltaSource) {
+					deltaRefresh((DataControlledCollection.DeltaSource<? extends V>) theBackingData);
+					return;
+				}
 				List<? extends V> backing = theBackingData.get();
 				if (backing == null) {
 					theBacking.clear();
 					return;
 				}
-				try (Transaction t2 = backing instanceof Transactable ? ((Transactable) backing).lock(false, null) : Transaction.NONE) {
+				fullRefresh(backing);
+			} finally {
+				// System.out.println("Done refreshing " + getIdentity());
+				isRefreshing.set(false, null);
+			}
+		}
+
+		private void fullRefresh(List<? extends V> backing) {
+			try (Transaction t2 = backing instanceof Transactable ? ((Transactable) backing).lock(false, null) : Transaction.NONE) {
+				if (theEqualsTester instanceof KeyedDataEquals)
+					keyedRefresh(backing, (KeyedDataEquals<? super E, ? super V, ?>) theEqualsTester);
+				else
 					CollectionUtils.synchronize(theBacking, backing, theEqualsTester)//
 					.adjust(theSynchronizer, theAdjustmentOrder);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new CheckedExceptionWrapper(e);
+			}
+		}
+
+		/**
+		 * Refreshes this collection from a delta source, applying only the changes since the last refresh unless the source reports a gap
+		 *
+		 * @param source The delta source to refresh from
+		 */
+		private void deltaRefresh(DataControlledCollection.DeltaSource<? extends V> source) {
+			KeyedDataEquals<? super E, ? super V, ?> keys = theEqualsTester instanceof KeyedDataEquals
+				? (KeyedDataEquals<? super E, ? super V, ?>) theEqualsTester : null;
+			DataControlledCollection.Delta<? extends V> delta = source.since(theDataVersion);
+			// Changes can only be applied on top of data already retrieved in full, and for a keyed collection, indexed
+			if (delta == null || delta.isGap() || (!delta.isFull()//
+				&& (theDataVersion == DataControlledCollection.DeltaSource.NO_VERSION || (keys != null && theKeyIndex == null)))) {
+				delta = source.since(DataControlledCollection.DeltaSource.NO_VERSION);
+				if (delta == null || !delta.isFull())
+					throw new IllegalStateException("Delta source " + source + " did not supply its full data");
+			}
+			if (delta.isFull()) {
+				theKeyIndex = null;
+				fullRefresh(delta.getAdds());
+				if (keys != null) {
+					Map<Object, ElementId> keyIndex = new HashMap<>(theBacking.size() * 4 / 3 + 1);
+					for (CollectionElement<E> el = theBacking.getTerminalElement(true); el != null; el = theBacking
+						.getAdjacentElement(el.getElementId(), true)) {
+						Object key = keys.getElementKey(el.get());
+						if (keyIndex.putIfAbsent(key, el.getElementId()) != null)
+							throw new IllegalStateException("Delta source " + source + " supplied duplicate key " + key);
+					}
+					theKeyIndex = keyIndex;
+				}
+			} else {
+				try {
+					for (V removed : delta.getRemoves()) {
+						Object key = keys == null ? null : keys.getDataKey(removed);
+						ElementId id = keys == null ? findElement(removed) : theKeyIndex.get(key);
+						if (id != null && !syncElement(id, Collections.emptyList()) && keys != null)
+							theKeyIndex.remove(key);
+					}
+					for (V updated : delta.getUpdates())
+						applyDeltaValue(updated, keys);
+					for (V added : delta.getAdds())
+						applyDeltaValue(added, keys);
 				} catch (RuntimeException | Error e) {
 					throw e;
 				} catch (Throwable e) {
 					throw new CheckedExceptionWrapper(e);
 				}
-			} finally {
-				// System.out.println("Done refreshing " + getIdentity());
-				isRefreshing.set(false, null);
 			}
+			theDataVersion = delta.getVersion();
+		}
+
+		/** Applies an added or updated value from a delta source, which updates the matching element if there is one or adds a new one */
+		private void applyDeltaValue(V value, KeyedDataEquals<? super E, ? super V, ?> keys) throws Throwable {
+			Object key = keys == null ? null : keys.getDataKey(value);
+			ElementId id = keys == null ? findElement(value) : theKeyIndex.get(key);
+			if (id != null) {
+				if (!syncElement(id, Collections.singletonList(value)) && keys != null)
+					theKeyIndex.remove(key);
+				return;
+			}
+			for (E newValue : syncNew(value)) {
+				ElementId newId = theBacking.addElement(newValue, false).getElementId();
+				if (keys != null)
+					theKeyIndex.putIfAbsent(keys.getElementKey(newValue), newId);
+			}
+		}
+
+		private ElementId findElement(V data) {
+			for (CollectionElement<E> el = theBacking.getTerminalElement(true); el != null; el = theBacking
+				.getAdjacentElement(el.getElementId(), true)) {
+				if (theEqualsTester.test(el.get(), data))
+					return el.getElementId();
+			}
+			return null;
+		}
+
+		/**
+		 * <p>
+		 * Reconciles this collection with its data by key, in time linear in the size of the data (plus a logarithmic factor to preserve
+		 * the order of the data), instead of the pair-wise matching of {@link CollectionUtils#synchronize(List, List, BiPredicate)}.
+		 * </p>
+		 * <p>
+		 * Values are matched by key and occurrence: the n<sup>th</sup> element of this collection with a key matches the n<sup>th</sup>
+		 * data value with the same key, so duplicate keys are as stable across refreshes as unique ones.
+		 * </p>
+		 * <p>
+		 * The synchronizer is still consulted for each unmatched collection value, each unmatched data value, and each matched pair, but
+		 * one at a time, so each synchronization it sees contains a single value. Collection values are only touched when the synchronizer
+		 * removes or replaces them, and elements are only moved where needed to follow the order of the data.
+		 * </p>
+		 */
+		private void keyedRefresh(List<? extends V> data, KeyedDataEquals<? super E, ? super V, ?> keys) throws Throwable {
+			// The indexes of the data values with each key, chained in order through nextWithKey.
+			// Each entry holds the next unmatched index with the key (or -1 when all are matched) and the last index with the key.
+			Map<Object, int[]> dataByKey = new HashMap<>(data.size() * 4 / 3 + 1);
+			int[] nextWithKey = new int[data.size()];
+			for (int i = 0; i < nextWithKey.length; i++) {
+				nextWithKey[i] = -1;
+				Object key = keys.getDataKey(data.get(i));
+				int[] chain = dataByKey.get(key);
+				if (chain == null)
+					dataByKey.put(key, new int[] { i, i });
+				else {
+					nextWithKey[chain[1]] = i;
+					chain[1] = i;
+				}
+			}
+			ElementId[] matches = new ElementId[data.size()];
+			List<ElementId> leftOnly = new ArrayList<>();
+			for (CollectionElement<E> el = theBacking.getTerminalElement(true); el != null; el = theBacking
+				.getAdjacentElement(el.getElementId(), true)) {
+				int[] chain = dataByKey.get(keys.getElementKey(el.get()));
+				if (chain != null && chain[0] >= 0) {
+					matches[chain[0]] = el.getElementId();
+					chain[0] = nextWithKey[chain[0]];
+				} else
+					leftOnly.add(el.getElementId());
+			}
+
+			for (ElementId id : leftOnly)
+				syncElement(id, Collections.emptyList());
+			for (int i = 0; i < matches.length; i++) {
+				if (matches[i] != null && !syncElement(matches[i], Collections.singletonList(data.get(i))))
+					matches[i] = null;
+			}
+
+			if (theAdjustmentOrder != CollectionUtils.AdjustmentOrder.RightOrder || theBacking.isContentControlled()) {
+				for (int i = 0; i < matches.length; i++) {
+					if (matches[i] == null) {
+						for (E value : syncNew(data.get(i)))
+							theBacking.add(value);
+					}
+				}
+				return;
+			}
+			// Keep the longest run of matched elements that are already in data order, moving the others and inserting new values
+			boolean[] inOrder = longestOrderedRun(matches);
+			ElementId prev = null;
+			for (int i = 0; i < matches.length; i++) {
+				if (matches[i] == null) {
+					for (E value : syncNew(data.get(i)))
+						prev = theBacking.addElement(value, prev, null, true).getElementId();
+				} else if (inOrder[i])
+					prev = matches[i];
+				else if (theBacking.canMove(matches[i], prev, null) == null)
+					prev = theBacking.move(matches[i], prev, null, true, null).getElementId();
+				else {
+					E value = theBacking.getElement(matches[i]).get();
+					theBacking.mutableElement(matches[i]).remove();
+					prev = theBacking.addElement(value, prev, null, true).getElementId();
+				}
+			}
+		}
+
+		/**
+		 * Synchronizes an existing element of this collection against its matching data value, if any
+		 *
+		 * @param id The ID of the element in the backing collection
+		 * @param data The matching data value, or an empty list if there is none
+		 * @return Whether the element is still present
+		 */
+		private boolean syncElement(ElementId id, List<? extends V> data) throws Throwable {
+			E value = theBacking.getElement(id).get();
+			List<E> result = new ArrayList<>(1);
+			result.add(value);
+			CollectionUtils.synchronize(result, data, theEqualsTester).adjust(theSynchronizer, theAdjustmentOrder);
+			if (result.isEmpty()) {
+				theBacking.mutableElement(id).remove();
+				return false;
+			} else if (result.get(0) != value)
+				theBacking.mutableElement(id).set(result.get(0));
+			return true;
+		}
+
+		/**
+		 * @param data A data value with no match in this collection
+		 * @return The values the synchronizer produced for the data value
+		 */
+		private List<E> syncNew(V data) throws Throwable {
+			List<E> result = new ArrayList<>(1);
+			CollectionUtils.synchronize(result, Collections.singletonList(data), theEqualsTester).adjust(theSynchronizer,
+				theAdjustmentOrder);
+			return result;
+		}
+
+		/**
+		 * @param ids The element IDs to inspect, some of which may be null
+		 * @return Which of the IDs are members of a longest sequence of non-null IDs whose order matches their order in the collection
+		 */
+		private static boolean[] longestOrderedRun(ElementId[] ids) {
+			int[] tails = new int[ids.length]; // Index in ids of the last element of the best run of each length
+			int[] previous = new int[ids.length];
+			int length = 0;
+			for (int i = 0; i < ids.length; i++) {
+				if (ids[i] == null)
+					continue;
+				int lo = 0, hi = length;
+				while (lo < hi) {
+					int mid = (lo + hi) >>> 1;
+					if (ids[tails[mid]].compareTo(ids[i]) < 0)
+						lo = mid + 1;
+					else
+						hi = mid;
+				}
+				previous[i] = lo > 0 ? tails[lo - 1] : -1;
+				tails[lo] = i;
+				if (lo == length)
+					length++;
+			}
+			boolean[] inRun = new boolean[ids.length];
+			for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i])
+				inRun[i] = true;
+			return inRun;
 		}
 
 		@Override
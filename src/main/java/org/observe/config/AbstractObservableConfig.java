@@ -20,6 +20,9 @@ import org.qommons.collect.ElementId;
 
 /** An abstract {@link ObservableConfig} class that takes care of some common implementation */
 public abstract class AbstractObservableConfig implements ObservableConfig {
+	/** Returned from {@link #getCachedValue(Object, String)} when no value is cached */
+	static final Object NOT_CACHED = new Object();
+
 	private AbstractObservableConfig theParent;
 
 	private volatile WeakHashMap<ObservableConfigParseSession, WeakReference<Object>> theParsedItems;
@@ -72,6 +75,34 @@ public abstract class AbstractObservableConfig implements ObservableConfig {
 		return this;
 	}
 
+	/**
+	 * <p>
+	 * Retrieves a value parsed from this config's value by a format, so that repeated parsing of the same text can be avoided.
+	 * </p>
+	 * <p>
+	 * The cache is keyed by the identity of the value text, so it is invalidated by any change to this config's value.
+	 * </p>
+	 * <p>
+	 * This implementation caches nothing, so that config nodes do not pay for a cache they may never use. Subclasses may keep the cache in
+	 * state that is only allocated when needed.
+	 * </p>
+	 *
+	 * @param format The format used to parse the value
+	 * @param text This config's current value
+	 * @return The value {@link #cacheValue(Object, String, Object) cached} for the given text and format, or {@link #NOT_CACHED}
+	 */
+	Object getCachedValue(Object format, String text) {
+		return NOT_CACHED;
+	}
+
+	/**
+	 * @param format The format used to parse the value
+	 * @param text The text that was parsed, or that the value was formatted to
+	 * @param value The parsed value, which must be immutable
+	 */
+	void cacheValue(Object format, String text, Object value) {
+	}
+
 	@Override
 	public ObservableConfig addChild(ObservableConfig after, ObservableConfig before, boolean first, String name,
 		Consumer<ObservableConfig> preAddMod) {
@@ -0,0 +1,210 @@
+package org.observe.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+import org.observe.Observable;
+import org.observe.Subscription;
+import org.observe.config.ObservableConfig.ObservableConfigPersistence;
+import org.qommons.ThreadConstraint;
+import org.qommons.Transaction;
+import org.qommons.collect.FastFailLockingStrategy;
+
+/**
+ * <p>
+ * Persists an {@link ObservableConfig} on a dedicated background thread.
+ * </p>
+ * <p>
+ * {@link ObservableConfig#persistWhen(Observable, ObservableConfigPersistence, Consumer) persistWhen} persists synchronously on the thread
+ * that made the change (often the UI thread), holding the config's lock through serialization and I/O. This class instead only notes the
+ * change on the mutating thread. After a quiet period with no further changes, the background thread encodes the config into a compact
+ * in-memory {@link ObservableConfig#writeBinary(ObservableConfig, OutputStream, boolean) binary} buffer while holding its read lock. It
+ * then decodes the buffer into a detached copy and persists that without any lock. A burst of changes thus results in a single write.
+ * </p>
+ * <p>
+ * Writers are only blocked while the config is encoded, a single pass over the config that creates no config nodes. Building the copy,
+ * serialization and I/O all happen outside the lock.
+ * </p>
+ * <p>
+ * Under a constant stream of changes, a write is still made at least every {@value #MAX_DELAY_FACTOR} quiet periods.
+ * </p>
+ * <p>
+ * Pending changes are written when this persister is {@link #unsubscribe() unsubscribed} and when the VM shuts down.
+ * </p>
+ *
+ * @param <E> The type of exception that the persistence may throw
+ * @see ObservableConfig#persistInBackground(Duration, ObservableConfigPersistence, Consumer)
+ */
+public class BackgroundConfigPersister<E extends Exception> implements Subscription {
+	/** The default time to wait after a change before persisting */
+	public static final Duration DEFAULT_QUIET_PERIOD = Duration.ofMillis(500);
+	/** The maximum time to delay persistence under a constant stream of changes, as a multiple of the quiet period */
+	public static final int MAX_DELAY_FACTOR = 10;
+
+	private final ObservableConfig theConfig;
+	private final ObservableConfigPersistence<E> thePersistence;
+	private final Consumer<? super Exception> theOnException;
+	private final long theQuietPeriod;
+	private final Object thePersistLock;
+	private final Thread theThread;
+	private final Subscription theTriggerSub;
+	private final Subscription theShutdownSub;
+
+	private long theFirstChange;
+	private long theLastChange;
+	private boolean isDirty;
+	private boolean isClosed;
+	private long thePersistedStamp;
+
+	/**
+	 * @param config The config to persist
+	 * @param trigger The observable whose events signal that the config needs to be persisted
+	 * @param quietPeriod The amount of time to wait after a change with no further changes before persisting
+	 * @param persistence The persistence to use to persist the configuration
+	 * @param onException The listener for persistence failure
+	 */
+	public BackgroundConfigPersister(ObservableConfig config, Observable<?> trigger, Duration quietPeriod,
+		ObservableConfigPersistence<E> persistence, Consumer<? super Exception> onException) {
+		if (quietPeriod.isNegative())
+			throw new IllegalArgumentException("Negative quiet period: " + quietPeriod);
+		theConfig = config;
+		thePersistence = persistence;
+		theOnException = onException;
+		theQuietPeriod = quietPeriod.toNanos();
+		thePersistLock = new Object();
+		thePersistedStamp = config.getStamp();
+		theThread = new Thread(this::run, "Config Persister: " + persistence);
+		theThread.setDaemon(true);
+		theThread.start();
+		theTriggerSub = trigger.act(__ -> changed());
+		theShutdownSub = Observable.onVmShutdown().act(__ -> flush());
+	}
+
+	/** @return The config being persisted */
+	public ObservableConfig getConfig() {
+		return theConfig;
+	}
+
+	/** @return Whether there are changes waiting for the quiet period to elapse before being persisted */
+	public synchronized boolean isPending() {
+		return isDirty;
+	}
+
+	/** Immediately persists any changes to the config on the calling thread, waiting for any persistence in progress to finish */
+	public void flush() {
+		synchronized (this) {
+			isDirty = false;
+		}
+		persist();
+	}
+
+	/** Stops listening for changes, persisting any pending changes first */
+	@Override
+	public void unsubscribe() {
+		theTriggerSub.unsubscribe();
+		synchronized (this) {
+			if (isClosed)
+				return;
+			isClosed = true;
+			notifyAll();
+		}
+		try {
+			theShutdownSub.unsubscribe();
+		} catch (IllegalStateException e) {
+			// The VM is already shutting down
+		}
+		flush();
+	}
+
+	private synchronized void changed() {
+		theLastChange = System.nanoTime();
+		if (!isDirty) {
+			isDirty = true;
+			theFirstChange = theLastChange;
+			notifyAll();
+		}
+	}
+
+	private void run() {
+		while (true) {
+			synchronized (this) {
+				try {
+					while (!isDirty && !isClosed)
+						wait();
+					long remaining = remaining();
+					while (remaining > 0 && isDirty && !isClosed) {
+						wait(Math.max(1, remaining / 1_000_000));
+						remaining = remaining();
+					}
+				} catch (InterruptedException e) {
+					continue;
+				}
+				if (isClosed)
+					return; // unsubscribe() flushes
+				else if (!isDirty)
+					continue; // Flushed by another thread
+				isDirty = false;
+			}
+			persist();
+		}
+	}
+
+	private long remaining() {
+		long now = System.nanoTime();
+		return Math.min(theLastChange + theQuietPeriod, theFirstChange + theQuietPeriod * MAX_DELAY_FACTOR) - now;
+	}
+
+	private void persist() {
+		synchronized (thePersistLock) {
+			byte[] encoded;
+			long stamp;
+			try (Transaction t = theConfig.lock(false, null)) {
+				stamp = theConfig.getStamp();
+				if (stamp == thePersistedStamp)
+					return; // No changes, don't re-persist
+				encoded = encode(theConfig);
+			}
+			try {
+				thePersistence.persist(decode(encoded));
+				thePersistedStamp = stamp;
+			} catch (Exception ex) {
+				theOnException.accept(ex);
+			}
+		}
+	}
+
+	/**
+	 * @param config The config to encode. The caller must hold the config's read lock.
+	 * @return The binary encoding of the config's current state
+	 */
+	static byte[] encode(ObservableConfig config) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			BinaryConfigFormat.write(config, bytes, false);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not write to memory", e); // Can't happen
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param encoded The binary encoding of a config, from {@link #encode(ObservableConfig)}
+	 * @return A detached config with the encoded state
+	 * @throws IOException If the encoding is corrupt
+	 */
+	static ObservableConfig decode(byte[] encoded) throws IOException {
+		// The name is replaced with the encoded one
+		ObservableConfig copy = ObservableConfig.createRoot("snapshot", null, __ -> new FastFailLockingStrategy(ThreadConstraint.ANY));
+		BinaryConfigFormat.read(copy, new ByteArrayInputStream(encoded));
+		return copy;
+	}
+
+	@Override
+	public String toString() {
+		return "Background" + thePersistence;
+	}
+}
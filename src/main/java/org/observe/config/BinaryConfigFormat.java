@@ -0,0 +1,156 @@
+package org.observe.config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.qommons.ThreadConstraint;
+import org.qommons.Transaction;
+import org.qommons.collect.FastFailLockingStrategy;
+
+/**
+ * <p>
+ * Implements {@link ObservableConfig#writeBinary(ObservableConfig, OutputStream, boolean)} and
+ * {@link ObservableConfig#readBinary(ObservableConfig, InputStream)}.
+ * </p>
+ * <p>
+ * The format is a 4-byte magic number and a flags byte, followed by the (optionally deflated) root element. Each element is its name, its
+ * value, its child count, and then its children. Names are stored in a string table built as the stream is written: the first occurrence
+ * of a name is written inline and subsequent ones as a reference into the table, so the common case of many repeated element names costs
+ * a byte or two per element. Values and names are stored as variable-length-prefixed UTF-8, with no escaping needed for any content.
+ * </p>
+ */
+final class BinaryConfigFormat {
+	/** The magic number at the start of each binary config stream */
+	static final int MAGIC = 0x4F434231; // "OCB1"
+	/** Flag indicating that the content following the header is deflated */
+	static final int FLAG_COMPRESSED = 1;
+
+	private BinaryConfigFormat() {
+	}
+
+	static void write(ObservableConfig config, OutputStream out, boolean compress) throws IOException {
+		DataOutputStream header = new DataOutputStream(out);
+		header.writeInt(MAGIC);
+		header.write(compress ? FLAG_COMPRESSED : 0);
+		header.flush();
+		DeflaterOutputStream deflate = compress ? new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED), 64 * 1024) : null;
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(compress ? deflate : out, 64 * 1024));
+		try (Transaction t = config.lock(false, null)) {
+			new ConfigWriter(data).write(config);
+		}
+		data.flush();
+		if (deflate != null)
+			deflate.finish();
+	}
+
+	static void read(ObservableConfig config, InputStream in) throws IOException {
+		DataInputStream header = new DataInputStream(in);
+		if (header.readInt() != MAGIC)
+			throw new IOException("Not a binary config stream");
+		int flags = header.read();
+		if (flags < 0)
+			throw new EOFException();
+		InputStream body = (flags & FLAG_COMPRESSED) != 0 ? new InflaterInputStream(in) : in;
+		ConfigReader reader = new ConfigReader(new DataInputStream(new BufferedInputStream(body, 64 * 1024)));
+		String name = reader.readName();
+		String value = ConfigIO.readString(reader.in);
+		try (Transaction t = config.lock(true, null)) {
+			if (config.getContent().isEmpty()) {
+				// Build directly into the empty config
+				if (!config.getName().equals(name))
+					config.setName(name);
+				config.setValue(value);
+				reader.readContent(config);
+			} else {
+				// Read into a detached tree, then synchronize the existing content with it
+				ObservableConfig parsed = ObservableConfig.createRoot(name, value,
+					__ -> new FastFailLockingStrategy(ThreadConstraint.ANY));
+				reader.readContent(parsed);
+				if (!config.getName().equals(name))
+					config.setName(name);
+				config.copyFrom(parsed, true);
+			}
+		}
+	}
+
+	private static class ConfigWriter {
+		final DataOutputStream out;
+		final Map<String, Integer> names;
+
+		ConfigWriter(DataOutputStream out) {
+			this.out = out;
+			names = new HashMap<>();
+		}
+
+		void write(ObservableConfig config) throws IOException {
+			Integer nameIndex = names.get(config.getName());
+			if (nameIndex != null)
+				ConfigIO.writeVarInt(out, nameIndex + 1);
+			else {
+				out.write(0);
+				names.put(config.getName(), names.size());
+				ConfigIO.writeString(out, config.getName());
+			}
+			ConfigIO.writeString(out, config.getValue());
+			ConfigIO.writeVarInt(out, config.getContent().size());
+			for (ObservableConfig child : config.getContent())
+				write(child);
+		}
+	}
+
+	private static class ConfigReader {
+		final DataInputStream in;
+		final List<String> names;
+
+		ConfigReader(DataInputStream in) {
+			this.in = in;
+			names = new ArrayList<>();
+		}
+
+		String readName() throws IOException {
+			int nameIndex = ConfigIO.readVarInt(in);
+			if (nameIndex == 0) {
+				String name = ConfigIO.readString(in);
+				if (name == null)
+					throw new IOException("Null element name");
+				names.add(name);
+				return name;
+			} else if (nameIndex > names.size())
+				throw new IOException("Bad name reference: " + nameIndex);
+			else
+				return names.get(nameIndex - 1);
+		}
+
+		void readContent(ObservableConfig config) throws IOException {
+			int children = ConfigIO.readVarInt(in);
+			IOException[] ex = new IOException[1];
+			for (int i = 0; i < children && ex[0] == null; i++) {
+				String name = readName();
+				String value = ConfigIO.readString(in);
+				config.addChild(name, child -> {
+					child.setValue(value);
+					try {
+						readContent(child);
+					} catch (IOException e) {
+						ex[0] = e;
+					}
+				});
+			}
+			if (ex[0] != null)
+				throw ex[0];
+		}
+	}
+}
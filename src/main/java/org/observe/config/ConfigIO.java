@@ -0,0 +1,141 @@
+package org.observe.config;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.qommons.ex.ExConsumer;
+
+/**
+ * Low-level encoding and file utilities shared by the binary config formats ({@link ObservableConfigJournal}, {@link BinaryConfigFormat},
+ * {@link XmlConfigLoader}) and by config persistence
+ */
+class ConfigIO {
+	private ConfigIO() {
+	}
+
+	/**
+	 * Writes a non-negative integer in 7-bit groups, least significant first, with the high bit of each byte set if more bytes follow
+	 *
+	 * @param out The stream to write to
+	 * @param value The value to write
+	 * @throws IOException If the stream throws an exception
+	 */
+	static void writeVarInt(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * @param in The stream to read from
+	 * @return The integer written by {@link #writeVarInt(OutputStream, int)}
+	 * @throws IOException If the stream throws an exception, ends early, or does not contain a valid integer
+	 */
+	static int readVarInt(InputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed variable-length integer");
+	}
+
+	/**
+	 * @param value The value to write
+	 * @return The number of bytes {@link #writeVarInt(OutputStream, int)} writes for the value
+	 */
+	static int varIntLength(int value) {
+		int length = 1;
+		while ((value & ~0x7F) != 0) {
+			length++;
+			value >>>= 7;
+		}
+		return length;
+	}
+
+	/**
+	 * Writes a nullable string as its length plus one (zero for null) followed by its UTF-8 bytes
+	 *
+	 * @param out The stream to write to
+	 * @param str The string to write
+	 * @throws IOException If the stream throws an exception
+	 */
+	static void writeString(DataOutputStream out, String str) throws IOException {
+		if (str == null) {
+			out.write(0);
+			return;
+		}
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length + 1);
+		out.write(bytes);
+	}
+
+	/**
+	 * @param in The stream to read from
+	 * @return The string written by {@link #writeString(DataOutputStream, String)}
+	 * @throws IOException If the stream throws an exception or ends early
+	 */
+	static String readString(DataInputStream in) throws IOException {
+		int length = readVarInt(in);
+		if (length == 0)
+			return null;
+		byte[] bytes = new byte[length - 1];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a file by writing a temporary file, syncing it to the device, and then moving it over the target, so that the target is never
+	 * left partially written
+	 *
+	 * @param file The file to write
+	 * @param write Writes the file's content to the stream
+	 * @throws IOException If the file could not be written
+	 */
+	static void writeAtomically(File file, ExConsumer<OutputStream, IOException> write) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		boolean written = false;
+		try {
+			try (FileOutputStream out = new FileOutputStream(temp)) {
+				write.accept(out);
+				out.getFD().sync();
+			}
+			move(temp, file);
+			written = true;
+		} finally {
+			if (!written)
+				temp.delete();
+		}
+	}
+
+	/**
+	 * Moves a file over another, atomically if the file system supports it
+	 *
+	 * @param from The file to move
+	 * @param to The file to replace
+	 * @throws IOException If the file could not be moved
+	 */
+	static void move(File from, File to) throws IOException {
+		try {
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package org.observe.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.observe.config.ObservableConfigPath.ObservableConfigPathElement;
+
+/**
+ * <p>
+ * Indexes the listeners to a {@link DefaultObservableConfig} by their {@link ObservableConfigPath path} so that an event only needs to be
+ * tested against the listeners whose paths may match it.
+ * </p>
+ * <p>
+ * Each listener is stored at the node of the trie for its path. Path elements with a specific name are indexed by name, so that a change
+ * deep in the tree walks only the branches matching the changed element's ancestry, instead of testing every listener's full path. Multi
+ * (wildcard) elements are kept separately and tested against every element.
+ * </p>
+ * <p>
+ * The trie is thread-safe. Listeners are returned in the order they were added, and listeners added or removed while an event is being
+ * fired are not notified of that event.
+ * </p>
+ *
+ * @param <L> The type of listener stored
+ */
+class ConfigListenerTrie<L> {
+	/** A listener entry in the trie */
+	static class Entry<L> implements Comparable<Entry<?>> {
+		final ObservableConfigPath path;
+		final L listener;
+		final long order;
+		volatile boolean isRemoved;
+
+		Entry(ObservableConfigPath path, L listener, long order) {
+			this.path = path;
+			this.listener = listener;
+			this.order = order;
+		}
+
+		@Override
+		public int compareTo(Entry<?> o) {
+			return Long.compare(order, o.order);
+		}
+
+		@Override
+		public String toString() {
+			return path + ":" + listener;
+		}
+	}
+
+	private static class Node<L> {
+		final Node<L> parent;
+		final ObservableConfigPathElement element;
+		Map<String, List<Node<L>>> named;
+		List<Node<L>> multi;
+		List<Entry<L>> listeners;
+
+		Node(Node<L> parent, ObservableConfigPathElement element) {
+			this.parent = parent;
+			this.element = element;
+		}
+
+		Node<L> getChild(ObservableConfigPathElement el, boolean create) {
+			List<Node<L>> children;
+			if (el.isMulti())
+				children = multi;
+			else
+				children = named == null ? null : named.get(el.getName());
+			if (children != null) {
+				for (Node<L> child : children) {
+					if (child.element.equals(el))
+						return child;
+				}
+			}
+			if (!create)
+				return null;
+			Node<L> child = new Node<>(this, el);
+			if (el.isMulti()) {
+				if (multi == null)
+					multi = new ArrayList<>(3);
+				multi.add(child);
+			} else {
+				if (named == null)
+					named = new HashMap<>();
+				named.computeIfAbsent(el.getName(), __ -> new ArrayList<>(2)).add(child);
+			}
+			return child;
+		}
+
+		boolean isEmpty() {
+			return (listeners == null || listeners.isEmpty()) && (named == null || named.isEmpty()) && (multi == null || multi.isEmpty());
+		}
+
+		void removeChild(Node<L> child) {
+			if (child.element.isMulti())
+				multi.remove(child);
+			else {
+				List<Node<L>> children = named.get(child.element.getName());
+				children.remove(child);
+				if (children.isEmpty())
+					named.remove(child.element.getName());
+			}
+		}
+	}
+
+	private final Node<L> theRoot;
+	/** Listeners with no path, which are notified of all events */
+	private final List<Entry<L>> theAllListeners;
+	private long theOrder;
+	private volatile int theSize;
+
+	ConfigListenerTrie() {
+		theRoot = new Node<>(null, null);
+		theAllListeners = new ArrayList<>();
+	}
+
+	/** @return Whether this trie has no listeners */
+	boolean isEmpty() {
+		return theSize == 0;
+	}
+
+	/**
+	 * @param path The path of events to listen for, or null to listen to all events
+	 * @param listener The listener
+	 * @return A runnable to remove the listener
+	 */
+	synchronized Runnable add(ObservableConfigPath path, L listener) {
+		Entry<L> entry = new Entry<>(path, listener, theOrder++);
+		Node<L> node;
+		if (path == null) {
+			node = null;
+			theAllListeners.add(entry);
+		} else {
+			node = theRoot;
+			for (ObservableConfigPathElement el : path.getElements())
+				node = node.getChild(el, true);
+			if (node.listeners == null)
+				node.listeners = new ArrayList<>(2);
+			node.listeners.add(entry);
+		}
+		theSize++;
+		return () -> remove(node, entry);
+	}
+
+	private synchronized void remove(Node<L> node, Entry<L> entry) {
+		if (entry.isRemoved)
+			return;
+		entry.isRemoved = true;
+		theSize--;
+		if (node == null) {
+			theAllListeners.remove(entry);
+			return;
+		}
+		node.listeners.remove(entry);
+		// Prune empty branches
+		while (node.parent != null && node.isEmpty()) {
+			node.parent.removeChild(node);
+			node = node.parent;
+		}
+	}
+
+	/**
+	 * @param relativePath The path from the config whose listeners these are to the changed element
+	 * @return All listeners whose path matches the given path, in the order they were added
+	 */
+	List<Entry<L>> getMatches(List<ObservableConfig> relativePath) {
+		List<Entry<L>> matches;
+		synchronized (this) {
+			if (theSize == 0)
+				return Collections.emptyList();
+			matches = new ArrayList<>(theAllListeners);
+			collect(theRoot, relativePath, 0, matches);
+		}
+		if (matches.size() > 1) // Restore the order listeners were added in
+			Collections.sort(matches);
+		return matches;
+	}
+
+	/**
+	 * Collects listeners matching the given path. This mirrors the logic of {@link ObservableConfigPath#matches(List)}.
+	 *
+	 * @param node The trie node whose path elements have matched the first <code>depth</code> elements of the path
+	 * @param path The path to match
+	 * @param depth The number of elements in the path that have been matched
+	 * @param matches The list to add matching listeners to
+	 */
+	private void collect(Node<L> node, List<ObservableConfig> path, int depth, List<Entry<L>> matches) {
+		if (depth == path.size()) {
+			// The whole path has been matched. Listeners here match,
+			// as do listeners whose remaining elements are all multi-depth
+			if (node.listeners != null)
+				matches.addAll(node.listeners);
+			if (node.multi != null) {
+				for (Node<L> child : node.multi) {
+					if (child.element.isMultiDepth())
+						collect(child, path, depth, matches);
+				}
+			}
+			return;
+		}
+		// The path is longer than this node's path. Listeners here match if the last element is multi-depth.
+		if (node.element != null && node.element.isMultiDepth() && node.listeners != null)
+			matches.addAll(node.listeners);
+		ObservableConfig config = path.get(depth);
+		if (node.named != null) {
+			List<Node<L>> children = node.named.get(config.getName());
+			if (children != null) {
+				for (Node<L> child : children) {
+					if (child.element.matches(config))
+						collect(child, path, depth + 1, matches);
+				}
+			}
+		}
+		if (node.multi != null) {
+			for (Node<L> child : node.multi) {
+				if (child.element.matches(config))
+					collect(child, path, depth + 1, matches);
+			}
+		}
+	}
+}
@@ -1,7 +1,10 @@
 package org.observe.config;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.Objects;
 import java.util.function.Function;
 
@@ -19,11 +22,20 @@ import org.qommons.collect.BetterCollections;
 import org.qommons.collect.BetterList;
 import org.qommons.collect.CollectionLockingStrategy;
 import org.qommons.collect.ElementId;
-import org.qommons.collect.ListenerList;
+import org.qommons.collect.FastFailLockingStrategy;
 import org.qommons.collect.StampedLockingStrategy;
 import org.qommons.tree.BetterTreeList;
 
-/** Default, mutable implementation of {@link ObservableConfig} */
+/**
+ * <p>
+ * Default, mutable implementation of {@link ObservableConfig}.
+ * </p>
+ * <p>
+ * Nodes are kept compact so that very large configurations are practical. Names are interned, locking is done directly through the
+ * locking strategy shared by the whole tree, and a node's content list, listener index, and parsed value cache are only allocated when
+ * they are needed, so a leaf node is little more than its name and value. See {@link #getFootprint()}.
+ * </p>
+ */
 public class DefaultObservableConfig extends AbstractObservableConfig {
 	private ElementId theParentContentRef;
 	private final CollectionLockingStrategy theLocking;
@@ -31,9 +43,18 @@ public class DefaultObservableConfig extends AbstractObservableConfig {
 	private String theName;
 	private String theValue;
 	private boolean mayBeTrivial;
-	private final BetterList<ObservableConfig> theContent;
-	private final ListenerList<InternalObservableConfigListener> theListeners;
+	/** This config's content, or null if this config has never had children */
+	private BetterList<ObservableConfig> theContent;
+	private volatile XmlConfigLoader.LazyContent theLazyContent;
+	/** Null until this config is first listened to or has a parsed value cached */
+	private volatile Extras theExtras;
+	private boolean isFiring;
 	private long theModCount;
+	/**
+	 * The cached {@link #getContentHash() content hash}, or 0 if it needs to be computed. Volatile because it is computed under a read
+	 * lock, which may be held by several threads at once.
+	 */
+	private volatile long theContentHash;
 
 	/**
 	 * Root constructor. This is protected because this class should be instantiated from {@link #createRoot(String, String, Function)} or
@@ -47,9 +68,7 @@ public class DefaultObservableConfig extends AbstractObservableConfig {
 		if (name.length() == 0)
 			throw new IllegalArgumentException("Name must not be empty");
 		theLocking = locking.apply(this);
-		theName = name;
-		theContent = BetterTreeList.<ObservableConfig> build().withLocking(theLocking).build();
-		theListeners = ListenerList.build().build();
+		theName = name.intern();
 	}
 
 	/**
@@ -63,9 +82,7 @@ public class DefaultObservableConfig extends AbstractObservableConfig {
 		if (name.length() == 0)
 			throw new IllegalArgumentException("Name must not be empty");
 		theLocking = parent.theLocking;
-		theName = name;
-		theContent = BetterTreeList.<ObservableConfig> build().withLocking(theLocking).build();
-		theListeners = ListenerList.build().build();
+		theName = name.intern();
 	}
 
 	/**
@@ -117,28 +134,28 @@ public class DefaultObservableConfig extends AbstractObservableConfig {
 	@Override
 	public boolean isEventing() {
 		// A child cannot change as a result of a parent event
-		return theListeners.isFiring()//
+		return isFiring//
 			|| (theParentContentRef != null && getParent().isEventing());
 	}
 
 	@Override
 	public boolean isLockSupported() {
-		return theContent.isLockSupported();
+		return theLocking.isLockSupported();
 	}
 
 	@Override
 	public Transaction lock(boolean write, Object cause) {
-		return withCause(theContent.lock(write, cause), cause);
+		return withCause(theLocking.lock(write, cause), cause);
 	}
 
 	@Override
 	public Transaction tryLock(boolean write, Object cause) {
-		return withCause(theContent.tryLock(write, cause), cause);
+		return withCause(theLocking.tryLock(write, cause), cause);
 	}
 
 	@Override
 	public CoreId getCoreId() {
-		return theContent.getCoreId();
+		return theLocking.getCoreId();
 	}
 
 	private Transaction withCause(Transaction t, Object cause) {
@@ -183,7 +200,29 @@ public class DefaultObservableConfig extends AbstractObservableConfig {
 
 	@Override
 	public BetterList<ObservableConfig> getContent() {
-		return BetterCollections.unmodifiableList(theContent);
+		loadContent();
+		BetterList<ObservableConfig> content = theContent;
+		return content == null ? BetterList.empty() : BetterCollections.unmodifiableList(content);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The hash is cached. Each change clears the cached hash of the changed config and of its ancestors, so re-hashing after a change only
+	 * needs to visit the changed path.
+	 * </p>
+	 */
+	@Override
+	public long getContentHash() {
+		long hash = theContentHash;
+		if (hash == 0) {
+			try (Transaction t = lock(false, null)) {
+				hash = theContentHash;
+				if (hash == 0)
+					theContentHash = hash = ObservableConfigDiff.computeHash(this);
+			}
+		}
+		return hash;
 	}
 
 	@Override
@@ -199,7 +238,7 @@ public class DefaultObservableConfig extends AbstractObservableConfig {
 			throw new IllegalArgumentException("Name must not be empty");
 		try (Transaction t = lock(true, null)) {
 			String oldName = theName;
-			theName = name;
+			theName = name.intern();
 			fire(CollectionChangeType.set, null, BetterList.empty(), oldName, theValue);
 		}
 		return this;
@@ -224,7 +263,8 @@ public class DefaultObservableConfig extends AbstractObservableConfig {
 	@Override
 	protected void addChild(AbstractObservableConfig child, ObservableConfig after, ObservableConfig before, boolean first,
 		CollectionElementMove move) {
-		ElementId el = theContent.addElement(child, //
+		loadContent();
+		ElementId el = getOrCreateContent().addElement(child, //
 			after == null ? null : Objects.requireNonNull(after.getParentChildRef()),
 				before == null ? null : Objects.requireNonNull(before.getParentChildRef()), //
 					first).getElementId();
@@ -243,6 +283,144 @@ public class DefaultObservableConfig extends AbstractObservableConfig {
 		theParentContentRef = null;
 	}
 
+	/**
+	 * Creates a child of this config for {@link XmlConfigLoader loading}. The child is not added to this config's content.
+	 *
+	 * @param name The name for the child
+	 * @return The new child
+	 */
+	DefaultObservableConfig createLoadingChild(String name) {
+		DefaultObservableConfig child = (DefaultObservableConfig) createChild(name);
+		child.initialize(this, null);
+		return child;
+	}
+
+	/**
+	 * Adds a loaded child (from {@link #createLoadingChild(String)}) to this config's content, firing a single event for its whole subtree
+	 *
+	 * @param child The child to add
+	 */
+	void attachLoadedChild(DefaultObservableConfig child) {
+		addChild(child, null, null, false, null);
+	}
+
+	/**
+	 * Creates a child and adds it to the end of this config's content, without firing events. For {@link XmlConfigLoader loading} only,
+	 * on configs which are not yet part of the structure or have not yet been accessed.
+	 *
+	 * @param name The name for the child
+	 * @param value The value for the child
+	 * @return The new child
+	 */
+	DefaultObservableConfig loadChild(String name, String value) {
+		return loadChild(getOrCreateContent(), name, value);
+	}
+
+	/**
+	 * Creates a child and adds it to the end of the given list, which is to become this config's content, without firing events. For
+	 * {@link XmlConfigLoader.LazyContent#materializeInto(DefaultObservableConfig, BetterList) materializing} lazy content only.
+	 *
+	 * @param content The list to add the child to
+	 * @param name The name for the child
+	 * @param value The value for the child
+	 * @return The new child
+	 */
+	DefaultObservableConfig loadChild(BetterList<ObservableConfig> content, String name, String value) {
+		DefaultObservableConfig child = (DefaultObservableConfig) createChild(name);
+		child.theValue = value;
+		child.initialize(this, content.addElement(child, false).getElementId());
+		theContentHash = 0;
+		return child;
+	}
+
+	/** @param value The value for this config, set without firing events. For {@link XmlConfigLoader loading} only. */
+	void loadValue(String value) {
+		theValue = value;
+		theContentHash = 0;
+	}
+
+	/** @param content Content for this config, to be materialized when it is first accessed */
+	void setLazyContent(XmlConfigLoader.LazyContent content) {
+		theLazyContent = content;
+	}
+
+	/** @return Whether this config's content has been materialized */
+	boolean isContentLoaded() {
+		return theLazyContent == null;
+	}
+
+	private void loadContent() {
+		if (theLazyContent == null)
+			return;
+		// Content is commonly accessed under a read lock, which cannot be upgraded, so materialize under this config's monitor instead.
+		// The content is populated into a list that no other thread can see, guarded by its own fail-fast strategy
+		// (modifications to it happen under the config's write lock), then published by the volatile write to theLazyContent.
+		synchronized (this) {
+			XmlConfigLoader.LazyContent lazy = theLazyContent;
+			if (lazy == null)
+				return;
+			BetterList<ObservableConfig> content = BetterTreeList.<ObservableConfig> build()//
+				.withLocking(new FastFailLockingStrategy(theLocking.getThreadConstraint())).build();
+			lazy.materializeInto(this, content);
+			theContent = content;
+			theLazyContent = null;
+		}
+	}
+
+	private BetterList<ObservableConfig> getOrCreateContent() {
+		if (theContent == null)
+			theContent = BetterTreeList.<ObservableConfig> build().withLocking(theLocking).build();
+		return theContent;
+	}
+
+	private Extras getOrCreateExtras() {
+		Extras extras = theExtras;
+		if (extras == null) {
+			synchronized (this) {
+				extras = theExtras;
+				if (extras == null)
+					theExtras = extras = new Extras();
+			}
+		}
+		return extras;
+	}
+
+	private ConfigListenerTrie<Observer<? super ObservableConfigEvent>> getOrCreateListeners() {
+		Extras extras = getOrCreateExtras();
+		ConfigListenerTrie<Observer<? super ObservableConfigEvent>> listeners = extras.listeners;
+		if (listeners == null) {
+			synchronized (extras) {
+				listeners = extras.listeners;
+				if (listeners == null)
+					extras.listeners = listeners = new ConfigListenerTrie<>();
+			}
+		}
+		return listeners;
+	}
+
+	@Override
+	Object getCachedValue(Object format, String text) {
+		Extras extras = theExtras;
+		CachedValue cached = extras == null ? null : extras.cachedValue;
+		if (cached == null || cached.format != format || cached.text != text)
+			return NOT_CACHED;
+		return cached.value;
+	}
+
+	@Override
+	void cacheValue(Object format, String text, Object value) {
+		getOrCreateExtras().cachedValue = new CachedValue(format, text, value);
+	}
+
+	/** @return A report of the approximate heap used by this config and its descendants */
+	public Footprint getFootprint() {
+		Footprint footprint = new Footprint();
+		try (Transaction t = lock(false, null)) {
+			footprint.add(this);
+		}
+		return footprint;
+	}
+
 	@Override
 	public String toString() {
 		return ObservableConfig.toString(this);
@@ -267,18 +445,28 @@ public class DefaultObservableConfig extends AbstractObservableConfig {
 	private void _fire(CollectionChangeType eventType, CollectionElementMove move, BetterList<ObservableConfig> relativePath,
 		String oldName, String oldValue) {
 		theModCount++;
-		if (!theListeners.isEmpty() && !theListeners.isFiring()) {
-			ObservableConfigEvent event = new ObservableConfigEvent(eventType, move, this, oldName, oldValue, relativePath,
-				getCurrentCause());
-			try (Transaction t = event.use()) {
-				theListeners.forEach(intL -> {
-					if (intL.path == null || intL.path.matches(relativePath)) {
+		theContentHash = 0;
+		Extras extras = theExtras;
+		ConfigListenerTrie<Observer<? super ObservableConfigEvent>> trie = extras == null ? null : extras.listeners;
+		if (trie != null && !trie.isEmpty() && !isFiring) {
+			// Only listeners whose paths may match the change are visited
+			List<ConfigListenerTrie.Entry<Observer<? super ObservableConfigEvent>>> listeners = trie.getMatches(relativePath);
+			if (!listeners.isEmpty()) {
+				ObservableConfigEvent event = new ObservableConfigEvent(eventType, move, this, oldName, oldValue, relativePath,
+					getCurrentCause());
+				isFiring = true;
+				try (Transaction t = event.use()) {
+					for (ConfigListenerTrie.Entry<Observer<? super ObservableConfigEvent>> listener : listeners) {
+						if (listener.isRemoved)
+							continue;
 						if (relativePath.isEmpty() && eventType == CollectionChangeType.remove)
-							intL.listener.onCompleted(event);
+							listener.listener.onCompleted(event);
 						else
-							intL.listener.onNext(event);
+							listener.listener.onNext(event);
 					}
-				});
+				} finally {
+					isFiring = false;
+				}
 			}
 		}
 		boolean fireWithParent;
@@ -301,21 +489,6 @@ public class DefaultObservableConfig extends AbstractObservableConfig {
 		return BetterList.of(array);
 	}
 
-	private static class InternalObservableConfigListener {
-		final ObservableConfigPath path;
-		final Observer<? super ObservableConfigEvent> listener;
-
-		InternalObservableConfigListener(ObservableConfigPath path, Observer<? super ObservableConfigEvent> observer) {
-			this.path = path;
-			this.listener = observer;
-		}
-
-		@Override
-		public String toString() {
-			return path + ":" + listener;
-		}
-	}
-
 	private static class ObservableConfigChangesObservable implements Observable<ObservableConfigEvent> {
 		private final DefaultObservableConfig theConfig;
 		private final ObservableConfigPath thePath;
@@ -335,7 +508,7 @@ public class DefaultObservableConfig extends AbstractObservableConfig {
 
 		@Override
 		public Subscription subscribe(Observer<? super ObservableConfigEvent> observer) {
-			return theConfig.theListeners.add(new InternalObservableConfigListener(thePath, observer), true)::run;
+			return theConfig.getOrCreateListeners().add(thePath, observer)::run;
 		}
 
 		@Override
@@ -368,4 +541,131 @@ public class DefaultObservableConfig extends AbstractObservableConfig {
 			return theConfig.getCoreId();
 		}
 	}
+
+	/** State that most config nodes never need, kept out of the node itself so that it costs nodes without it only a single reference */
+	private static class Extras {
+		/** Null until the config is first listened to */
+		volatile ConfigListenerTrie<Observer<? super ObservableConfigEvent>> listeners;
+		/** The value most recently parsed from or formatted to the config's value */
+		volatile CachedValue cachedValue;
+	}
+
+	private static class CachedValue {
+		final Object format;
+		final String text;
+		final Object value;
+
+		CachedValue(Object format, String text, Object value) {
+			this.format = format;
+			this.text = text;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * An approximate report of the heap used by a config tree, for diagnosing the memory use of large configurations. Sizes are estimated
+	 * for a 64-bit VM with compressed references. The unmaterialized content of lazily-loaded configs is not included.
+	 */
+	public static class Footprint {
+		private static final int NODE_BYTES = 72;
+		/** The tree node holding a config in its parent's content */
+		private static final int CONTENT_ELEMENT_BYTES = 40;
+		private static final int CONTENT_LIST_BYTES = 96;
+		private static final int LISTENER_TRIE_BYTES = 104;
+		/** An {@link Extras} instance */
+		private static final int EXTRAS_BYTES = 16;
+		/** A cached parsed value, not including the value itself, which is shared with the structures using the config */
+		private static final int CACHED_VALUE_BYTES = 24;
+		private static final int STRING_BYTES = 24;
+
+		private final Set<String> theNames;
+		private long theNodes;
+		private long theContentLists;
+		private long theExtras;
+		private long theListenerTries;
+		private long theCachedValues;
+		private long theLazyNodes;
+		private long theStringBytes;
+
+		Footprint() {
+			theNames = Collections.newSetFromMap(new IdentityHashMap<>());
+		}
+
+		void add(DefaultObservableConfig config) {
+			theNodes++;
+			if (theNames.add(config.theName))
+				theStringBytes += stringBytes(config.theName);
+			if (config.theValue != null)
+				theStringBytes += stringBytes(config.theValue);
+			Extras extras = config.theExtras;
+			if (extras != null) {
+				theExtras++;
+				if (extras.listeners != null)
+					theListenerTries++;
+				if (extras.cachedValue != null)
+					theCachedValues++;
+			}
+			if (config.theLazyContent != null)
+				theLazyNodes++;
+			if (config.theContent != null) {
+				theContentLists++;
+				for (ObservableConfig child : config.theContent)
+					add((DefaultObservableConfig) child);
+			}
+		}
+
+		private static long stringBytes(String str) {
+			// String object, plus its (compact) character array
+			return STRING_BYTES + ((16 + str.length() + 7) & ~7);
+		}
+
+		/** @return The number of config nodes in the tree */
+		public long getNodes() {
+			return theNodes;
+		}
+
+		/** @return The number of distinct name instances in the tree */
+		public int getDistinctNames() {
+			return theNames.size();
+		}
+
+		/** @return The number of nodes for which a content list has been allocated */
+		public long getContentLists() {
+			return theContentLists;
+		}
+
+		/** @return The number of nodes for which a listener index has been allocated */
+		public long getListenerTries() {
+			return theListenerTries;
+		}
+
+		/** @return The number of nodes for which a parsed value has been cached */
+		public long getCachedValues() {
+			return theCachedValues;
+		}
+
+		/** @return The number of nodes whose content has not yet been materialized */
+		public long getLazyNodes() {
+			return theLazyNodes;
+		}
+
+		/** @return The approximate number of bytes used by the tree */
+		public long getEstimatedBytes() {
+			return theNodes * (NODE_BYTES + CONTENT_ELEMENT_BYTES) + theContentLists * CONTENT_LIST_BYTES + theExtras * EXTRAS_BYTES
+				+ theListenerTries * LISTENER_TRIE_BYTES + theCachedValues * CACHED_VALUE_BYTES + theStringBytes;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder str = new StringBuilder().append(theNodes).append(" nodes, ").append(theNames.size()).append(" names, ")
+				.append(theContentLists).append(" content lists, ").append(theListenerTries).append(" listener tries, ")
+				.append(theCachedValues).append(" cached values");
+			if (theLazyNodes > 0)
+				str.append(", ").append(theLazyNodes).append(" lazy");
+			str.append(": ~").append(getEstimatedBytes()).append(" bytes");
+			if (theNodes > 0)
+				str.append(" (").append(getEstimatedBytes() / theNodes).append("/node)");
+			return str.toString();
+		}
+	}
 }
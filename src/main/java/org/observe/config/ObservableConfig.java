@@ -2,9 +2,9 @@ package org.observe.config;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.io.Writer;
@@ -251,6 +251,17 @@ public interface ObservableConfig extends Nameable, Transactable, Stamped, Event
 	/** @return This config element's children */
 	BetterList<ObservableConfig> getContent();
 
+	/**
+	 * @return A hash of this config element's name, value, and content (recursively, in order). Identical trees have equal hashes, and
+	 *         different trees almost certainly have different hashes.
+	 * @see ObservableConfigDiff
+	 */
+	default long getContentHash() {
+		try (Transaction t = lock(false, null)) {
+			return ObservableConfigDiff.computeHash(this);
+		}
+	}
+
 	/** @return This config element's children as an {@link SyncValueSet#create() addable} value set */
 	default SyncValueSet<? extends ObservableConfig> getAllContent() {
 		return getContent(ObservableConfigPath.ANY_NAME);
@@ -1094,7 +1105,8 @@ public interface ObservableConfig extends Nameable, Transactable, Stamped, Event
 	}
 
 	/**
-	 * Causes this config element to be persisted every time anything changes
+	 * Causes this config element to be persisted every time anything changes. Each persistence writes the entire config, so for large
+	 * configs with frequent small changes, an {@link ObservableConfigJournal} may be preferable.
 	 *
 	 * @param <E> The type of exception that the persistence may throw
 	 * @param persistence The persistence to use to persist the configuration
@@ -1107,8 +1119,27 @@ public interface ObservableConfig extends Nameable, Transactable, Stamped, Event
 	}
 
 	/**
-	 * Persists a config element whenever an event occurs
+	 * Causes this config element to be persisted on a background thread after changes. Unlike
+	 * {@link #persistOnChange(ObservableConfigPersistence, Consumer)}, serialization and I/O are not performed on the thread making the
+	 * change, and bursts of changes are coalesced into a single write. Before each write, the background thread encodes this config into a
+	 * compact in-memory buffer under its read lock, so writers are only blocked for the duration of the encoding.
+	 *
+	 * @param <E> The type of exception that the persistence may throw
+	 * @param quietPeriod The amount of time to wait after a change with no further changes before persisting
+	 * @param persistence The persistence to use to persist the configuration
+	 * @param onException The listener for persistence failure
+	 * @return The persister, which may be {@link BackgroundConfigPersister#unsubscribe() unsubscribed} to stop persisting
+	 */
+	default <E extends Exception> BackgroundConfigPersister<E> persistInBackground(Duration quietPeriod,
+		ObservableConfigPersistence<E> persistence, Consumer<? super Exception> onException) {
+		return new BackgroundConfigPersister<>(this, watch(ObservableConfigPath.buildPath("").multi(true).build()), quietPeriod,
+			persistence, onException);
+	}
+
+	/**
+	 * Persists a config element whenever an event occurs. Persistence is performed on the thread firing the event.
 	 *
+	 * @see #persistInBackground(Duration, ObservableConfigPersistence, Consumer)
 	 * @param <E> The type of exception that the persistence may throw
 	 * @param observable The event to persist on
 	 * @param persistence The persistence to use to persist the configuration
@@ -1149,24 +1180,52 @@ public interface ObservableConfig extends Nameable, Transactable, Stamped, Event
 	}
 
 	/**
-	 * A factory method to create a persistence operator for storing config in XML to a file
+	 * A factory method to create a persistence operator for storing config in XML to a file. The config is written to a temporary file
+	 * which then replaces the target file, so the file is never left partially written.
 	 *
 	 * @param file The file to persist to
 	 * @param encoding The XML encoding to use for XML persistence
 	 * @return The persistence operation to use
 	 */
 	public static ObservableConfigPersistence<IOException> toFile(File file, XmlEncoding encoding) {
-		return toWriter(new WriterSupplier() {
+		return new ObservableConfigPersistence<IOException>() {
 			@Override
-			public Writer createWriter() throws IOException {
-				return new BufferedWriter(new FileWriter(file));
+			public void persist(ObservableConfig cfg) throws IOException {
+				ConfigIO.writeAtomically(file, out -> {
+					Writer w = new BufferedWriter(new OutputStreamWriter(out));
+					ObservableConfig.writeXml(cfg, w, encoding, "\t");
+					w.flush();
+				});
 			}
 
 			@Override
 			public String toString() {
 				return file.getPath();
 			}
-		}, encoding);
+		};
+	}
+
+	/**
+	 * A factory method to create a persistence operator for storing config to a file in the
+	 * {@link #writeBinary(ObservableConfig, OutputStream, boolean) binary format}. Like {@link #toFile(File, XmlEncoding)}, the file is
+	 * replaced atomically.
+	 *
+	 * @param file The file to persist to
+	 * @param compress Whether to compress the data
+	 * @return The persistence operation to use
+	 */
+	public static ObservableConfigPersistence<IOException> toBinaryFile(File file, boolean compress) {
+		return new ObservableConfigPersistence<IOException>() {
+			@Override
+			public void persist(ObservableConfig cfg) throws IOException {
+				ConfigIO.writeAtomically(file, out -> writeBinary(cfg, out, compress));
+			}
+
+			@Override
+			public String toString() {
+				return "PersistBinary:" + file.getPath();
+			}
+		};
 	}
 
 	/**
@@ -1415,6 +1474,36 @@ public interface ObservableConfig extends Nameable, Transactable, Stamped, Event
 		}
 	}
 
+	/**
+	 * <p>
+	 * Writes a config element and its content in a compact binary format, which is much faster to write and to
+	 * {@link #readBinary(ObservableConfig, InputStream) read} than XML. Element names are stored in a string table, so repeated names cost
+	 * little, and no escaping is needed for any names or values.
+	 * </p>
+	 * <p>
+	 * XML remains the format for interchange and hand-editing. The binary format is intended for snapshots of large configs.
+	 * </p>
+	 *
+	 * @param config The config to write
+	 * @param out The stream to write to. The stream is flushed but not closed.
+	 * @param compress Whether to compress the data
+	 * @throws IOException If the stream throws an exception
+	 */
+	public static void writeBinary(ObservableConfig config, OutputStream out, boolean compress) throws IOException {
+		BinaryConfigFormat.write(config, out, compress);
+	}
+
+	/**
+	 * Populates an ObservableConfig from a stream written by {@link #writeBinary(ObservableConfig, OutputStream, boolean)}
+	 *
+	 * @param config The config to populate. Its name and value will be replaced and its content synchronized with the data in the stream.
+	 * @param in The input stream containing the binary data
+	 * @throws IOException If an error occurs reading the stream or the stream is not in the binary config format
+	 */
+	public static void readBinary(ObservableConfig config, InputStream in) throws IOException {
+		BinaryConfigFormat.read(config, in);
+	}
+
 	/**
 	 * Populates an ObservableConfig from an XML stream
 	 *
@@ -1426,6 +1515,45 @@ public interface ObservableConfig extends Nameable, Transactable, Stamped, Event
 	 * @throws TextParseException If an error occurs parsing the document
 	 */
 	public static void readXml(ObservableConfig config, InputStream in, XmlEncoding encoding) throws IOException, TextParseException {
+		readXml(config, in, encoding, 0);
+	}
+
+	/**
+	 * <p>
+	 * Populates an ObservableConfig from an XML stream.
+	 * </p>
+	 * <p>
+	 * If the config is a {@link #createRoot(String, ThreadConstraint) default} config with no content, the document is built directly into
+	 * it as it is parsed, firing a single event for each top-level element (child of the root) with its whole subtree. Otherwise, the
+	 * document is parsed fully and then synchronized with the existing content.
+	 * </p>
+	 * <p>
+	 * When loading directly, a positive <code>lazyThreshold</code> causes the content of top-level elements with at least that many
+	 * descendants to be kept in a compact encoded form, materialized one level at a time only when first accessed. This makes loading
+	 * large documents of which only parts are used much faster and lighter. The lock of the config is held for the duration of the
+	 * parse. Materializing a level does not take the config's lock, so content may be accessed under a read lock.
+	 * </p>
+	 *
+	 * @param config The config to populate. If the config is not initially empty, content in the form of attributes or elements will be
+	 *        appended, the value of the config will be replaced.
+	 * @param in The input stream containing the XML data
+	 * @param encoding The scheme to use for decoding illegal XML names from their serialized forms
+	 * @param lazyThreshold The minimum number of descendants for which a top-level element's content will be loaded lazily, or 0 to load
+	 *        everything eagerly
+	 * @throws IOException If an error occurs reading the document
+	 * @throws TextParseException If an error occurs parsing the document
+	 */
+	public static void readXml(ObservableConfig config, InputStream in, XmlEncoding encoding, int lazyThreshold)
+		throws IOException, TextParseException {
+		if (config instanceof DefaultObservableConfig) {
+			try (Transaction t = config.lock(true, null)) {
+				if (config.getContent().isEmpty()) {
+					XmlConfigLoader loader = new XmlConfigLoader((DefaultObservableConfig) config, encoding, lazyThreshold);
+					new SimpleXMLParser().parseXml(null, in, loader);
+					return;
+				}
+			}
+		}
 		class ParsedConfig {
 			final String name;
 			String value;
@@ -1503,7 +1631,7 @@ public interface ObservableConfig extends Nameable, Transactable, Stamped, Event
 				theStack.add(newConfig);
 				if (theContentStack.size() < theStack.size())
 					theContentStack.add(new StringBuilder());
-				hasElementContent.set(theStack.size(), false);
+				hasElementContent.set(theStack.size() - 1, false);
 			}
 
 			@Override
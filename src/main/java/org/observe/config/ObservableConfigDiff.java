@@ -0,0 +1,198 @@
+package org.observe.config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.qommons.Transaction;
+
+/**
+ * <p>
+ * Computes the differences between two {@link ObservableConfig} trees using their {@link ObservableConfig#getContentHash() content
+ * hashes}.
+ * </p>
+ * <p>
+ * The hash of a config element covers its name, its value, and the hashes of its children, in order, so two subtrees with equal hashes are
+ * (almost certainly) identical and need not be compared further. {@link DefaultObservableConfig} caches its hash, invalidating it along the
+ * ancestor path of each change, so the diff only descends into the subtrees that have changed, and only those subtrees are re-hashed.
+ * </p>
+ */
+public class ObservableConfigDiff {
+	/** The type of a {@link Difference} */
+	public enum DiffType {
+		/** An element present only in the right tree */
+		ADDED,
+		/** An element present only in the left tree */
+		REMOVED,
+		/** An element present in both trees, but with a different name or value */
+		MODIFIED
+	}
+
+	/** A difference between two config trees */
+	public static class Difference {
+		private final DiffType theType;
+		private final ObservableConfig theLeft;
+		private final ObservableConfig theRight;
+
+		Difference(DiffType type, ObservableConfig left, ObservableConfig right) {
+			theType = type;
+			theLeft = left;
+			theRight = right;
+		}
+
+		/** @return The type of this difference */
+		public DiffType getType() {
+			return theType;
+		}
+
+		/** @return The element in the left tree, or null if this difference is an {@link DiffType#ADDED addition} */
+		public ObservableConfig getLeft() {
+			return theLeft;
+		}
+
+		/** @return The element in the right tree, or null if this difference is a {@link DiffType#REMOVED removal} */
+		public ObservableConfig getRight() {
+			return theRight;
+		}
+
+		@Override
+		public String toString() {
+			switch (theType) {
+			case ADDED:
+				return "+" + theRight.getPath();
+			case REMOVED:
+				return "-" + theLeft.getPath();
+			default:
+				return "*" + theLeft.getPath() + "=" + theRight.getValue();
+			}
+		}
+	}
+
+	private static final long PRIME = 0x100000001B3L;
+
+	private ObservableConfigDiff() {
+	}
+
+	/**
+	 * <p>
+	 * Computes the differences between two config trees.
+	 * </p>
+	 * <p>
+	 * Children are matched first by content hash (identical subtrees, even if moved, are not differences), then by name, in order. Matched
+	 * children with different content are compared recursively. Unmatched children are reported as a single addition or removal of the
+	 * whole subtree.
+	 * </p>
+	 *
+	 * @param left The left (e.g. old) config tree
+	 * @param right The right (e.g. new) config tree
+	 * @return The differences between the two trees, in depth-first order
+	 */
+	public static List<Difference> diff(ObservableConfig left, ObservableConfig right) {
+		List<Difference> diffs = new ArrayList<>();
+		try (Transaction lt = left.lock(false, null); Transaction rt = right.lock(false, null)) {
+			diff(left, right, diffs);
+		}
+		return diffs;
+	}
+
+	private static void diff(ObservableConfig left, ObservableConfig right, List<Difference> diffs) {
+		if (left.getContentHash() == right.getContentHash())
+			return;
+		if (!left.getName().equals(right.getName()) || !Objects.equals(left.getValue(), right.getValue()))
+			diffs.add(new Difference(DiffType.MODIFIED, left, right));
+		List<ObservableConfig> leftContent = left.getContent();
+		List<ObservableConfig> rightContent = right.getContent();
+		// Skip the common prefix and suffix, which is all that is needed for the typical case of a few changed children
+		int start = 0;
+		int leftEnd = leftContent.size(), rightEnd = rightContent.size();
+		while (start < leftEnd && start < rightEnd
+			&& leftContent.get(start).getContentHash() == rightContent.get(start).getContentHash())
+			start++;
+		while (leftEnd > start && rightEnd > start
+			&& leftContent.get(leftEnd - 1).getContentHash() == rightContent.get(rightEnd - 1).getContentHash()) {
+			leftEnd--;
+			rightEnd--;
+		}
+		if (start == leftEnd) {
+			for (int i = start; i < rightEnd; i++)
+				diffs.add(new Difference(DiffType.ADDED, null, rightContent.get(i)));
+			return;
+		} else if (start == rightEnd) {
+			for (int i = start; i < leftEnd; i++)
+				diffs.add(new Difference(DiffType.REMOVED, leftContent.get(i), null));
+			return;
+		}
+
+		// Match identical subtrees
+		Map<Long, ArrayDeque<ObservableConfig>> rightByHash = new HashMap<>();
+		for (int i = start; i < rightEnd; i++)
+			rightByHash.computeIfAbsent(rightContent.get(i).getContentHash(), __ -> new ArrayDeque<>()).add(rightContent.get(i));
+		Set<ObservableConfig> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<ObservableConfig> leftRemaining = new ArrayList<>();
+		for (int i = start; i < leftEnd; i++) {
+			ArrayDeque<ObservableConfig> same = rightByHash.get(leftContent.get(i).getContentHash());
+			if (same != null && !same.isEmpty())
+				matched.add(same.poll());
+			else
+				leftRemaining.add(leftContent.get(i));
+		}
+		// Match the remaining children by name, in order
+		Map<String, ArrayDeque<ObservableConfig>> rightByName = new HashMap<>();
+		for (int i = start; i < rightEnd; i++) {
+			if (!matched.contains(rightContent.get(i)))
+				rightByName.computeIfAbsent(rightContent.get(i).getName(), __ -> new ArrayDeque<>()).add(rightContent.get(i));
+		}
+		for (ObservableConfig leftChild : leftRemaining) {
+			ArrayDeque<ObservableConfig> named = rightByName.get(leftChild.getName());
+			ObservableConfig rightChild = named == null ? null : named.poll();
+			if (rightChild != null) {
+				matched.add(rightChild);
+				diff(leftChild, rightChild, diffs);
+			} else
+				diffs.add(new Difference(DiffType.REMOVED, leftChild, null));
+		}
+		for (int i = start; i < rightEnd; i++) {
+			if (!matched.contains(rightContent.get(i)))
+				diffs.add(new Difference(DiffType.ADDED, null, rightContent.get(i)));
+		}
+	}
+
+	/**
+	 * @param config The config to hash. The caller must hold the config's read lock.
+	 * @return The content hash of the config, computed from its name, value, and the content hashes of its children. Never zero.
+	 */
+	static long computeHash(ObservableConfig config) {
+		long hash = hashString(config.getName());
+		hash = hash * PRIME + hashString(config.getValue());
+		for (ObservableConfig child : config.getContent())
+			hash = hash * PRIME + child.getContentHash();
+		// Finalization mix from MurmurHash3, so that similar trees have very different hashes
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash == 0 ? 1 : hash;
+	}
+
+	/**
+	 * @param str The string to hash
+	 * @return A 64-bit FNV-1a hash of the string
+	 */
+	private static long hashString(String str) {
+		if (str == null)
+			return 0;
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < str.length(); i++) {
+			hash ^= str.charAt(i);
+			hash *= PRIME;
+		}
+		return hash;
+	}
+}
@@ -1545,9 +1545,14 @@ public interface ObservableConfigFormat<E> {
 					else
 						formatted = format.format(value);
 				}
-				boolean change = !Objects.equals(formatted, config.getConfig(true, false).getValue());
-				if (change)
-					config.getConfig(true, false).setValue(formatted);
+				ObservableConfig target = config.getConfig(true, false);
+				boolean change = !Objects.equals(formatted, target.getValue());
+				if (change) {
+					// Cache the value so the change event fired by setting the text does not need to parse it again
+					if (value != ConfigurableValueCreator.NOT_SET && target instanceof AbstractObservableConfig && isImmutable(value))
+						((AbstractObservableConfig) target).cacheValue(format, formatted, value);
+					target.setValue(formatted);
+				}
 				return change;
 			}
 
@@ -1561,12 +1566,42 @@ public interface ObservableConfigFormat<E> {
 					return defaultValue == null ? null : defaultValue.get();
 				if (ctx.getChange() != null && ctx.getChange().relativePath.size() > 1)
 					return ctx.getPreviousValue(); // Changing a sub-config doesn't affect this value
+				AbstractObservableConfig cacheConfig = config instanceof AbstractObservableConfig ? (AbstractObservableConfig) config
+					: null;
+				if (cacheConfig != null) {
+					Object cached = cacheConfig.getCachedValue(format, value);
+					if (cached != AbstractObservableConfig.NOT_CACHED)
+						return (T) cached;
+				}
+				T parsed;
 				try {
-					return format.parse(value);
+					parsed = format.parse(value);
 				} catch (ParseException e) {
 					e.printStackTrace();
 					return defaultValue == null ? null : defaultValue.get();
 				}
+				if (cacheConfig != null && isImmutable(parsed))
+					cacheConfig.cacheValue(format, value, parsed);
+				return parsed;
+			}
+
+			/**
+			 * Parsed values are shared between all the structures parsing the same config with the same format, so only values that
+			 * cannot be modified may be cached.
+			 *
+			 * @param value The value to test
+			 * @return Whether the value is of a type known to be immutable
+			 */
+			private static boolean isImmutable(Object value) {
+				if (value == null || value instanceof Enum)
+					return true;
+				Class<?> type = value.getClass();
+				if (type == String.class || type == Boolean.class || type == Character.class)
+					return true;
+				String typeName = type.getName();
+				if (value instanceof Number)
+					return typeName.startsWith("java.lang.") || typeName.startsWith("java.math.");
+				return typeName.startsWith("java.time.");
 			}
 
 			@Override
@@ -0,0 +1,563 @@
+package org.observe.config;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.observe.Subscription;
+import org.observe.config.ObservableConfig.ObservableConfigEvent;
+import org.qommons.Transaction;
+import org.qommons.collect.BetterList;
+import org.qommons.threading.QommonsTimer;
+
+/**
+ * <p>
+ * Journaled persistence for an {@link ObservableConfig}. Where
+ * {@link ObservableConfig#persistOnChange(ObservableConfig.ObservableConfigPersistence, Consumer) persistOnChange} re-writes the entire
+ * document for every change, a journal appends a compact record of each change (the index path of the changed element, the type of the
+ * change, and the new name, value, or content) to a journal file. Records are written and synced to disk in batches, on an interval.
+ * </p>
+ * <p>
+ * When the journal grows past a threshold, it is compacted in the background into a fresh snapshot of the whole config, after which a new,
+ * empty journal is started. When a journal is {@link Builder#open(ObservableConfig, Consumer) opened}, the snapshot is loaded into the
+ * config and the journal is replayed on top of it. A record that was only partially written (e.g. because of a crash) is discarded, along
+ * with anything after it.
+ * </p>
+ * <p>
+ * The snapshot is stored in the same compact format as the journal's records rather than as XML. Elements are identified in the journal by
+ * their index in their parent, so the snapshot must contain every element, including {@link ObservableConfig#isTrivial() trivial} ones
+ * that XML persistence would omit.
+ * </p>
+ * <p>
+ * Journals are numbered by generation. Given a snapshot file <code>config.dat</code>, generation 5 of the journal is stored in
+ * <code>config.dat.journal.5</code>. Compaction captures the config and starts a new journal generation at the same moment, then writes the
+ * snapshot (to <code>config.dat.tmp</code>, which then replaces the snapshot) tagged with the last generation it contains. Only then are
+ * the journals it contains deleted, so an interruption at any point leaves a snapshot and journals that load to the latest state.
+ * </p>
+ */
+public class ObservableConfigJournal implements AutoCloseable {
+	private static final int SNAPSHOT_MAGIC = 0x4F435331; // OCS1
+	private static final int JOURNAL_MAGIC = 0x4F434A31; // OCJ1
+
+	private static final byte ADD = 'A';
+	private static final byte REMOVE = 'R';
+	private static final byte SET_NAME = 'N';
+	private static final byte SET_VALUE = 'V';
+
+	/** Default interval at which journal records are written and synced to disk */
+	public static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofMillis(250);
+	/** Default journal size, in bytes, past which the journal is compacted into a new snapshot */
+	public static final long DEFAULT_COMPACT_THRESHOLD = 4L * 1024 * 1024;
+
+	/**
+	 * @param snapshot The file to store the config's snapshot in. The journal and temporary files are stored beside it.
+	 * @return A builder to configure and open the journal
+	 */
+	public static Builder build(File snapshot) {
+		return new Builder(snapshot);
+	}
+
+	/** Builds an {@link ObservableConfigJournal} */
+	public static class Builder {
+		private final File theSnapshot;
+		private Duration theSyncInterval;
+		private long theCompactThreshold;
+
+		Builder(File snapshot) {
+			theSnapshot = snapshot;
+			theSyncInterval = DEFAULT_SYNC_INTERVAL;
+			theCompactThreshold = DEFAULT_COMPACT_THRESHOLD;
+		}
+
+		/**
+		 * @param syncInterval The interval at which journal records should be written and synced to disk
+		 * @return This builder
+		 */
+		public Builder withSyncInterval(Duration syncInterval) {
+			if (syncInterval.isNegative() || syncInterval.isZero())
+				throw new IllegalArgumentException("Sync interval must be positive: " + syncInterval);
+			theSyncInterval = syncInterval;
+			return this;
+		}
+
+		/**
+		 * @param compactThreshold The journal size, in bytes, past which the journal should be compacted into a new snapshot
+		 * @return This builder
+		 */
+		public Builder withCompactThreshold(long compactThreshold) {
+			theCompactThreshold = compactThreshold;
+			return this;
+		}
+
+		/**
+		 * Loads the snapshot and replays the journal (if they exist) into the config, then begins journaling changes to the config
+		 *
+		 * @param config The config to load and journal
+		 * @param onException Accepts exceptions that occur writing the journal or compacting it. If null, they are printed to standard
+		 *        error.
+		 * @return The journal
+		 * @throws IOException If the snapshot or journal cannot be read, or the journal cannot be opened for writing
+		 */
+		public ObservableConfigJournal open(ObservableConfig config, Consumer<? super Exception> onException) throws IOException {
+			ObservableConfigJournal journal = new ObservableConfigJournal(config, theSnapshot, theSyncInterval, theCompactThreshold,
+				onException);
+			journal.load(true);
+			return journal;
+		}
+
+		/**
+		 * Loads the snapshot and replays the journal (if they exist) into the config, without journaling changes or modifying any files
+		 *
+		 * @param config The config to load
+		 * @throws IOException If the snapshot or journal cannot be read
+		 */
+		public void load(ObservableConfig config) throws IOException {
+			new ObservableConfigJournal(config, theSnapshot, theSyncInterval, theCompactThreshold, null).load(false);
+		}
+	}
+
+	private final ObservableConfig theConfig;
+	private final File theSnapshotFile;
+	private final File theTempFile;
+	private final long theCompactThreshold;
+	private final Consumer<? super Exception> theExceptionHandler;
+	private final Duration theSyncInterval;
+	private QommonsTimer.TaskHandle theSyncTask;
+
+	private final ByteArrayOutputStream thePending;
+	private final DataOutputStream thePendingData;
+	private final ByteArrayOutputStream theRecord;
+	private final DataOutputStream theRecordData;
+	private final CRC32 theChecksum;
+	private FileOutputStream theJournalOut;
+	private long theGeneration;
+	private long theJournalSize;
+	private boolean isCompacting;
+	private Subscription theListener;
+	private volatile boolean isClosed;
+
+	ObservableConfigJournal(ObservableConfig config, File snapshot, Duration syncInterval, long compactThreshold,
+		Consumer<? super Exception> onException) {
+		theConfig = config;
+		theSnapshotFile = snapshot;
+		theTempFile = new File(snapshot.getPath() + ".tmp");
+		theCompactThreshold = compactThreshold;
+		theExceptionHandler = onException != null ? onException : Throwable::printStackTrace;
+		thePending = new ByteArrayOutputStream();
+		thePendingData = new DataOutputStream(thePending);
+		theRecord = new ByteArrayOutputStream();
+		theRecordData = new DataOutputStream(theRecord);
+		theChecksum = new CRC32();
+		theSyncInterval = syncInterval;
+	}
+
+	/** @return The config being journaled */
+	public ObservableConfig getConfig() {
+		return theConfig;
+	}
+
+	/** @return The current size of the journal file, in bytes, not including records not yet written */
+	public synchronized long getJournalSize() {
+		return theJournalSize;
+	}
+
+	private void load(boolean open) throws IOException {
+		try (Transaction t = theConfig.lock(true, null)) {
+			long snapshotGeneration = -1;
+			if (theSnapshotFile.exists()) {
+				try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(theSnapshotFile)))) {
+					if (in.readInt() != SNAPSHOT_MAGIC)
+						throw new IOException("Not a config snapshot: " + theSnapshotFile.getPath());
+					snapshotGeneration = in.readLong();
+					readInto(theConfig, in);
+				}
+			}
+			theGeneration = snapshotGeneration;
+			for (long generation : getJournalGenerations()) {
+				if (generation > snapshotGeneration) {
+					replay(getJournalFile(generation), open);
+					theGeneration = generation;
+				} else if (open) // Left over from a compaction that was interrupted after the snapshot was written
+					Files.deleteIfExists(getJournalFile(generation).toPath());
+			}
+			if (!open)
+				return;
+			Files.deleteIfExists(theTempFile.toPath());
+			if (theGeneration > snapshotGeneration) // Continue the latest journal
+				startJournal(theGeneration, getJournalFile(theGeneration).length());
+			else
+				startJournal(theGeneration + 1, 0);
+			theListener = theConfig.watch(ObservableConfigPath.buildPath("").multi(true).build()).act(this::record);
+		}
+		theSyncTask = QommonsTimer.getCommonInstance().build(this::sync, theSyncInterval, false);
+		theSyncTask.setActive(true);
+	}
+
+	private File getJournalFile(long generation) {
+		return new File(theSnapshotFile.getPath() + ".journal." + generation);
+	}
+
+	private List<Long> getJournalGenerations() {
+		File dir = theSnapshotFile.getAbsoluteFile().getParentFile();
+		String prefix = theSnapshotFile.getName() + ".journal.";
+		String[] names = dir == null ? null : dir.list();
+		if (names == null)
+			return Collections.emptyList();
+		List<Long> generations = new ArrayList<>();
+		for (String name : names) {
+			if (name.startsWith(prefix)) {
+				try {
+					generations.add(Long.parseLong(name.substring(prefix.length())));
+				} catch (NumberFormatException e) {
+					// Not one of ours
+				}
+			}
+		}
+		Collections.sort(generations);
+		return generations;
+	}
+
+	/** Must be called under the config lock or this journal's monitor */
+	private void startJournal(long generation, long existingSize) throws IOException {
+		theGeneration = generation;
+		if (existingSize >= 4) {
+			theJournalOut = new FileOutputStream(getJournalFile(generation), true);
+			theJournalSize = existingSize;
+		} else {
+			theJournalOut = new FileOutputStream(getJournalFile(generation), false);
+			DataOutputStream header = new DataOutputStream(theJournalOut);
+			header.writeInt(JOURNAL_MAGIC);
+			header.flush();
+			theJournalSize = 4;
+		}
+	}
+
+	/**
+	 * Replays the journal file into the config
+	 *
+	 * @param file The journal file to replay
+	 * @param repair Whether to truncate any invalid content from the end of the file
+	 * @throws IOException If the journal cannot be read
+	 */
+	private void replay(File file, boolean repair) throws IOException {
+		long valid = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (file.length() < 4)
+				valid = 0;
+			else if (in.readInt() != JOURNAL_MAGIC)
+				throw new IOException("Not a config journal: " + file.getPath());
+			else {
+				valid = 4;
+				byte[] buffer = new byte[256];
+				CRC32 checksum = new CRC32();
+				while (true) {
+					int length;
+					try {
+						length = ConfigIO.readVarInt(in);
+						if (length < 0 || length > file.length())
+							break;
+						if (buffer.length < length)
+							buffer = new byte[Math.max(length, buffer.length * 2)];
+						in.readFully(buffer, 0, length);
+						checksum.reset();
+						checksum.update(buffer, 0, length);
+						if (in.readInt() != (int) checksum.getValue())
+							break;
+					} catch (EOFException e) {
+						break; // Partially written record
+					}
+					apply(new DataInputStream(new ByteArrayInputStream(buffer, 0, length)));
+					valid += ConfigIO.varIntLength(length) + length + 4;
+				}
+			}
+		}
+		if (repair && valid < file.length()) { // Discard the invalid content
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(valid);
+			}
+		}
+	}
+
+	private void apply(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		int depth = ConfigIO.readVarInt(in);
+		ObservableConfig target = theConfig;
+		for (int i = 0; i < depth - 1; i++)
+			target = target.getContent().get(ConfigIO.readVarInt(in));
+		int index = depth == 0 ? -1 : ConfigIO.readVarInt(in);
+		switch (type) {
+		case ADD:
+			BetterList<ObservableConfig> content = target.getContent();
+			ObservableConfig after = index == 0 ? null : content.get(index - 1);
+			ObservableConfig before = index == content.size() ? null : content.get(index);
+			String name = ConfigIO.readString(in);
+			String value = ConfigIO.readString(in);
+			IOException[] ex = new IOException[1];
+			target.addChild(after, before, false, name, child -> {
+				child.setValue(value);
+				try {
+					readContent(child, in);
+				} catch (IOException e) {
+					ex[0] = e;
+				}
+			});
+			if (ex[0] != null)
+				throw ex[0];
+			break;
+		case REMOVE:
+			target.getContent().get(index).remove();
+			break;
+		case SET_NAME:
+			(depth == 0 ? target : target.getContent().get(index)).setName(ConfigIO.readString(in));
+			break;
+		case SET_VALUE:
+			(depth == 0 ? target : target.getContent().get(index)).setValue(ConfigIO.readString(in));
+			break;
+		default:
+			throw new IOException("Unrecognized journal record type: " + (char) type);
+		}
+	}
+
+	private void record(ObservableConfigEvent evt) {
+		if (isClosed)
+			return;
+		byte type;
+		ObservableConfig changed = evt.getChangeTarget();
+		switch (evt.changeType) {
+		case add:
+			type = ADD;
+			break;
+		case remove:
+			if (evt.relativePath.isEmpty())
+				return; // The root was removed from its parent, which doesn't affect its content
+			type = REMOVE;
+			break;
+		default:
+			type = evt.oldName.equals(changed.getName()) ? SET_VALUE : SET_NAME;
+			break;
+		}
+		synchronized (this) {
+			try {
+				theRecord.reset();
+				theRecordData.writeByte(type);
+				ConfigIO.writeVarInt(theRecordData, evt.relativePath.size());
+				ObservableConfig parent = evt.eventTarget;
+				for (ObservableConfig element : evt.relativePath) {
+					ConfigIO.writeVarInt(theRecordData, parent.getContent().getElementsBefore(element.getParentChildRef()));
+					parent = element;
+				}
+				switch (type) {
+				case ADD:
+					ConfigIO.writeString(theRecordData, changed.getName());
+					ConfigIO.writeString(theRecordData, changed.getValue());
+					writeContent(changed, theRecordData);
+					break;
+				case SET_NAME:
+					ConfigIO.writeString(theRecordData, changed.getName());
+					break;
+				case SET_VALUE:
+					ConfigIO.writeString(theRecordData, changed.getValue());
+					break;
+				default:
+				}
+				theRecordData.flush();
+				theChecksum.reset();
+				theChecksum.update(theRecord.toByteArray());
+				ConfigIO.writeVarInt(thePendingData, theRecord.size());
+				theRecord.writeTo(thePendingData);
+				thePendingData.writeInt((int) theChecksum.getValue());
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not write to memory", e);
+			}
+		}
+	}
+
+	/** Writes any pending records to the journal and syncs it to disk, compacting the journal if it has grown too large */
+	public void sync() {
+		boolean compact;
+		synchronized (this) {
+			if (theJournalOut == null)
+				return;
+			if (thePending.size() > 0) {
+				try {
+					thePendingData.flush();
+					thePending.writeTo(theJournalOut);
+					theJournalOut.getChannel().force(false);
+					theJournalSize += thePending.size();
+				} catch (IOException e) {
+					theExceptionHandler.accept(e);
+				} finally {
+					thePending.reset();
+				}
+			}
+			compact = !isCompacting && !isClosed && theJournalSize > theCompactThreshold;
+			if (compact)
+				isCompacting = true;
+		}
+		if (compact)
+			QommonsTimer.getCommonInstance().execute(() -> compact(true));
+	}
+
+	/**
+	 * Compacts the journal into a fresh snapshot
+	 *
+	 * @throws IOException If the snapshot cannot be written
+	 */
+	public void compact() throws IOException {
+		synchronized (this) {
+			if (isCompacting)
+				return;
+			isCompacting = true;
+		}
+		doCompact();
+	}
+
+	private void compact(boolean alreadyMarked) {
+		if (!alreadyMarked) {
+			synchronized (this) {
+				if (isCompacting)
+					return;
+				isCompacting = true;
+			}
+		}
+		try {
+			doCompact();
+		} catch (IOException e) {
+			theExceptionHandler.accept(e);
+		}
+	}
+
+	private void doCompact() throws IOException {
+		try {
+			ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+			long generation;
+			// Capture the config and start a new journal generation under a read lock, so no changes can occur in between
+			try (Transaction t = theConfig.lock(false, null)) {
+				synchronized (this) {
+					if (isClosed)
+						return;
+					sync();
+					generation = theGeneration;
+					theJournalOut.close();
+					theJournalOut = null;
+					startJournal(generation + 1, 0);
+				}
+				DataOutputStream out = new DataOutputStream(snapshot);
+				out.writeInt(SNAPSHOT_MAGIC);
+				out.writeLong(generation);
+				writeConfig(theConfig, out);
+				out.flush();
+			}
+			// Write the snapshot in the background
+			try (FileOutputStream out = new FileOutputStream(theTempFile)) {
+				snapshot.writeTo(out);
+				out.getChannel().force(false);
+			}
+			ConfigIO.move(theTempFile, theSnapshotFile);
+			for (long g : getJournalGenerations()) {
+				if (g <= generation)
+					Files.deleteIfExists(getJournalFile(g).toPath());
+			}
+		} finally {
+			synchronized (this) {
+				isCompacting = false;
+			}
+		}
+	}
+
+	/** Stops journaling, writing any pending records to the journal */
+	@Override
+	public void close() {
+		if (theListener != null)
+			theListener.unsubscribe();
+		if (theSyncTask != null)
+			theSyncTask.setActive(false);
+		sync();
+		synchronized (this) {
+			isClosed = true;
+			if (theJournalOut != null) {
+				try {
+					theJournalOut.close();
+				} catch (IOException e) {
+					theExceptionHandler.accept(e);
+				}
+				theJournalOut = null;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Journal:" + theSnapshotFile.getPath();
+	}
+
+	/**
+	 * Writes a config element and its content in the journal's format
+	 *
+	 * @param config The config to write
+	 * @param out The stream to write to
+	 * @throws IOException If the stream throws an exception
+	 */
+	static void writeConfig(ObservableConfig config, DataOutputStream out) throws IOException {
+		ConfigIO.writeString(out, config.getName());
+		ConfigIO.writeString(out, config.getValue());
+		writeContent(config, out);
+	}
+
+	private static void writeContent(ObservableConfig config, DataOutputStream out) throws IOException {
+		BetterList<ObservableConfig> content = config.getContent();
+		ConfigIO.writeVarInt(out, content.size());
+		for (ObservableConfig child : content)
+			writeConfig(child, out);
+	}
+
+	/**
+	 * Reads a config element and its content in the journal's format into an existing config element, replacing its name and value and
+	 * appending its content
+	 *
+	 * @param config The config to populate
+	 * @param in The stream to read from
+	 * @throws IOException If the stream throws an exception
+	 */
+	static void readInto(ObservableConfig config, DataInputStream in) throws IOException {
+		String name = ConfigIO.readString(in);
+		if (!config.getName().equals(name))
+			config.setName(name);
+		config.setValue(ConfigIO.readString(in));
+		readContent(config, in);
+	}
+
+	private static void readContent(ObservableConfig config, DataInputStream in) throws IOException {
+		int children = ConfigIO.readVarInt(in);
+		IOException[] ex = new IOException[1];
+		for (int i = 0; i < children && ex[0] == null; i++) {
+			String name = ConfigIO.readString(in);
+			String value = ConfigIO.readString(in);
+			config.addChild(name, child -> {
+				child.setValue(value);
+				try {
+					readContent(child, in);
+				} catch (IOException e) {
+					ex[0] = e;
+				}
+			});
+		}
+		if (ex[0] != null)
+			throw ex[0];
+	}
+}
@@ -86,6 +86,24 @@ public class UnmodifiableObservableConfig extends AbstractObservableConfig {
 		return new UnmodifiableChildList(theWrapped.getContent());
 	}
 
+	@Override
+	public long getContentHash() {
+		return theWrapped.getContentHash();
+	}
+
+	@Override
+	Object getCachedValue(Object format, String text) {
+		if (theWrapped instanceof AbstractObservableConfig)
+			return ((AbstractObservableConfig) theWrapped).getCachedValue(format, text);
+		return NOT_CACHED;
+	}
+
+	@Override
+	void cacheValue(Object format, String text, Object value) {
+		if (theWrapped instanceof AbstractObservableConfig)
+			((AbstractObservableConfig) theWrapped).cacheValue(format, text, value);
+	}
+
 	@Override
 	public Observable<ObservableConfigEvent> watch(ObservableConfigPath path) {
 		return theWrapped.watch(path).map(evt -> {
@@ -0,0 +1,289 @@
+package org.observe.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Objects;
+
+import org.observe.config.ObservableConfig.XmlEncoding;
+import org.qommons.collect.BetterList;
+import org.qommons.io.PositionedContent;
+import org.qommons.io.SimpleXMLParser;
+import org.qommons.io.SimpleXMLParser.XmlAttribute;
+import org.qommons.io.SimpleXMLParser.XmlCdata;
+import org.qommons.io.SimpleXMLParser.XmlElementTerminal;
+
+/**
+ * <p>
+ * Loads XML directly into an empty {@link DefaultObservableConfig} from {@link SimpleXMLParser} callbacks, without building an
+ * intermediate tree or synchronizing against existing content. Used by
+ * {@link ObservableConfig#readXml(ObservableConfig, java.io.InputStream, XmlEncoding, int)} when the target is empty.
+ * </p>
+ * <p>
+ * Each top-level element (a child of the root) is built detached from the root, without firing any events, and then added to the root,
+ * firing a single event for the whole subtree.
+ * </p>
+ * <p>
+ * In lazy mode, the content of each top-level element is first encoded compactly as it is parsed. If the element has enough descendants,
+ * its content is kept in that form and only materialized, one level at a time, when it is first accessed. Otherwise it is built
+ * immediately.
+ * </p>
+ */
+class XmlConfigLoader implements SimpleXMLParser.ParseHandler {
+	private final DefaultObservableConfig theRoot;
+	private final XmlEncoding theEncoding;
+	private final int theLazyThreshold;
+	private final ArrayList<Frame> theStack;
+	/** In lazy mode, the encoded content of the top-level element being loaded */
+	private final EncodeBuffer theBuffer;
+	private final DataOutputStream theBufferOut;
+	private int theDepth;
+
+	/**
+	 * @param root The empty config to load into
+	 * @param encoding The scheme to use for decoding illegal XML names from their serialized forms
+	 * @param lazyThreshold The minimum number of descendants for which a top-level element's content will be loaded lazily, or 0 to load
+	 *        everything eagerly
+	 */
+	XmlConfigLoader(DefaultObservableConfig root, XmlEncoding encoding, int lazyThreshold) {
+		theRoot = root;
+		theEncoding = encoding;
+		theLazyThreshold = lazyThreshold;
+		theStack = new ArrayList<>();
+		theBuffer = isLazy() ? new EncodeBuffer() : null;
+		theBufferOut = isLazy() ? new DataOutputStream(theBuffer) : null;
+	}
+
+	private boolean isLazy() {
+		return theLazyThreshold > 0;
+	}
+
+	@Override
+	public void handleElementStart(XmlElementTerminal element) {
+		String name = theEncoding.decode(element.getName(), true, true);
+		Frame frame;
+		if (theDepth == theStack.size())
+			theStack.add(frame = new Frame());
+		else
+			frame = theStack.get(theDepth);
+		frame.reset(name);
+		if (theDepth == 0) {
+			if (!theRoot.getName().equals(name))
+				theRoot.setName(name);
+			frame.node = theRoot;
+		} else {
+			Frame parent = theStack.get(theDepth - 1);
+			parent.hasChildElements = true;
+			if (isLazy()) {
+				frame.node = null;
+				if (theDepth == 1)
+					theBuffer.reset();
+				else
+					frame.header = encodeStart(name);
+			} else if (theDepth == 1)
+				frame.node = theRoot.createLoadingChild(name);
+			else
+				frame.node = parent.node.loadChild(name, null);
+		}
+		theDepth++;
+	}
+
+	@Override
+	public void handleAttribute(XmlAttribute attribute) {
+		String name = theEncoding.decode(attribute.getName(), true, false);
+		String value = theEncoding.decode(attribute.getValueContent().toString(), false, false);
+		Frame frame = theStack.get(theDepth - 1);
+		if (theDepth == 1) {
+			DefaultObservableConfig child = theRoot.createLoadingChild(name);
+			child.loadValue(value);
+			theRoot.attachLoadedChild(child);
+		} else if (isLazy()) {
+			encodeEnd(encodeStart(name), 0, value);
+			frame.children++;
+			frame.descendants++;
+		} else
+			frame.node.loadChild(name, value);
+	}
+
+	@Override
+	public void handleElementContent(String elementName, PositionedContent elementValue) {
+		Frame frame = theStack.get(theDepth - 1);
+		if (!frame.hasChildElements) // We only pay attention to the first set of content
+			frame.text.append(elementValue.toString().trim());
+	}
+
+	@Override
+	public void handleCDataContent(String elementName, XmlCdata cdata) {
+		Frame frame = theStack.get(theDepth - 1);
+		if (!frame.hasChildElements) // We only pay attention to the first set of content
+			frame.text.append(cdata.getValueContent().toString().trim());
+	}
+
+	@Override
+	public void handleElementEnd(XmlElementTerminal element, boolean selfClosing) {
+		theDepth--;
+		Frame frame = theStack.get(theDepth);
+		StringBuilder text = frame.text;
+		int i = text.length() - 1;
+		while (i >= 0 && Character.isWhitespace(text.charAt(i)))
+			i--;
+		String value = theEncoding.decode(i < 0 ? "" : text.substring(0, i + 1), false, true);
+		if (theDepth == 0) {
+			if (!Objects.equals(theRoot.getValue(), value))
+				theRoot.setValue(value);
+		} else if (!isLazy()) {
+			frame.node.loadValue(value);
+			if (theDepth == 1)
+				theRoot.attachLoadedChild(frame.node);
+		} else if (theDepth > 1) {
+			encodeEnd(frame.header, frame.children, value);
+			Frame parent = theStack.get(theDepth - 1);
+			parent.children++;
+			parent.descendants += frame.descendants + 1;
+		} else {
+			DefaultObservableConfig child = theRoot.createLoadingChild(frame.name);
+			child.loadValue(value);
+			if (frame.children > 0) {
+				// The only copy of the encoded content. Lazy descendants refer to ranges of this array.
+				LazyContent content = new LazyContent(theBuffer.toByteArray(), 0, theBuffer.size(), frame.children);
+				if (frame.descendants >= theLazyThreshold)
+					child.setLazyContent(content);
+				else
+					content.materialize(child, true);
+			}
+			theRoot.attachLoadedChild(child);
+		}
+		frame.node = null;
+	}
+
+	/**
+	 * Begins encoding a lazily-loaded element, whose child count and content length are not yet known
+	 *
+	 * @param name The name of the element
+	 * @return The position of the element's header, to pass to {@link #encodeEnd(int, int, String)}
+	 */
+	private int encodeStart(String name) {
+		try {
+			ConfigIO.writeString(theBufferOut, name);
+			int header = theBuffer.size();
+			theBufferOut.writeInt(0); // Child count
+			theBufferOut.writeInt(0); // Content length
+			return header;
+		} catch (IOException e) {
+			throw new IllegalStateException("Should not happen", e);
+		}
+	}
+
+	/**
+	 * Finishes encoding a lazily-loaded element whose content has been encoded since {@link #encodeStart(String)}
+	 *
+	 * @param header The position of the element's header
+	 * @param children The number of children of the element
+	 * @param value The value of the element
+	 */
+	private void encodeEnd(int header, int children, String value) {
+		theBuffer.setInt(header, children);
+		theBuffer.setInt(header + 4, theBuffer.size() - header - 8);
+		try {
+			ConfigIO.writeString(theBufferOut, value);
+		} catch (IOException e) {
+			throw new IllegalStateException("Should not happen", e);
+		}
+	}
+
+	private static class Frame {
+		String name;
+		DefaultObservableConfig node;
+		boolean hasChildElements;
+		final StringBuilder text = new StringBuilder();
+		// For lazy loading
+		int header;
+		int children;
+		int descendants;
+
+		void reset(String newName) {
+			name = newName;
+			hasChildElements = false;
+			text.setLength(0);
+			children = descendants = 0;
+		}
+	}
+
+	/** A byte buffer whose already-written integers can be overwritten */
+	private static class EncodeBuffer extends ByteArrayOutputStream {
+		void setInt(int position, int value) {
+			buf[position] = (byte) (value >>> 24);
+			buf[position + 1] = (byte) (value >>> 16);
+			buf[position + 2] = (byte) (value >>> 8);
+			buf[position + 3] = (byte) value;
+		}
+	}
+
+	/**
+	 * The encoded content of a config element that has not yet been materialized. Each child is encoded as its name, its child count, and
+	 * the length of its encoded content, followed by its encoded content and then its value. Nested content is a range of the same array,
+	 * so materializing a level never copies bytes.
+	 */
+	static class LazyContent {
+		private final byte[] theData;
+		private final int theOffset;
+		private final int theLength;
+		private final int theChildren;
+
+		LazyContent(byte[] data, int offset, int length, int children) {
+			theData = data;
+			theOffset = offset;
+			theLength = length;
+			theChildren = children;
+		}
+
+		/**
+		 * Adds this content to a config element
+		 *
+		 * @param config The config element to populate
+		 * @param deep Whether to materialize all descendants, or only the direct children (leaving their content lazy)
+		 */
+		void materialize(DefaultObservableConfig config, boolean deep) {
+			materialize(config, null, deep);
+		}
+
+		/**
+		 * Populates a new content list for a config element with its direct children, leaving their content lazy
+		 *
+		 * @param config The config element to create the children for
+		 * @param content The list, not yet visible to any other thread, to add the children to
+		 */
+		void materializeInto(DefaultObservableConfig config, BetterList<ObservableConfig> content) {
+			materialize(config, content, false);
+		}
+
+		private void materialize(DefaultObservableConfig config, BetterList<ObservableConfig> content, boolean deep) {
+			ByteArrayInputStream bytes = new ByteArrayInputStream(theData, theOffset, theLength);
+			DataInputStream in = new DataInputStream(bytes);
+			try {
+				for (int i = 0; i < theChildren; i++) {
+					String name = ConfigIO.readString(in);
+					int children = in.readInt();
+					int length = in.readInt();
+					int contentOffset = theOffset + theLength - bytes.available();
+					bytes.skip(length);
+					String value = ConfigIO.readString(in);
+					DefaultObservableConfig child = content == null ? config.loadChild(name, value)
+						: config.loadChild(content, name, value);
+					if (children > 0) {
+						LazyContent content = new LazyContent(theData, contentOffset, length, children);
+						if (deep)
+							content.materialize(child, true);
+						else
+							child.setLazyContent(content);
+					}
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException("Corrupt lazy config content", e);
+			}
+		}
+	}
+}
@@ -4,10 +4,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.ref.WeakReference;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.ParseException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 
@@ -16,6 +28,7 @@ import org.observe.collect.ObservableCollection;
 import org.observe.collect.ObservableCollectionBuilder;
 import org.observe.collect.ObservableCollectionBuilder.DataControlAutoRefresher;
 import org.observe.collect.ObservableCollectionBuilder.DataControlledCollectionBuilderImpl;
+import org.observe.collect.ObservableCollectionBuilder.DefaultDataControlAutoRefresher;
 import org.observe.util.TypeTokens;
 import org.qommons.ThreadConstraint;
 import org.qommons.collect.CollectionLockingStrategy;
@@ -25,11 +38,15 @@ import org.qommons.io.BetterFile;
 import org.qommons.io.FileUtils;
 import org.qommons.io.FileUtils.DirectorySyncResults;
 import org.qommons.io.Format;
+import org.qommons.io.NativeFileSource;
 
 /** A BetterFile extension that contains utilities to be notified when file or directory contents change */
 public class ObservableFile implements BetterFile {
 	/** Controls locking and refresh strategies for ObservableFiles */
 	public static class ObservableFileSet {
+		/** The default {@link #getScanLifetime() scan lifetime} for file sets whose refresher's frequency is not known */
+		public static final Duration DEFAULT_SCAN_LIFETIME = Duration.ofSeconds(1);
+
 		private final DataControlAutoRefresher theRefresher;
 		private CollectionLockingStrategy theLocking;
 
@@ -39,6 +56,7 @@ public class ObservableFile implements BetterFile {
 		 */
 		public ObservableFileSet(DataControlAutoRefresher refresher, CollectionLockingStrategy locking) {
 			theRefresher = refresher;
+			theLocking = locking;
 		}
 
 		/** @return Locking for the observable structures provided by files */
@@ -50,6 +68,30 @@ public class ObservableFile implements BetterFile {
 		public DataControlAutoRefresher getRefresher() {
 			return theRefresher;
 		}
+
+		/**
+		 * @param directory The directory whose contents need to be refreshed
+		 * @return The refresh strategy for the contents of the given directory
+		 */
+		public DataControlAutoRefresher getRefresher(ObservableFile directory) {
+			return getRefresher();
+		}
+
+		/**
+		 * @return How long file attributes read by a scan of a directory's contents may be served before they must be read from the file
+		 *         again. By default, this is the refresher's frequency if it is a {@link DefaultDataControlAutoRefresher}, since the scan
+		 *         will have been refreshed by then if the directory's contents are still in use.
+		 */
+		public Duration getScanLifetime() {
+			if (theRefresher instanceof DefaultDataControlAutoRefresher)
+				return ((DefaultDataControlAutoRefresher) theRefresher).getFrequency();
+			return DEFAULT_SCAN_LIFETIME;
+		}
+
+		/** @param locking Locking for the observable structures, for sub-classes whose locking depends on themselves */
+		protected void setLocking(CollectionLockingStrategy locking) {
+			theLocking = locking;
+		}
 	}
 
 	/** Format object for parsing {@link ObservableFile}s from strings */
@@ -111,6 +153,35 @@ public class ObservableFile implements BetterFile {
 		}
 	}
 
+	/** The attributes of a directory's child, read once per refresh of the directory's contents */
+	static final class ScannedFile {
+		final BetterFile file;
+		/** The {@link System#nanoTime() time} at which the attributes were read */
+		final long scanTime;
+		final long lastModified;
+		/** The file's {@link ObservableFile#sizeOf(BetterFile) size} */
+		final long size;
+		final boolean directory;
+		/** Whether the {@link #directory} attribute was read, as opposed to being skipped because it would have cost an extra query */
+		final boolean directoryKnown;
+		/** The scanned contents of this file, if it is a directory that was {@link ObservableFile#prescan(int, ForkJoinPool) prescanned} */
+		volatile List<ScannedFile> children;
+
+		ScannedFile(BetterFile file, long lastModified, long size, boolean directory, boolean directoryKnown) {
+			this.file = file;
+			scanTime = System.nanoTime();
+			this.lastModified = lastModified;
+			this.size = size;
+			this.directory = directory;
+			this.directoryKnown = directoryKnown;
+		}
+
+		@Override
+		public String toString() {
+			return file.toString();
+		}
+	}
+
 	private static volatile ObservableFileSet DEFAULT_FILE_REFRESHER;
 
 	/** @return A singleton default observable file set */
@@ -120,7 +191,7 @@ public class ObservableFile implements BetterFile {
 				if (DEFAULT_FILE_REFRESHER == null) {
 					DEFAULT_FILE_REFRESHER = new ObservableFileSet(//
 						new ObservableCollectionBuilder.DefaultDataControlAutoRefresher(Duration.ofSeconds(1)), null);
-					DEFAULT_FILE_REFRESHER.theLocking = new StampedLockingStrategy(DEFAULT_FILE_REFRESHER, ThreadConstraint.ANY);
+					DEFAULT_FILE_REFRESHER.setLocking(new StampedLockingStrategy(DEFAULT_FILE_REFRESHER, ThreadConstraint.ANY));
 				}
 			}
 		}
@@ -150,21 +221,57 @@ public class ObservableFile implements BetterFile {
 	private ObservableFile theParent;
 	private final BetterFile theFile;
 	private WeakReference<DataControlledCollection<? extends ObservableFile, ?>> theContents;
+	private volatile List<ScannedFile> thePrescan;
+	/** The {@link System#nanoTime() time} at which {@link #thePrescan} was scanned */
+	private volatile long thePrescanTime;
 
 	private volatile long theCachedLastModified;
 	private volatile long theCachedSize;
+	/** Whether this file is a directory, if known from the last scan */
+	private volatile Boolean theCachedDirectory;
+	/** The {@link System#nanoTime() time} at which the cached attributes were read by a scan, or {@link #NOT_SCANNED} */
+	private volatile long theScanTime;
+
+	private static final long NOT_SCANNED = Long.MIN_VALUE;
 
 	ObservableFile(ObservableFileSet fileSet, ObservableFile parent, BetterFile file) {
 		theFileSet = fileSet;
 		theParent = parent;
 		theFile = file;
-		theCachedLastModified = getLastModified();
-		theCachedSize = length();
+		theCachedLastModified = file.getLastModified();
+		theCachedSize = sizeOf(file);
+		theScanTime = NOT_SCANNED;
+	}
+
+	ObservableFile(ObservableFileSet fileSet, ObservableFile parent, ScannedFile scanned) {
+		theFileSet = fileSet;
+		theParent = parent;
+		theFile = scanned.file;
+		theCachedLastModified = scanned.lastModified;
+		theCachedSize = scanned.size;
+		theCachedDirectory = scanned.directoryKnown ? Boolean.valueOf(scanned.directory) : null;
+		theScanTime = scanned.scanTime;
+		if (scanned.children != null)
+			setPrescan(scanned.children, scanned.scanTime);
+	}
+
+	/**
+	 * The size that is cached and compared to detect changes to a file. The length reported for a directory is platform-dependent and
+	 * meaningless, so a directory's size is always 0. This rule must be used everywhere sizes are recorded, or every refresh would report
+	 * directories as changed.
+	 *
+	 * @param file The file to get the size of
+	 * @return The file's length, or 0 if it is a directory
+	 */
+	static long sizeOf(BetterFile file) {
+		long length = file.length();
+		// Only query the directory attribute if it matters
+		return length != 0 && file.isDirectory() ? 0 : length;
 	}
 
 	boolean checkChanged() {
-		long lastMod = getLastModified();
-		long size = length();
+		long lastMod = theFile.getLastModified();
+		long size = sizeOf(theFile);
 		if (lastMod != theCachedLastModified || size != theCachedSize) {
 			theCachedLastModified = lastMod;
 			theCachedSize = size;
@@ -173,6 +280,34 @@ public class ObservableFile implements BetterFile {
 			return false;
 	}
 
+	boolean checkChanged(ScannedFile scanned) {
+		if (scanned.children != null)
+			setPrescan(scanned.children, scanned.scanTime);
+		theCachedDirectory = scanned.directoryKnown ? Boolean.valueOf(scanned.directory) : null;
+		theScanTime = scanned.scanTime;
+		if (scanned.lastModified != theCachedLastModified || scanned.size != theCachedSize) {
+			theCachedLastModified = scanned.lastModified;
+			theCachedSize = scanned.size;
+			return true;
+		} else
+			return false;
+	}
+
+	private void setPrescan(List<ScannedFile> prescan, long scanTime) {
+		// Time first, so that a reader seeing the new scan also sees its time
+		thePrescanTime = scanTime;
+		thePrescan = prescan;
+	}
+
+	/**
+	 * @param scanTime The {@link System#nanoTime() time} at which some attributes were scanned
+	 * @return Whether the scanned attributes are recent enough to be used, per the file set's {@link ObservableFileSet#getScanLifetime()
+	 *         scan lifetime}
+	 */
+	private boolean isFresh(long scanTime) {
+		return scanTime != NOT_SCANNED && System.nanoTime() - scanTime <= theFileSet.getScanLifetime().toNanos();
+	}
+
 	/** @return This file's observable file set */
 	public ObservableFileSet getFileSet() {
 		return theFileSet;
@@ -198,13 +333,30 @@ public class ObservableFile implements BetterFile {
 		return theFile.exists();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * For a file in a directory's {@link #listFiles() contents}, this is served from the last scan of the directory, if it is recent.
+	 * </p>
+	 */
 	@Override
 	public long getLastModified() {
+		if (isFresh(theScanTime))
+			return theCachedLastModified;
 		return theFile.getLastModified();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * For a file in a directory's {@link #listFiles() contents}, this is served from the last scan of the directory, if it is recent.
+	 * </p>
+	 */
 	@Override
 	public boolean isDirectory() {
+		Boolean directory = theCachedDirectory;
+		if (directory != null && isFresh(theScanTime))
+			return directory.booleanValue();
 		return theFile.isDirectory();
 	}
 
@@ -218,8 +370,17 @@ public class ObservableFile implements BetterFile {
 		return theFile.get(attribute);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * For a regular file in a directory's {@link #listFiles() contents}, this is served from the last scan of the directory, if it is
+	 * recent.
+	 * </p>
+	 */
 	@Override
 	public long length() {
+		if (theCachedDirectory == Boolean.FALSE && isFresh(theScanTime))
+			return theCachedSize;
 		return theFile.length();
 	}
 
@@ -274,13 +435,21 @@ public class ObservableFile implements BetterFile {
 				if (contents == null) {
 					ObservableCollectionBuilder<ObservableFile, ?> builder = ObservableCollection.build(ObservableFile.class)
 						.withLocking(theFileSet.getLocking()).withDescription("Directory content of " + getPath());
-					DataControlledCollectionBuilderImpl<ObservableFile, ? extends BetterFile, ?> dataBuilder;
-					dataBuilder = (DataControlledCollectionBuilderImpl<ObservableFile, ? extends BetterFile, ?>) builder
-						.withData(() -> theFile.listFiles());
-					dataBuilder.refreshOnAccess(false).autoRefreshWith(theFileSet.getRefresher());
-					dataBuilder.withEquals((f1, f2) -> f1.getName().equals(f2.getName())).withMaxRefreshFrequency(5);
+					DataControlledCollectionBuilderImpl<ObservableFile, ScannedFile, ?> dataBuilder;
+					dataBuilder = (DataControlledCollectionBuilderImpl<ObservableFile, ScannedFile, ?>) builder.withData(() -> {
+						List<ScannedFile> prescan = thePrescan;
+						if (prescan != null) {
+							long prescanTime = thePrescanTime;
+							thePrescan = null;
+							if (isFresh(prescanTime))
+								return prescan;
+						}
+						return scan();
+					});
+					dataBuilder.refreshOnAccess(false).autoRefreshWith(theFileSet.getRefresher(this));
+					dataBuilder.withEquals((f1, f2) -> f1.getName().equals(f2.file.getName())).withMaxRefreshFrequency(5);
 					contents = dataBuilder.build(f -> new ObservableFile(theFileSet, this, f), //
-						adjustment -> adjustment.commonUsesLeft((of, f) -> of.checkChanged()));
+						adjustment -> adjustment.commonUsesLeft((of, f) -> of.checkChanged(f)));
 					theContents = new WeakReference<>(contents);
 				}
 			}
@@ -288,6 +457,119 @@ public class ObservableFile implements BetterFile {
 		return contents;
 	}
 
+	/**
+	 * <p>
+	 * Scans this directory's sub-tree down to the given depth, in parallel on the given pool. The contents of this directory and of each
+	 * scanned sub-directory will be populated from the scan the next time they are {@link #listFiles() listed} (or refreshed, if already
+	 * listed), instead of by a sequential scan of each directory as it is opened.
+	 * </p>
+	 * <p>
+	 * This is useful to prepare a large tree for display, e.g. in a file browser, where many directories are likely to be opened.
+	 * </p>
+	 *
+	 * @param maxDepth The depth to which to scan, where 1 scans only this directory's children
+	 * @param pool The pool to scan with, or null to use the {@link ForkJoinPool#commonPool() common pool}
+	 * @return This file
+	 */
+	public ObservableFile prescan(int maxDepth, ForkJoinPool pool) {
+		if (maxDepth <= 0 || !isDirectory())
+			return this;
+		PrescanTask task = new PrescanTask(this, null, maxDepth);
+		(pool == null ? ForkJoinPool.commonPool() : pool).invoke(task);
+		return this;
+	}
+
+	/**
+	 * A task scanning a directory's sub-tree. Each scan is used if the directory is {@link #listFiles() listed} within the file set's
+	 * {@link ObservableFileSet#getScanLifetime() scan lifetime}, and discarded otherwise.
+	 */
+	private static class PrescanTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final ObservableFile theRoot;
+		private final ScannedFile theDirectory;
+		private final int theDepth;
+
+		PrescanTask(ObservableFile root, ScannedFile directory, int depth) {
+			theRoot = root;
+			theDirectory = directory;
+			theDepth = depth;
+		}
+
+		@Override
+		protected void compute() {
+			long scanTime = System.nanoTime();
+			List<ScannedFile> children = scan(theDirectory == null ? theRoot.theFile : theDirectory.file, theDepth > 1);
+			if (theDepth > 1) {
+				List<PrescanTask> subTasks = new ArrayList<>();
+				for (ScannedFile child : children) {
+					if (child.directory)
+						subTasks.add(new PrescanTask(theRoot, child, theDepth - 1));
+				}
+				invokeAll(subTasks);
+			}
+			if (theDirectory == null)
+				theRoot.setPrescan(children, scanTime);
+			else
+				theDirectory.children = children;
+		}
+	}
+
+	private List<ScannedFile> scan() {
+		return scan(theFile, false);
+	}
+
+	/**
+	 * Reads the attributes of each child of a directory. For native files, this is done in a single pass through the directory with a
+	 * single attribute read per child, instead of a separate file system query for each attribute.
+	 *
+	 * @param directory The directory to scan
+	 * @param needDirectories Whether the {@link ScannedFile#directory directory} attribute is needed even where it costs an extra query
+	 * @return The directory's children with their attributes
+	 */
+	static List<ScannedFile> scan(BetterFile directory, boolean needDirectories) {
+		if (directory.getSource() instanceof NativeFileSource) {
+			Path dirPath;
+			try {
+				dirPath = Paths.get(directory.getPath());
+			} catch (InvalidPathException e) {
+				dirPath = null;
+			}
+			if (dirPath != null) {
+				List<ScannedFile> children = new ArrayList<>();
+				try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath)) {
+					for (Path child : stream) {
+						BasicFileAttributes attrs;
+						try {
+							attrs = Files.readAttributes(child, BasicFileAttributes.class);
+						} catch (IOException e) {
+							continue; // Deleted since the listing, or inaccessible
+						}
+						children.add(new ScannedFile(directory.at(child.getFileName().toString()), attrs.lastModifiedTime().toMillis(),
+							attrs.isDirectory() ? 0 : attrs.size(), attrs.isDirectory(), true));
+					}
+					return children;
+				} catch (NoSuchFileException | NotDirectoryException e) {
+					return Collections.emptyList();
+				} catch (IOException | RuntimeException e) {
+					// Fall back to the file's own listing
+				}
+			}
+		}
+		List<? extends BetterFile> files = directory.listFiles();
+		if (files == null || files.isEmpty())
+			return Collections.emptyList();
+		List<ScannedFile> children = new ArrayList<>(files.size());
+		for (BetterFile file : files) {
+			// Same queries as sizeOf(), plus the directory attribute only if needed
+			long length = file.length();
+			boolean directoryKnown = needDirectories || length != 0;
+			boolean directory = directoryKnown && file.isDirectory();
+			children.add(new ScannedFile(file, file.getLastModified(), directory ? 0 : length, directory, directoryKnown));
+		}
+		return children;
+	}
+
 	@Override
 	public InputStream read(long startFrom, BooleanSupplier canceled) throws IOException {
 		return theFile.read(startFrom, canceled);
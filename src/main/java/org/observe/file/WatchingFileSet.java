@@ -0,0 +1,272 @@
+package org.observe.file;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.observe.collect.DataControlledCollection;
+import org.observe.collect.ObservableCollectionBuilder;
+import org.observe.collect.ObservableCollectionBuilder.DataControlAutoRefresher;
+import org.qommons.ThreadConstraint;
+import org.qommons.collect.CollectionLockingStrategy;
+import org.qommons.collect.ListenerList;
+import org.qommons.collect.StampedLockingStrategy;
+import org.qommons.io.NativeFileSource;
+
+/**
+ * <p>
+ * An {@link ObservableFile.ObservableFileSet} whose directory contents are refreshed in response to events from a {@link WatchService}
+ * instead of by polling. A directory's contents are only re-listed (and its files' sizes and modification times re-checked) when the
+ * file system reports a change in it, so a large tree of observed directories costs nothing while nothing changes.
+ * </p>
+ * <p>
+ * Events are coalesced, so that a burst of changes to a directory causes a single refresh of its contents. If the watch service reports an
+ * {@link java.nio.file.StandardWatchEventKinds#OVERFLOW overflow}, the affected directory is simply re-listed, which reconciles any missed
+ * events.
+ * </p>
+ * <p>
+ * Directories which cannot be watched, e.g. those not on the {@link NativeFileSource native} file system, those on file systems that do not
+ * support watching, or directories whose watch has been invalidated (e.g. by the directory's deletion), are refreshed by the polling
+ * {@link #getRefresher() fallback refresher}.
+ * </p>
+ */
+public class WatchingFileSet extends ObservableFile.ObservableFileSet implements AutoCloseable {
+	private static class WatchedCollection {
+		final DataControlledCollection<?, ?> collection;
+		/** Stops polling the collection after its directory's watch is invalidated */
+		volatile Runnable fallback;
+		volatile boolean removed;
+
+		WatchedCollection(DataControlledCollection<?, ?> collection) {
+			this.collection = collection;
+		}
+	}
+
+	private class DirectoryWatch {
+		final Path path;
+		final WatchKey key;
+		final ListenerList<WatchedCollection> collections;
+
+		DirectoryWatch(Path path, WatchKey key) {
+			this.path = path;
+			this.key = key;
+			collections = ListenerList.build().build();
+		}
+
+		/** Must be called while holding {@link WatchingFileSet#theWatches}' monitor, so the watch cannot be removed concurrently */
+		Runnable add(DataControlledCollection<?, ?> collection) {
+			WatchedCollection watched = new WatchedCollection(collection);
+			Runnable remove = collections.add(watched, true);
+			theDirty.add(this);
+			return () -> {
+				remove.run();
+				watched.removed = true;
+				Runnable fallback = watched.fallback;
+				if (fallback != null)
+					fallback.run();
+				synchronized (theWatches) {
+					if (collections.isEmpty() && theWatches.remove(path, this)) {
+						theKeys.remove(key);
+						key.cancel();
+					}
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return path.toString();
+		}
+	}
+
+	private final WatchService theWatchService;
+	private final Duration theCoalesceTime;
+	private final ConcurrentHashMap<Path, DirectoryWatch> theWatches;
+	private final ConcurrentHashMap<WatchKey, DirectoryWatch> theKeys;
+	private final Set<DirectoryWatch> theDirty;
+	private Thread theWatchThread;
+	private volatile boolean isClosed;
+
+	/** Creates a watching file set with a 1-second polling fallback, a 50ms coalesce time, and default locking */
+	public WatchingFileSet() {
+		this(new ObservableCollectionBuilder.DefaultDataControlAutoRefresher(Duration.ofSeconds(1)), null, Duration.ofMillis(50));
+	}
+
+	/**
+	 * @param fallback The refresh strategy for directories which cannot be watched
+	 * @param locking Locking for the observable structures, or null to use default locking
+	 * @param coalesceTime The amount of time to wait after a change to a directory before refreshing its contents, so that a burst of
+	 *        changes results in a single refresh
+	 */
+	public WatchingFileSet(DataControlAutoRefresher fallback, CollectionLockingStrategy locking, Duration coalesceTime) {
+		super(fallback, locking);
+		if (locking == null)
+			setLocking(new StampedLockingStrategy(this, ThreadConstraint.ANY));
+		theCoalesceTime = coalesceTime;
+		theWatches = new ConcurrentHashMap<>();
+		theKeys = new ConcurrentHashMap<>();
+		theDirty = ConcurrentHashMap.newKeySet();
+		WatchService watchService;
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+		} catch (IOException | UnsupportedOperationException e) {
+			watchService = null; // All directories will be polled
+		}
+		theWatchService = watchService;
+	}
+
+	/** @return Whether this file set is able to watch any directories, false if it will poll all of them */
+	public boolean isWatching() {
+		return theWatchService != null && !isClosed;
+	}
+
+	/** @return The amount of time this file set waits after a change to a directory before refreshing its contents */
+	public Duration getCoalesceTime() {
+		return theCoalesceTime;
+	}
+
+	@Override
+	public DataControlAutoRefresher getRefresher(ObservableFile directory) {
+		if (!isWatching() || !(directory.getSource() instanceof NativeFileSource))
+			return getRefresher();
+		Path path;
+		try {
+			path = Paths.get(directory.getPath()).toAbsolutePath().normalize();
+		} catch (InvalidPathException e) {
+			return getRefresher();
+		}
+		return collection -> watch(path, collection);
+	}
+
+	/**
+	 * @param path The directory to watch
+	 * @param collection The directory's contents, to refresh when the directory changes
+	 * @return A Runnable to stop refreshing the collection
+	 */
+	protected Runnable watch(Path path, DataControlledCollection<?, ?> collection) {
+		DirectoryWatch watch;
+		synchronized (theWatches) {
+			watch = theWatches.get(path);
+			if (watch == null || !watch.key.isValid()) {
+				WatchKey key;
+				try {
+					key = path.register(theWatchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+				} catch (IOException | UnsupportedOperationException | ClosedWatchServiceException e) {
+					return getRefresher().add(collection);
+				}
+				watch = new DirectoryWatch(path, key);
+				theWatches.put(path, watch);
+				theKeys.put(key, watch);
+				if (theWatchThread == null) {
+					theWatchThread = new Thread(this::runWatch, "File Watcher");
+					theWatchThread.setDaemon(true);
+					theWatchThread.start();
+				}
+			}
+			// Added under the lock, so that the watch cannot be discarded between the lookup and the addition
+			return watch.add(collection);
+		}
+	}
+
+	/** Stops watching all directories and releases the watch service. Directory contents will no longer be refreshed. */
+	@Override
+	public void close() {
+		isClosed = true;
+		if (theWatchService != null) {
+			try {
+				theWatchService.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void runWatch() {
+		long coalesce = Math.max(1, theCoalesceTime.toMillis());
+		long lastFlush = System.currentTimeMillis();
+		while (!isClosed) {
+			WatchKey key;
+			try {
+				key = theWatchService.poll(coalesce, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				continue;
+			} catch (ClosedWatchServiceException e) {
+				break;
+			}
+			if (key != null)
+				handle(key);
+			long now = System.currentTimeMillis();
+			if (key == null || now - lastFlush >= coalesce) {
+				lastFlush = now;
+				flush();
+			}
+		}
+	}
+
+	private void handle(WatchKey key) {
+		DirectoryWatch watch = theKeys.get(key);
+		List<WatchEvent<?>> events = key.pollEvents();
+		if (watch == null) {
+			key.cancel();
+			return;
+		}
+		// Any event, including an overflow, is handled by re-listing the directory
+		if (!events.isEmpty())
+			theDirty.add(watch);
+		if (!key.reset()) {
+			// The directory can no longer be watched, probably because it has been deleted. Poll it from now on.
+			synchronized (theWatches) {
+				theWatches.remove(watch.path, watch);
+				theKeys.remove(key);
+			}
+			theDirty.remove(watch);
+			watch.collections.forEach(c -> {
+				refresh(c.collection);
+				c.fallback = getRefresher().add(c.collection);
+				if (c.removed) // Removed while the fallback was being installed
+					c.fallback.run();
+			});
+		}
+	}
+
+	private void flush() {
+		if (theDirty.isEmpty())
+			return;
+		List<DirectoryWatch> dirty = new ArrayList<>(theDirty);
+		theDirty.removeAll(dirty);
+		for (DirectoryWatch watch : dirty) {
+			boolean[] retry = new boolean[1];
+			watch.collections.forEach(c -> {
+				if (!refresh(c.collection))
+					retry[0] = true;
+			});
+			if (retry[0]) // The collection was busy, try again next time
+				theDirty.add(watch);
+		}
+	}
+
+	private static boolean refresh(DataControlledCollection<?, ?> collection) {
+		try {
+			return collection.refresh();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			return true;
+		}
+	}
+}
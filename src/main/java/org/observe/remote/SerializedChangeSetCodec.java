@@ -0,0 +1,422 @@
+package org.observe.remote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.observe.remote.ObservableServiceChange.ServiceChangeType;
+import org.qommons.collect.BetterList;
+
+/**
+ * <p>
+ * A compact binary encoding for lists of {@link SerializedObservableServerChangeSet}s, for syncing changes between
+ * {@link ObservableConfigServer}s.
+ * </p>
+ * <p>
+ * The stream begins with a 4-byte magic number and a version byte. All integers are variable-length, and values expected to be close to
+ * those of the previous change (change IDs, time stamps) are written as deltas. Clients and strings are written inline the first time they
+ * occur in the stream and as a table reference after that, so a client's key is only sent once. Each change's config address is written
+ * as the number of elements shared with the previous change's address, followed by the rest of its elements, so a run of changes to the
+ * same region of the config tree costs little more than the changed values.
+ * </p>
+ * <p>
+ * Since encoded data may come from a remote peer, every length and count read from a stream is checked against a maximum before anything
+ * is allocated for it. For {@link #decode(byte[]) decoding} an array, this is the length of the array.
+ * </p>
+ */
+public final class SerializedChangeSetCodec {
+	/** The magic number at the start of each encoded stream */
+	public static final int MAGIC = 0x4F534331; // "OSC1"
+	/** The current version of the encoding */
+	public static final int VERSION = 1;
+	/** The default maximum for any length or count {@link #read(InputStream) read} from a stream */
+	public static final int DEFAULT_MAX_LENGTH = 16 * 1024 * 1024;
+	/** The largest array allocated up front when reading a length or count, before the data has been seen */
+	private static final int MAX_PREALLOCATION = 4096;
+
+	private static final int HAS_ADDRESS = 1;
+	private static final int HAS_CONFIG_CHANGE_TYPE = 2;
+	private static final int HAS_TARGET_VALUE = 4;
+	private static final int HAS_TARGET_ROLE = 8;
+	private static final int HAS_GRANTED_CLIENT = 16;
+	private static final int HAS_INHERITED_ROLE = 32;
+	private static final int HAS_SIGNATURE = 64;
+
+	private static final ServiceChangeType[] CHANGE_TYPES = ServiceChangeType.values();
+	private static final ConfigModificationType[] MODIFICATION_TYPES = ConfigModificationType.values();
+
+	private SerializedChangeSetCodec() {
+	}
+
+	/**
+	 * @param changeSets The change sets to encode
+	 * @return The encoded change sets
+	 */
+	public static byte[] encode(List<SerializedObservableServerChangeSet> changeSets) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			write(changeSets, bytes);
+		} catch (IOException e) {
+			throw new IllegalStateException("Should not happen", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param encoded The bytes encoded by {@link #encode(List)}
+	 * @return The decoded change sets
+	 * @throws IOException If the data is not a valid change set encoding
+	 */
+	public static List<SerializedObservableServerChangeSet> decode(byte[] encoded) throws IOException {
+		// Every value occupies at least one byte, so no length or count can exceed the length of the data
+		return read(new ByteArrayInputStream(encoded), encoded.length);
+	}
+
+	/**
+	 * @param changeSets The change sets to write
+	 * @param out The stream to write the change sets to
+	 * @throws IOException If the stream throws an exception
+	 */
+	public static void write(List<SerializedObservableServerChangeSet> changeSets, OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+		data.writeInt(MAGIC);
+		data.write(VERSION);
+		new Writer(data).write(changeSets);
+		data.flush();
+	}
+
+	/**
+	 * @param in The stream to read the change sets from
+	 * @return The change sets written to the stream by {@link #write(List, OutputStream)}
+	 * @throws IOException If the stream throws an exception or its data is not a valid change set encoding
+	 */
+	public static List<SerializedObservableServerChangeSet> read(InputStream in) throws IOException {
+		return read(in, DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * @param in The stream to read the change sets from
+	 * @param maxLength The maximum for any length or count read from the stream
+	 * @return The change sets written to the stream by {@link #write(List, OutputStream)}
+	 * @throws IOException If the stream throws an exception or its data is not a valid change set encoding
+	 */
+	public static List<SerializedObservableServerChangeSet> read(InputStream in, int maxLength) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not an encoded change set stream");
+		int version = data.read();
+		if (version < 0)
+			throw new EOFException();
+		else if (version != VERSION)
+			throw new IOException("Unsupported change set encoding version: " + version);
+		return new Reader(data, maxLength).read();
+	}
+
+	private static class Writer {
+		final DataOutputStream out;
+		final Map<ObservableServiceClient.ClientId, Integer> clients;
+		final Map<String, Integer> strings;
+		BetterList<ServerConfigElement> previousAddress;
+		int previousChangeId;
+		long previousSeconds;
+
+		Writer(DataOutputStream out) {
+			this.out = out;
+			clients = new HashMap<>();
+			strings = new HashMap<>();
+		}
+
+		void write(List<SerializedObservableServerChangeSet> changeSets) throws IOException {
+			writeVarLong(out, changeSets.size());
+			for (SerializedObservableServerChangeSet changeSet : changeSets) {
+				writeClient(changeSet.getActorId());
+				Instant timeStamp = changeSet.getTimeStamp();
+				writeVarLong(out, zigZag(timeStamp.getEpochSecond() - previousSeconds));
+				writeVarLong(out, timeStamp.getNano());
+				previousSeconds = timeStamp.getEpochSecond();
+				writeVarLong(out, changeSet.getChanges().size());
+				for (SerializedObservableServerChangeSet.Change change : changeSet.getChanges())
+					write(change);
+			}
+		}
+
+		void write(SerializedObservableServerChangeSet.Change change) throws IOException {
+			int flags = 0;
+			if (change.getTargetConfigAddress() != null)
+				flags |= HAS_ADDRESS;
+			if (change.getConfigChangeType() != null)
+				flags |= HAS_CONFIG_CHANGE_TYPE;
+			if (change.getTargetValue() != null)
+				flags |= HAS_TARGET_VALUE;
+			if (change.getTargetRoleOwner() != null)
+				flags |= HAS_TARGET_ROLE;
+			if (change.getGrantedClient() != null)
+				flags |= HAS_GRANTED_CLIENT;
+			if (change.getInheritedRoleOwner() != null)
+				flags |= HAS_INHERITED_ROLE;
+			if (change.getSignature() != null)
+				flags |= HAS_SIGNATURE;
+			out.write(change.getType().ordinal());
+			out.write(flags);
+			writeVarLong(out, zigZag((long) change.getChangeId() - previousChangeId));
+			previousChangeId = change.getChangeId();
+			if ((flags & HAS_ADDRESS) != 0)
+				writeAddress(change.getTargetConfigAddress());
+			if ((flags & HAS_CONFIG_CHANGE_TYPE) != 0)
+				out.write(change.getConfigChangeType().ordinal());
+			if ((flags & HAS_TARGET_VALUE) != 0)
+				writeString(change.getTargetValue());
+			if ((flags & HAS_TARGET_ROLE) != 0) {
+				writeClient(change.getTargetRoleOwner());
+				writeVarLong(out, zigZag(change.getTargetRoleId()));
+				writeString(change.getTargetRoleName());
+			}
+			if ((flags & HAS_GRANTED_CLIENT) != 0)
+				writeClient(change.getGrantedClient());
+			if ((flags & HAS_INHERITED_ROLE) != 0) {
+				writeClient(change.getInheritedRoleOwner());
+				writeVarLong(out, zigZag(change.getInheritedRoleId()));
+				writeString(change.getInheritedRoleName());
+			}
+			if ((flags & HAS_SIGNATURE) != 0)
+				writeBytes(change.getSignature());
+		}
+
+		void writeAddress(BetterList<ServerConfigElement> address) throws IOException {
+			int shared = 0;
+			if (previousAddress != null) {
+				while (shared < address.size() && shared < previousAddress.size()
+					&& address.get(shared).equals(previousAddress.get(shared)))
+					shared++;
+			}
+			writeVarLong(out, shared);
+			writeVarLong(out, address.size() - shared);
+			for (int i = shared; i < address.size(); i++) {
+				writeClient(address.get(i).owner);
+				writeBytes(address.get(i).address);
+			}
+			previousAddress = address;
+		}
+
+		/** Writes 0 for a new client, followed by its content, or the client's index in the table plus 1 */
+		void writeClient(ObservableServiceClient.ClientId client) throws IOException {
+			Integer index = clients.get(client);
+			if (index != null) {
+				writeVarLong(out, index + 1);
+				return;
+			}
+			out.write(0);
+			clients.put(client, clients.size());
+			writeString(client.keyAlgorithm);
+			writeBytes(client.publicKey);
+			writeString(client.signatureAlgorithm);
+		}
+
+		/** Writes 0 for null, 1 for a new string followed by its content, or the string's index in the table plus 2 */
+		void writeString(String str) throws IOException {
+			if (str == null) {
+				out.write(0);
+				return;
+			}
+			Integer index = strings.get(str);
+			if (index != null) {
+				writeVarLong(out, index + 2);
+				return;
+			}
+			out.write(1);
+			strings.put(str, strings.size());
+			byte[] bytes = str.getBytes(ObservableServiceChange.UTF_8);
+			writeVarLong(out, bytes.length);
+			out.write(bytes);
+		}
+
+		void writeBytes(ByteArray bytes) throws IOException {
+			writeVarLong(out, bytes.size());
+			bytes.write(out);
+		}
+	}
+
+	private static class Reader {
+		final DataInputStream in;
+		final int maxLength;
+		final List<ObservableServiceClient.ClientId> clients;
+		final List<String> strings;
+		List<ServerConfigElement> previousAddress;
+		int previousChangeId;
+		long previousSeconds;
+
+		Reader(DataInputStream in, int maxLength) {
+			this.in = in;
+			this.maxLength = maxLength;
+			clients = new ArrayList<>();
+			strings = new ArrayList<>();
+			previousAddress = Collections.emptyList();
+		}
+
+		List<SerializedObservableServerChangeSet> read() throws IOException {
+			int setCount = readCount();
+			List<SerializedObservableServerChangeSet> changeSets = new ArrayList<>(Math.min(setCount, MAX_PREALLOCATION));
+			for (int s = 0; s < setCount; s++) {
+				ObservableServiceClient.ClientId actor = readClient();
+				long seconds = previousSeconds + unZigZag(readVarLong(in));
+				Instant timeStamp = Instant.ofEpochSecond(seconds, readVarLong(in));
+				previousSeconds = seconds;
+				int changeCount = readCount();
+				List<SerializedObservableServerChangeSet.Change> changes = new ArrayList<>(Math.min(changeCount, MAX_PREALLOCATION));
+				for (int c = 0; c < changeCount; c++)
+					changes.add(readChange(timeStamp));
+				changeSets.add(new SerializedObservableServerChangeSet(actor, timeStamp, changeCount == 1//
+					? Collections.singletonList(changes.get(0))
+					: BetterList.of(changes.toArray(new SerializedObservableServerChangeSet.Change[changeCount]))));
+			}
+			return changeSets;
+		}
+
+		SerializedObservableServerChangeSet.Change readChange(Instant timeStamp) throws IOException {
+			ServiceChangeType type = readEnum(CHANGE_TYPES);
+			int flags = in.readUnsignedByte();
+			int changeId = (int) (previousChangeId + unZigZag(readVarLong(in)));
+			previousChangeId = changeId;
+			BetterList<ServerConfigElement> address = (flags & HAS_ADDRESS) == 0 ? null : readAddress();
+			ConfigModificationType configChangeType = (flags & HAS_CONFIG_CHANGE_TYPE) == 0 ? null : readEnum(MODIFICATION_TYPES);
+			String targetValue = (flags & HAS_TARGET_VALUE) == 0 ? null : readString();
+			ObservableServiceClient.ClientId targetRoleOwner = null, grantedClient = null, inheritedRoleOwner = null;
+			long targetRoleId = 0, inheritedRoleId = 0;
+			String targetRoleName = null, inheritedRoleName = null;
+			if ((flags & HAS_TARGET_ROLE) != 0) {
+				targetRoleOwner = readClient();
+				targetRoleId = unZigZag(readVarLong(in));
+				targetRoleName = readString();
+			}
+			if ((flags & HAS_GRANTED_CLIENT) != 0)
+				grantedClient = readClient();
+			if ((flags & HAS_INHERITED_ROLE) != 0) {
+				inheritedRoleOwner = readClient();
+				inheritedRoleId = unZigZag(readVarLong(in));
+				inheritedRoleName = readString();
+			}
+			ByteArray signature = (flags & HAS_SIGNATURE) == 0 ? null : new ByteArray(readBytes());
+			return new SerializedObservableServerChangeSet.Change(timeStamp, changeId, type, address, configChangeType, targetValue,
+				targetRoleOwner, targetRoleId, targetRoleName, grantedClient, inheritedRoleOwner, inheritedRoleId, inheritedRoleName,
+				signature);
+		}
+
+		BetterList<ServerConfigElement> readAddress() throws IOException {
+			int shared = readCount();
+			if (shared > previousAddress.size())
+				throw new IOException("Bad shared address length: " + shared + " of " + previousAddress.size());
+			int added = readCount();
+			List<ServerConfigElement> address = new ArrayList<>(shared + Math.min(added, MAX_PREALLOCATION));
+			for (int i = 0; i < shared; i++)
+				address.add(previousAddress.get(i));
+			for (int i = 0; i < added; i++) {
+				ObservableServiceClient.ClientId owner = readClient();
+				address.add(new ServerConfigElement(owner, new ByteAddress(readBytes())));
+			}
+			BetterList<ServerConfigElement> list = BetterList.of(address.toArray(new ServerConfigElement[address.size()]));
+			previousAddress = list;
+			return list;
+		}
+
+		ObservableServiceClient.ClientId readClient() throws IOException {
+			int index = readCount();
+			if (index > clients.size())
+				throw new IOException("Bad client reference: " + index);
+			else if (index > 0)
+				return clients.get(index - 1);
+			String keyAlgorithm = readString();
+			ByteArray publicKey = new ByteArray(readBytes());
+			String signatureAlgorithm = readString();
+			if (keyAlgorithm == null || signatureAlgorithm == null)
+				throw new IOException("Null client algorithm");
+			ObservableServiceClient.ClientId client = new ObservableServiceClient.ClientId(keyAlgorithm, publicKey, signatureAlgorithm);
+			clients.add(client);
+			return client;
+		}
+
+		String readString() throws IOException {
+			int index = readCount();
+			if (index == 0)
+				return null;
+			else if (index > 1) {
+				if (index - 2 >= strings.size())
+					throw new IOException("Bad string reference: " + index);
+				return strings.get(index - 2);
+			}
+			String str = new String(readBytes(), ObservableServiceChange.UTF_8);
+			strings.add(str);
+			return str;
+		}
+
+		byte[] readBytes() throws IOException {
+			int length = readCount();
+			// Grow the array as the data arrives, so a corrupt length in a short stream cannot cause a large allocation
+			byte[] bytes = new byte[Math.min(length, MAX_PREALLOCATION)];
+			int read = 0;
+			while (read < length) {
+				if (read == bytes.length)
+					bytes = Arrays.copyOf(bytes, (int) Math.min(length, bytes.length * 2L));
+				int r = in.read(bytes, read, bytes.length - read);
+				if (r < 0)
+					throw new EOFException();
+				read += r;
+			}
+			return bytes;
+		}
+
+		int readCount() throws IOException {
+			long count = readVarLong(in);
+			if (count < 0 || count > maxLength)
+				throw new IOException("Bad count: " + count);
+			return (int) count;
+		}
+
+		<E extends Enum<E>> E readEnum(E[] values) throws IOException {
+			int ordinal = in.readUnsignedByte();
+			if (ordinal >= values.length)
+				throw new IOException("Bad " + values.getClass().getComponentType().getSimpleName() + " ordinal: " + ordinal);
+			return values[ordinal];
+		}
+	}
+
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed variable-length integer");
+	}
+}
@@ -0,0 +1,306 @@
+package org.observe.util;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * A bounded cache of function results keyed by function and input value, intended to be shared among many mapping operations that may
+ * encounter the same inputs.
+ * </p>
+ * <p>
+ * {@link org.observe.XformOptions#cache(boolean) Transformation caching} only remembers the previous source and result for each element, so
+ * when many elements map the same input (e.g. many rows mapping a currency code to a formatted exchange rate), the function is still
+ * evaluated once per element. Mapping through a memo cache's {@link #memoize(Function) memoized function} evaluates it once per distinct
+ * input, until the entry is evicted.
+ * </p>
+ * <p>
+ * Entries are evicted least-recently-used first when the cache exceeds its {@link Builder#withMaxSize(int) maximum size}, and after the
+ * cache's {@link Builder#expireAfterWrite(Duration) expiration} time, if set. The function is evaluated outside the cache's lock, so a
+ * slow function does not block other lookups, but concurrent misses for the same input may evaluate it more than once.
+ * </p>
+ * <p>
+ * A memoized function must be a pure function of its input, as results are shared. Results are cached per function and input, so
+ * different functions may share a cache without seeing each other's results. Inputs and functions are compared with
+ * {@link Object#equals(Object)}.
+ * </p>
+ *
+ * @param <K> The type of the input values
+ * @param <V> The type of the result values
+ * @see org.observe.Transformation.TransformationPrecursor#map(Function, MemoCache)
+ * @see org.observe.collect.ObservableCollection.CollectionDataFlow#map(com.google.common.reflect.TypeToken, Function, MemoCache)
+ */
+public class MemoCache<K, V> {
+	/**
+	 * @param <K> The type of the input values
+	 * @param <V> The type of the result values
+	 * @return A builder for a new memo cache
+	 */
+	public static <K, V> Builder<K, V> build() {
+		return new Builder<>();
+	}
+
+	/**
+	 * Builds a {@link MemoCache}
+	 *
+	 * @param <K> The type of the input values
+	 * @param <V> The type of the result values
+	 */
+	public static class Builder<K, V> {
+		private int theMaxSize = 1000;
+		private long theExpireNanos = -1;
+
+		Builder() {
+		}
+
+		/**
+		 * @param maxSize The maximum number of results to keep in the cache. Default is 1000.
+		 * @return This builder
+		 */
+		public Builder<K, V> withMaxSize(int maxSize) {
+			if (maxSize <= 0)
+				throw new IllegalArgumentException("Max size must be positive");
+			theMaxSize = maxSize;
+			return this;
+		}
+
+		/**
+		 * @param expiration The amount of time after which a result will be discarded and the function re-evaluated for the input, or
+		 *        null for no expiration (the default)
+		 * @return This builder
+		 */
+		public Builder<K, V> expireAfterWrite(Duration expiration) {
+			if (expiration == null)
+				theExpireNanos = -1;
+			else if (expiration.isNegative() || expiration.isZero())
+				throw new IllegalArgumentException("Expiration must be positive");
+			else
+				theExpireNanos = expiration.toNanos();
+			return this;
+		}
+
+		/** @return The new memo cache */
+		public MemoCache<K, V> build() {
+			return new MemoCache<>(theMaxSize, theExpireNanos);
+		}
+	}
+
+	/** The key of a cache entry: a function and an input to it */
+	private static class FunctionInput {
+		final Object function;
+		final Object input;
+		private final int hashCode;
+
+		FunctionInput(Object function, Object input) {
+			this.function = function;
+			this.input = input;
+			hashCode = function.hashCode() * 31 + Objects.hashCode(input);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FunctionInput))
+				return false;
+			FunctionInput other = (FunctionInput) obj;
+			return hashCode == other.hashCode && function.equals(other.function) && Objects.equals(input, other.input);
+		}
+	}
+
+	private static class CacheEntry<V> {
+		final V value;
+		final long written;
+
+		CacheEntry(V value, long written) {
+			this.value = value;
+			this.written = written;
+		}
+	}
+
+	private final int theMaxSize;
+	private final long theExpireNanos;
+	private final LinkedHashMap<FunctionInput, CacheEntry<V>> theEntries;
+	private long theHits;
+	private long theMisses;
+	private long theEvictions;
+
+	private MemoCache(int maxSize, long expireNanos) {
+		theMaxSize = maxSize;
+		theExpireNanos = expireNanos;
+		theEntries = new LinkedHashMap<FunctionInput, CacheEntry<V>>(Math.min(maxSize, 1024) * 4 / 3 + 1, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<FunctionInput, CacheEntry<V>> eldest) {
+				if (size() > theMaxSize) {
+					theEvictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/** @return The maximum number of results this cache will hold */
+	public int getMaxSize() {
+		return theMaxSize;
+	}
+
+	/**
+	 * @param key The input value
+	 * @param fn The function to produce the result if it is not cached
+	 * @return The cached or newly-computed result of the function for the input
+	 */
+	public V get(K key, Function<? super K, ? extends V> fn) {
+		FunctionInput mapKey = new FunctionInput(fn, key);
+		synchronized (theEntries) {
+			CacheEntry<V> entry = theEntries.get(mapKey);
+			if (entry != null) {
+				if (theExpireNanos < 0 || System.nanoTime() - entry.written < theExpireNanos) {
+					theHits++;
+					return entry.value;
+				}
+				theEntries.remove(mapKey);
+				theEvictions++;
+			}
+			theMisses++;
+		}
+		V value = fn.apply(key);
+		synchronized (theEntries) {
+			theEntries.put(mapKey, new CacheEntry<>(value, theExpireNanos < 0 ? 0 : System.nanoTime()));
+		}
+		return value;
+	}
+
+	/**
+	 * @param <K2> The input type of the function
+	 * @param fn The function to memoize
+	 * @return A function that returns results from this cache, evaluating the given function only for inputs not in the cache
+	 */
+	public <K2 extends K> Function<K2, V> memoize(Function<? super K2, ? extends V> fn) {
+		return new MemoizedFunction<>(this, fn);
+	}
+
+	/**
+	 * Discards the cached results of all functions for the given input, if present
+	 *
+	 * @param key The input value to discard the results for
+	 * @return Whether any result was cached for the input
+	 */
+	public boolean invalidate(K key) {
+		synchronized (theEntries) {
+			return theEntries.keySet().removeIf(entryKey -> Objects.equals(entryKey.input, key));
+		}
+	}
+
+	/** Discards all cached results whose {@link Builder#expireAfterWrite(Duration) expiration} has passed */
+	public void purgeExpired() {
+		if (theExpireNanos < 0)
+			return;
+		long now = System.nanoTime();
+		synchronized (theEntries) {
+			Iterator<CacheEntry<V>> iter = theEntries.values().iterator();
+			while (iter.hasNext()) {
+				if (now - iter.next().written >= theExpireNanos) {
+					iter.remove();
+					theEvictions++;
+				}
+			}
+		}
+	}
+
+	/** Discards all cached results */
+	public void clear() {
+		synchronized (theEntries) {
+			theEntries.clear();
+		}
+	}
+
+	/** @return The number of results currently cached */
+	public int size() {
+		synchronized (theEntries) {
+			return theEntries.size();
+		}
+	}
+
+	/** @return The number of lookups that were satisfied from the cache */
+	public long getHits() {
+		synchronized (theEntries) {
+			return theHits;
+		}
+	}
+
+	/** @return The number of lookups that required evaluation of the function */
+	public long getMisses() {
+		synchronized (theEntries) {
+			return theMisses;
+		}
+	}
+
+	/** @return The number of results that have been discarded due to size or time constraints */
+	public long getEvictions() {
+		synchronized (theEntries) {
+			return theEvictions;
+		}
+	}
+
+	/** @return The fraction of lookups that were satisfied from the cache, or 0 if there have been no lookups */
+	public double getHitRate() {
+		synchronized (theEntries) {
+			long total = theHits + theMisses;
+			return total == 0 ? 0 : theHits * 1.0 / total;
+		}
+	}
+
+	/** Resets this cache's {@link #getHits() hit}, {@link #getMisses() miss}, and {@link #getEvictions() eviction} statistics */
+	public void resetStats() {
+		synchronized (theEntries) {
+			theHits = theMisses = theEvictions = 0;
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (theEntries) {
+			return "memo(" + theEntries.size() + "/" + theMaxSize + ", " + theHits + " hits, " + theMisses + " misses, " + theEvictions
+				+ " evictions)";
+		}
+	}
+
+	static class MemoizedFunction<K, V> implements Function<K, V> {
+		private final MemoCache<? super K, V> theCache;
+		private final Function<? super K, ? extends V> theFunction;
+
+		MemoizedFunction(MemoCache<? super K, V> cache, Function<? super K, ? extends V> function) {
+			theCache = cache;
+			theFunction = function;
+		}
+
+		@Override
+		public V apply(K key) {
+			return ((MemoCache<K, V>) theCache).get(key, theFunction);
+		}
+
+		@Override
+		public int hashCode() {
+			return theFunction.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof MemoizedFunction && theCache == ((MemoizedFunction<?, ?>) obj).theCache
+				&& theFunction.equals(((MemoizedFunction<?, ?>) obj).theFunction);
+		}
+
+		@Override
+		public String toString() {
+			return "memoized(" + theFunction + ")";
+		}
+	}
+}
@@ -1,17 +1,21 @@
 package org.observe.util;
 
+import java.awt.EventQueue;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.observe.Observable;
+import org.observe.ObservableValue;
+import org.observe.SettableValue;
 import org.observe.Subscription;
 import org.observe.collect.CollectionElementMove;
 import org.observe.collect.DefaultObservableCollection;
@@ -46,8 +50,15 @@ import org.qommons.tree.BetterTreeList;
 import com.google.common.reflect.TypeToken;
 
 /**
+ * <p>
  * An {@link ObservableCollection} that only fires updates on a particular thread. This collection also batches events for performance, e.g.
  * for use in UI models.
+ * </p>
+ * <p>
+ * By default, all queued changes are flushed to the event thread at once. A {@link #withFlushPolicy(FlushPolicy) flush policy} may limit
+ * the amount of work done per flush so that the event thread stays responsive under a storm of changes, and may signal
+ * {@link #getBackpressure() backpressure} to producers when the queue grows too deep.
+ * </p>
  *
  * @param <E> The type of elements in the collection
  */
@@ -114,6 +125,167 @@ public class SafeObservableCollection<E> extends ObservableCollectionWrapper<E>
 		}
 	}
 
+	/**
+	 * Governs how much work a {@link SafeObservableCollection} does in a single flush of its queued changes to its event thread. Changes
+	 * that do not fit in a flush are flushed in subsequent event thread slices.
+	 */
+	public static class FlushPolicy {
+		/** The default policy, which flushes all queued changes at once and never signals backpressure */
+		public static final FlushPolicy DEFAULT = new FlushPolicy(Integer.MAX_VALUE, null, 0);
+
+		private final int theMaxEventsPerFlush;
+		private final Duration theFrameBudget;
+		private final int theBackpressureThreshold;
+
+		private FlushPolicy(int maxEventsPerFlush, Duration frameBudget, int backpressureThreshold) {
+			theMaxEventsPerFlush = maxEventsPerFlush;
+			theFrameBudget = frameBudget;
+			theBackpressureThreshold = backpressureThreshold;
+		}
+
+		/** @return The maximum number of events to fire in a single flush */
+		public int getMaxEventsPerFlush() {
+			return theMaxEventsPerFlush;
+		}
+
+		/**
+		 * @param maxEvents The maximum number of events to fire in a single flush
+		 * @return A policy like this one, but with the given event limit
+		 */
+		public FlushPolicy withMaxEventsPerFlush(int maxEvents) {
+			if (maxEvents <= 0)
+				throw new IllegalArgumentException("Max events per flush must be positive");
+			return new FlushPolicy(maxEvents, theFrameBudget, theBackpressureThreshold);
+		}
+
+		/** @return The maximum amount of time to spend in a single flush, or null for no limit */
+		public Duration getFrameBudget() {
+			return theFrameBudget;
+		}
+
+		/**
+		 * @param budget The maximum amount of time to spend in a single flush, or null for no limit. A flush always fires at least one
+		 *        event, so a flush may exceed this budget by the duration of a single event.
+		 * @return A policy like this one, but with the given time budget
+		 */
+		public FlushPolicy withFrameBudget(Duration budget) {
+			if (budget != null && (budget.isNegative() || budget.isZero()))
+				throw new IllegalArgumentException("Frame budget must be positive");
+			return new FlushPolicy(theMaxEventsPerFlush, budget, theBackpressureThreshold);
+		}
+
+		/** @return The queue depth at or above which the collection will signal backpressure, or 0 if backpressure is not signaled */
+		public int getBackpressureThreshold() {
+			return theBackpressureThreshold;
+		}
+
+		/**
+		 * @param threshold The queue depth at or above which the collection will {@link SafeObservableCollection#getBackpressure() signal
+		 *        backpressure} to producers. The signal is released when the queue drains to half this depth. 0 to disable backpressure.
+		 * @return A policy like this one, but with the given backpressure threshold
+		 */
+		public FlushPolicy withBackpressureThreshold(int threshold) {
+			if (threshold < 0)
+				throw new IllegalArgumentException("Backpressure threshold may not be negative");
+			return new FlushPolicy(theMaxEventsPerFlush, theFrameBudget, threshold);
+		}
+
+		/** @return Whether this policy may split queued changes across multiple flushes */
+		public boolean isLimited() {
+			return theMaxEventsPerFlush < Integer.MAX_VALUE || theFrameBudget != null;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder str = new StringBuilder("flush(");
+			str.append(theMaxEventsPerFlush == Integer.MAX_VALUE ? "unlimited" : String.valueOf(theMaxEventsPerFlush)).append(" events");
+			if (theFrameBudget != null)
+				str.append(", ").append(theFrameBudget);
+			if (theBackpressureThreshold > 0)
+				str.append(", backpressure@").append(theBackpressureThreshold);
+			return str.append(')').toString();
+		}
+	}
+
+	/** A snapshot of the flushing performance of a {@link SafeObservableCollection} */
+	public static class FlushMetrics {
+		private final int theQueueDepth;
+		private final int theMaxQueueDepth;
+		private final long theFlushes;
+		private final long thePartialFlushes;
+		private final long theFlushedEvents;
+		private final long theCoalescedUpdates;
+		private final Duration theLastFlushDuration;
+		private final Duration theMaxFlushDuration;
+		private final Duration theTotalFlushDuration;
+
+		FlushMetrics(int queueDepth, int maxQueueDepth, long flushes, long partialFlushes, long flushedEvents, long coalescedUpdates,
+			long lastFlushNanos, long maxFlushNanos, long totalFlushNanos) {
+			theQueueDepth = queueDepth;
+			theMaxQueueDepth = maxQueueDepth;
+			theFlushes = flushes;
+			thePartialFlushes = partialFlushes;
+			theFlushedEvents = flushedEvents;
+			theCoalescedUpdates = coalescedUpdates;
+			theLastFlushDuration = Duration.ofNanos(lastFlushNanos);
+			theMaxFlushDuration = Duration.ofNanos(maxFlushNanos);
+			theTotalFlushDuration = Duration.ofNanos(totalFlushNanos);
+		}
+
+		/** @return The number of source changes currently queued to be flushed */
+		public int getQueueDepth() {
+			return theQueueDepth;
+		}
+
+		/** @return The greatest number of source changes that have been queued at once */
+		public int getMaxQueueDepth() {
+			return theMaxQueueDepth;
+		}
+
+		/** @return The number of flushes that have fired events */
+		public long getFlushes() {
+			return theFlushes;
+		}
+
+		/** @return The number of flushes that were cut short by the {@link FlushPolicy flush policy} */
+		public long getPartialFlushes() {
+			return thePartialFlushes;
+		}
+
+		/** @return The number of events that have been fired by flushes */
+		public long getFlushedEvents() {
+			return theFlushedEvents;
+		}
+
+		/** @return The number of source updates that were coalesced into an update already queued for the same element */
+		public long getCoalescedUpdates() {
+			return theCoalescedUpdates;
+		}
+
+		/** @return The duration of the most recent flush */
+		public Duration getLastFlushDuration() {
+			return theLastFlushDuration;
+		}
+
+		/** @return The duration of the longest flush */
+		public Duration getMaxFlushDuration() {
+			return theMaxFlushDuration;
+		}
+
+		/** @return The average duration of a flush */
+		public Duration getAverageFlushDuration() {
+			return theFlushes == 0 ? Duration.ZERO : theTotalFlushDuration.dividedBy(theFlushes);
+		}
+
+		@Override
+		public String toString() {
+			return new StringBuilder().append("queue ").append(theQueueDepth).append(" (max ").append(theMaxQueueDepth).append("), ")
+				.append(theFlushes).append(" flushes (").append(thePartialFlushes).append(" partial), ").append(theFlushedEvents)
+				.append(" events, ").append(theCoalescedUpdates).append(" coalesced; duration avg ").append(getAverageFlushDuration())
+				.append(", max ").append(theMaxFlushDuration).toString();
+		}
+	}
+
 	@SuppressWarnings("rawtypes")
 	private final DbugAnchor<SafeObservableCollection> theAnchor;
 	/** The source collection whose data this safe collection represents */
@@ -146,6 +318,21 @@ public class SafeObservableCollection<E> extends ObservableCollectionWrapper<E>
 	private final Map<CollectionElementMove, ElementId> theAddMoves;
 	int theMidMoveCount;
 
+	private volatile FlushPolicy theFlushPolicy;
+	private final SettableValue<Boolean> theBackpressure;
+	private boolean isContinuationScheduled;
+	// The queue depth and the metrics are only written while holding the flush lock, which serializes the writes.
+	// They are volatile so that they can be read from any thread without taking the flush lock.
+	private volatile int theQueueDepth;
+	private volatile int theMaxQueueDepth;
+	private volatile long theFlushCount;
+	private volatile long thePartialFlushCount;
+	private volatile long theFlushedEventCount;
+	private volatile long theCoalescedUpdateCount;
+	private volatile long theLastFlushNanos;
+	private volatile long theMaxFlushNanos;
+	private volatile long theTotalFlushNanos;
+
 	/**
 	 * @param collection The backing collection
 	 * @param threading The thread constraint for this collection
@@ -181,8 +368,10 @@ public class SafeObservableCollection<E> extends ObservableCollectionWrapper<E>
 		if (d.isActive())
 			Debug.d().debug(this, true).merge(d);
 
+		theFlushPolicy = FlushPolicy.DEFAULT;
+		theBackpressure = SettableValue.build(boolean.class).withValue(false).build();
 		thePeriodicFlushTask = QommonsTimer.getCommonInstance().build(() -> {
-			if (doFlush())
+			if (doFlush(true))
 				scheduleFlush();
 		}, Duration.ofMillis(500), false).withThreading((task, timer) -> {
 			threading.invoke(task);
@@ -193,10 +382,10 @@ public class SafeObservableCollection<E> extends ObservableCollectionWrapper<E>
 			if (threading.isEventThread()) {
 				try (Transaction t = theSyntheticCollection.lock(true, cause)) { // For causality
 					if (!isLocked.get())
-						doFlush();
+						doFlush(true);
 				}
 			} else
-				threading.invoke(this::doFlush);
+				threading.invoke(() -> doFlush(true));
 		});
 		theFlushLock = new AtomicBoolean();
 		theElementsBySource = new HashMap<>(Math.max(10, collection.size() * 4 / 3));
@@ -251,6 +440,69 @@ public class SafeObservableCollection<E> extends ObservableCollectionWrapper<E>
 		thePeriodicFlushTask.times(2).setActive(true);
 	}
 
+	/** @return The policy governing how much work this collection does in a single flush */
+	public FlushPolicy getFlushPolicy() {
+		return theFlushPolicy;
+	}
+
+	/**
+	 * @param policy The policy to govern how much work this collection does in a single flush
+	 * @return This collection
+	 */
+	public SafeObservableCollection<E> withFlushPolicy(FlushPolicy policy) {
+		theFlushPolicy = policy == null ? FlushPolicy.DEFAULT : policy;
+		return this;
+	}
+
+	/**
+	 * @return A value that is true while the number of changes queued for flushing is at or above the
+	 *         {@link FlushPolicy#withBackpressureThreshold(int) backpressure threshold} of this collection's flush policy. Producers may
+	 *         use this to throttle their changes until the event thread catches up.
+	 */
+	public ObservableValue<Boolean> getBackpressure() {
+		return theBackpressure.unsettable();
+	}
+
+	/** @return The number of source changes currently queued to be flushed to the event thread */
+	public int getQueueDepth() {
+		return theQueueDepth;
+	}
+
+	/**
+	 * @return A snapshot of this collection's flushing performance. Each statistic is current, but if events are being handled or flushed
+	 *         on another thread, the statistics may not all be from the same instant.
+	 */
+	public FlushMetrics getFlushMetrics() {
+		return new FlushMetrics(theQueueDepth, theMaxQueueDepth, theFlushCount, thePartialFlushCount, theFlushedEventCount,
+			theCoalescedUpdateCount, theLastFlushNanos, theMaxFlushNanos, theTotalFlushNanos);
+	}
+
+	/** Must be called while holding the flush lock, after modifying the queues */
+	private void updateQueueDepth() {
+		int depth = theAddedElements.size() + theRemovedElements.size() + theChangedElements.size();
+		theQueueDepth = depth;
+		if (depth > theMaxQueueDepth)
+			theMaxQueueDepth = depth;
+	}
+
+	private void updateBackpressure() {
+		// Synchronized so that the signal always reflects the depth seen by the last thread to update it
+		synchronized (theBackpressure) {
+			int threshold = theFlushPolicy.getBackpressureThreshold();
+			if (threshold == 0) {
+				if (theBackpressure.get())
+					theBackpressure.set(false, null);
+				return;
+			}
+			int depth = theQueueDepth;
+			if (depth >= threshold) {
+				if (!theBackpressure.get())
+					theBackpressure.set(true, null);
+			} else if (depth <= threshold / 2 && theBackpressure.get())
+				theBackpressure.set(false, null);
+		}
+	}
+
 	@Override
 	public long getStamp() {
 		return theStamp;
@@ -286,9 +538,13 @@ public class SafeObservableCollection<E> extends ObservableCollectionWrapper<E>
 		}
 		try {
 			doHandleEvent(evt);
+			updateQueueDepth();
 		} finally {
 			theFlushLock.set(false);
 		}
+		int threshold = theFlushPolicy.getBackpressureThreshold();
+		if (threshold > 0 && theQueueDepth >= threshold)
+			updateBackpressure();
 		evt.getRootCausable().onFinish(theFlushKey);
 		scheduleFlush();
 	}
@@ -339,17 +595,29 @@ public class SafeObservableCollection<E> extends ObservableCollectionWrapper<E>
 			if (!found.isChanged) {
 				found.isChanged = true;
 				theChangedElements.add(found);
-			}
+			} else
+				theCoalescedUpdateCount++;
 			break;
 		}
 	}
 
 	/**
-	 * Flushes this collection's events to the event thread
+	 * Flushes all of this collection's queued events to the event thread
 	 *
 	 * @return Whether anything was flushed, or also if the state of changes prevented flushing from occurring (should try again)
 	 */
 	protected boolean doFlush() {
+		return doFlush(false);
+	}
+
+	/**
+	 * Flushes this collection's events to the event thread
+	 *
+	 * @param limited Whether to obey the limits of this collection's {@link #getFlushPolicy() flush policy}. If false, all queued events
+	 *        will be flushed.
+	 * @return Whether anything was flushed, or also if the state of changes prevented flushing from occurring (should try again)
+	 */
+	protected boolean doFlush(boolean limited) {
 		if (isFinished || theMidMoveCount > 0)
 			return false;
 		ObservableSwingUtils.flushEQCache();
@@ -365,6 +633,14 @@ public class SafeObservableCollection<E> extends ObservableCollectionWrapper<E>
 		theAnchor.event("flush", null);
 		isFlushing = true;
 		boolean flushed = false;
+		long start = System.nanoTime();
+		FlushPolicy policy = theFlushPolicy;
+		// Moves must be flushed in a single pass, since removals and their corresponding additions are paired up in this method
+		boolean limit = limited && policy.isLimited() && theAddMoves.isEmpty();
+		int maxEvents = policy.getMaxEventsPerFlush();
+		long deadline = policy.getFrameBudget() == null ? Long.MAX_VALUE : start + policy.getFrameBudget().toNanos();
+		int events = 0;
+		boolean complete = true;
 		try (Transaction t = theSyntheticCollection.lock(true, null)) {
 			// First, the removals
 			Map<ElementId, CollectionElementMove> moves = BetterMap.empty();
@@ -379,7 +655,12 @@ public class SafeObservableCollection<E> extends ObservableCollectionWrapper<E>
 						added.putIfAbsent(theCollection.getElement(add).get(), add);
 				}
 				flushed = true;
-				for (ElementRef<E> removedEl : theRemovedElements) {
+				int r;
+				for (r = 0; r < theRemovedElements.size(); r++) {
+					if (limit && isFlushBudgetSpent(events, maxEvents, deadline))
+						break;
+					ElementRef<E> removedEl = theRemovedElements.get(r);
+					events++;
 					theElementsBySource.remove(removedEl.sourceId);
 					ElementId moved;
 					if (removedEl.move != null) {
@@ -389,6 +670,7 @@ public class SafeObservableCollection<E> extends ObservableCollectionWrapper<E>
 						moved = added.remove(removedEl.getValue());
 					CollectionElementMove move = moved == null ? null : new CollectionElementMove();
 					if (moved != null) {
+						limit = false; // The addition must be flushed in this pass as well
 						moves.put(moved, move);
 						try (Transaction t2 = theSyntheticCollection.lock(true, move)) {
 							theSyntheticCollection.mutableElement(removedEl.getSynthId()).remove();
@@ -396,28 +678,49 @@ public class SafeObservableCollection<E> extends ObservableCollectionWrapper<E>
 					} else
 						theSyntheticCollection.mutableElement(removedEl.getSynthId()).remove();
 				}
-				theRemovedElements.clear();
+				if (r < theRemovedElements.size()) {
+					theRemovedElements.subList(0, r).clear();
+					complete = false;
+				} else
+					theRemovedElements.clear();
 			}
 
 			// Now set/updates
-			if (!theChangedElements.isEmpty()) {
+			if (complete && !theChangedElements.isEmpty()) {
 				flushed = true;
-				for (ElementRef<E> changedEl : theChangedElements) {
+				int c;
+				for (c = 0; c < theChangedElements.size(); c++) {
+					if (limit && isFlushBudgetSpent(events, maxEvents, deadline))
+						break;
+					ElementRef<E> changedEl = theChangedElements.get(c);
 					if (changedEl.isRemoved)
 						continue;
+					events++;
 					changedEl.isChanged = false;
 					// Make a whole new element because the passively-derived collection would otherwise
 					// report the new value for both the old and new values in the fired event
 					theSyntheticCollection.mutableElement(changedEl.getSynthId()).set(//
 						new ElementRef<>(changedEl.sourceId, theCollection.getElement(changedEl.sourceId).get(), changedEl.synthId));
 				}
-				theChangedElements.clear();
+				if (c < theChangedElements.size()) {
+					theChangedElements.subList(0, c).clear();
+					complete = false;
+				} else
+					theChangedElements.clear();
 			}
 
 			// Finally, additions
-			if (!theAddedElements.isEmpty()) {
+			if (complete && !theAddedElements.isEmpty()) {
 				flushed = true;
-				for (ElementId addedEl : theAddedElements) {
+				Iterator<ElementId> addIter = theAddedElements.iterator();
+				while (addIter.hasNext()) {
+					if (limit && isFlushBudgetSpent(events, maxEvents, deadline)) {
+						complete = false;
+						break;
+					}
+					ElementId addedEl = addIter.next();
+					addIter.remove();
+					events++;
 					CollectionElement<ElementRef<E>> before = theSyntheticBacking.search(el -> addedEl.compareTo(el.sourceId),
 						SortedSearchFilter.Greater);
 					ElementRef<E> newEl = createElement(addedEl, theCollection.getElement(addedEl).get());
@@ -436,16 +739,59 @@ public class SafeObservableCollection<E> extends ObservableCollectionWrapper<E>
 							theSyntheticCollection.addElement(newEl, null, before.get().getSynthId(), false);
 					}
 				}
-				theAddedElements.clear();
 			}
-			theStamp = theCollection.getStamp();
+			if (complete)
+				theStamp = theCollection.getStamp();
+			else
+				theStamp++; // Our content has changed, but we are not yet in sync with the source
+			updateQueueDepth();
+			if (flushed) {
+				long duration = System.nanoTime() - start;
+				theFlushCount++;
+				theFlushedEventCount += events;
+				theLastFlushNanos = duration;
+				theTotalFlushNanos += duration;
+				if (duration > theMaxFlushNanos)
+					theMaxFlushNanos = duration;
+				if (!complete)
+					thePartialFlushCount++;
+			}
 		} finally {
 			isFlushing = false;
 			theFlushLock.set(false);
 		}
+		if (flushed && !complete)
+			scheduleContinuation();
+		updateBackpressure();
 		return flushed;
 	}
 
+	private static boolean isFlushBudgetSpent(int events, int maxEvents, long deadline) {
+		if (events == 0)
+			return false; // Always make progress
+		else if (events >= maxEvents)
+			return true;
+		else
+			return deadline != Long.MAX_VALUE && System.nanoTime() >= deadline;
+	}
+
+	/** Schedules the remainder of a partial flush in a later slice of the event thread, allowing other events to be processed first */
+	private void scheduleContinuation() {
+		if (theThreadConstraint == ThreadConstraint.EDT) {
+			if (isContinuationScheduled)
+				return;
+			isContinuationScheduled = true;
+			EventQueue.invokeLater(() -> {
+				isContinuationScheduled = false;
+				if (!isLocked.get())
+					doFlush(true);
+				else
+					scheduleFlush();
+			});
+		} else
+			scheduleFlush();
+	}
+
 	private ElementRef<E> findRef(ElementId sourceId) {
 		return theElementsBySource.get(sourceId);
 		/* This code was (I thought) a pretty slick way of navigating a tree whose elements might not actually be in the source
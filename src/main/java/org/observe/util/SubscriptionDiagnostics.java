@@ -0,0 +1,302 @@
+package org.observe.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.observe.Subscription;
+import org.qommons.Identifiable;
+import org.qommons.threading.QommonsTimer;
+
+/**
+ * <p>
+ * Diagnostics for finding listener leaks, where something keeps a chain of observable structures alive (and notifying) after it is no
+ * longer needed. Such leaks are otherwise only noticed through heap growth or through event dispatch becoming slower and slower.
+ * </p>
+ * <p>
+ * When {@link #setEnabled(boolean) enabled} (or when the {@value #ENABLED_PROPERTY} system property is "true"), each subscription to the
+ * core observable structures (base collections, values, and observables, and actively-derived collections) is tracked against its source.
+ * {@link #getTopHolders(int)} then reports the sources with the most live subscriptions, with the age of the subscriptions and the
+ * identity of the source, which for derived structures describes the flow chain it belongs to.
+ * </p>
+ * <p>
+ * Sources are only weakly referenced, so tracking does not itself cause leaks. Subscriptions made while tracking was disabled are not
+ * counted.
+ * </p>
+ */
+public class SubscriptionDiagnostics {
+	/** The system property which, if "true", enables subscription tracking from startup */
+	public static final String ENABLED_PROPERTY = "observe.diagnostics.subscriptions";
+
+	private static volatile boolean isEnabled = Boolean.getBoolean(ENABLED_PROPERTY);
+	private static final AtomicLong ID_GEN = new AtomicLong();
+	private static final ConcurrentHashMap<SourceKey, SourceRecord> SOURCES = new ConcurrentHashMap<>();
+	private static final ReferenceQueue<Object> COLLECTED = new ReferenceQueue<>();
+
+	private SubscriptionDiagnostics() {
+	}
+
+	/** @return Whether subscriptions are currently being tracked */
+	public static boolean isEnabled() {
+		return isEnabled;
+	}
+
+	/**
+	 * @param enabled Whether subscriptions should be tracked
+	 * @see #ENABLED_PROPERTY
+	 */
+	public static void setEnabled(boolean enabled) {
+		isEnabled = enabled;
+		if (!enabled)
+			SOURCES.clear();
+	}
+
+	/**
+	 * Tracks a subscription to a source, if tracking is {@link #isEnabled() enabled}
+	 *
+	 * @param source The source that was subscribed to
+	 * @param subscription The subscription to the source
+	 * @return The subscription to return to the caller, which must be used to unsubscribe
+	 */
+	public static Subscription track(Object source, Subscription subscription) {
+		if (!isEnabled)
+			return subscription;
+		purge();
+		long id = ID_GEN.getAndIncrement();
+		SourceRecord record;
+		while (true) {
+			record = SOURCES.get(new SourceKey(source, null));
+			if (record == null) {
+				SourceRecord newRecord = new SourceRecord(new SourceKey(source, COLLECTED));
+				record = SOURCES.putIfAbsent(newRecord.key, newRecord);
+				if (record == null)
+					record = newRecord;
+			}
+			synchronized (record) {
+				if (!record.isRemoved) {
+					record.live.put(id, System.currentTimeMillis());
+					record.total++;
+					break;
+				}
+			}
+		}
+		SourceRecord fRecord = record;
+		AtomicBoolean unsubscribed = new AtomicBoolean();
+		return () -> {
+			if (unsubscribed.compareAndSet(false, true))
+				fRecord.live.remove(id);
+			subscription.unsubscribe();
+		};
+	}
+
+	/** @return The number of live tracked subscriptions to all sources */
+	public static long getLiveSubscriptionCount() {
+		purge();
+		long count = 0;
+		for (SourceRecord record : SOURCES.values())
+			count += record.live.size();
+		return count;
+	}
+
+	/** @return Reports for all live sources with tracked subscriptions, from the most subscribed to the least */
+	public static List<SourceReport> getReports() {
+		purge();
+		List<SourceReport> reports = new ArrayList<>(SOURCES.size());
+		long now = System.currentTimeMillis();
+		for (SourceRecord record : SOURCES.values()) {
+			SourceReport report = null;
+			synchronized (record) {
+				if (record.live.isEmpty()) {
+					record.isRemoved = true;
+					SOURCES.remove(record.key, record);
+				} else
+					report = record.report(now);
+			}
+			if (report != null)
+				reports.add(report);
+		}
+		Collections.sort(reports, (r1, r2) -> Integer.compare(r2.getLiveSubscriptions(), r1.getLiveSubscriptions()));
+		return reports;
+	}
+
+	/**
+	 * @param count The maximum number of sources to report
+	 * @return Reports for the sources with the most live tracked subscriptions
+	 */
+	public static List<SourceReport> getTopHolders(int count) {
+		List<SourceReport> reports = getReports();
+		return reports.size() <= count ? reports : new ArrayList<>(reports.subList(0, count));
+	}
+
+	/**
+	 * @param count The maximum number of sources to report
+	 * @return A printable report of the sources with the most live tracked subscriptions
+	 */
+	public static String printTopHolders(int count) {
+		StringBuilder str = new StringBuilder();
+		str.append(getLiveSubscriptionCount()).append(" live subscriptions");
+		for (SourceReport report : getTopHolders(count))
+			str.append("\n\t").append(report);
+		return str.toString();
+	}
+
+	/**
+	 * Periodically logs the sources with the most live tracked subscriptions
+	 *
+	 * @param interval The interval at which to log
+	 * @param count The maximum number of sources to report each time
+	 * @param log The logger to print the report to
+	 * @return A subscription to stop logging
+	 */
+	public static Subscription logPeriodically(Duration interval, int count, Consumer<? super String> log) {
+		QommonsTimer.TaskHandle task = QommonsTimer.getCommonInstance().build(() -> {
+			if (isEnabled)
+				log.accept(printTopHolders(count));
+		}, interval, false);
+		task.setActive(true);
+		return () -> task.setActive(false);
+	}
+
+	private static void purge() {
+		Reference<?> ref = COLLECTED.poll();
+		while (ref != null) {
+			SourceRecord record = SOURCES.remove(ref);
+			if (record != null) {
+				synchronized (record) {
+					record.isRemoved = true;
+				}
+			}
+			ref = COLLECTED.poll();
+		}
+	}
+
+	/** A weak, identity-based key for a source */
+	private static class SourceKey extends WeakReference<Object> {
+		private final int theHash;
+
+		SourceKey(Object source, ReferenceQueue<Object> queue) {
+			super(source, queue);
+			theHash = System.identityHashCode(source);
+		}
+
+		@Override
+		public int hashCode() {
+			return theHash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			else if (!(obj instanceof SourceKey) || ((SourceKey) obj).theHash != theHash)
+				return false;
+			Object source = get();
+			return source != null && source == ((SourceKey) obj).get();
+		}
+	}
+
+	private static class SourceRecord {
+		final SourceKey key;
+		final String type;
+		/** Subscription ID to creation time */
+		final ConcurrentHashMap<Long, Long> live;
+		long total;
+		boolean isRemoved;
+
+		SourceRecord(SourceKey key) {
+			this.key = key;
+			Object source = key.get();
+			type = source == null ? "?" : source.getClass().getName();
+			live = new ConcurrentHashMap<>();
+		}
+
+		SourceReport report(long now) {
+			Object source = key.get();
+			String identity;
+			if (source instanceof Identifiable)
+				identity = String.valueOf(((Identifiable) source).getIdentity());
+			else
+				identity = String.valueOf(source);
+			long oldest = now, totalAge = 0;
+			int count = 0;
+			for (Long created : live.values()) {
+				oldest = Math.min(oldest, created);
+				totalAge += now - created;
+				count++;
+			}
+			return new SourceReport(source, type, identity, count, total, Duration.ofMillis(now - oldest),
+				Duration.ofMillis(count == 0 ? 0 : totalAge / count));
+		}
+	}
+
+	/** A report on the tracked subscriptions to a single source */
+	public static final class SourceReport {
+		private final WeakReference<Object> theSource;
+		private final String theType;
+		private final String theIdentity;
+		private final int theLiveSubscriptions;
+		private final long theTotalSubscriptions;
+		private final Duration theOldestAge;
+		private final Duration theAverageAge;
+
+		SourceReport(Object source, String type, String identity, int liveSubscriptions, long totalSubscriptions, Duration oldestAge,
+			Duration averageAge) {
+			theSource = new WeakReference<>(source);
+			theType = type;
+			theIdentity = identity;
+			theLiveSubscriptions = liveSubscriptions;
+			theTotalSubscriptions = totalSubscriptions;
+			theOldestAge = oldestAge;
+			theAverageAge = averageAge;
+		}
+
+		/** @return The source, or null if it has since been garbage-collected */
+		public Object getSource() {
+			return theSource.get();
+		}
+
+		/** @return The class name of the source */
+		public String getType() {
+			return theType;
+		}
+
+		/** @return The identity of the source, which for derived structures describes the flow chain the source belongs to */
+		public String getIdentity() {
+			return theIdentity;
+		}
+
+		/** @return The number of tracked subscriptions to the source that have not been unsubscribed */
+		public int getLiveSubscriptions() {
+			return theLiveSubscriptions;
+		}
+
+		/** @return The number of subscriptions to the source that have been tracked, including those that have been unsubscribed */
+		public long getTotalSubscriptions() {
+			return theTotalSubscriptions;
+		}
+
+		/** @return The age of the oldest live subscription to the source */
+		public Duration getOldestAge() {
+			return theOldestAge;
+		}
+
+		/** @return The average age of the live subscriptions to the source */
+		public Duration getAverageAge() {
+			return theAverageAge;
+		}
+
+		@Override
+		public String toString() {
+			return theLiveSubscriptions + " live (" + theTotalSubscriptions + " total, oldest " + theOldestAge + ", avg " + theAverageAge
+				+ ") " + theIdentity + " [" + theType + "]";
+		}
+	}
+}
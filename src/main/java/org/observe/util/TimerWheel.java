@@ -0,0 +1,797 @@
+package org.observe.util;
+
+import java.awt.EventQueue;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+import org.qommons.threading.QommonsTimer;
+
+/**
+ * <p>
+ * A hashed, hierarchical timer wheel for scheduling large numbers of periodic tasks with coarse (tick-level) precision.
+ * </p>
+ * <p>
+ * {@link QommonsTimer} keeps every task in its own scheduling structure and wakes up for each of them. This class instead buckets tasks
+ * into slots of a set of wheels, one tick per slot, so that scheduling and cancelling are constant-time and all tasks due on a tick are
+ * executed as a single batch. Periodic tasks with the same (tick-rounded) frequency are coalesced into a single wheel entry, so thousands
+ * of e.g. 1-second pollers cost one wheel entry and one wakeup per second.
+ * </p>
+ * <p>
+ * The wheel thread sleeps until the next occupied slot rather than waking every tick, and not at all when nothing is scheduled.
+ * </p>
+ * <p>
+ * Tasks are executed on the wheel's thread unless an {@link Executor} is given, or the task is {@link Task#onEdt(boolean) configured} to
+ * run on the AWT event thread, in which case all such tasks due on a tick are run in a single EDT event.
+ * </p>
+ *
+ * @see #getMetrics()
+ */
+public class TimerWheel {
+	private static final int WHEEL_BITS = 6;
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	private static final int LEVELS = 4;
+	private static final long HORIZON = 1L << (WHEEL_BITS * LEVELS);
+
+	private static TimerWheel COMMON_INSTANCE;
+
+	/** @return A common timer wheel with a 10ms tick that executes its tasks on its own thread */
+	public static synchronized TimerWheel getCommonInstance() {
+		if (COMMON_INSTANCE == null)
+			COMMON_INSTANCE = new TimerWheel("Common Timer Wheel", Duration.ofMillis(10), null);
+		return COMMON_INSTANCE;
+	}
+
+	/**
+	 * A periodically-executing task. This interface is implemented by {@link TimerWheel.Task} and can also
+	 * {@link TimerWheel#forTimer(QommonsTimer.TaskHandle) wrap} a {@link QommonsTimer} task, so that utilities may be driven by either.
+	 */
+	public interface ScheduledTask {
+		/** @return The frequency at which this task executes */
+		Duration getFrequency();
+
+		/**
+		 * @param frequency The frequency at which this task should execute
+		 * @param precise Whether the timing of the execution should be as precise as possible (may be ignored by the implementation)
+		 * @return This task
+		 */
+		ScheduledTask setFrequency(Duration frequency, boolean precise);
+
+		/**
+		 * @param active Whether this task should be executing
+		 * @return This task
+		 */
+		ScheduledTask setActive(boolean active);
+
+		/** @return The number of times this task has executed since it was created or {@link #resetExecutionCount() reset} */
+		long getExecutionCount();
+
+		/**
+		 * Resets this task's {@link #getExecutionCount() execution count}
+		 *
+		 * @return This task
+		 */
+		ScheduledTask resetExecutionCount();
+
+		/** @return The last time this task began executing, or null if it has not yet */
+		Instant getLastRun();
+
+		/**
+		 * @param until The duration after which this task should stop executing
+		 * @return This task
+		 */
+		ScheduledTask endIn(Duration until);
+
+		/**
+		 * Causes this task to be executed asynchronously as soon as possible, regardless of its schedule
+		 *
+		 * @return This task
+		 */
+		ScheduledTask runImmediately();
+
+		/** @return Whether this task executes on the AWT event thread */
+		boolean isOnEdt();
+	}
+
+	/**
+	 * @param handle The {@link QommonsTimer} task to wrap
+	 * @return A {@link ScheduledTask} that controls the given timer task
+	 */
+	public static ScheduledTask forTimer(QommonsTimer.TaskHandle handle) {
+		return new TimerTaskWrapper(handle);
+	}
+
+	/** A snapshot of a timer wheel's performance characteristics */
+	public static class Metrics {
+		private final int theActiveTasks;
+		private final int theScheduledEntries;
+		private final int theFrequencyGroups;
+		private final long theTicks;
+		private final long theWakeups;
+		private final long theExecutions;
+		private final long theSkippedExecutions;
+		private final long theLateTicks;
+		private final Duration theMaxLateness;
+		private final Duration theAverageLateness;
+
+		Metrics(int activeTasks, int scheduledEntries, int frequencyGroups, long ticks, long wakeups, long executions,
+			long skippedExecutions, long lateTicks, long maxLatenessNanos, long totalLatenessNanos) {
+			theActiveTasks = activeTasks;
+			theScheduledEntries = scheduledEntries;
+			theFrequencyGroups = frequencyGroups;
+			theTicks = ticks;
+			theWakeups = wakeups;
+			theExecutions = executions;
+			theSkippedExecutions = skippedExecutions;
+			theLateTicks = lateTicks;
+			theMaxLateness = Duration.ofNanos(maxLatenessNanos);
+			theAverageLateness = lateTicks == 0 ? Duration.ZERO : Duration.ofNanos(totalLatenessNanos / lateTicks);
+		}
+
+		/** @return The number of tasks currently active in the wheel */
+		public int getActiveTasks() {
+			return theActiveTasks;
+		}
+
+		/** @return The number of entries (coalesced task groups) currently in the wheel's queue */
+		public int getQueueDepth() {
+			return theScheduledEntries;
+		}
+
+		/** @return The number of distinct task frequencies currently scheduled */
+		public int getFrequencyGroups() {
+			return theFrequencyGroups;
+		}
+
+		/** @return The number of ticks the wheel has advanced */
+		public long getTicks() {
+			return theTicks;
+		}
+
+		/** @return The number of times the wheel's thread has woken up to process ticks */
+		public long getWakeups() {
+			return theWakeups;
+		}
+
+		/** @return The number of task executions the wheel has dispatched */
+		public long getExecutions() {
+			return theExecutions;
+		}
+
+		/** @return The number of executions skipped because the previous execution of the task had not finished */
+		public long getSkippedExecutions() {
+			return theSkippedExecutions;
+		}
+
+		/** @return The greatest delay between when a tick was due and when its tasks were dispatched */
+		public Duration getMaxLateness() {
+			return theMaxLateness;
+		}
+
+		/** @return The average delay between when a tick with due tasks was due and when its tasks were dispatched */
+		public Duration getAverageLateness() {
+			return theAverageLateness;
+		}
+
+		@Override
+		public String toString() {
+			return new StringBuilder().append(theActiveTasks).append(" tasks in ").append(theScheduledEntries).append(" entries (")
+				.append(theFrequencyGroups).append(" frequencies); ").append(theExecutions).append(" executions (")
+				.append(theSkippedExecutions).append(" skipped) over ").append(theTicks).append(" ticks, ").append(theWakeups)
+				.append(" wakeups; lateness avg ").append(theAverageLateness).append(", max ").append(theMaxLateness).toString();
+		}
+	}
+
+	private final String theName;
+	private final long theTickNanos;
+	private final Executor theExecutor;
+	/** The manual clock {@link #runDue() driving} this wheel, or null if the wheel runs on its own thread by the system clock */
+	private final LongSupplier theClock;
+	private final Object theLock;
+	private final Entry[][] theWheels;
+	private final Map<Long, FrequencyGroup> theGroups;
+	private final List<Task> theImmediateTasks;
+	private long theStartNanos;
+	private long theCurrentTick;
+	private Thread theThread;
+	private boolean isShutdown;
+
+	private int theActiveTaskCount;
+	private int theEntryCount;
+	private long theWakeups;
+	private long theExecutions;
+	private long theSkippedExecutions;
+	private long theLateTicks;
+	private long theMaxLatenessNanos;
+	private long theTotalLatenessNanos;
+
+	/**
+	 * @param name The name for the wheel's thread
+	 * @param tick The resolution of the wheel. Task frequencies are rounded up to a multiple of this.
+	 * @param executor The executor to run (non-EDT) tasks on, or null to run them on the wheel's thread
+	 */
+	public TimerWheel(String name, Duration tick, Executor executor) {
+		this(name, tick, executor, null);
+	}
+
+	/**
+	 * Creates a wheel with a manual clock, for testing. Such a wheel has no thread of its own, but executes its tasks when
+	 * {@link #runDue()} is called.
+	 *
+	 * @param name The name for the wheel
+	 * @param tick The resolution of the wheel
+	 * @param executor The executor to run (non-EDT) tasks on, or null to run them on the thread calling {@link #runDue()}
+	 * @param clock The source of {@link System#nanoTime() nano time} for the wheel, or null to use the system clock and the wheel's own
+	 *        thread
+	 */
+	TimerWheel(String name, Duration tick, Executor executor, LongSupplier clock) {
+		if (tick.compareTo(Duration.ofMillis(1)) < 0)
+			throw new IllegalArgumentException("Tick must be >=1ms");
+		theName = name;
+		theTickNanos = tick.toNanos();
+		theExecutor = executor;
+		theClock = clock;
+		theLock = new Object();
+		theWheels = new Entry[LEVELS][WHEEL_SIZE];
+		theGroups = new HashMap<>();
+		theImmediateTasks = new ArrayList<>();
+		theStartNanos = now();
+	}
+
+	private long now() {
+		return theClock == null ? System.nanoTime() : theClock.getAsLong();
+	}
+
+	/** @return The resolution of this wheel */
+	public Duration getTick() {
+		return Duration.ofNanos(theTickNanos);
+	}
+
+	/**
+	 * Creates a new, inactive task in this wheel
+	 *
+	 * @param task The action to perform periodically
+	 * @param frequency The frequency at which to perform the action
+	 * @return The task, which must be {@link Task#setActive(boolean) activated} to begin executing
+	 */
+	public Task build(Runnable task, Duration frequency) {
+		return new Task(task, frequency);
+	}
+
+	/** @return A snapshot of this wheel's current performance metrics */
+	public Metrics getMetrics() {
+		synchronized (theLock) {
+			return new Metrics(theActiveTaskCount, theEntryCount, theGroups.size(), theCurrentTick, theWakeups, theExecutions,
+				theSkippedExecutions, theLateTicks, theMaxLatenessNanos, theTotalLatenessNanos);
+		}
+	}
+
+	/** Resets the cumulative statistics in this wheel's {@link #getMetrics() metrics} */
+	public void resetMetrics() {
+		synchronized (theLock) {
+			theWakeups = theExecutions = theSkippedExecutions = 0;
+			theLateTicks = theMaxLatenessNanos = theTotalLatenessNanos = 0;
+		}
+	}
+
+	/** Stops this wheel's thread. All tasks cease executing and new tasks cannot be activated. */
+	public void shutdown() {
+		synchronized (theLock) {
+			isShutdown = true;
+			theLock.notifyAll();
+		}
+	}
+
+	private long ticksFor(Duration frequency) {
+		long nanos = frequency.toNanos();
+		return Math.max(1, (nanos + theTickNanos - 1) / theTickNanos);
+	}
+
+	private long tickTime(long tick) {
+		return theStartNanos + tick * theTickNanos;
+	}
+
+	private void schedule(Entry entry) {
+		long delta = entry.deadline - theCurrentTick;
+		if (delta < 0) {
+			entry.deadline = theCurrentTick;
+			delta = 0;
+		}
+		int level = 0;
+		long slotTick;
+		if (delta >= HORIZON) {
+			level = LEVELS - 1;
+			slotTick = theCurrentTick + HORIZON - 1;
+		} else {
+			while (level < LEVELS - 1 && delta >= (1L << (WHEEL_BITS * (level + 1))))
+				level++;
+			slotTick = entry.deadline;
+		}
+		int slot = (int) ((slotTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+		entry.level = level;
+		entry.slot = slot;
+		entry.prev = null;
+		entry.next = theWheels[level][slot];
+		if (entry.next != null)
+			entry.next.prev = entry;
+		theWheels[level][slot] = entry;
+		theEntryCount++;
+	}
+
+	private void unschedule(Entry entry) {
+		if (entry.level < 0)
+			return;
+		if (entry.prev != null)
+			entry.prev.next = entry.next;
+		else
+			theWheels[entry.level][entry.slot] = entry.next;
+		if (entry.next != null)
+			entry.next.prev = entry.prev;
+		entry.prev = entry.next = null;
+		entry.level = -1;
+		theEntryCount--;
+	}
+
+	private Entry drain(int level, int slot) {
+		Entry head = theWheels[level][slot];
+		theWheels[level][slot] = null;
+		for (Entry e = head; e != null; e = e.next) {
+			e.level = -1;
+			theEntryCount--;
+		}
+		return head;
+	}
+
+	private void ensureRunning() {
+		if (isShutdown)
+			throw new IllegalStateException("This timer wheel has been shut down");
+		if (theEntryCount == 0 && theImmediateTasks.isEmpty()) { // Nothing is scheduled, so skip the idle ticks
+			long nowTick = (now() - theStartNanos) / theTickNanos;
+			if (nowTick > theCurrentTick)
+				theCurrentTick = nowTick;
+		}
+		if (theClock != null) // Driven manually
+			return;
+		if (theThread == null) {
+			theStartNanos = now() - theCurrentTick * theTickNanos;
+			theThread = new Thread(this::runWheel, theName);
+			theThread.setDaemon(true);
+			theThread.start();
+		} else
+			theLock.notifyAll();
+	}
+
+	private void runWheel() {
+		List<Task> edtTasks = new ArrayList<>();
+		List<Task> toRun = new ArrayList<>();
+		while (true) {
+			synchronized (theLock) {
+				while (!isShutdown && toRun.isEmpty()) {
+					long now = System.nanoTime();
+					if (theImmediateTasks.isEmpty() && tickTime(theCurrentTick) > now) {
+						long wait = nanosUntilNextWork(now);
+						if (wait != 0) {
+							try {
+								if (wait < 0)
+									theLock.wait();
+								else
+									theLock.wait(wait / 1_000_000, (int) (wait % 1_000_000));
+							} catch (InterruptedException e) {
+							}
+							continue;
+						}
+					}
+					collectDue(System.nanoTime(), toRun);
+				}
+				if (isShutdown) {
+					theThread = null;
+					return;
+				}
+			}
+			dispatch(toRun, edtTasks);
+		}
+	}
+
+	/**
+	 * Executes all the tasks that are due by the clock of a wheel {@link #TimerWheel(String, Duration, Executor, LongSupplier) created}
+	 * with a manual clock
+	 */
+	void runDue() {
+		if (theClock == null)
+			throw new IllegalStateException("This wheel is driven by its own thread");
+		List<Task> toRun = new ArrayList<>();
+		synchronized (theLock) {
+			if (isShutdown)
+				return;
+			collectDue(theClock.getAsLong(), toRun);
+		}
+		dispatch(toRun, new ArrayList<>());
+	}
+
+	/**
+	 * Advances the wheel up to the given time. Must be called holding the lock.
+	 *
+	 * @param now The current nano time
+	 * @param toRun The list to add tasks that are due to
+	 */
+	private void collectDue(long now, List<Task> toRun) {
+		theWakeups++;
+		toRun.addAll(theImmediateTasks);
+		theImmediateTasks.clear();
+		while (tickTime(theCurrentTick) <= now)
+			advance(now, toRun);
+	}
+
+	private void dispatch(List<Task> toRun, List<Task> edtTasks) {
+		for (Task task : toRun) {
+			if (task.isOnEdt)
+				edtTasks.add(task);
+			else if (theExecutor != null)
+				theExecutor.execute(task::execute);
+			else
+				task.execute();
+		}
+		toRun.clear();
+		if (!edtTasks.isEmpty()) {
+			Task[] batch = edtTasks.toArray(new Task[edtTasks.size()]);
+			edtTasks.clear();
+			EventQueue.invokeLater(() -> {
+				for (Task task : batch)
+					task.execute();
+			});
+		}
+	}
+
+	/**
+	 * @param now The current {@link System#nanoTime() nano time}
+	 * @return The number of nanoseconds until the wheel has something to do, or -1 if the wheel is empty
+	 */
+	private long nanosUntilNextWork(long now) {
+		if (theEntryCount == 0)
+			return -1;
+		int currentSlot = (int) (theCurrentTick & WHEEL_MASK);
+		long ticks = WHEEL_SIZE - currentSlot; // At the latest, wake up to cascade the next level
+		for (int i = currentSlot; i < WHEEL_SIZE; i++) {
+			if (theWheels[0][i] != null) {
+				ticks = i - currentSlot;
+				break;
+			}
+		}
+		return Math.max(0, tickTime(theCurrentTick + ticks) - now);
+	}
+
+	private void advance(long now, List<Task> toRun) {
+		long tick = theCurrentTick;
+		// Cascade entries from higher levels down as the lower level wraps around
+		for (int level = 1; level < LEVELS; level++) {
+			if ((tick & ((1L << (WHEEL_BITS * level)) - 1)) != 0)
+				break;
+			int slot = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+			Entry e = drain(level, slot);
+			while (e != null) {
+				Entry next = e.next;
+				schedule(e);
+				e = next;
+			}
+		}
+		Entry due = drain(0, (int) (tick & WHEEL_MASK));
+		if (due != null) {
+			long lateness = now - tickTime(tick);
+			theLateTicks++;
+			theTotalLatenessNanos += lateness;
+			if (lateness > theMaxLatenessNanos)
+				theMaxLatenessNanos = lateness;
+		}
+		while (due != null) {
+			Entry next = due.next;
+			if (due.deadline > tick)
+				schedule(due);
+			else
+				due.fire(tick, toRun);
+			due = next;
+		}
+		theCurrentTick++;
+	}
+
+	private static abstract class Entry {
+		long deadline;
+		int level = -1;
+		int slot;
+		Entry prev;
+		Entry next;
+
+		abstract void fire(long tick, List<Task> toRun);
+	}
+
+	/** All tasks with a common tick frequency, scheduled in the wheel as a single entry */
+	private class FrequencyGroup extends Entry {
+		final long period;
+		final LinkedHashSet<Task> tasks;
+
+		FrequencyGroup(long period) {
+			this.period = period;
+			tasks = new LinkedHashSet<>();
+		}
+
+		@Override
+		void fire(long tick, List<Task> toRun) {
+			Task[] members = tasks.toArray(new Task[tasks.size()]);
+			for (Task task : members) {
+				if (task.theEndTick >= 0 && tick >= task.theEndTick) {
+					task.deactivate();
+					continue;
+				} else if (tick < task.theEligibleTick)
+					continue;
+				task.theEligibleTick = 0;
+				toRun.add(task);
+			}
+			if (tasks.isEmpty())
+				theGroups.remove(period);
+			else {
+				deadline += period;
+				if (deadline <= tick) // Fallen behind; skip missed executions
+					deadline = tick + period;
+				schedule(this);
+			}
+		}
+	}
+
+	/** A periodic task in a {@link TimerWheel} */
+	public class Task implements ScheduledTask {
+		private final Runnable theAction;
+		private Duration theFrequency;
+		private long thePeriod;
+		private FrequencyGroup theGroup;
+		private boolean isActive;
+		boolean isOnEdt;
+		long theEligibleTick;
+		long theEndTick = -1;
+		private Duration theUntil;
+		private volatile long theExecutionCount;
+		private volatile Instant theLastRun;
+		private boolean isRunning;
+
+		Task(Runnable action, Duration frequency) {
+			theAction = action;
+			theFrequency = frequency;
+			thePeriod = ticksFor(frequency);
+		}
+
+		/** @return The wheel that this task executes in */
+		public TimerWheel getWheel() {
+			return TimerWheel.this;
+		}
+
+		@Override
+		public Duration getFrequency() {
+			return theFrequency;
+		}
+
+		@Override
+		public Task setFrequency(Duration frequency, boolean precise) {
+			synchronized (theLock) {
+				theFrequency = frequency;
+				long period = ticksFor(frequency);
+				if (period == thePeriod)
+					return this;
+				thePeriod = period;
+				if (isActive) {
+					leaveGroup();
+					joinGroup();
+				}
+			}
+			return this;
+		}
+
+		/** @return Whether this task is currently executing periodically */
+		public boolean isActive() {
+			return isActive;
+		}
+
+		@Override
+		public Task setActive(boolean active) {
+			synchronized (theLock) {
+				if (active == isActive)
+					return this;
+				if (active) {
+					ensureRunning();
+					isActive = true;
+					theActiveTaskCount++;
+					if (theUntil != null)
+						theEndTick = theCurrentTick + ticksFor(theUntil);
+					joinGroup();
+				} else
+					deactivate();
+			}
+			return this;
+		}
+
+		void deactivate() {
+			if (!isActive)
+				return;
+			isActive = false;
+			theActiveTaskCount--;
+			leaveGroup();
+		}
+
+		private void joinGroup() {
+			FrequencyGroup group = theGroups.get(thePeriod);
+			if (group == null) {
+				group = new FrequencyGroup(thePeriod);
+				theGroups.put(thePeriod, group);
+				group.deadline = theCurrentTick + thePeriod;
+				schedule(group);
+			}
+			// Coalesce with the group's schedule, but never execute sooner than one period after activation
+			theEligibleTick = theCurrentTick + thePeriod;
+			group.tasks.add(this);
+			theGroup = group;
+		}
+
+		private void leaveGroup() {
+			FrequencyGroup group = theGroup;
+			theGroup = null;
+			if (group == null)
+				return;
+			group.tasks.remove(this);
+			if (group.tasks.isEmpty()) {
+				unschedule(group);
+				theGroups.remove(group.period);
+			}
+		}
+
+		/**
+		 * @param onEdt Whether this task should execute on the AWT event thread
+		 * @return This task
+		 */
+		public Task onEdt(boolean onEdt) {
+			isOnEdt = onEdt;
+			return this;
+		}
+
+		@Override
+		public boolean isOnEdt() {
+			return isOnEdt;
+		}
+
+		@Override
+		public long getExecutionCount() {
+			return theExecutionCount;
+		}
+
+		@Override
+		public Task resetExecutionCount() {
+			theExecutionCount = 0;
+			return this;
+		}
+
+		@Override
+		public Instant getLastRun() {
+			return theLastRun;
+		}
+
+		@Override
+		public Task endIn(Duration until) {
+			synchronized (theLock) {
+				theUntil = until;
+				if (until == null)
+					theEndTick = -1;
+				else if (isActive)
+					theEndTick = theCurrentTick + ticksFor(until);
+			}
+			return this;
+		}
+
+		@Override
+		public Task runImmediately() {
+			synchronized (theLock) {
+				ensureRunning();
+				theImmediateTasks.add(this);
+				theLock.notifyAll();
+			}
+			return this;
+		}
+
+		void execute() {
+			synchronized (theLock) {
+				if (isRunning) {
+					theSkippedExecutions++;
+					return;
+				}
+				isRunning = true;
+				theExecutions++;
+			}
+			try {
+				theLastRun = Instant.now();
+				theExecutionCount++;
+				theAction.run();
+			} catch (RuntimeException | Error e) {
+				e.printStackTrace();
+			} finally {
+				synchronized (theLock) {
+					isRunning = false;
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return theName + ":" + theAction + "@" + theFrequency;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return theName;
+	}
+
+	private static class TimerTaskWrapper implements ScheduledTask {
+		private final QommonsTimer.TaskHandle theHandle;
+
+		TimerTaskWrapper(QommonsTimer.TaskHandle handle) {
+			theHandle = handle;
+		}
+
+		@Override
+		public Duration getFrequency() {
+			return theHandle.getFrequency();
+		}
+
+		@Override
+		public ScheduledTask setFrequency(Duration frequency, boolean precise) {
+			theHandle.setFrequency(frequency, precise);
+			return this;
+		}
+
+		@Override
+		public ScheduledTask setActive(boolean active) {
+			theHandle.setActive(active);
+			return this;
+		}
+
+		@Override
+		public long getExecutionCount() {
+			return theHandle.getExecutionCount();
+		}
+
+		@Override
+		public ScheduledTask resetExecutionCount() {
+			theHandle.resetExecutionCount();
+			return this;
+		}
+
+		@Override
+		public Instant getLastRun() {
+			return theHandle.getLastRun();
+		}
+
+		@Override
+		public ScheduledTask endIn(Duration until) {
+			theHandle.endIn(until, true);
+			return this;
+		}
+
+		@Override
+		public ScheduledTask runImmediately() {
+			theHandle.runImmediately();
+			return this;
+		}
+
+		@Override
+		public boolean isOnEdt() {
+			return theHandle.getThreading() == QommonsTimer.TaskThreading.EDT;
+		}
+
+		@Override
+		public String toString() {
+			return theHandle.toString();
+		}
+	}
+}
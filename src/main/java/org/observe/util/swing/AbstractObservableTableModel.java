@@ -22,9 +22,11 @@ import javax.swing.JTree;
 import javax.swing.ListModel;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
+import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.JTableHeader;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
+import javax.swing.tree.DefaultTreeCellRenderer;
 import javax.swing.tree.TreeCellRenderer;
 
 import org.observe.Subscription;
@@ -149,6 +151,16 @@ public abstract class AbstractObservableTableModel<R> {
 	 */
 	protected abstract R getRow(int rowIndex, JTable table);
 
+	/**
+	 * @param rowIndex The index of the row to test
+	 * @param table The table displaying this model
+	 * @return Whether the row is a stand-in (e.g. an {@link ObservableTreeModel.Placeholder}) rather than a row value that the columns can
+	 *         render or edit
+	 */
+	protected boolean isPlaceholder(int rowIndex, JTable table) {
+		return false;
+	}
+
 	protected abstract boolean isExpanded(int rowIndex, JTable table);
 
 	protected abstract boolean isLeaf(int rowIndex, Supplier<R> rowValue);
@@ -226,6 +238,11 @@ public abstract class AbstractObservableTableModel<R> {
 				return AbstractObservableTableModel.this.getRow(rowIndex, table);
 			}
 
+			@Override
+			protected boolean isPlaceholderRow(int rowIndex) {
+				return isPlaceholder(rowIndex, table);
+			}
+
 			@Override
 			protected CategoryRenderStrategy<R, ?> getColumn(int columnIndex) {
 				return getColumnModel().getElementAt(columnIndex);
@@ -427,7 +444,7 @@ public abstract class AbstractObservableTableModel<R> {
 
 				<C> KeyTypeStruct<C> getValue() {
 					int row = table.getSelectedRow();
-					if (row < 0)
+					if (row < 0 || isPlaceholder(row, table))
 						return null;
 					int column = table.getSelectedColumn();
 					if (column < 0)
@@ -495,6 +512,8 @@ public abstract class AbstractObservableTableModel<R> {
 		private Runnable theRevert;
 		private IntSupplier theHoveredRow;
 		private IntSupplier theHoveredColumn;
+		private DefaultTableCellRenderer thePlaceholderRenderer;
+		private DefaultTreeCellRenderer thePlaceholderTreeRenderer;
 
 		ObservableTableCellRenderer(AbstractObservableTableModel<R> model, JTable table, CategoryRenderStrategy<R, C> column,
 			TableRenderContext ctx,
@@ -510,6 +529,11 @@ public abstract class AbstractObservableTableModel<R> {
 		@Override
 		public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row,
 			int column) {
+			if (theModel.isPlaceholder(row, table)) {
+				if (thePlaceholderRenderer == null)
+					thePlaceholderRenderer = new DefaultTableCellRenderer();
+				return thePlaceholderRenderer.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+			}
 			int modelRow = table.convertRowIndexToModel(row);
 			int modelColumn = table.convertColumnIndexToModel(column);
 			return getCellRendererComponent(table, theModel.getRow(row, table), //
@@ -519,6 +543,11 @@ public abstract class AbstractObservableTableModel<R> {
 		@Override
 		public Component getTreeCellRendererComponent(JTree tree, Object value, boolean selected, boolean expanded, boolean leaf, int row,
 			boolean hasFocus) {
+			if (ObservableTreeModel.isPlaceholder(value)) {
+				if (thePlaceholderTreeRenderer == null)
+					thePlaceholderTreeRenderer = new DefaultTreeCellRenderer();
+				return thePlaceholderTreeRenderer.getTreeCellRendererComponent(tree, value, selected, expanded, true, row, hasFocus);
+			}
 			return getCellRendererComponent(tree, (R) value, row, 0, value, selected, hasFocus, expanded, leaf, row, 0);
 		}
 
@@ -757,6 +786,14 @@ public abstract class AbstractObservableTableModel<R> {
 
 		protected abstract R getRowValue(int rowIndex);
 
+		/**
+		 * @param rowIndex The index of the row to test
+		 * @return Whether the row is a {@link AbstractObservableTableModel#isPlaceholder(int, JTable) placeholder}
+		 */
+		protected boolean isPlaceholderRow(int rowIndex) {
+			return false;
+		}
+
 		protected abstract CategoryRenderStrategy<R, ?> getColumn(int columnIndex);
 
 		protected abstract boolean isRowSelected(int rowIndex);
@@ -833,7 +870,8 @@ public abstract class AbstractObservableTableModel<R> {
 			if (row < 0) {
 				CategoryRenderStrategy<R, C> category = column < 0 ? null : (CategoryRenderStrategy<R, C>) getColumn(column);
 				return new MouseClickStruct<>(null, null, category);
-			}
+			} else if (isPlaceholderRow(row))
+				return new MouseClickStruct<>(null, null, null);
 			R rowValue = getRowValue(row);
 			if (column < 0) {
 				if (getRowListeners().isEmpty())
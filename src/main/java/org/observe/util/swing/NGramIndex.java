@@ -0,0 +1,344 @@
+package org.observe.util.swing;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.observe.util.swing.TableContentControl.FilteredValue;
+
+/**
+ * <p>
+ * An inverted n-gram index over the rendered text of table rows. {@link TableContentControl} text filters may
+ * {@link TableContentControl#findCandidates(NGramIndex) consult} the index to narrow the set of rows that must be fully matched against a
+ * filter, so that a change to the filter need only search the text of rows that can possibly match.
+ * </p>
+ * <p>
+ * Text is indexed and searched in the same case- and whitespace-tolerant manner that {@link TableContentControl.SimpleFilter} matches,
+ * i.e. ASCII letters are compared without regard to case and whitespace in the row text is ignored. The index is conservative: every row
+ * that can match a filter is among its candidates, but not every candidate matches.
+ * </p>
+ * <p>
+ * Rows are {@link #put(FilteredValue, CharSequence[]) indexed} when their text is rendered and are held weakly, so rows that have been
+ * removed from the table are dropped from the index once they are garbage-collected. Until then, a removed row may remain a candidate,
+ * which is harmless since it is no longer evaluated.
+ * </p>
+ */
+public class NGramIndex {
+	/** The default gram length for an index */
+	public static final int DEFAULT_GRAM_LENGTH = 3;
+
+	private static final long[] NO_GRAMS = new long[0];
+
+	/** A sorted set of row IDs containing a gram */
+	private static class Postings {
+		int[] ids = new int[4];
+		int size;
+
+		boolean contains(int id) {
+			return Arrays.binarySearch(ids, 0, size, id) >= 0;
+		}
+
+		void add(int id) {
+			int index = Arrays.binarySearch(ids, 0, size, id);
+			if (index >= 0)
+				return;
+			index = -index - 1;
+			if (size == ids.length)
+				ids = Arrays.copyOf(ids, size * 2);
+			System.arraycopy(ids, index, ids, index + 1, size - index);
+			ids[index] = id;
+			size++;
+		}
+
+		void remove(int id) {
+			int index = Arrays.binarySearch(ids, 0, size, id);
+			if (index < 0)
+				return;
+			System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+			size--;
+		}
+	}
+
+	private static class RowRef extends WeakReference<FilteredValue<?>> {
+		final int id;
+		long[] grams;
+
+		RowRef(FilteredValue<?> row, int id, ReferenceQueue<FilteredValue<?>> queue) {
+			super(row, queue);
+			this.id = id;
+			grams = NO_GRAMS;
+		}
+	}
+
+	private final int theGramLength;
+	private final Map<Long, Postings> thePostings;
+	private final ArrayList<RowRef> theRows;
+	private int[] theFreeIds;
+	private int theFreeCount;
+	private final ReferenceQueue<FilteredValue<?>> theQueue;
+	private int theRowCount;
+	private long theModCount;
+
+	private TableContentControl theCachedFilter;
+	private long theCachedModCount;
+	private BitSet theCachedCandidates;
+
+	/** Creates an index with the {@link #DEFAULT_GRAM_LENGTH default} gram length */
+	public NGramIndex() {
+		this(DEFAULT_GRAM_LENGTH);
+	}
+
+	/** @param gramLength The length of the character sequences to index, between 2 and 4 */
+	public NGramIndex(int gramLength) {
+		if (gramLength < 2 || gramLength > 4)
+			throw new IllegalArgumentException("Gram length must be between 2 and 4, not " + gramLength);
+		theGramLength = gramLength;
+		thePostings = new HashMap<>();
+		theRows = new ArrayList<>();
+		theFreeIds = new int[16];
+		theQueue = new ReferenceQueue<>();
+	}
+
+	/** @return The length of the character sequences this index indexes */
+	public int getGramLength() {
+		return theGramLength;
+	}
+
+	/** @return The number of rows in this index */
+	public synchronized int size() {
+		purge();
+		return theRowCount;
+	}
+
+	/** @return The number of distinct grams in this index */
+	public synchronized int getGramCount() {
+		purge();
+		return thePostings.size();
+	}
+
+	/** @return A counter that is incremented each time the content of this index changes */
+	public synchronized long getModCount() {
+		return theModCount;
+	}
+
+	/**
+	 * Indexes or re-indexes the rendered text of a row
+	 *
+	 * @param row The row to index
+	 * @param texts The rendered text of each of the row's columns
+	 */
+	public synchronized void put(FilteredValue<?> row, CharSequence[] texts) {
+		purge();
+		long[] grams = gramsOf(texts);
+		RowRef ref = (row.indexId < 0 || row.indexId >= theRows.size()) ? null : theRows.get(row.indexId);
+		if (ref == null || ref.get() != row) {
+			int id;
+			if (theFreeCount > 0)
+				id = theFreeIds[--theFreeCount];
+			else {
+				id = theRows.size();
+				theRows.add(null);
+			}
+			ref = new RowRef(row, id, theQueue);
+			theRows.set(id, ref);
+			row.indexId = id;
+			theRowCount++;
+		}
+		long[] old = ref.grams;
+		boolean changed = false;
+		int o = 0, n = 0;
+		while (o < old.length || n < grams.length) {
+			int comp = o == old.length ? 1 : (n == grams.length ? -1 : Long.compare(old[o], grams[n]));
+			if (comp < 0) {
+				removePosting(old[o++], ref.id);
+				changed = true;
+			} else if (comp > 0) {
+				thePostings.computeIfAbsent(grams[n++], __ -> new Postings()).add(ref.id);
+				changed = true;
+			} else {
+				o++;
+				n++;
+			}
+		}
+		ref.grams = grams;
+		if (changed)
+			theModCount++;
+	}
+
+	/**
+	 * Removes a row from this index
+	 *
+	 * @param row The row to remove
+	 * @return Whether the row was present in this index
+	 */
+	public synchronized boolean remove(FilteredValue<?> row) {
+		purge();
+		if (row.indexId < 0 || row.indexId >= theRows.size())
+			return false;
+		RowRef ref = theRows.get(row.indexId);
+		if (ref == null || ref.get() != row)
+			return false;
+		ref.clear();
+		release(ref);
+		row.indexId = -1;
+		return true;
+	}
+
+	/**
+	 * @param row The row to test
+	 * @param candidates The candidate set returned from {@link #getCandidates(TableContentControl)}, {@link #findContaining(CharSequence)}
+	 *        or {@link TableContentControl#findCandidates(NGramIndex)}
+	 * @return Whether the given row may match the filter that produced the candidate set. Rows that are not indexed are always candidates.
+	 */
+	public static boolean isCandidate(FilteredValue<?> row, BitSet candidates) {
+		return candidates == null || row.indexId < 0 || candidates.get(row.indexId);
+	}
+
+	/**
+	 * Same as {@link TableContentControl#findCandidates(NGramIndex)}, but the result is cached until the filter or the content of this
+	 * index changes. The returned set must not be modified.
+	 *
+	 * @param filter The filter to get the candidates for
+	 * @return The IDs of the indexed rows that may match the filter, or null if the filter cannot use this index to narrow the rows
+	 */
+	public synchronized BitSet getCandidates(TableContentControl filter) {
+		purge();
+		if (filter != theCachedFilter || theModCount != theCachedModCount) {
+			theCachedCandidates = filter.findCandidates(this);
+			theCachedFilter = filter;
+			theCachedModCount = theModCount;
+		}
+		return theCachedCandidates;
+	}
+
+	/**
+	 * @param text The text to search for
+	 * @return The IDs of all rows whose text may contain the given text (according to
+	 *         {@link TableContentControl.SimpleFilter#matches(String, CharSequence, int) simple filter} semantics), or null if the text is
+	 *         too short to narrow the rows with this index
+	 */
+	public synchronized BitSet findContaining(CharSequence text) {
+		purge();
+		LongList grams = new LongList();
+		addGrams(text, true, grams);
+		if (grams.size == 0)
+			return null;
+		long[] sorted = grams.toSortedSet();
+		Postings[] postings = new Postings[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			postings[i] = thePostings.get(sorted[i]);
+			if (postings[i] == null)
+				return new BitSet();
+		}
+		Arrays.sort(postings, (p1, p2) -> Integer.compare(p1.size, p2.size));
+		BitSet result = new BitSet(theRows.size());
+		Postings smallest = postings[0];
+		idLoop: //
+		for (int i = 0; i < smallest.size; i++) {
+			int id = smallest.ids[i];
+			for (int p = 1; p < postings.length; p++) {
+				if (!postings[p].contains(id))
+					continue idLoop;
+			}
+			result.set(id);
+		}
+		return result;
+	}
+
+	private long[] gramsOf(CharSequence[] texts) {
+		LongList grams = new LongList();
+		for (CharSequence text : texts) {
+			if (text != null)
+				addGrams(text, false, grams);
+		}
+		return grams.size == 0 ? NO_GRAMS : grams.toSortedSet();
+	}
+
+	/**
+	 * @param text The text to extract grams from
+	 * @param splitOnWhitespace Whether whitespace in the text breaks a gram (for search text) or is ignored (for row text, since whitespace
+	 *        in row text is skipped when matching)
+	 * @param grams The list to add the grams to
+	 */
+	private void addGrams(CharSequence text, boolean splitOnWhitespace, LongList grams) {
+		long gram = 0;
+		int run = 0;
+		// A shift of 64 bits is a shift of 0 in Java, so a 4-gram needs all the bits explicitly
+		long mask = theGramLength == 4 ? -1L : (1L << (16 * theGramLength)) - 1;
+		for (int i = 0; i < text.length(); i++) {
+			char ch = text.charAt(i);
+			if (Character.isWhitespace(ch)) {
+				if (splitOnWhitespace)
+					run = 0;
+				continue;
+			}
+			if (ch >= 'A' && ch <= 'Z')
+				ch = (char) (ch + ('a' - 'A'));
+			gram = ((gram << 16) | ch) & mask;
+			if (++run >= theGramLength)
+				grams.add(gram);
+		}
+	}
+
+	private void removePosting(long gram, int id) {
+		Postings postings = thePostings.get(gram);
+		if (postings == null)
+			return;
+		postings.remove(id);
+		if (postings.size == 0)
+			thePostings.remove(gram);
+	}
+
+	private void release(RowRef ref) {
+		if (theRows.get(ref.id) != ref)
+			return;
+		for (long gram : ref.grams)
+			removePosting(gram, ref.id);
+		ref.grams = NO_GRAMS;
+		theRows.set(ref.id, null);
+		if (theFreeCount == theFreeIds.length)
+			theFreeIds = Arrays.copyOf(theFreeIds, theFreeCount * 2);
+		theFreeIds[theFreeCount++] = ref.id;
+		theRowCount--;
+		theModCount++;
+	}
+
+	private void purge() {
+		RowRef ref = (RowRef) theQueue.poll();
+		while (ref != null) {
+			release(ref);
+			ref = (RowRef) theQueue.poll();
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return theGramLength + "-gram index (" + theRowCount + " rows, " + thePostings.size() + " grams)";
+	}
+
+	private static class LongList {
+		long[] values = new long[16];
+		int size;
+
+		void add(long value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+
+		long[] toSortedSet() {
+			long[] sorted = Arrays.copyOf(values, size);
+			Arrays.sort(sorted);
+			int unique = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				if (i == 0 || sorted[i] != sorted[i - 1])
+					sorted[unique++] = sorted[i];
+			}
+			return unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+		}
+	}
+}
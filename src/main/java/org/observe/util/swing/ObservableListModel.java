@@ -30,7 +30,13 @@ import org.qommons.tree.BetterTreeList;
 import com.google.common.reflect.TypeToken;
 
 /**
+ * <p>
  * A swing ListModel backed by an {@link ObservableCollection}
+ * </p>
+ * <p>
+ * The model's independent copy of the data is kept in a tree structure, so that changes at any position in very large lists are
+ * logarithmic-time. The model may also be configured to {@link #setCoalescing(boolean) coalesce} the events it fires.
+ * </p>
  *
  * @param <E> The type of data in the collection
  */
@@ -48,10 +54,13 @@ public class ObservableListModel<E> implements ListModel<E> {
 	 * This model must keep an independent representation of its data, which is only modified on the EDT, just before firing an event
 	 * documenting the modification
 	 */
-	private final List<E> theCachedData;
+	private final BetterTreeList<E> theCachedData;
 	private final List<ListDataListener> theListeners;
 	private Subscription theListening;
 	private volatile boolean isEventing;
+	private boolean isCoalescing;
+	private final List<PendingChange<E>> thePendingChanges;
+	private boolean isFlushScheduled;
 
 	/** @param wrap The observable collection to back this model */
 	public ObservableListModel(ObservableCollection<E> wrap) {
@@ -61,8 +70,9 @@ public class ObservableListModel<E> implements ListModel<E> {
 		if (wrap == null)
 			throw new NullPointerException();
 		theWrapped = wrap;
-		theCachedData = new ArrayList<>();
+		theCachedData = BetterTreeList.<E> build().build();
 		theListeners = BetterTreeList.<ListDataListener> build().build();
+		thePendingChanges = new ArrayList<>();
 	}
 
 	/** @return The observable list that this model wraps */
@@ -86,6 +96,36 @@ public class ObservableListModel<E> implements ListModel<E> {
 			return theWrapped.get(index);
 	}
 
+	/** @return Whether this model coalesces changes from its collection into as few events as possible per EDT cycle */
+	public boolean isCoalescing() {
+		return isCoalescing;
+	}
+
+	/**
+	 * <p>
+	 * Sets whether this model coalesces its events. If true, changes from the collection are queued and applied to this model at the end
+	 * of the current EDT cycle, and adjacent changes of the same type are reported with a single event. This can drastically reduce the
+	 * number of events (and repaints) for large lists that receive many small changes.
+	 * </p>
+	 * <p>
+	 * The per-element information of each change, such as {@link CollectionChangeEvent.ElementChange#movement movement}, is preserved
+	 * across merges and available from {@link CausableListEvent#getChangeFor(int)}. For events that represent merged changes,
+	 * {@link CausableListEvent#getCause() the cause} is the earliest of the collection events, and all of them are available from
+	 * {@link CausableListEvent#getCauses()}.
+	 * </p>
+	 *
+	 * @param coalescing Whether this model should coalesce its events
+	 * @return This model
+	 */
+	public ObservableListModel<E> setCoalescing(boolean coalescing) {
+		ObservableSwingUtils.onEQ(() -> {
+			if (!coalescing && isCoalescing)
+				flushPendingChanges();
+			isCoalescing = coalescing;
+		});
+		return this;
+	}
+
 	/** @return Whether this list model is currently firing a data event or set of events in response to changes in the collection */
 	public boolean isEventing() {
 		return isEventing;
@@ -123,6 +163,7 @@ public class ObservableListModel<E> implements ListModel<E> {
 				theAnchor.event("endListen", null);
 				theListening.unsubscribe();
 				theListening = null;
+				thePendingChanges.clear();
 				if (isEventing)
 					EventQueue.invokeLater(() -> theCachedData.clear());
 				else
@@ -140,6 +181,10 @@ public class ObservableListModel<E> implements ListModel<E> {
 	}
 
 	private void handleEvent(CollectionChangeEvent<E> event) {
+		if (isCoalescing) {
+			queueEvent(event);
+			return;
+		}
 		isEventing = true;
 		try {
 			Map<Integer, E> changesByIndex = new HashMap<>();
@@ -179,6 +224,80 @@ public class ObservableListModel<E> implements ListModel<E> {
 		}
 	}
 
+	private void queueEvent(CollectionChangeEvent<E> event) {
+		Map<Integer, CollectionChangeEvent.ElementChange<E>> changesByIndex = new HashMap<>();
+		for (CollectionChangeEvent.ElementChange<E> el : event.elements)
+			changesByIndex.put(el.index, el);
+		int[][] split = ObservableSwingUtils.getContinuousIntervals(event.elements, event.type != CollectionChangeType.remove);
+		for (int[] indexes : split) {
+			List<CollectionChangeEvent.ElementChange<E>> changes = new ArrayList<>(indexes[1] - indexes[0] + 1);
+			for (int i = indexes[0]; i <= indexes[1]; i++)
+				changes.add(changesByIndex.remove(i));
+			thePendingChanges.add(new PendingChange<>(event, indexes[0], indexes[1], changes));
+		}
+		if (!isFlushScheduled) {
+			isFlushScheduled = true;
+			EventQueue.invokeLater(this::flushPendingChanges);
+		}
+	}
+
+	private void flushPendingChanges() {
+		isFlushScheduled = false;
+		if (thePendingChanges.isEmpty())
+			return;
+		isEventing = true;
+		try {
+			PendingChange<E> merged = null;
+			for (PendingChange<E> change : thePendingChanges) {
+				if (merged != null && !merged.merge(change)) {
+					fireMerged(merged);
+					merged = null;
+				}
+				switch (change.cause.type) {
+				case add:
+					theAnchor.event("add", change.cause);
+					for (int i = 0; i < change.changes.size(); i++)
+						theCachedData.add(change.index0 + i, change.changes.get(i).newValue);
+					break;
+				case remove:
+					theAnchor.event("remove", change.cause);
+					for (int i = change.index1; i >= change.index0; i--)
+						theCachedData.remove(i);
+					break;
+				case set:
+					theAnchor.event("set", change.cause);
+					for (int i = 0; i < change.changes.size(); i++)
+						theCachedData.set(change.index0 + i, change.changes.get(i).newValue);
+					break;
+				}
+				if (merged == null)
+					merged = change;
+			}
+			fireMerged(merged);
+		} finally {
+			thePendingChanges.clear();
+			isEventing = false;
+		}
+	}
+
+	private void fireMerged(PendingChange<E> merged) {
+		CausableListEvent wrappedEvent = new CausableListEvent(ObservableListModel.this, getSwingType(merged.cause.type),
+			merged.mergedIndex0, merged.mergedIndex1, merged.cause, merged.mergedCauses, merged.mergedChanges);
+		try (Transaction t = wrappedEvent.use()) {
+			switch (merged.cause.type) {
+			case add:
+				intervalAdded(wrappedEvent);
+				break;
+			case remove:
+				intervalRemoved(wrappedEvent);
+				break;
+			case set:
+				contentsChanged(wrappedEvent);
+				break;
+			}
+		}
+	}
+
 	private void intervalAdded(ListDataEvent event) {
 		for (ListDataListener listener : theListeners) {
 			try {
@@ -221,27 +340,147 @@ public class ObservableListModel<E> implements ListModel<E> {
 		throw new IllegalStateException("Unrecognized event type: " + type);
 	}
 
+	/**
+	 * A contiguous interval of a collection change, queued for a {@link ObservableListModel#setCoalescing(boolean) coalescing} model
+	 *
+	 * @param <E> The type of data in the collection
+	 */
+	private static class PendingChange<E> {
+		final CollectionChangeEvent<E> cause;
+		final int index0;
+		final int index1;
+		/** The change in the cause for each index from {@link #index0} to {@link #index1} */
+		final List<CollectionChangeEvent.ElementChange<E>> changes;
+		int mergedIndex0;
+		int mergedIndex1;
+		/** The change for each index from {@link #mergedIndex0} to {@link #mergedIndex1}, after the changes merged into this one */
+		List<CollectionChangeEvent.ElementChange<E>> mergedChanges;
+		/** All the collection events whose changes have been merged into this one, or null if they are all from {@link #cause} */
+		List<CollectionChangeEvent<E>> mergedCauses;
+
+		PendingChange(CollectionChangeEvent<E> cause, int index0, int index1, List<CollectionChangeEvent.ElementChange<E>> changes) {
+			this.cause = cause;
+			this.index0 = mergedIndex0 = index0;
+			this.index1 = mergedIndex1 = index1;
+			this.changes = mergedChanges = changes;
+		}
+
+		/**
+		 * @param next The change following this one (or the last change merged into this one)
+		 * @return Whether the change could be merged into this one, such that a single event can represent both
+		 */
+		boolean merge(PendingChange<E> next) {
+			if (next.cause.type != cause.type)
+				return false;
+			int count = next.index1 - next.index0 + 1;
+			switch (cause.type) {
+			case add:
+				if (next.index0 < mergedIndex0 || next.index0 > mergedIndex1 + 1)
+					return false;
+				mutableChanges().addAll(next.index0 - mergedIndex0, next.changes);
+				mergedIndex1 += count;
+				break;
+			case remove:
+				// Indexes of a following removal are relative to the state after this removal
+				if (next.index0 == mergedIndex0) {
+					mutableChanges().addAll(next.changes);
+					mergedIndex1 += count;
+				} else if (next.index1 + 1 == mergedIndex0) {
+					mutableChanges().addAll(0, next.changes);
+					mergedIndex0 = next.index0;
+				} else
+					return false;
+				break;
+			case set:
+				if (next.index0 > mergedIndex1 + 1 || next.index1 < mergedIndex0 - 1)
+					return false;
+				int newIndex0 = Math.min(mergedIndex0, next.index0);
+				int newIndex1 = Math.max(mergedIndex1, next.index1);
+				List<CollectionChangeEvent.ElementChange<E>> newChanges = new ArrayList<>(newIndex1 - newIndex0 + 1);
+				for (int i = newIndex0; i <= newIndex1; i++) {
+					// The later change wins
+					if (i >= next.index0 && i <= next.index1)
+						newChanges.add(next.changes.get(i - next.index0));
+					else
+						newChanges.add(mergedChanges.get(i - mergedIndex0));
+				}
+				mergedChanges = newChanges;
+				mergedIndex0 = newIndex0;
+				mergedIndex1 = newIndex1;
+				break;
+			}
+			if (next.cause != cause) {
+				if (mergedCauses == null) {
+					mergedCauses = new ArrayList<>();
+					mergedCauses.add(cause);
+				}
+				if (mergedCauses.get(mergedCauses.size() - 1) != next.cause)
+					mergedCauses.add(next.cause);
+			}
+			return true;
+		}
+
+		private List<CollectionChangeEvent.ElementChange<E>> mutableChanges() {
+			if (mergedChanges == changes)
+				mergedChanges = new ArrayList<>(changes);
+			return mergedChanges;
+		}
+	}
+
 	/** Allows causable-aware listeners to this class to inspect the causality chain */
 	public static class CausableListEvent extends ListDataEvent implements Causable {
 		private final CollectionChangeEvent<?> theCause;
+		private final List<? extends CollectionChangeEvent<?>> theCauses;
+		private final List<? extends CollectionChangeEvent.ElementChange<?>> theChanges;
 		private LinkedHashMap<CausableKey, Supplier<Transaction>> theKeys;
 		private boolean isStarted;
 		private boolean isFinished;
 		private boolean isTerminated;
 
 		CausableListEvent(Object source, int type, int index0, int index1, CollectionChangeEvent<?> cause) {
+			this(source, type, index0, index1, cause, null, null);
+		}
+
+		/**
+		 * @param source The list model firing the event
+		 * @param type The type of the event
+		 * @param index0 The first index of the interval
+		 * @param index1 The last index of the interval
+		 * @param cause The earliest collection event that caused this list event
+		 * @param causes All the collection events that caused this list event, or null if it is only the given cause
+		 * @param changes The change for each index from <code>index0</code> to <code>index1</code>, or null to get them from the cause
+		 */
+		CausableListEvent(Object source, int type, int index0, int index1, CollectionChangeEvent<?> cause,
+			List<? extends CollectionChangeEvent<?>> causes, List<? extends CollectionChangeEvent.ElementChange<?>> changes) {
 			super(source, type, index0, index1);
 			theCause = cause;
+			theCauses = causes;
+			theChanges = changes;
 		}
 
-		/** @return The collection event that caused this list event */
+		/** @return The (earliest, if this event represents coalesced changes) collection event that caused this list event */
 		public CollectionChangeEvent<?> getCause() {
 			return theCause;
 		}
 
+		/**
+		 * @param index The index in the list model of an element in this event's interval
+		 * @return The collection change for the given element, or null if it is not recorded
+		 */
+		public CollectionChangeEvent.ElementChange<?> getChangeFor(int index) {
+			if (theChanges == null)
+				return theCause.getChangeFor(index);
+			else if (index < getIndex0() || index > getIndex1())
+				return null;
+			else
+				return theChanges.get(index - getIndex0());
+		}
+
 		@Override
 		public BetterList<Object> getCauses() {
-			return BetterList.of(theCause);
+			if (theCauses == null)
+				return BetterList.of(theCause);
+			return BetterList.of(theCauses.toArray());
 		}
 
 		@Override
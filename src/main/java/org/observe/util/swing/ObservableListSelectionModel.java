@@ -74,7 +74,7 @@ public class ObservableListSelectionModel<E> extends ObservableCollectionWrapper
 	protected boolean leadAnchorNotificationEnabled = true;
 
 	private final Map<CollectionElementMove, CollectionElementMove> theMovements = new HashMap<>();
-	private CollectionChangeEvent<E> theCurrentAdd;
+	private ObservableListModel.CausableListEvent theCurrentAdd;
 
 	/**
 	 * @param listModel The list model to manage selection of
@@ -226,7 +226,8 @@ public class ObservableListSelectionModel<E> extends ObservableCollectionWrapper
 				 * Biggest job here is to catch selected elements which are part of a move operation and record this
 				 * for when they're re-added so we can select them again.
 				 */
-				CollectionChangeEvent<?> cause = ((ObservableListModel.CausableListEvent) e).getCause();
+				ObservableListModel.CausableListEvent listEvent = (ObservableListModel.CausableListEvent) e;
+				CollectionChangeEvent<?> cause = listEvent.getCause();
 				Transaction selectionLock = null;
 				try {
 					int start = value.nextSetBit(e.getIndex0());
@@ -239,8 +240,8 @@ public class ObservableListSelectionModel<E> extends ObservableCollectionWrapper
 						// else This index was selected before it was removed
 						if (selectionLock == null)
 							selectionLock = wrapped.lock(true, cause.isTerminated() ? Causable.broken(cause) : cause);
-						CollectionChangeEvent.ElementChange<?> change = cause.getChangeFor(i);
-						if (change.movement != null) {
+						CollectionChangeEvent.ElementChange<?> change = listEvent.getChangeFor(i);
+						if (change != null && change.movement != null) {
 							CollectionElementMove selMove = new CollectionElementMove();
 							theMovements.put(change.movement.onDiscard(m -> {
 								CollectionElementMove selMove2 = theMovements.remove(m);
@@ -272,7 +273,7 @@ public class ObservableListSelectionModel<E> extends ObservableCollectionWrapper
 			@Override
 			public void intervalAdded(ListDataEvent e) {
 				// We get the events first, so hold onto this for when insertIndexInterval(int, int) is called
-				theCurrentAdd = (CollectionChangeEvent<E>) ((ObservableListModel.CausableListEvent) e).getCause();
+				theCurrentAdd = (ObservableListModel.CausableListEvent) e;
 			}
 
 			@Override
@@ -286,7 +287,7 @@ public class ObservableListSelectionModel<E> extends ObservableCollectionWrapper
 					int end = value.previousSetBit(e.getIndex1());
 					if (end < 0)
 						return;
-					for (int i = start; i <= start; i++) {
+					for (int i = start; i <= end; i++) {
 						if (!value.get(i))
 							continue;
 						// else This index was selected before it was removed
@@ -997,15 +998,16 @@ public class ObservableListSelectionModel<E> extends ObservableCollectionWrapper
 		 * * Catch elements which are part of a move operation and re-select them
 		 * * For inserted elements that are initially selected, add them to the selection
 		 */
-		CollectionChangeEvent<?> cause = theCurrentAdd;
-		if (cause != null) {
+		ObservableListModel.CausableListEvent addEvent = theCurrentAdd;
+		if (addEvent != null) {
 			theCurrentAdd = null;
+			CollectionChangeEvent<?> cause = addEvent.getCause();
 			Transaction selectionLock = null;
 			try {
 				CollectionElement<E> lastSelectionAdded = null;
 				for (int i = insMinIndex; i <= insMaxIndex; i++) {
-					CollectionChangeEvent.ElementChange<?> change = cause.getChangeFor(i);
-					CollectionElementMove selMove = change.movement == null ? null : theMovements.remove(change.movement);
+					CollectionChangeEvent.ElementChange<?> change = addEvent.getChangeFor(i);
+					CollectionElementMove selMove = change == null || change.movement == null ? null : theMovements.remove(change.movement);
 					if (selMove != null) {
 						setState(i, true);
 						if (selectionLock == null)
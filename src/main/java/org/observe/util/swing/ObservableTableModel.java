@@ -108,6 +108,16 @@ public class ObservableTableModel<R> extends AbstractObservableTableModel<R> imp
 		return theRowModel;
 	}
 
+	/**
+	 * @param coalescing Whether this model should coalesce row changes into as few table events as possible per EDT cycle
+	 * @return This model
+	 * @see ObservableListModel#setCoalescing(boolean)
+	 */
+	public ObservableTableModel<R> setCoalescing(boolean coalescing) {
+		theRowModel.setCoalescing(coalescing);
+		return this;
+	}
+
 	@Override
 	public int getRowCount() {
 		return theRowModel.getSize();
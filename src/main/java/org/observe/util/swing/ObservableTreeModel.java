@@ -2,6 +2,7 @@ package org.observe.util.swing;
 
 import java.awt.EventQueue;
 import java.beans.PropertyChangeListener;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -10,8 +11,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
 
 import javax.swing.JTree;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeExpansionListener;
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
 import javax.swing.event.TreeSelectionListener;
@@ -24,7 +29,9 @@ import org.observe.Observable;
 import org.observe.ObservableValue;
 import org.observe.SettableValue;
 import org.observe.SimpleObservable;
+import org.observe.Subscription;
 import org.observe.collect.ObservableCollection;
+import org.observe.collect.ObservableCollectionEvent;
 import org.observe.util.TypeTokens;
 import org.qommons.ArrayUtils;
 import org.qommons.IdentityKey;
@@ -34,21 +41,71 @@ import org.qommons.Transaction;
 import org.qommons.collect.BetterList;
 import org.qommons.collect.ElementId;
 import org.qommons.collect.MutableCollectionElement;
+import org.qommons.threading.QommonsTimer;
 
 import com.google.common.reflect.TypeToken;
 
 /**
+ * <p>
  * A swing tree model well suited to visualizing observable structures
+ * </p>
+ * <p>
+ * By default, the children of a node are retrieved synchronously on the EDT the first time they are needed, and all of them are made
+ * available to the tree. For very large or slow structures (e.g. file systems or databases), this model may be configured to:
+ * <ul>
+ * <li>{@link #withChildLoader(Executor) Load children in the background}, displaying a {@link Placeholder placeholder} child until they
+ * are available.</li>
+ * <li>{@link #withPageSize(int) Page} very wide child lists, displaying only the first page of children followed by a placeholder
+ * representing the rest. {@link #loadMore(Object) Loading more} of the children displays another page.</li>
+ * <li>{@link #withCollapsedUnload(Duration) Unload} the children of nodes that have been collapsed for some time, releasing their
+ * resources. This requires the model to be told of expansion and collapse, e.g. via {@link #trackExpansion(JTree, Observable)}.</li>
+ * </ul>
+ * Placeholders are instances of {@link Placeholder}, not of the tree's value type, so code that handles values from the tree (e.g.
+ * {@link #isLeaf(Object)} or a renderer) must handle them when these options are used.
+ * </p>
  *
  * @param <T> The type of values in the tree
  */
 public abstract class ObservableTreeModel<T> implements TreeModel {
+	/** A stand-in child of a node, displayed while the node's children are loading or in place of children beyond the loaded page */
+	public static final class Placeholder {
+		private final Object theNode;
+		private boolean isLoading;
+		private int theRemaining;
+
+		Placeholder(Object node) {
+			theNode = node;
+		}
+
+		/** @return Whether this placeholder represents children that are being loaded */
+		public boolean isLoading() {
+			return isLoading;
+		}
+
+		/** @return The number of children not yet displayed in the tree, if this placeholder is not {@link #isLoading() loading} */
+		public int getRemaining() {
+			return theRemaining;
+		}
+
+		@Override
+		public String toString() {
+			if (isLoading)
+				return "Loading...";
+			else
+				return theRemaining + " more...";
+		}
+	}
+
 	private final ObservableValue<? extends T> theRoot;
 	private TreeNode theRootNode;
 
 	private final Map<IdentityKey<T>, TreeNode> theNodes;
 	private final List<TreeModelListener> theListeners;
 
+	private Executor theChildLoader;
+	private int thePageSize;
+	private Duration theCollapsedUnload;
+
 	/** @param rootValue The root of the model */
 	protected ObservableTreeModel(T rootValue) {
 		this(ObservableValue.<T> of(rootValue == null ? (TypeToken<T>) (TypeToken<?>) TypeTokens.get().OBJECT
@@ -73,13 +130,97 @@ public abstract class ObservableTreeModel<T> implements TreeModel {
 		return theRoot;
 	}
 
+	/**
+	 * @param childLoader The executor to {@link #getChildren(BetterList, Observable) retrieve} the children of nodes on, or null to
+	 *        retrieve them synchronously on the EDT
+	 * @return This model
+	 */
+	public ObservableTreeModel<T> withChildLoader(Executor childLoader) {
+		theChildLoader = childLoader;
+		return this;
+	}
+
+	/**
+	 * @param pageSize The maximum number of children of a node to display until {@link #loadMore(Object) more} are requested, or 0 to
+	 *        display all children
+	 * @return This model
+	 */
+	public ObservableTreeModel<T> withPageSize(int pageSize) {
+		if (pageSize < 0)
+			throw new IllegalArgumentException("Page size cannot be negative: " + pageSize);
+		thePageSize = pageSize;
+		return this;
+	}
+
+	/**
+	 * @param idleTime The amount of time after which the children of a collapsed node are released, or null to keep them until the node
+	 *        is removed
+	 * @return This model
+	 * @see #trackExpansion(JTree, Observable)
+	 */
+	public ObservableTreeModel<T> withCollapsedUnload(Duration idleTime) {
+		theCollapsedUnload = idleTime;
+		return this;
+	}
+
+	/**
+	 * @param node The node value to test
+	 * @return Whether the given value is a {@link Placeholder placeholder} supplied by a tree model instead of a real child
+	 */
+	public static boolean isPlaceholder(Object node) {
+		return node instanceof Placeholder;
+	}
+
+	/**
+	 * Displays another page of children in place of the given {@link #withPageSize(int) paging} placeholder
+	 *
+	 * @param placeholder The placeholder from this model
+	 * @return Whether more children were displayed
+	 */
+	public boolean loadMore(Object placeholder) {
+		if (!(placeholder instanceof Placeholder))
+			return false;
+		TreeNode node = (TreeNode) ((Placeholder) placeholder).theNode;
+		if (node.thePlaceholder != placeholder || node.isLoading)
+			return false;
+		node.showMore();
+		return true;
+	}
+
+	/**
+	 * Notifies this model of expansion and collapse in a tree, so that the children of collapsed nodes may be
+	 * {@link #withCollapsedUnload(Duration) unloaded}
+	 *
+	 * @param tree The tree displaying this model
+	 * @param until An observable that, when fired, will remove the listener this method installs on the tree
+	 */
+	public void trackExpansion(JTree tree, Observable<?> until) {
+		TreeExpansionListener listener = new TreeExpansionListener() {
+			@Override
+			public void treeExpanded(TreeExpansionEvent event) {
+				TreeNode node = getNode((T) event.getPath().getLastPathComponent(), false);
+				if (node != null)
+					node.isCollapsed = false;
+			}
+
+			@Override
+			public void treeCollapsed(TreeExpansionEvent event) {
+				TreeNode node = getNode((T) event.getPath().getLastPathComponent(), false);
+				if (node != null)
+					node.collapsed();
+			}
+		};
+		tree.addTreeExpansionListener(listener);
+		until.take(1).act(__ -> tree.removeTreeExpansionListener(listener));
+	}
+
 	@Override
 	public Object getRoot() {
 		return theRoot.get();
 	}
 
 	TreeNode getNode(T value, boolean searchDeeply) {
-		if (value == null)
+		if (value == null || value instanceof Placeholder)
 			return null;
 		TreeNode found = theNodes.get(new IdentityKey<>(value));
 		if (found != null || !searchDeeply || !ThreadConstraint.EDT.isEventThread()) // Can't do the search off the EDT
@@ -207,6 +348,12 @@ public abstract class ObservableTreeModel<T> implements TreeModel {
 		private ObservableCollection<? extends T> theChildren;
 		private SimpleObservable<Void> unsubscribe;
 		private boolean areChildrenInitialized;
+		private boolean isLoading;
+		private int theLoadStamp;
+		private int theVisibleLimit;
+		private Placeholder thePlaceholder;
+		private boolean isCollapsed;
+		private long theCollapseTime;
 
 		TreeNode(TreeNode parent, T value) {
 			theParent = parent;
@@ -242,18 +389,63 @@ public abstract class ObservableTreeModel<T> implements TreeModel {
 			areChildrenInitialized = true;
 
 			unsubscribe = SimpleObservable.build().build();
+			theVisibleLimit = thePageSize;
+			if (theChildLoader != null) {
+				load(false);
+				return this;
+			}
 			theUnsafeChildren = ObservableTreeModel.this.getChildren(getBetterPath(), unsubscribe.readOnly());
 			theChildren = theUnsafeChildren == null ? null : theUnsafeChildren.safe(ThreadConstraint.EDT, unsubscribe);
 			init(false);
 			return this;
 		}
 
+		/**
+		 * Retrieves this node's children on the {@link ObservableTreeModel#withChildLoader(Executor) child loader}, displaying a loading
+		 * placeholder in the meantime
+		 */
+		private void load(boolean withEvent) {
+			isLoading = true;
+			int stamp = ++theLoadStamp;
+			SimpleObservable<Void> nodeUntil = unsubscribe;
+			BetterList<T> path = getBetterPath();
+			updatePlaceholder(withEvent);
+			theChildLoader.execute(() -> {
+				ObservableCollection<? extends T> children;
+				try {
+					children = ObservableTreeModel.this.getChildren(path, nodeUntil.readOnly());
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+					children = null;
+				}
+				ObservableCollection<? extends T> loaded = children;
+				ObservableSwingUtils.onEQ(() -> {
+					if (theLoadStamp != stamp)
+						return; // Disposed, unloaded, or reloaded since
+					isLoading = false;
+					theUnsafeChildren = loaded;
+					theChildren = loaded == null ? null : loaded.safe(ThreadConstraint.EDT, nodeUntil);
+					if (theChildren != null)
+						init(true);
+					else
+						updatePlaceholder(true);
+				});
+			});
+		}
+
+		private boolean isPaged() {
+			return theVisibleLimit > 0;
+		}
+
 		void init(boolean withEvent) {
 			if (theChildren == null)
 				return;
 			try (Transaction t = Transactable.lock(theChildren, false, null)) {
-				for (T value : theChildren)
+				for (T value : theChildren) {
+					if (isPaged() && theChildNodes.size() >= theVisibleLimit)
+						break;
 					theChildNodes.add(newChild(value));
+				}
 
 				if (withEvent) {
 					int[] indexes = new int[theChildNodes.size()];
@@ -274,8 +466,19 @@ public abstract class ObservableTreeModel<T> implements TreeModel {
 					}
 				}
 
+				updatePlaceholder(withEvent);
+
 				boolean[] unsubscribed = new boolean[1];
 				unsubscribe.act(__ -> unsubscribed[0] = true);
+				if (thePageSize > 0) {
+					// Element-wise events, so the collection's content is consistent with each event as the visible page is maintained
+					Subscription pageSub = theChildren.onChange(event -> { // theChildren is already safe
+						if (!unsubscribed[0])
+							pagedChange(event);
+					});
+					unsubscribe.take(1).act(__ -> pageSub.unsubscribe());
+					return;
+				}
 				theChildren.changes().takeUntil(unsubscribe).act(event -> { // theChildren is already safe
 					if (unsubscribed[0])
 						return;
@@ -318,18 +521,22 @@ public abstract class ObservableTreeModel<T> implements TreeModel {
 		int getChildCount() {
 			if (!areChildrenInitialized)
 				initChildren();
-			return theChildNodes.size();
+			return theChildNodes.size() + (thePlaceholder == null ? 0 : 1);
 		}
 
 		Object getChild(int index) {
 			if (!areChildrenInitialized)
 				initChildren();
+			if (thePlaceholder != null && index == theChildNodes.size())
+				return thePlaceholder;
 			return theChildNodes.get(index).theValue;
 		}
 
 		int indexOfChild(Object child) {
 			if (!areChildrenInitialized)
 				initChildren();
+			if (thePlaceholder != null && child == thePlaceholder)
+				return theChildNodes.size();
 			for (int i = 0; i < theChildNodes.size(); i++) {
 				if (theChildNodes.get(i).theValue == child) {
 					return i;
@@ -338,8 +545,140 @@ public abstract class ObservableTreeModel<T> implements TreeModel {
 			return -1;
 		}
 
+		/**
+		 * Shows, hides, or updates this node's placeholder child as needed for its current loading and paging state
+		 *
+		 * @param withEvent Whether to notify the tree of the change
+		 */
+		private void updatePlaceholder(boolean withEvent) {
+			int remaining = 0;
+			if (!isLoading && isPaged() && theChildren != null)
+				remaining = theChildren.size() - theChildNodes.size();
+			boolean needed = isLoading || remaining > 0;
+			if (!needed) {
+				if (thePlaceholder != null) {
+					Placeholder old = thePlaceholder;
+					thePlaceholder = null;
+					if (withEvent)
+						fire(TreeModelListener::treeNodesRemoved, theChildNodes.size(), old);
+				}
+				return;
+			}
+			boolean added = thePlaceholder == null;
+			if (added)
+				thePlaceholder = new Placeholder(this);
+			else if (thePlaceholder.isLoading == isLoading && thePlaceholder.theRemaining == remaining)
+				return;
+			thePlaceholder.isLoading = isLoading;
+			thePlaceholder.theRemaining = remaining;
+			if (withEvent)
+				fire(added ? TreeModelListener::treeNodesInserted : TreeModelListener::treeNodesChanged, theChildNodes.size(),
+					thePlaceholder);
+		}
+
+		private void fire(BiConsumer<TreeModelListener, TreeModelEvent> action, int index, Object child) {
+			TreeModelEvent event = new TreeModelEvent(this, getPath(), new int[] { index }, new Object[] { child });
+			for (TreeModelListener listener : theListeners) {
+				try {
+					action.accept(listener, event);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		/** Handles a change to this node's children when only a page of them is displayed */
+		private void pagedChange(ObservableCollectionEvent<? extends T> event) {
+			int index = event.getIndex();
+			switch (event.getType()) {
+			case add:
+				if (index < theChildNodes.size() || theChildNodes.size() < theVisibleLimit) {
+					added(new int[] { index }, new Object[] { event.getNewValue() });
+					if (theChildNodes.size() > theVisibleLimit) { // Push the last visible child off the page
+						int last = theChildNodes.size() - 1;
+						removed(new int[] { last }, new Object[] { theChildNodes.get(last).get() });
+					}
+				}
+				break;
+			case remove:
+				if (index < theChildNodes.size()) {
+					removed(new int[] { index }, new Object[] { event.getOldValue() });
+					if (theChildNodes.size() < theChildren.size()) { // Pull the next child onto the page
+						int next = theChildNodes.size();
+						added(new int[] { next }, new Object[] { theChildren.get(next) });
+					}
+				}
+				break;
+			case set:
+				if (index >= theChildNodes.size())
+					break;
+				if (event.getOldValue() == event.getNewValue())
+					changed(new int[] { index }, new Object[] { event.getNewValue() });
+				else {
+					removed(new int[] { index }, new Object[] { event.getOldValue() });
+					added(new int[] { index }, new Object[] { event.getNewValue() });
+				}
+				break;
+			}
+			updatePlaceholder(true);
+		}
+
+		/** Displays another page of this node's children */
+		void showMore() {
+			theVisibleLimit += thePageSize;
+			int count = Math.min(theVisibleLimit, theChildren.size()) - theChildNodes.size();
+			if (count > 0) {
+				int[] indexes = new int[count];
+				Object[] values = new Object[count];
+				for (int i = 0; i < count; i++) {
+					indexes[i] = theChildNodes.size() + i;
+					values[i] = theChildren.get(indexes[i]);
+				}
+				added(indexes, values);
+			}
+			updatePlaceholder(true);
+		}
+
+		/** Called when this node is collapsed in a tree, to {@link ObservableTreeModel#withCollapsedUnload(Duration) unload} it later */
+		void collapsed() {
+			Duration unloadTime = theCollapsedUnload;
+			if (unloadTime == null || !areChildrenInitialized)
+				return;
+			isCollapsed = true;
+			theCollapseTime = System.currentTimeMillis();
+			QommonsTimer.getCommonInstance().doAfterInactivity(this, () -> ObservableSwingUtils.onEQ(() -> {
+				if (isCollapsed && areChildrenInitialized && theNodes.get(new IdentityKey<>(theValue)) == this
+					&& System.currentTimeMillis() - theCollapseTime >= unloadTime.toMillis())
+					unload();
+			}), unloadTime);
+		}
+
+		/** Releases this node's children, which will be retrieved again if the tree needs them */
+		private void unload() {
+			unsubscribe.onNext(null);
+			theLoadStamp++;
+			for (TreeNode child : theChildNodes)
+				child.dispose();
+			theChildNodes.clear();
+			theUnsafeChildren = null;
+			theChildren = null;
+			thePlaceholder = null;
+			isLoading = false;
+			areChildrenInitialized = false;
+			isCollapsed = false;
+			TreeModelEvent event = new TreeModelEvent(this, getPath());
+			for (TreeModelListener listener : theListeners) {
+				try {
+					listener.treeStructureChanged(event);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
 		private void dispose() {
 			theNodes.remove(new IdentityKey<>(theValue));
+			theLoadStamp++;
 			if (unsubscribe != null)
 				unsubscribe.onNext(null);
 			for (TreeNode child : theChildNodes)
@@ -370,6 +709,15 @@ public abstract class ObservableTreeModel<T> implements TreeModel {
 		void changed() {
 			if (!areChildrenInitialized)
 				return;
+			else if (theChildLoader != null) {
+				unsubscribe.onNext(null);
+				removeAllChildren();
+				theUnsafeChildren = null;
+				theChildren = null;
+				theVisibleLimit = thePageSize;
+				load(true);
+				return;
+			}
 			ObservableCollection<? extends T> children = ObservableTreeModel.this.getChildren(getBetterPath(), unsubscribe.readOnly());
 			if (theUnsafeChildren == children
 				|| (children != null && theUnsafeChildren != null && children.getIdentity().equals(theUnsafeChildren.getIdentity())))
@@ -377,34 +725,43 @@ public abstract class ObservableTreeModel<T> implements TreeModel {
 			try (Transaction t = Transactable.lock(theChildren, false, null); //
 				Transaction t2 = Transactable.lock(children, false, null)) {
 				unsubscribe.onNext(null);
-				if (theChildren != null) {
-					int[] indexes = new int[theChildNodes.size()];
-					Object[] values = new Object[indexes.length];
-					for (int i = 0; i < indexes.length; i++) {
-						indexes[i] = i;
-						values[i] = theChildNodes.get(i).get();
-					}
-					if (indexes.length == 0)
-						indexes = null;
-					TreeModelEvent event = new TreeModelEvent(this, getPath(), indexes, values);
-					for (TreeModelListener listener : theListeners) {
-						try {
-							listener.treeNodesRemoved(event);
-						} catch (RuntimeException e) {
-							e.printStackTrace();
-						}
-					}
-
-					for (TreeNode child : theChildNodes)
-						child.dispose();
-					theChildNodes.clear();
-				}
+				if (theChildren != null)
+					removeAllChildren();
 				theUnsafeChildren = children;
 				theChildren = theUnsafeChildren == null ? null : theUnsafeChildren.safe(ThreadConstraint.EDT, unsubscribe);
+				theVisibleLimit = thePageSize;
 				init(true);
 			}
 		}
 
+		private void removeAllChildren() {
+			int[] indexes = new int[theChildNodes.size() + (thePlaceholder == null ? 0 : 1)];
+			Object[] values = new Object[indexes.length];
+			for (int i = 0; i < theChildNodes.size(); i++) {
+				indexes[i] = i;
+				values[i] = theChildNodes.get(i).get();
+			}
+			if (thePlaceholder != null) {
+				indexes[theChildNodes.size()] = theChildNodes.size();
+				values[theChildNodes.size()] = thePlaceholder;
+				thePlaceholder = null;
+			}
+			if (indexes.length == 0)
+				indexes = null;
+			TreeModelEvent event = new TreeModelEvent(this, getPath(), indexes, values);
+			for (TreeModelListener listener : theListeners) {
+				try {
+					listener.treeNodesRemoved(event);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+
+			for (TreeNode child : theChildNodes)
+				child.dispose();
+			theChildNodes.clear();
+		}
+
 		private void added(int[] indexes, Object[] values) {
 			// Swing expects indexes to be in ascending order
 			sort(indexes, values);
@@ -538,6 +895,8 @@ public abstract class ObservableTreeModel<T> implements TreeModel {
 				path = null;
 			else
 				path = selModel.getLeadSelectionPath();
+			if (path != null && isPlaceholder(path.getLastPathComponent()))
+				path = null;
 			callbackLock[0] = true;
 			try {
 				if (path != null) {
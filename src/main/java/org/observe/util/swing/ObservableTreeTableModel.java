@@ -99,11 +99,15 @@ public class ObservableTreeTableModel<T> extends AbstractObservableTableModel<Be
 
 	@Override
 	public Object getValueAt(Object treeValue, int columnIndex) {
+		if (ObservableTreeModel.isPlaceholder(treeValue))
+			return columnIndex == getHierarchicalColumn() ? treeValue : null;
 		return getColumnModel().getElementAt(columnIndex).getCategoryValue(theTreeModel.getBetterPath((T) treeValue, false));
 	}
 
 	@Override
 	public boolean isCellEditable(Object treeValue, int columnIndex) {
+		if (ObservableTreeModel.isPlaceholder(treeValue))
+			return false;
 		CategoryRenderStrategy<? super BetterList<T>, Object> column = (CategoryRenderStrategy<? super BetterList<T>, Object>) getColumnModel()
 			.getElementAt(columnIndex);
 		BetterList<T> path = theTreeModel.getBetterPath((T) treeValue, false);
@@ -112,6 +116,8 @@ public class ObservableTreeTableModel<T> extends AbstractObservableTableModel<Be
 
 	@Override
 	public void setValueAt(Object newValue, Object treeValue, int columnIndex) {
+		if (ObservableTreeModel.isPlaceholder(treeValue))
+			return;
 		BetterList<T> path = getTreeModel().getBetterPath((T) treeValue, false);
 		if (path == null) {
 			System.err.println("Could not find tree node " + treeValue);
@@ -173,6 +179,12 @@ public class ObservableTreeTableModel<T> extends AbstractObservableTableModel<Be
 		return ObservableTreeModel.betterPath(((JXTreeTable) table).getPathForRow(rowIndex));
 	}
 
+	@Override
+	protected boolean isPlaceholder(int rowIndex, JTable table) {
+		TreePath path = ((JXTreeTable) table).getPathForRow(rowIndex);
+		return path != null && ObservableTreeModel.isPlaceholder(path.getLastPathComponent());
+	}
+
 	@Override
 	protected boolean isExpanded(int rowIndex, JTable table) {
 		return ((JXTreeTable) table).isExpanded(rowIndex);
@@ -229,6 +241,8 @@ public class ObservableTreeTableModel<T> extends AbstractObservableTableModel<Be
 				path = null;
 			else
 				path = selModel.getLeadSelectionPath();
+			if (path != null && ObservableTreeModel.isPlaceholder(path.getLastPathComponent()))
+				path = null;
 			callbackLock[0] = true;
 			try {
 				if (path != null) {
@@ -272,7 +286,7 @@ public class ObservableTreeTableModel<T> extends AbstractObservableTableModel<Be
 						break;
 					}
 				}
-				if (found < 0)
+				if (found < 0 || ObservableTreeModel.isPlaceholder(selNode))
 					return;
 				callbackLock[0] = true;
 				try {
@@ -298,7 +312,10 @@ public class ObservableTreeTableModel<T> extends AbstractObservableTableModel<Be
 					list = null;
 				else {
 					TreePath path = treeTable.getPathForRow(selModel.getLeadSelectionRow());
-					list = (List<T>) (List<?>) Arrays.asList(path.getPath());
+					if (path == null || ObservableTreeModel.isPlaceholder(path.getLastPathComponent()))
+						list = null;
+					else
+						list = (List<T>) (List<?>) Arrays.asList(path.getPath());
 				}
 				if (!Objects.equals(list, selection.get()) && selection.isAcceptable(BetterList.of(list)) == null) {
 					callbackLock[0] = true;
@@ -1848,6 +1848,8 @@ public class PanelPopulation {
 
 		P withFiltering(ObservableValue<? extends TableContentControl> filter);
 
+		P withFilterIndex(boolean indexed);
+
 		P withCountTitle(String displayedText);
 
 		ObservableCollection<R> getFilteredRows();
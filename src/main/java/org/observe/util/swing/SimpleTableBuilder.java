@@ -90,6 +90,7 @@ implements TableBuilder<R, T, P> {
 	private final List<DynamicColumnSet<R, ?>> theDynamicColumns;
 	private Predicate<? super R> theInitialSelection;
 	private ObservableValue<? extends TableContentControl> theFilter;
+	private boolean isFilterIndexed;
 	private String theCountTitleDisplayedText;
 	private ObservableCollection<FilteredValue<R>> theFilteredValueRows;
 
@@ -168,6 +169,12 @@ implements TableBuilder<R, T, P> {
 		return (P) this;
 	}
 
+	@Override
+	public P withFilterIndex(boolean indexed) {
+		isFilterIndexed = indexed;
+		return (P) this;
+	}
+
 	@Override
 	public P withCountTitle(String displayedText) {
 		theCountTitleDisplayedText = displayedText;
@@ -469,7 +476,8 @@ implements TableBuilder<R, T, P> {
 			ObservableCollection<? extends CategoryRenderStrategy<R, ?>> fColumns = columns;
 			Observable<?> columnChanges = Observable.or(Observable.constant(null), columns.simpleChanges());
 			ObservableCollection<TableContentControl.FilteredValue<R>> rawFiltered = TableContentControl.applyRowControl(theRows,
-				() -> fColumns, theFilter.refresh(columnChanges), getUntil());
+				() -> fColumns, theFilter.refresh(columnChanges), getUntil(),
+				TableContentControl.RowControlOptions.DEFAULT.withIndex(isFilterIndexed ? new NGramIndex() : null));
 			theFilteredValueRows = rawFiltered.safe(ThreadConstraint.EDT, getUntil());
 			theFilteredRows = theFilteredValueRows.flow()
 				.transform(theRows.getType(),
@@ -5,9 +5,11 @@ import java.awt.Component;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -17,6 +19,7 @@ import java.util.function.Supplier;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTree;
+import javax.swing.tree.DefaultTreeCellRenderer;
 import javax.swing.tree.TreeCellRenderer;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
@@ -125,6 +128,8 @@ public class SimpleTreeBuilder<F, P extends SimpleTreeBuilder<F, P>> extends Abs
 
 		@Override
 		public boolean isLeaf(Object node) {
+			if (isPlaceholder(node))
+				return true;
 			Predicate<? super F> leafTest = theLeafTest;
 			if (leafTest != null)
 				return leafTest.test((F) node);
@@ -284,6 +289,37 @@ public class SimpleTreeBuilder<F, P extends SimpleTreeBuilder<F, P>> extends Abs
 		return (P) this;
 	}
 
+	/**
+	 * @param childLoader The executor to retrieve the children of tree nodes on, or null to retrieve them on the EDT
+	 * @return This builder
+	 * @see ObservableTreeModel#withChildLoader(Executor)
+	 */
+	public P withChildLoader(Executor childLoader) {
+		((ObservableTreeModel<F>) getEditor().getModel()).withChildLoader(childLoader);
+		return (P) this;
+	}
+
+	/**
+	 * @param pageSize The maximum number of children of a node to display until the user clicks the placeholder for the rest, or 0 to
+	 *        display all children
+	 * @return This builder
+	 * @see ObservableTreeModel#withPageSize(int)
+	 */
+	public P withChildPaging(int pageSize) {
+		((ObservableTreeModel<F>) getEditor().getModel()).withPageSize(pageSize);
+		return (P) this;
+	}
+
+	/**
+	 * @param idleTime The amount of time after which the children of a collapsed node are released, or null to keep them
+	 * @return This builder
+	 * @see ObservableTreeModel#withCollapsedUnload(Duration)
+	 */
+	public P withCollapsedUnload(Duration idleTime) {
+		((ObservableTreeModel<F>) getEditor().getModel()).withCollapsedUnload(idleTime);
+		return (P) this;
+	}
+
 	@Override
 	public boolean isVisible(List<? extends F> path) {
 		return getEditor().isVisible(new TreePath(path.toArray()));
@@ -321,7 +357,7 @@ public class SimpleTreeBuilder<F, P extends SimpleTreeBuilder<F, P>> extends Abs
 						getEditor().repaint(getEditor().getRowBounds(row));
 					hoveredRow[0] = row;
 				}
-				if (path == null || theRenderer.getTooltipFn() == null) {
+				if (path == null || theRenderer.getTooltipFn() == null || ObservableTreeModel.isPlaceholder(path.getLastPathComponent())) {
 					getEditor().setToolTipText(null);
 				} else {
 					F value = (F) path.getLastPathComponent();
@@ -333,11 +369,22 @@ public class SimpleTreeBuilder<F, P extends SimpleTreeBuilder<F, P>> extends Abs
 				}
 			}
 		};
+		MouseAdapter placeholderClick = new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				TreePath path = getEditor().getPathForLocation(e.getX(), e.getY());
+				if (path != null)
+					((ObservableTreeModel<F>) getEditor().getModel()).loadMore(path.getLastPathComponent());
+			}
+		};
 		getEditor().addMouseMotionListener(motion);
+		getEditor().addMouseListener(placeholderClick);
 		getUntil().take(1).act(__ -> {
 			getEditor().removeMouseMotionListener(motion);
+			getEditor().removeMouseListener(placeholderClick);
 		});
 		ObservableTreeModel<F> model = (ObservableTreeModel<F>) getEditor().getModel();
+		model.trackExpansion(getEditor(), getUntil());
 		if (thePathMultiSelection != null)
 			ObservableTreeModel.syncSelection(getEditor(), thePathMultiSelection, getUntil());
 		if (theValueMultiSelection != null)
@@ -425,6 +472,7 @@ public class SimpleTreeBuilder<F, P extends SimpleTreeBuilder<F, P>> extends Abs
 	static class ObservableTreeCellRenderer<F> implements TreeCellRenderer {
 		private final ObservableCellRenderer<? super BetterList<F>, ? super F> theRenderer;
 		private final int[] theHoveredRowColumn;
+		private DefaultTreeCellRenderer thePlaceholderRenderer;
 
 		ObservableTreeCellRenderer(ObservableCellRenderer<? super BetterList<F>, ? super F> renderer, int[] hoveredRowColumn) {
 			theRenderer = renderer;
@@ -434,6 +482,11 @@ public class SimpleTreeBuilder<F, P extends SimpleTreeBuilder<F, P>> extends Abs
 		@Override
 		public Component getTreeCellRendererComponent(JTree tree, Object value, boolean selected, boolean expanded, boolean leaf,
 			int row, boolean hasFocus) {
+			if (ObservableTreeModel.isPlaceholder(value)) {
+				if (thePlaceholderRenderer == null)
+					thePlaceholderRenderer = new DefaultTreeCellRenderer();
+				return thePlaceholderRenderer.getTreeCellRendererComponent(tree, value, selected, expanded, true, row, hasFocus);
+			}
 			Supplier<BetterList<F>> modelValue = () -> {
 				TreePath path = tree.getPathForRow(row);
 				if (path != null && path.getLastPathComponent() == value)
@@ -123,6 +123,8 @@ implements TreeTableEditor<F, P> {
 
 		@Override
 		public boolean isLeaf(Object node) {
+			if (isPlaceholder(node))
+				return true;
 			Predicate<? super F> leafTest = theLeafTest;
 			if (leafTest != null)
 				return leafTest.test((F) node);
@@ -140,6 +142,7 @@ implements TreeTableEditor<F, P> {
 	public List<BetterList<F>> getSelection() {
 		TreePath[] selection = getEditor().getTreeSelectionModel().getSelectionPaths();
 		return BetterList.of(Arrays.stream(selection)//
+			.filter(path -> !ObservableTreeModel.isPlaceholder(path.getLastPathComponent()))//
 			.map(path -> (BetterList<F>) BetterList.of(path.getPath())));
 	}
 
@@ -264,6 +267,7 @@ implements TreeTableEditor<F, P> {
 	@Override
 	protected void onVisibleData(AbstractObservableTableModel<BetterList<F>> model,
 		Consumer<CollectionChangeEvent<BetterList<F>>> onChange) {
+		ObservableTreeTableModel<F> tableModel = (ObservableTreeTableModel<F>) model;
 		TableModelListener listener = new TableModelListener() {
 			@Override
 			public void tableChanged(TableModelEvent e) {
@@ -274,13 +278,17 @@ implements TreeTableEditor<F, P> {
 					case TableModelEvent.INSERT:
 						type = CollectionChangeType.add;
 						changes = new ArrayList<>();
-						for (int i = e.getFirstRow(); i <= e.getLastRow(); i++)
-							changes.add(new CollectionChangeEvent.ElementChange<>(model.getRow(i, getEditor()), null, i, null));
+						for (int i = e.getFirstRow(); i <= e.getLastRow(); i++) {
+							if (!tableModel.isPlaceholder(i, getEditor()))
+								changes.add(new CollectionChangeEvent.ElementChange<>(model.getRow(i, getEditor()), null, i, null));
+						}
 						break;
 					case TableModelEvent.DELETE:
 						type = CollectionChangeType.remove;
 						changes = new ArrayList<>();
 						for (int i = e.getFirstRow(); i <= e.getLastRow(); i++) {
+							if (tableModel.isPlaceholder(i, getEditor()))
+								continue;
 							BetterList<F> row = model.getRow(i, getEditor());
 							changes.add(new CollectionChangeEvent.ElementChange<>(row, row, i, null));
 						}
@@ -292,12 +300,14 @@ implements TreeTableEditor<F, P> {
 						if (lastRow == Integer.MAX_VALUE)
 							lastRow = getEditor().getRowCount();
 						for (int i = e.getFirstRow(); i <= lastRow; i++) {
+							if (tableModel.isPlaceholder(i, getEditor()))
+								continue;
 							BetterList<F> row = model.getRow(i, getEditor());
 							changes.add(new CollectionChangeEvent.ElementChange<>(row, row, i, null));
 						}
 						break;
 					}
-					if (type != null) {
+					if (type != null && !changes.isEmpty()) {
 						CollectionChangeEvent<BetterList<F>> event = new CollectionChangeEvent<>(type, changes, e);
 						try (Transaction t = event.use()) {
 							onChange.accept(event);
@@ -379,8 +389,10 @@ implements TreeTableEditor<F, P> {
 	protected void forAllVisibleData(AbstractObservableTableModel<BetterList<F>> model, Consumer<ModelRow<BetterList<F>>> forEach) {
 		JXTreeTable table = getEditor();
 		ModelRowImpl<F> row = new ModelRowImpl<>(table, (ObservableTreeTableModel<F>) model);
-		for (int i = 0; i < table.getRowCount(); i++)
-			forEach.accept(row.nextRow(model.getRow(i, table)));
+		for (int i = 0; i < table.getRowCount(); i++) {
+			if (!model.isPlaceholder(i, table))
+				forEach.accept(row.nextRow(model.getRow(i, table)));
+		}
 	}
 
 	@Override
@@ -424,9 +436,12 @@ implements TreeTableEditor<F, P> {
 				List<BetterList<F>> selectedRows = new ArrayList<>(theTable.getSelectedRowCount());
 				for (int i = theTable.getSelectionModel().getMinSelectionIndex(); i <= theTable.getSelectionModel()
 					.getMaxSelectionIndex(); i++) {
-					if (theTable.getSelectionModel().isSelectedIndex(i))
+					if (theTable.getSelectionModel().isSelectedIndex(i)
+						&& !ObservableTreeModel.isPlaceholder(theTable.getPathForRow(i).getLastPathComponent()))
 						selectedRows.add(ObservableTreeModel.betterPath(theTable.getPathForRow(i)));
 				}
+				if (selectedRows.isEmpty())
+					return null;
 				int columnIndex = theTable.getSelectedColumn();
 				if (columnIndex >= 0)
 					columnIndex = theTable.convertColumnIndexToModel(columnIndex);
@@ -482,6 +497,8 @@ implements TreeTableEditor<F, P> {
 						return false;
 				} else
 					rowIndex = theTable.getSelectedRow();
+				if (rowIndex >= 0 && ObservableTreeModel.isPlaceholder(theTable.getPathForRow(rowIndex).getLastPathComponent()))
+					return false;
 				BetterList<F> path = rowIndex < 0 ? BetterList.of(theRoot.get())
 					: ObservableTreeModel.betterPath(theTable.getPathForRow(rowIndex));
 				F parent;
@@ -739,6 +756,8 @@ implements TreeTableEditor<F, P> {
 						return false;
 				} else
 					rowIndex = theTable.getSelectedRow();
+				if (rowIndex >= 0 && ObservableTreeModel.isPlaceholder(theTable.getPathForRow(rowIndex).getLastPathComponent()))
+					return false;
 				BetterList<F> path = rowIndex < 0 ? BetterList.of(theRoot.get())
 					: ObservableTreeModel.betterPath(theTable.getPathForRow(rowIndex));
 				F parent;
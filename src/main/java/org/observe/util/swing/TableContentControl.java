@@ -5,6 +5,8 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
@@ -82,6 +84,13 @@ public interface TableContentControl {
 		E value;
 		SortedMatchSet[] matches;
 		boolean hasMatch;
+		/** The rendered text of each column for the row value, re-rendered only when the row or the renderers change */
+		volatile CharSequence[] texts;
+		int rendererVersion;
+		/** Matches computed off the table's thread for a filter that has not yet been applied */
+		volatile PrecomputedMatches precomputed;
+		/** This row's ID in the table's {@link NGramIndex}, if any */
+		int indexId = -1;
 
 		/**
 		 * @param value The row value
@@ -107,6 +116,32 @@ public interface TableContentControl {
 			return hasMatch;
 		}
 
+		void setMatches(SortedMatchSet[] newMatches) {
+			matches = newMatches;
+			hasMatch = false;
+			if (matches != null) {
+				for (int i = 0; !hasMatch && i < matches.length; i++) {
+					if (matches[i] != null && matches[i].size() > 0)
+						hasMatch = true;
+				}
+			}
+		}
+
+		void precompute(TableContentControl control, List<? extends ValueRenderer<?>> renderers) {
+			CharSequence[] rendered = texts;
+			if (rendered == null || rendered.length != renderers.size())
+				return; // Will be rendered and matched when the filter is applied
+			precomputed = new PrecomputedMatches(control, rendered, control.findMatches(renderers, rendered));
+		}
+
+		PrecomputedMatches takePrecomputed(TableContentControl control, CharSequence[] rendered) {
+			PrecomputedMatches p = precomputed;
+			precomputed = null;
+			if (p != null && p.control == control && p.texts == rendered)
+				return p;
+			return null;
+		}
+
 		/** @return The number of columns in the table */
 		public int getColumns() {
 			return matches == null ? 0 : matches.length;
@@ -164,6 +199,69 @@ public interface TableContentControl {
 		}
 	}
 
+	/** Matches for a row's rendered text, computed in parallel before a new filter is applied to the table */
+	static class PrecomputedMatches {
+		final TableContentControl control;
+		final CharSequence[] texts;
+		final SortedMatchSet[] matches;
+
+		PrecomputedMatches(TableContentControl control, CharSequence[] texts, SortedMatchSet[] matches) {
+			this.control = control;
+			this.texts = texts;
+			this.matches = matches;
+		}
+	}
+
+	/**
+	 * Options for
+	 * {@link TableContentControl#applyRowControl(ObservableCollection, Supplier, ObservableValue, Observable, RowControlOptions)}
+	 */
+	public static class RowControlOptions {
+		/**
+		 * The default options, which evaluate new filters in parallel for tables of at least
+		 * {@link TableContentControl#DEFAULT_PARALLEL_FILTER_THRESHOLD} rows and use no text index
+		 */
+		public static final RowControlOptions DEFAULT = new RowControlOptions(DEFAULT_PARALLEL_FILTER_THRESHOLD, null);
+
+		private final int theParallelThreshold;
+		private final NGramIndex theIndex;
+
+		private RowControlOptions(int parallelThreshold, NGramIndex index) {
+			theParallelThreshold = parallelThreshold;
+			theIndex = index;
+		}
+
+		/** @return The minimum number of rows for which a new filter will be evaluated in parallel */
+		public int getParallelThreshold() {
+			return theParallelThreshold;
+		}
+
+		/**
+		 * @param parallelThreshold The minimum number of rows for which a new filter will be evaluated in parallel, or
+		 *        {@link Integer#MAX_VALUE} to always apply the filter synchronously
+		 * @return Options like these, but with the given parallel threshold
+		 */
+		public RowControlOptions withParallelThreshold(int parallelThreshold) {
+			if (parallelThreshold < 0)
+				throw new IllegalArgumentException("Parallel threshold may not be negative");
+			return new RowControlOptions(parallelThreshold, theIndex);
+		}
+
+		/** @return The text index to maintain for the rows and use to narrow the rows to match, or null to match all rows */
+		public NGramIndex getIndex() {
+			return theIndex;
+		}
+
+		/**
+		 * @param index The text index to maintain for the rows and use to narrow the rows to match, or null to match all rows. An index
+		 *        may only be used for a single table.
+		 * @return Options like these, but with the given text index
+		 */
+		public RowControlOptions withIndex(NGramIndex index) {
+			return new RowControlOptions(theParallelThreshold, index);
+		}
+	}
+
 	/**
 	 * Compares the rendered values of two rows in a column
 	 *
@@ -294,6 +392,17 @@ public interface TableContentControl {
 	 */
 	SortedMatchSet findMatches(ValueRenderer<?> category, CharSequence text);
 
+	/**
+	 * Narrows the rows that may match this filter using an index of the rows' rendered text. Rows that are not among the candidates are
+	 * known not to match this filter. Rows that are candidates must still be {@link #findMatches(List, CharSequence[]) matched}.
+	 *
+	 * @param index The text index of the table's rows
+	 * @return The IDs of the indexed rows that may match this filter, or null if this filter cannot use the index to narrow the rows
+	 */
+	default BitSet findCandidates(NGramIndex index) {
+		return null;
+	}
+
 	/** @return Whether this control object is a search/filter (as opposed to just a sort command) */
 	boolean isSearch();
 
@@ -454,6 +563,14 @@ public interface TableContentControl {
 	}
 
 	/**
+	 * The default minimum number of rows for which {@link #applyRowControl(ObservableCollection, Supplier, ObservableValue, Observable)}
+	 * evaluates a new filter in parallel
+	 */
+	public static final int DEFAULT_PARALLEL_FILTER_THRESHOLD = 5000;
+
+	/**
+	 * Same as {@link #applyRowControl(ObservableCollection, Supplier, ObservableValue, Observable, RowControlOptions)} with the
+	 * {@link RowControlOptions#DEFAULT default options}
 	 *
 	 * @param <E> The type of rows in the table
 	 * @param values The unfiltered rows for the table
@@ -465,6 +582,44 @@ public interface TableContentControl {
 	public static <E> ObservableCollection<FilteredValue<E>> applyRowControl(ObservableCollection<E> values,
 		Supplier<? extends Collection<? extends ValueRenderer<? super E>>> render, ObservableValue<? extends TableContentControl> filter,
 			Observable<?> until) {
+		return applyRowControl(values, render, filter, until, RowControlOptions.DEFAULT);
+	}
+
+	/**
+	 * <p>
+	 * Filters and sorts table rows with a {@link TableContentControl}.
+	 * </p>
+	 * <p>
+	 * The rendered text of each row is cached and only re-rendered when the row is updated or the column renderers change, so a change
+	 * to the filter only re-evaluates the matches.
+	 * </p>
+	 * <p>
+	 * When the filter changes to a {@link #isSearch() search} and the table has at least the
+	 * {@link RowControlOptions#withParallelThreshold(int) parallel threshold} number of rows, the matches
+	 * for all rows are computed in parallel off of the filter's thread. The new filter is then applied to the table on the EDT in a
+	 * single batch, using the computed matches. Until then, the table continues to reflect the previous filter. If the filter changes
+	 * again before the computation finishes, the stale result is discarded.
+	 * </p>
+	 * <p>
+	 * If a {@link RowControlOptions#withIndex(NGramIndex) text index} is given, each row's rendered text is indexed as it is rendered, and
+	 * filters that can use the index
+	 * {@link #findCandidates(NGramIndex) narrow} the rows that must be fully matched against the filter. This speeds up filtering of very
+	 * large tables at the cost of the memory needed for the index.
+	 * </p>
+	 *
+	 * @param <E> The type of rows in the table
+	 * @param values The unfiltered rows for the table
+	 * @param render Supplies a renderer for each column in the table
+	 * @param filter The {@link TableContentControl} control value to apply
+	 * @param until An observable to release the subscriptions that this method creates
+	 * @param options Options for parallel evaluation and indexing of the filter
+	 * @return The filtered rows for the table
+	 */
+	public static <E> ObservableCollection<FilteredValue<E>> applyRowControl(ObservableCollection<E> values,
+		Supplier<? extends Collection<? extends ValueRenderer<? super E>>> render, ObservableValue<? extends TableContentControl> filter,
+			Observable<?> until, RowControlOptions options) {
+		int parallelThreshold = options.getParallelThreshold();
+		NGramIndex index = options.getIndex();
 		List<ValueRenderer<? super E>> rendererList = new ArrayList<>();
 		/*int[] tests = new int[2]; // DEBUGGING
 		int[] compares = new int[2];
@@ -477,40 +632,102 @@ public interface TableContentControl {
 		filter.changes().act(evt -> {
 			evt.getRootCausable().onFinish(key);
 		});*/
+		int[] rendererVersion = new int[1];
+		/* The candidates for the filter being applied, taken from the index once per filter pass rather than once per row.
+		 * Cleared whenever a row is re-indexed, since the index has then changed. */
+		TableContentControl[] candidateFilter = new TableContentControl[1];
+		BitSet[] candidates = new BitSet[1];
+		/* The filter actually applied to the rows, which may lag behind the filter value while matches are computed in parallel */
+		SettableValue<TableContentControl> appliedFilter = SettableValue.build(TableContentControl.class).withValue(filter.get()).build();
+		Set<FilteredValue<E>> rows = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+		AtomicInteger filterGeneration = new AtomicInteger();
+		filter.noInitChanges().takeUntil(until).act(evt -> {
+			int generation = filterGeneration.incrementAndGet();
+			TableContentControl f = evt.getNewValue();
+			if (f == null || !f.isSearch() || values.size() < parallelThreshold) {
+				appliedFilter.set(f, evt);
+				return;
+			}
+			List<FilteredValue<E>> snapshot;
+			synchronized (rows) {
+				snapshot = new ArrayList<>(rows);
+			}
+			List<ValueRenderer<? super E>> renderers = new ArrayList<>(rendererList);
+			ForkJoinPool.commonPool().execute(() -> {
+				try {
+					BitSet candidates = index == null ? null : index.getCandidates(f);
+					snapshot.parallelStream().forEach(fv -> {
+						// Rows that are not candidates will be quickly excluded when the filter is applied
+						if (filterGeneration.get() == generation && NGramIndex.isCandidate(fv, candidates))
+							fv.precompute(f, renderers);
+					});
+				} catch (RuntimeException e) {
+					// Whatever was not computed will be computed when the filter is applied
+					e.printStackTrace();
+				}
+				EventQueue.invokeLater(() -> {
+					if (filterGeneration.get() == generation)
+						appliedFilter.set(f, null);
+				});
+			});
+		});
 		return values.flow().transform((TypeToken<FilteredValue<E>>) (TypeToken<?>) TypeTokens.get().of(FilteredValue.class), //
-			combine -> combine.combineWith(filter).build(LambdaUtils.printableBiFn((x, cv) -> {
+			combine -> combine.combineWith(appliedFilter).build(LambdaUtils.printableBiFn((x, cv) -> {
 				Collection<? extends ValueRenderer<? super E>> renders = render.get();
 				int i = 0;
 				for (ValueRenderer<? super E> r : renders) {
-					if (i == rendererList.size())
+					if (i == rendererList.size()) {
 						rendererList.add(r);
-					else
+						rendererVersion[0]++;
+					} else if (rendererList.get(i) != r) {
 						rendererList.set(i, r);
+						rendererVersion[0]++;
+					}
 					i++;
 				}
-				while (rendererList.size() > i)
-					rendererList.remove(rendererList.size() - 1);
+				if (rendererList.size() > i) {
+					while (rendererList.size() > i)
+						rendererList.remove(rendererList.size() - 1);
+					rendererVersion[0]++;
+				}
 				FilteredValue<E> v;
 				if (cv.hasPreviousResult() && cv.getPreviousResult() != null) {
 					v = cv.getPreviousResult();
 					v.setValue(x);
-				} else
+				} else {
 					v = new FilteredValue<>(x, rendererList.size());
-				TableContentControl f = cv.get(filter);
-				CharSequence[] texts = new CharSequence[rendererList.size()];
-				i = 0;
-				for (ValueRenderer<? super E> r : rendererList)
-					texts[i++] = r.render(v.value);
-				if (f.isSearch()) {
-					v.hasMatch = false;
-					v.matches = f.findMatches(rendererList, texts);
-					if (v.matches != null) {
-						for (i = 0; !v.hasMatch && i < texts.length; i++) {
-							if (v.matches[i] != null && v.matches[i].size() > 0)
-								v.hasMatch = true;
-						}
+					rows.add(v);
+				}
+				TableContentControl f = cv.get(appliedFilter);
+				CharSequence[] texts = v.texts;
+				boolean rendered = texts == null || cv.isSourceChange() || v.rendererVersion != rendererVersion[0];
+				if (rendered) {
+					texts = new CharSequence[rendererList.size()];
+					i = 0;
+					for (ValueRenderer<? super E> r : rendererList)
+						texts[i++] = r.render(v.value);
+					v.texts = texts;
+					v.rendererVersion = rendererVersion[0];
+					if (index != null) {
+						index.put(v, texts);
+						candidateFilter[0] = null;
 					}
+				}
+				if (f != null && f.isSearch()) {
+					PrecomputedMatches precomputed = v.takePrecomputed(f, texts);
+					boolean useIndex = precomputed == null && index != null && !rendered;
+					if (useIndex && candidateFilter[0] != f) {
+						candidates[0] = index.getCandidates(f);
+						candidateFilter[0] = f;
+					}
+					if (precomputed != null)
+						v.setMatches(precomputed.matches);
+					else if (useIndex && !NGramIndex.isCandidate(v, candidates[0]))
+						v.setMatches(null);
+					else
+						v.setMatches(f.findMatches(rendererList, texts));
 				} else {
+					v.precomputed = null;
 					v.matches = null;
 					v.hasMatch = true; // No filtering
 				}
@@ -519,7 +736,8 @@ public interface TableContentControl {
 			}, "toFilterValue", null)))//
 			.filter(LambdaUtils.printableFn(fv -> (fv != null && fv.hasMatch()) ? null : "No match", "match", null))//
 			.sorted(LambdaUtils.printableComparator((fv1, fv2) -> {
-				List<String> sorting = filter.get().getRowSorting();
+				TableContentControl f = appliedFilter.get();
+				List<String> sorting = f == null ? null : f.getRowSorting();
 				if (sorting == null || sorting.isEmpty())
 					return 0;
 				int comp = 0;
@@ -655,6 +873,11 @@ public interface TableContentControl {
 			return matches;
 		}
 
+		@Override
+		public BitSet findCandidates(NGramIndex index) {
+			return index.findContaining(theMatcher);
+		}
+
 		/**
 		 * Looks for a pattern match in a text string
 		 *
@@ -821,6 +1044,11 @@ public interface TableContentControl {
 			return theFilter.findMatches(new UnfilteredRenderer<>(category), text);
 		}
 
+		@Override
+		public BitSet findCandidates(NGramIndex index) {
+			return theFilter.findCandidates(index);
+		}
+
 		/**
 		 * @param category The name of the category to search for
 		 * @param test The name of the category to test
@@ -909,6 +1137,21 @@ public interface TableContentControl {
 			return matches;
 		}
 
+		@Override
+		public BitSet findCandidates(NGramIndex index) {
+			BitSet candidates = null;
+			for (String seq : theSequence) {
+				BitSet seqCandidates = index.findContaining(seq);
+				if (seqCandidates == null)
+					continue;
+				else if (candidates == null)
+					candidates = seqCandidates;
+				else
+					candidates.and(seqCandidates);
+			}
+			return candidates;
+		}
+
 		@Override
 		public boolean isSearch() {
 			return true;
@@ -1706,6 +1949,21 @@ public interface TableContentControl {
 			return matches == null ? null : matches;
 		}
 
+		@Override
+		public BitSet findCandidates(NGramIndex index) {
+			BitSet candidates = null;
+			for (TableContentControl content : getContent()) {
+				BitSet contentCandidates = content.findCandidates(index);
+				if (contentCandidates == null)
+					return null; // Any row may match this component
+				else if (candidates == null)
+					candidates = contentCandidates;
+				else
+					candidates.or(contentCandidates);
+			}
+			return candidates;
+		}
+
 		@Override
 		public boolean isSearch() {
 			for (TableContentControl c : getContent()) {
@@ -1796,6 +2054,23 @@ public interface TableContentControl {
 			return matches;
 		}
 
+		@Override
+		public BitSet findCandidates(NGramIndex index) {
+			BitSet candidates = null;
+			for (TableContentControl content : getContent()) {
+				if (!content.isSearch())
+					continue;
+				BitSet contentCandidates = content.findCandidates(index);
+				if (contentCandidates == null)
+					continue;
+				else if (candidates == null)
+					candidates = contentCandidates;
+				else
+					candidates.and(contentCandidates);
+			}
+			return candidates;
+		}
+
 		@Override
 		public boolean isSearch() {
 			for (TableContentControl c : getContent()) {
@@ -1858,6 +2133,11 @@ public interface TableContentControl {
 			return theWrapped.findMatches(category, text);
 		}
 
+		@Override
+		public BitSet findCandidates(NGramIndex index) {
+			return theWrapped.findCandidates(index);
+		}
+
 		@Override
 		public boolean isSearch() {
 			return theWrapped.isSearch();
@@ -1929,6 +2209,11 @@ public interface TableContentControl {
 				return null;
 		}
 
+		@Override
+		public BitSet findCandidates(NGramIndex index) {
+			return null; // Non-matches of the wrapped filter can't be found from the index
+		}
+
 		@Override
 		public TableContentControl not() {
 			return getWrapped();
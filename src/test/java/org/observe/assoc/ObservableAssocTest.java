@@ -4,17 +4,21 @@ import static org.observe.collect.ObservableCollectionsTest.intType;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.observe.ObservableValue;
 import org.observe.SimpleObservable;
 import org.observe.Subscription;
 import org.observe.assoc.ObservableGraph.Edge;
 import org.observe.assoc.ObservableGraph.Node;
 import org.observe.assoc.impl.DefaultObservableGraph;
 import org.observe.collect.CollectionChangeEvent;
+import org.observe.collect.CollectionChangeType;
 import org.observe.collect.ObservableCollection;
 import org.observe.collect.ObservableCollectionTester;
 import org.observe.util.TypeTokens;
@@ -187,6 +191,364 @@ public class ObservableAssocTest {
 		edgeCheckers.forEach(ec -> ec.check());
 	}
 
+	/**
+	 * Tests edge insertion and removal on a {@link DefaultObservableGraph} with 100,000 nodes, verifying that each node's inward and outward
+	 * edges stay consistent and printing the throughput. With inward edges indexed by node, the cost of each edge operation should not
+	 * depend on the number of nodes in the graph.
+	 */
+	@Test
+	public void testLargeGraph() {
+		int nodeCount = 100_000;
+		int edgeCount = 200_000;
+		DefaultObservableGraph<Integer, Integer> graph = new DefaultObservableGraph<>(intType, intType);
+		List<Node<Integer, Integer>> nodes = new ArrayList<>(nodeCount);
+		long start = System.nanoTime();
+		for (int i = 0; i < nodeCount; i++)
+			nodes.add(graph.addNode(i));
+		long nodeTime = System.nanoTime() - start;
+
+		Random random = new Random(0);
+		List<Edge<Integer, Integer>> edges = new ArrayList<>(edgeCount);
+		start = System.nanoTime();
+		for (int i = 0; i < edgeCount; i++) {
+			int s = random.nextInt(nodeCount);
+			int e = random.nextInt(nodeCount - 1);
+			if (e >= s)
+				e++;
+			edges.add(graph.addEdge(nodes.get(s), nodes.get(e), true, i));
+		}
+		long addTime = System.nanoTime() - start;
+		Assert.assertEquals(edgeCount, graph.getEdges().size());
+
+		start = System.nanoTime();
+		for (int i = 0; i < edgeCount; i += 2)
+			Assert.assertTrue(graph.removeEdge(edges.get(i)));
+		long removeTime = System.nanoTime() - start;
+		Assert.assertEquals(edgeCount / 2, graph.getEdges().size());
+
+		int outward = 0, inward = 0;
+		for (Node<Integer, Integer> node : nodes) {
+			for (Edge<Integer, Integer> edge : node.getOutward()) {
+				Assert.assertTrue(edge.get() % 2 == 1);
+				Assert.assertTrue(edge.getEnd().getInward().contains(edge));
+				outward++;
+			}
+			for (Edge<Integer, Integer> edge : node.getInward()) {
+				Assert.assertSame(node, edge.getEnd());
+				inward++;
+			}
+		}
+		Assert.assertEquals(edgeCount / 2, outward);
+		Assert.assertEquals(edgeCount / 2, inward);
+
+		// Removing nodes removes their edges in both directions
+		for (int i = 0; i < nodeCount; i += 10)
+			Assert.assertTrue(graph.removeNode(nodes.get(i)));
+		Assert.assertEquals(nodeCount - nodeCount / 10, graph.getNodes().size());
+		for (Edge<Integer, Integer> edge : graph.getEdges()) {
+			Assert.assertTrue(edge.getStart().get() % 10 != 0 && edge.getEnd().get() % 10 != 0);
+			Assert.assertTrue(edge.getEnd().getInward().contains(edge));
+		}
+
+		System.out.println(nodeCount + " nodes in " + Duration.ofNanos(nodeTime) + ", " + edgeCount + " edges added in "
+			+ Duration.ofNanos(addTime) + " (" + (addTime / edgeCount) + "ns/edge), " + (edgeCount / 2) + " removed in "
+			+ Duration.ofNanos(removeTime) + " (" + (removeTime * 2 / edgeCount) + "ns/edge)");
+	}
+
+	/** Tests {@link ObservableMultiMap.MultiMapFlow#gatherHashed(org.observe.Observable)} */
+	@Test
+	public void testHashedMultiMap() {
+		ObservableCollection<Integer> list = ObservableCollection.create(intType);
+		ObservableMultiMap<Integer, Integer> map = list.flow().groupBy(intType, v -> v % 1000, null).gatherHashed(null);
+		ObservableMultiMap<Integer, Integer> reference = list.flow().groupBy(intType, v -> v % 1000, null).gatherActive(null);
+		ObservableCollectionTester<Integer> keyTester = new ObservableCollectionTester<>("keys", map.keySet());
+		ObservableCollectionTester<Integer> valueTester = new ObservableCollectionTester<>("value@7", map.get(7));
+
+		for (int i = 0; i < 10_000; i++)
+			list.add(i);
+		for (int k = 0; k < 1000; k++)
+			keyTester.add(k);
+		for (int i = 7; i < 10_000; i += 1000)
+			valueTester.add(i);
+		keyTester.check();
+		valueTester.check();
+		Assert.assertEquals(10_000, map.valueSize());
+		for (int k = 0; k < 1000; k++) {
+			Assert.assertEquals(reference.get(k), map.get(k));
+			Assert.assertEquals(k, map.keySet().getElement(Integer.valueOf(k), true).get().intValue());
+		}
+		Assert.assertNull(map.getEntry(1000));
+
+		// Remove all values for some keys and change the key of others
+		list.removeIf(v -> v % 1000 < 500);
+		for (int k = 0; k < 500; k++)
+			keyTester.remove(Integer.valueOf(k));
+		valueTester.clear();
+		keyTester.check();
+		valueTester.check();
+		for (int i = 0; i < list.size(); i++) {
+			if (list.get(i) % 1000 == 999)
+				list.set(i, list.get(i) - 992); // Moves the value from key 999 to key 7
+		}
+		for (int i = 7; i < 10_000; i += 1000)
+			valueTester.add(i);
+		valueTester.check();
+		Set<Integer> expectedKeys = new HashSet<>();
+		for (int k = 500; k < 999; k++)
+			expectedKeys.add(k);
+		expectedKeys.add(7);
+		Assert.assertEquals(expectedKeys, new HashSet<>(map.keySet()));
+		// The hash index does not affect the order of the key set
+		Assert.assertEquals(new ArrayList<>(reference.keySet()), new ArrayList<>(map.keySet()));
+		Assert.assertNull(map.getEntry(999));
+		Assert.assertTrue(map.get(999).isEmpty());
+		for (int k = 0; k < 1000; k++)
+			Assert.assertEquals(reference.get(k), map.get(k));
+	}
+
+	/** Tests {@link ObservableMap.Builder#buildConcurrentMap()} with several threads modifying the map at once */
+	@Test
+	public void testConcurrentMap() throws InterruptedException {
+		ObservableMap<Integer, Integer> map = ObservableMap.build(intType, intType).buildConcurrentMap();
+		List<String> errors = Collections.synchronizedList(new ArrayList<>());
+		Map<Integer, Integer> lastEventValues = new ConcurrentHashMap<>();
+		map.onChange(evt -> {
+			Integer last = evt.getType() == CollectionChangeType.add ? null : lastEventValues.get(evt.getKey());
+			// Each key's counter is only ever incremented, so events must arrive in order
+			if (evt.getType() != CollectionChangeType.add && (last == null || evt.getNewValue() != last + 1))
+				errors.add("Out of order for " + evt.getKey() + ": " + last + "->" + evt.getNewValue());
+			lastEventValues.put(evt.getKey(), evt.getNewValue());
+		});
+		map.put(0, 0);
+		map.put(7, 0);
+		// Events are delivered serially with consistent indexes, so the key set can be mirrored by index.
+		// The subscription must report the existing keys exactly once.
+		List<Integer> keyMirror = new ArrayList<>();
+		map.keySet().subscribe(evt -> {
+			switch (evt.getType()) {
+			case add:
+				keyMirror.add(evt.getIndex(), evt.getNewValue());
+				break;
+			case remove:
+				if (!evt.getOldValue().equals(keyMirror.remove(evt.getIndex())))
+					errors.add("Wrong key removed at " + evt.getIndex());
+				break;
+			default:
+				errors.add("Value change reported on the key set");
+			}
+		}, true);
+		Assert.assertEquals(Arrays.asList(0, 7), keyMirror);
+
+		int threadCount = 8, keys = 100, increments = 1000;
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < increments; i++) {
+					for (int k = 0; k < keys; k += 7) {
+						map.computeIfAbsent(k, __ -> 0);
+						map.merge(k, 1, Integer::sum);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		Assert.assertEquals(Collections.emptyList(), errors);
+
+		Set<Integer> expectedKeys = new HashSet<>();
+		for (int k = 0; k < keys; k += 7) {
+			expectedKeys.add(k);
+			Assert.assertEquals(threadCount * increments, map.get(k).intValue());
+			Assert.assertEquals(map.get(k), lastEventValues.get(k));
+		}
+		Assert.assertEquals(expectedKeys, new HashSet<>(map.keySet()));
+		Assert.assertEquals(new ArrayList<>(map.keySet()), keyMirror);
+
+		// Atomic operations
+		Assert.assertEquals(Integer.valueOf(threadCount * increments), map.putIfAbsent(0, -1));
+		Assert.assertFalse(map.remove(0, -1));
+		Assert.assertTrue(map.replace(0, threadCount * increments, 5));
+		Assert.assertNull(map.computeIfPresent(1, (k, v) -> v + 1));
+		Assert.assertNull(map.compute(7, (k, v) -> null));
+		Assert.assertFalse(map.containsKey(7));
+		Assert.assertEquals(Integer.valueOf(5), map.remove(0));
+		expectedKeys.remove(0);
+		expectedKeys.remove(7);
+		Assert.assertEquals(expectedKeys, new HashSet<>(map.keySet()));
+		Assert.assertEquals(new ArrayList<>(map.keySet()), keyMirror);
+		map.clear();
+		Assert.assertTrue(map.isEmpty());
+		Assert.assertEquals(Collections.emptyList(), keyMirror);
+		Assert.assertEquals(Collections.emptyList(), errors);
+	}
+
+	/**
+	 * Tests that a concurrent map's listeners may be notified on another thread: a change made while another thread is delivering events
+	 * returns without waiting, and its event is delivered by the delivering thread
+	 *
+	 * @throws InterruptedException If the test is interrupted
+	 */
+	@Test
+	public void testConcurrentMapDelivery() throws InterruptedException {
+		ObservableMap<Integer, Integer> map = ObservableMap.build(intType, intType).buildConcurrentMap();
+		CountDownLatch delivering = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Map<Integer, Thread> deliveredOn = new ConcurrentHashMap<>();
+		map.onChange(evt -> {
+			deliveredOn.put(evt.getKey(), Thread.currentThread());
+			if (evt.getKey() == 1) {
+				delivering.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		Thread deliverer = new Thread(() -> map.put(1, 1), "Deliverer");
+		deliverer.start();
+		delivering.await();
+
+		// The listener is busy on the other thread, so this put returns before its event is delivered
+		map.put(2, 2);
+		Assert.assertEquals(Integer.valueOf(2), map.get(2));
+		Assert.assertFalse(deliveredOn.containsKey(2));
+
+		release.countDown();
+		deliverer.join();
+		Assert.assertSame(deliverer, deliveredOn.get(1));
+		Assert.assertSame(deliverer, deliveredOn.get(2));
+	}
+
+	/** Tests the incrementally-maintained algorithm results on {@link ObservableGraph} */
+	@Test
+	public void testGraphAlgorithms() {
+		DefaultObservableGraph<Integer, Integer> graph = new DefaultObservableGraph<>(intType, intType);
+		List<Node<Integer, Integer>> nodes = new ArrayList<>();
+		for (int i = 0; i < 6; i++)
+			nodes.add(graph.addNode(i));
+		Edge<Integer, Integer> e01 = graph.addEdge(nodes.get(0), nodes.get(1), true, 4);
+		graph.addEdge(nodes.get(1), nodes.get(2), true, 1);
+		Edge<Integer, Integer> e02 = graph.addEdge(nodes.get(0), nodes.get(2), true, 7);
+		graph.addEdge(nodes.get(2), nodes.get(3), true, 2);
+		graph.addEdge(nodes.get(4), nodes.get(5), true, 1);
+
+		SimpleObservable<Void> until = new SimpleObservable<>();
+		ObservableGraph.ShortestPaths<Integer, Integer> paths = graph.shortestPaths(nodes.get(0), Edge::get, until);
+		ObservableCollection<Node<Integer, Integer>> reachable = graph.reachableFrom(nodes.get(0), until);
+		ObservableGraph.TopologicalOrder<Integer, Integer> order = graph.topologicalOrder(until);
+
+		Assert.assertEquals(5.0, paths.getDistance(nodes.get(2)), 0);
+		Assert.assertEquals(7.0, paths.getDistance(nodes.get(3)), 0);
+		Assert.assertEquals(Double.POSITIVE_INFINITY, paths.getDistance(nodes.get(4)), 0);
+		Assert.assertEquals(new HashSet<>(nodes.subList(0, 4)), new HashSet<>(reachable));
+		ObservableValue<Double> dist3 = paths.observeDistance(nodes.get(3));
+		checkOrder(graph, order);
+
+		// Removing a tree edge re-routes the subtree beneath it
+		Assert.assertTrue(graph.removeEdge(e01));
+		Assert.assertEquals(7.0, paths.getDistance(nodes.get(2)), 0);
+		Assert.assertEquals(9.0, dist3.get(), 0);
+		Assert.assertEquals(Arrays.asList(e02), paths.getPath(nodes.get(2)));
+		Assert.assertFalse(reachable.contains(nodes.get(1)));
+
+		// Adding an edge connects a new region
+		graph.addEdge(nodes.get(3), nodes.get(4), true, 1);
+		Assert.assertEquals(11.0, paths.getDistance(nodes.get(5)), 0);
+		Assert.assertTrue(reachable.contains(nodes.get(5)));
+		// An edge against the current order forces a re-ordering
+		graph.addEdge(nodes.get(5), nodes.get(1), true, 1);
+		checkOrder(graph, order);
+		Assert.assertFalse(order.hasCycle().get());
+
+		// Close a cycle, then break it
+		Edge<Integer, Integer> back = graph.addEdge(nodes.get(3), nodes.get(0), true, 1);
+		Assert.assertTrue(order.hasCycle().get());
+		Assert.assertEquals(Arrays.asList(back), new ArrayList<>(order.getCycleEdges()));
+		checkOrder(graph, order);
+		Assert.assertTrue(graph.removeEdge(e02));
+		Assert.assertFalse(order.hasCycle().get());
+		checkOrder(graph, order);
+		Assert.assertEquals(Double.POSITIVE_INFINITY, paths.getDistance(nodes.get(3)), 0);
+		Assert.assertEquals(Collections.singleton(nodes.get(0)), new HashSet<>(reachable));
+
+		Assert.assertTrue(graph.removeNode(nodes.get(2)));
+		checkOrder(graph, order);
+		Assert.assertEquals(graph.getNodes().size(), order.getOrder().size());
+		until.onNext(null);
+	}
+
+	/**
+	 * Tests that {@link ObservableGraph#topologicalOrder(org.observe.Observable) topological order} excludes exactly the edges that close
+	 * cycles as edges are added and removed at random
+	 */
+	@Test
+	public void testTopologicalOrderCycles() {
+		DefaultObservableGraph<Integer, Integer> graph = new DefaultObservableGraph<>(intType, intType);
+		List<Node<Integer, Integer>> nodes = new ArrayList<>();
+		for (int i = 0; i < 6; i++)
+			nodes.add(graph.addNode(i));
+		SimpleObservable<Void> until = new SimpleObservable<>();
+		ObservableGraph.TopologicalOrder<Integer, Integer> order = graph.topologicalOrder(until);
+
+		// Two separate cycles
+		Edge<Integer, Integer> e01 = graph.addEdge(nodes.get(0), nodes.get(1), true, 0);
+		graph.addEdge(nodes.get(1), nodes.get(2), true, 0);
+		Edge<Integer, Integer> back0 = graph.addEdge(nodes.get(2), nodes.get(0), true, 0);
+		graph.addEdge(nodes.get(3), nodes.get(4), true, 0);
+		graph.addEdge(nodes.get(4), nodes.get(5), true, 0);
+		Edge<Integer, Integer> back3 = graph.addEdge(nodes.get(5), nodes.get(3), true, 0);
+		Assert.assertEquals(new HashSet<>(Arrays.asList(back0, back3)), new HashSet<>(order.getCycleEdges()));
+		checkOrder(graph, order);
+		// Breaking one cycle doesn't affect the other
+		Assert.assertTrue(graph.removeEdge(e01));
+		Assert.assertEquals(Arrays.asList(back3), new ArrayList<>(order.getCycleEdges()));
+		checkOrder(graph, order);
+
+		Random random = new Random(33);
+		List<Edge<Integer, Integer>> edges = new ArrayList<>(graph.getEdges());
+		for (int i = 0; i < 500; i++) {
+			if (edges.isEmpty() || random.nextInt(3) != 0)
+				edges.add(graph.addEdge(nodes.get(random.nextInt(nodes.size())), nodes.get(random.nextInt(nodes.size())), true, i));
+			else
+				Assert.assertTrue(graph.removeEdge(edges.remove(random.nextInt(edges.size()))));
+			checkOrder(graph, order);
+			// Every excluded edge must actually close a cycle among the ordered edges
+			for (Edge<Integer, Integer> cycleEdge : order.getCycleEdges())
+				Assert.assertTrue(cycleEdge + " closes no cycle", reaches(cycleEdge.getEnd(), cycleEdge.getStart(), graph, order));
+		}
+		until.onNext(null);
+	}
+
+	private static <N, E> boolean reaches(Node<N, E> from, Node<N, E> to, ObservableGraph<N, E> graph,
+		ObservableGraph.TopologicalOrder<N, E> order) {
+		Set<Node<N, E>> visited = new HashSet<>();
+		LinkedList<Node<N, E>> queue = new LinkedList<>();
+		queue.add(from);
+		visited.add(from);
+		while (!queue.isEmpty()) {
+			Node<N, E> node = queue.removeFirst();
+			if (node == to)
+				return true;
+			for (Edge<N, E> edge : graph.getEdges()) {
+				if (edge.getStart() == node && !order.getCycleEdges().contains(edge) && visited.add(edge.getEnd()))
+					queue.add(edge.getEnd());
+			}
+		}
+		return false;
+	}
+
+	private static <N, E> void checkOrder(ObservableGraph<N, E> graph, ObservableGraph.TopologicalOrder<N, E> order) {
+		List<Node<N, E>> ordered = new ArrayList<>(order.getOrder());
+		Assert.assertEquals(graph.getNodes().size(), ordered.size());
+		for (Edge<N, E> edge : graph.getEdges()) {
+			if (order.getCycleEdges().contains(edge))
+				continue;
+			Assert.assertTrue(edge + " is out of order", ordered.indexOf(edge.getStart()) < ordered.indexOf(edge.getEnd()));
+		}
+	}
+
 	/**
 	 * A more complicated test on {@link ObservableMultiMap}. I came up with this test to mimic a situation I encountered at work that I
 	 * tried to solve this way, but there was a but in the multi-map code.
@@ -30,10 +30,13 @@ import org.observe.assoc.ObservableMultiMap;
 import org.observe.assoc.ObservableMultiMapEvent;
 import org.observe.assoc.ObservableSortedMultiMap;
 import org.observe.collect.ObservableCollection.CollectionDataFlow;
+import org.observe.util.MemoCache;
 import org.qommons.Causable;
 import org.qommons.LambdaUtils;
 import org.qommons.Transaction;
 import org.qommons.collect.BetterList;
+import org.qommons.collect.CollectionElement;
+import org.qommons.collect.ElementId;
 import org.qommons.collect.MutableCollectionElement.StdMsg;
 import org.qommons.collect.TransactableList;
 import org.qommons.debug.Debug;
@@ -936,6 +939,42 @@ public class ObservableCollectionsTest {
 		}
 	}
 
+	/** Tests {@link CollectionDataFlow#map(TypeToken, Function, MemoCache)} */
+	@Test
+	public void memoizedMap() {
+		ObservableCollection<Integer> list = ObservableCollection.create(intType);
+		MemoCache<Integer, Integer> cache = MemoCache.<Integer, Integer> build().withMaxSize(5).build();
+		int[] evaluations = new int[1];
+		Function<Integer, Integer> map = value -> {
+			evaluations[0]++;
+			return value * 10;
+		};
+		ObservableCollection<Integer> mapped = list.flow().map(intType, map, cache).collect();
+		// A second flow sharing the cache doesn't need to evaluate the function for values the first has already seen
+		ObservableCollection<Integer> mapped2 = list.flow().map(intType, map, cache).collect();
+
+		for (int i = 0; i < 100; i++)
+			list.add(i % 5);
+		assertEquals(5, evaluations[0]);
+		assertEquals(100, mapped.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(Integer.valueOf((i % 5) * 10), mapped.get(i));
+			assertEquals(Integer.valueOf((i % 5) * 10), mapped2.get(i));
+		}
+		assertEquals(5, cache.getMisses());
+		assertEquals(5, cache.size());
+
+		list.add(5); // Exceeds the cache size, evicting the least-recently-used value
+		assertEquals(6, evaluations[0]);
+		assertEquals(5, cache.size());
+		assertEquals(1, cache.getEvictions());
+
+		// A different function sharing the cache must not see the first function's results
+		ObservableCollection<Integer> negated = list.flow().map(intType, value -> -value, cache).collect();
+		for (int i = 0; i < list.size(); i++)
+			assertEquals(Integer.valueOf(-list.get(i)), negated.get(i));
+	}
+
 	/** Tests {@link CollectionDataFlow#filter(Function)} */
 	@Test
 	public void observableSetFilter() {
@@ -2035,6 +2074,203 @@ public class ObservableCollectionsTest {
 		tester.checkOps(0);
 	}
 
+	/** Tests {@link ObservableCollectionBuilder.DataControlledCollectionBuilder#withKey(Function, Function) keyed} refresh */
+	@Test
+	public void testKeyedDataControlledRefresh() {
+		List<Integer> data = new ArrayList<>();
+		for (int i = 0; i < 1000; i++)
+			data.add(i);
+		DataControlledCollection<String, Integer> collection = ObservableCollection.build(String.class)//
+			.<Integer> withData(() -> data)//
+			.withKey(Function.identity(), String::valueOf)//
+			.refreshOnAccess(false)//
+			.build(String::valueOf, null);
+		int[] adds = new int[1], removes = new int[1];
+		collection.onChange(evt -> {
+			switch (evt.getType()) {
+			case add:
+				adds[0]++;
+				break;
+			case remove:
+				removes[0]++;
+				break;
+			default:
+			}
+		});
+		assertEquals(data.stream().map(String::valueOf).collect(Collectors.toList()), new ArrayList<>(collection));
+		ElementId id500 = collection.getElement("500", true).getElementId();
+
+		// Remove some values and add others, keeping the order of the rest
+		data.removeIf(i -> i % 10 == 3);
+		for (int i = 1000; i < 1050; i++)
+			data.add(i * 7 % 1000 + 1000);
+		assertTrue(collection.refresh());
+		assertEquals(100, removes[0]);
+		assertEquals(50, adds[0]);
+		assertEquals(data.stream().map(String::valueOf).collect(Collectors.toList()), new ArrayList<>(collection));
+		assertEquals(id500, collection.getElement("500", true).getElementId());
+
+		// Re-order the data
+		Collections.shuffle(data, new Random(42));
+		data.remove(0);
+		data.add(5000);
+		assertTrue(collection.refresh());
+		assertEquals(data.stream().map(String::valueOf).collect(Collectors.toList()), new ArrayList<>(collection));
+
+		// Duplicate keys in the data are added as distinct values, even when the data values are the same instance
+		int preDupAdds = adds[0], preDupRemoves = removes[0];
+		data.add(data.get(0));
+		assertTrue(collection.refresh());
+		assertEquals(data.stream().map(String::valueOf).collect(Collectors.toList()), new ArrayList<>(collection));
+		assertEquals(preDupAdds + 1, adds[0]);
+		assertEquals(preDupRemoves, removes[0]);
+
+		// Refreshing against unchanged data with duplicate keys changes nothing
+		for (int i = 0; i < 10; i++)
+			data.add(i * 3, data.get(i * 5));
+		assertTrue(collection.refresh());
+		assertEquals(data.stream().map(String::valueOf).collect(Collectors.toList()), new ArrayList<>(collection));
+		List<ElementId> ids = new ArrayList<>();
+		for (CollectionElement<String> el : collection.elements())
+			ids.add(el.getElementId());
+		int preAdds = adds[0], preRemoves = removes[0];
+		assertTrue(collection.refresh());
+		assertEquals(preAdds, adds[0]);
+		assertEquals(preRemoves, removes[0]);
+		List<ElementId> newIds = new ArrayList<>();
+		for (CollectionElement<String> el : collection.elements())
+			newIds.add(el.getElementId());
+		assertEquals(ids, newIds);
+
+		// Removing one occurrence of a duplicate key removes only one element
+		Integer duplicate = data.get(0);
+		data.remove(data.lastIndexOf(duplicate));
+		assertTrue(collection.refresh());
+		assertEquals(preRemoves + 1, removes[0]);
+		assertEquals(preAdds, adds[0]);
+		assertEquals(data.stream().map(String::valueOf).collect(Collectors.toList()), new ArrayList<>(collection));
+	}
+
+	/** Tests a {@link DataControlledCollection} whose data is a {@link DataControlledCollection.DeltaSource} */
+	@Test
+	public void testDeltaDataControlledRefresh() {
+		List<Integer> data = new ArrayList<>();
+		List<DataControlledCollection.Delta<Integer>> log = new ArrayList<>();
+		int[] fullRequests = new int[1];
+		DataControlledCollection.DeltaSource<Integer> source = version -> {
+			if (version == DataControlledCollection.DeltaSource.NO_VERSION) {
+				fullRequests[0]++;
+				return DataControlledCollection.Delta.full(new ArrayList<>(data), log.size());
+			} else if (version < 0 || version > log.size())
+				return DataControlledCollection.Delta.gap();
+			List<Integer> adds = new ArrayList<>(), removes = new ArrayList<>(), updates = new ArrayList<>();
+			for (int i = (int) version; i < log.size(); i++) {
+				adds.addAll(log.get(i).getAdds());
+				removes.addAll(log.get(i).getRemoves());
+				updates.addAll(log.get(i).getUpdates());
+			}
+			return DataControlledCollection.Delta.changes(adds, removes, updates, log.size());
+		};
+		for (int i = 0; i < 100; i++)
+			data.add(i);
+		DataControlledCollection<String, Integer> collection = ObservableCollection.build(String.class)//
+			.<Integer> withData(source)//
+			.withKey(Function.identity(), String::valueOf)//
+			.refreshOnAccess(false)//
+			.build(String::valueOf, null);
+		int[] adds = new int[1], removes = new int[1];
+		collection.onChange(evt -> {
+			switch (evt.getType()) {
+			case add:
+				adds[0]++;
+				break;
+			case remove:
+				removes[0]++;
+				break;
+			default:
+			}
+		});
+		assertEquals(data.stream().map(String::valueOf).collect(Collectors.toList()), new ArrayList<>(collection));
+		assertEquals(1, fullRequests[0]);
+
+		// Incremental changes
+		List<Integer> removed = new ArrayList<>(), added = new ArrayList<>();
+		for (int i = 0; i < 100; i += 10)
+			removed.add(i);
+		for (int i = 100; i < 105; i++)
+			added.add(i);
+		data.removeAll(removed);
+		data.addAll(added);
+		log.add(DataControlledCollection.Delta.changes(added, removed, Arrays.asList(55), log.size() + 1));
+		assertTrue(collection.refresh());
+		assertEquals(1, fullRequests[0]);
+		assertEquals(10, removes[0]);
+		assertEquals(5, adds[0]);
+		assertEquals(data.stream().map(String::valueOf).collect(Collectors.toList()), new ArrayList<>(collection));
+
+		// An added value whose key is already present is treated as an update
+		log.add(DataControlledCollection.Delta.changes(Arrays.asList(1), null, null, log.size() + 1));
+		assertTrue(collection.refresh());
+		assertEquals(5, adds[0]);
+		assertEquals(data.size(), collection.size());
+
+		// A gap in the source's history causes a full refresh
+		data.add(200);
+		data.remove(Integer.valueOf(1));
+		log.clear();
+		assertTrue(collection.refresh());
+		assertEquals(2, fullRequests[0]);
+		assertEquals(data.stream().map(String::valueOf).collect(Collectors.toList()), new ArrayList<>(collection));
+
+		// And incremental changes resume afterward
+		data.add(201);
+		log.add(DataControlledCollection.Delta.changes(Arrays.asList(201), null, null, log.size() + 1));
+		assertTrue(collection.refresh());
+		assertEquals(2, fullRequests[0]);
+		assertEquals(data.stream().map(String::valueOf).collect(Collectors.toList()), new ArrayList<>(collection));
+	}
+
+	/** Tests that a keyed {@link DataControlledCollection} rejects duplicate keys from a {@link DataControlledCollection.DeltaSource} */
+	@Test
+	public void testDeltaDataControlledDuplicateKeys() {
+		List<Integer> data = new ArrayList<>(Arrays.asList(1, 2, 3));
+		boolean[] gap = new boolean[1];
+		DataControlledCollection.DeltaSource<Integer> source = since -> {
+			if (since == DataControlledCollection.DeltaSource.NO_VERSION)
+				return DataControlledCollection.Delta.full(new ArrayList<>(data), 0);
+			else if (gap[0])
+				return DataControlledCollection.Delta.gap();
+			return DataControlledCollection.Delta.changes(null, null, null, 0);
+		};
+		DataControlledCollection<String, Integer> collection = ObservableCollection.build(String.class)//
+			.<Integer> withData(source)//
+			.withKey(Function.identity(), String::valueOf)//
+			.refreshOnAccess(false)//
+			.build(String::valueOf, null);
+		assertEquals(Arrays.asList("1", "2", "3"), new ArrayList<>(collection));
+
+		data.add(2);
+		gap[0] = true;
+		try {
+			collection.refresh();
+			Assert.fail("Duplicate keys should have been rejected");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		// Without an index, the next refresh must retrieve the full data again rather than apply the source's changes
+		gap[0] = false;
+		try {
+			collection.refresh();
+			Assert.fail("Duplicate keys should have been rejected");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+
+		data.remove(data.size() - 1);
+		assertTrue(collection.refresh());
+		assertEquals(Arrays.asList("1", "2", "3"), new ArrayList<>(collection));
+	}
+
 	/** Tests transactions caused by {@link CollectionDataFlow#transform(TypeToken, Function) combining} a list with an observable value */
 	@Test
 	public void testTransactionsCombined() {
@@ -1,21 +1,30 @@
 package org.observe.config;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.nio.file.Files;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.observe.SettableValue;
 import org.observe.SimpleObservable;
+import org.observe.Subscription;
 import org.observe.collect.ObservableCollection;
 import org.observe.collect.ObservableCollectionTester;
+import org.observe.config.ObservableConfig.ObservableConfigEvent;
 import org.observe.config.ObservableConfig.XmlEncoding;
 import org.observe.util.TypeTokens;
 import org.qommons.BreakpointHere;
@@ -23,6 +32,7 @@ import org.qommons.ThreadConstraint;
 import org.qommons.Transaction;
 import org.qommons.collect.ElementId;
 import org.qommons.collect.FastFailLockingStrategy;
+import org.qommons.io.Format;
 import org.qommons.io.TextParseException;
 import org.qommons.testing.QommonsTestUtils;
 import org.qommons.testing.TestHelper;
@@ -81,6 +91,255 @@ public class ObservableConfigTest {
 		testXml1();
 	}
 
+	/**
+	 * Tests direct and lazy loading of XML into empty configs against synchronized loading into a populated one
+	 *
+	 * @throws IOException Should not happen
+	 * @throws TextParseException Should not happen
+	 */
+	@Test
+	public void testDirectXmlLoading() throws IOException, TextParseException {
+		StringBuilder xml = new StringBuilder("<root a=\"1\"><small b=\"2\">text<c/></small><big>");
+		for (int i = 0; i < 20; i++)
+			xml.append("<item i=\"").append(i).append("\"><sub>").append(i).append("</sub><empty/></item>");
+		xml.append("</big><after>value</after></root>");
+		byte[] bytes = xml.toString().getBytes("UTF-8");
+
+		// Synchronized into a populated config
+		ObservableConfig synced = ObservableConfig.createRoot("root", ThreadConstraint.ANY);
+		synced.addChild("extra");
+		ObservableConfig.readXml(synced, new ByteArrayInputStream(bytes), theEncoding);
+
+		// Directly into an empty one, firing one event per top-level element
+		int[] events = new int[1];
+		theConfig.watch(ObservableConfigPath.buildPath("").multi(true).build()).act(__ -> events[0]++);
+		ObservableConfig.readXml(theConfig, new ByteArrayInputStream(bytes), theEncoding);
+		Assert.assertEquals(synced.printXml(), theConfig.printXml());
+		Assert.assertEquals("text", theConfig.get("small"));
+		Assert.assertEquals(4, events[0]); // a, small, big, after
+
+		// Lazily
+		ObservableConfig lazy = ObservableConfig.createRoot("root", ThreadConstraint.ANY);
+		ObservableConfig.readXml(lazy, new ByteArrayInputStream(bytes), theEncoding, 10);
+		DefaultObservableConfig big = (DefaultObservableConfig) lazy.getChild("big");
+		Assert.assertFalse(big.isContentLoaded());
+		Assert.assertTrue(((DefaultObservableConfig) lazy.getChild("small")).isContentLoaded());
+		// Materializing must not need the write lock, since content is commonly read under a read lock
+		try (Transaction t = lazy.lock(false, null)) {
+			Assert.assertEquals(20, big.getContent().size());
+		}
+		Assert.assertTrue(big.isContentLoaded());
+		Assert.assertFalse(((DefaultObservableConfig) big.getContent().get(0)).isContentLoaded());
+		Assert.assertEquals("7", lazy.get("big/item{i=7}/sub"));
+		Assert.assertEquals(theConfig.printXml(), lazy.printXml());
+
+		// Lazily loaded content can be modified like any other
+		big.getContent().get(0).addChild("new", n -> n.setValue("x"));
+		Assert.assertEquals("x", lazy.get("big/item/new"));
+	}
+
+	/**
+	 * Tests that {@link ConfigListenerTrie indexed} listener dispatch notifies exactly the listeners whose paths match each event, in the
+	 * order they were added, on a deep tree
+	 */
+	@Test
+	public void testListenerDispatch() {
+		String[] paths = { "a", "b", "a/b", "a/*", "*", "**", "a/**", "*/b/c", "a/b{x=1}", "a/b{x=1}/c", "a/b/c/a/b/c", "b/*/**", "**/c",
+			"a/b/c" };
+		List<String> expected = new ArrayList<>();
+		List<String> actual = new ArrayList<>();
+		List<ObservableConfigPath> parsed = new ArrayList<>();
+		for (String path : paths)
+			parsed.add(ObservableConfigPath.create(path));
+		// Compute the expected notifications by testing every path against every event
+		theConfig.watch(ObservableConfigPath.buildPath("").multi(true).build()).act(evt -> {
+			for (ObservableConfigPath path : parsed) {
+				if (path.matches(evt.relativePath))
+					expected.add(path + ":" + evt);
+			}
+		});
+		List<Subscription> subs = new ArrayList<>();
+		for (ObservableConfigPath path : parsed)
+			subs.add(theConfig.watch(path).act(evt -> actual.add(path + ":" + evt)));
+
+		String[] names = { "a", "b", "c" };
+		Random random = new Random(0);
+		for (int i = 0; i < 2000; i++) {
+			ObservableConfig target = theConfig;
+			int depth = random.nextInt(7);
+			for (int d = 0; d < depth && !target.getContent().isEmpty(); d++)
+				target = target.getContent().get(random.nextInt(target.getContent().size()));
+			switch (random.nextInt(5)) {
+			case 0:
+			case 1:
+				target.addChild(names[random.nextInt(names.length)], c -> c.setValue(String.valueOf(random.nextInt(2))));
+				break;
+			case 2:
+				target.addChild("x", c -> c.setValue(String.valueOf(random.nextInt(2))));
+				break;
+			case 3:
+				if (target != theConfig)
+					target.setName(names[random.nextInt(names.length)]);
+				break;
+			default:
+				if (target != theConfig && random.nextInt(3) == 0)
+					target.remove();
+				else
+					target.setValue(String.valueOf(random.nextInt(2)));
+				break;
+			}
+			Assert.assertEquals(expected, actual);
+		}
+		Assert.assertFalse(actual.isEmpty());
+
+		// Removed listeners are no longer notified
+		for (Subscription sub : subs)
+			sub.unsubscribe();
+		int size = actual.size();
+		theConfig.addChild("a");
+		Assert.assertEquals(size, actual.size());
+	}
+
+	/**
+	 * Tests {@link ObservableConfig#writeBinary(ObservableConfig, OutputStream, boolean)} and
+	 * {@link ObservableConfig#readBinary(ObservableConfig, InputStream)}
+	 *
+	 * @throws IOException Should not happen
+	 * @throws TextParseException Should not happen
+	 */
+	@Test
+	public void testBinaryPersistence() throws IOException, TextParseException {
+		readXml(getClass().getResourceAsStream("TestXml1.xml"));
+		theConfig.addChild("special", s -> s.setValue("<&>\u00e9\n ").addChild("special").addChild("config"));
+		for (boolean compress : new boolean[] { false, true }) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObservableConfig.writeBinary(theConfig, bytes, compress);
+
+			// Into an empty config
+			ObservableConfig copy = ObservableConfig.createRoot("root", ThreadConstraint.ANY);
+			ObservableConfig.readBinary(copy, new ByteArrayInputStream(bytes.toByteArray()));
+			Assert.assertEquals(theConfig.printXml(), copy.printXml());
+			Assert.assertEquals("<&>\u00e9\n ", copy.get("special"));
+
+			// Synchronized into a populated config
+			copy.getChild("element2").remove();
+			copy.addChild("extra");
+			copy.set("special", "different");
+			ObservableConfig.readBinary(copy, new ByteArrayInputStream(bytes.toByteArray()));
+			Assert.assertEquals(theConfig.printXml(), copy.printXml());
+		}
+		try {
+			ObservableConfig.readBinary(theConfig, new ByteArrayInputStream("<config/>".getBytes("UTF-8")));
+			Assert.fail("Should have rejected XML");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Tests {@link ObservableConfigJournal}
+	 *
+	 * @throws IOException Should not happen
+	 * @throws TextParseException Should not happen
+	 */
+	@Test
+	public void testJournal() throws IOException, TextParseException {
+		File dir = Files.createTempDirectory("configJournal").toFile();
+		File snapshot = new File(dir, "config.dat");
+		try {
+			ObservableConfigJournal journal = ObservableConfigJournal.build(snapshot).open(theConfig, e -> {
+				throw new AssertionError(e);
+			});
+			readXml(getClass().getResourceAsStream("TestXml1.xml"));
+			theConfig.addChild("added", a -> a.addChild("nested", n -> n.setValue("value")).addChild("empty"));
+			theConfig.set("added/nested", "changed");
+			theConfig.getChild("element2").setName("renamed");
+			theConfig.getChild("element3").remove();
+			theConfig.moveChild(theConfig.getChild("added"), null, null, true, null);
+			checkJournal(journal, snapshot);
+
+			// Compaction, then more changes on top of the snapshot
+			journal.compact();
+			theConfig.setValue("root value");
+			theConfig.getChild("added").addChild("more", m -> m.setValue("\u00e9\n"));
+			checkJournal(journal, snapshot);
+			journal.close();
+
+			// A partially written record at the end of the journal is discarded
+			File[] journals = dir.listFiles((d, name) -> name.startsWith("config.dat.journal."));
+			Assert.assertEquals(1, journals.length);
+			long length = journals[0].length();
+			try (FileOutputStream out = new FileOutputStream(journals[0], true)) {
+				out.write(new byte[] { 100, 'V', 0 });
+			}
+			ObservableConfig copy = ObservableConfig.createRoot("root", ThreadConstraint.ANY);
+			ObservableConfigJournal.build(snapshot).open(copy, e -> {
+				throw new AssertionError(e);
+			}).close();
+			Assert.assertEquals(theConfig.printXml(), copy.printXml());
+			Assert.assertEquals(length, journals[0].length());
+		} finally {
+			for (File f : dir.listFiles())
+				f.delete();
+			dir.delete();
+		}
+	}
+
+	/**
+	 * Tests {@link BackgroundConfigPersister}
+	 *
+	 * @throws IOException Should not happen
+	 * @throws TextParseException Should not happen
+	 * @throws InterruptedException Should not happen
+	 */
+	@Test
+	public void testBackgroundPersistence() throws IOException, TextParseException, InterruptedException {
+		readXml(getClass().getResourceAsStream("TestXml1.xml"));
+		List<String> persisted = new ArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+		BackgroundConfigPersister<IOException> persister = theConfig.persistInBackground(Duration.ofMillis(100), cfg -> {
+			synchronized (persisted) {
+				persisted.add(cfg.printXml());
+				threads.add(Thread.currentThread());
+				persisted.notifyAll();
+			}
+		}, e -> {
+			throw new AssertionError(e);
+		});
+		try {
+			// A burst of changes is written once
+			for (int i = 0; i < 10; i++)
+				theConfig.set("burst", String.valueOf(i));
+			Assert.assertTrue(persister.isPending());
+			synchronized (persisted) {
+				long end = System.currentTimeMillis() + 5000;
+				while (persisted.isEmpty() && System.currentTimeMillis() < end)
+					persisted.wait(100);
+				Assert.assertEquals(1, persisted.size());
+				Assert.assertEquals(theConfig.printXml(), persisted.get(0));
+				Assert.assertNotSame(Thread.currentThread(), threads.get(0));
+			}
+
+			// No changes, no write
+			persister.flush();
+			Assert.assertEquals(1, persisted.size());
+
+			// Pending changes are written on unsubscribe
+			theConfig.set("burst", "final");
+		} finally {
+			persister.unsubscribe();
+		}
+		Assert.assertEquals(2, persisted.size());
+		Assert.assertEquals(theConfig.printXml(), persisted.get(1));
+	}
+
+	private void checkJournal(ObservableConfigJournal journal, File snapshot) throws IOException {
+		journal.sync();
+		ObservableConfig copy = ObservableConfig.createRoot("root", ThreadConstraint.ANY);
+		ObservableConfigJournal.build(snapshot).load(copy);
+		Assert.assertEquals(theConfig.printXml(), copy.printXml());
+	}
+
 	private void writeClearAndParse(Runnable beforeParse) throws IOException, TextParseException {
 		StringWriter writer = new StringWriter();
 		ObservableConfig.writeXml(theConfig, writer, theEncoding, "\t");
@@ -91,6 +350,102 @@ public class ObservableConfigTest {
 			new ByteArrayInputStream(writer.toString().getBytes("UTF-8")));
 	}
 
+	/** Tests {@link ObservableConfig#getContentHash()} and {@link ObservableConfigDiff} */
+	@Test
+	public void testContentHashDiff() {
+		ObservableConfig other = ObservableConfig.createRoot("root", ThreadConstraint.ANY);
+		for (ObservableConfig config : Arrays.asList(theConfig, other)) {
+			for (int i = 0; i < 20; i++) {
+				int index = i;
+				config.addChild("item", item -> {
+					item.set("name", "Item " + index);
+					item.set("sub/value", String.valueOf(index));
+				});
+			}
+		}
+		Assert.assertEquals(theConfig.getContentHash(), other.getContentHash());
+		Assert.assertTrue(ObservableConfigDiff.diff(theConfig, other).isEmpty());
+
+		ObservableConfig item5 = other.getContent().get(5);
+		long siblingHash = other.getContent().get(6).getContentHash();
+		long rootHash = other.getContentHash();
+		item5.set("sub/value", "changed");
+		Assert.assertNotEquals(rootHash, other.getContentHash());
+		Assert.assertEquals(siblingHash, other.getContent().get(6).getContentHash());
+		List<ObservableConfigDiff.Difference> diffs = ObservableConfigDiff.diff(theConfig, other);
+		Assert.assertEquals(1, diffs.size());
+		Assert.assertEquals(ObservableConfigDiff.DiffType.MODIFIED, diffs.get(0).getType());
+		Assert.assertEquals("changed", diffs.get(0).getRight().getValue());
+		Assert.assertEquals("5", diffs.get(0).getLeft().getValue());
+
+		item5.set("sub/value", "5");
+		Assert.assertEquals(rootHash, other.getContentHash());
+
+		other.getContent().get(10).remove();
+		other.addChild("extra");
+		diffs = ObservableConfigDiff.diff(theConfig, other);
+		Assert.assertEquals(2, diffs.size());
+		Assert.assertEquals(ObservableConfigDiff.DiffType.REMOVED, diffs.get(0).getType());
+		Assert.assertEquals("Item 10", diffs.get(0).getLeft().get("name"));
+		Assert.assertEquals(ObservableConfigDiff.DiffType.ADDED, diffs.get(1).getType());
+		Assert.assertEquals("extra", diffs.get(1).getRight().getName());
+	}
+
+	/** Tests the compact node representation of {@link DefaultObservableConfig} */
+	@Test
+	public void testCompactNodes() {
+		for (int i = 0; i < 100; i++) {
+			int index = i;
+			// Distinct name instances, which should be interned
+			theConfig.addChild(new String("item"), item -> item.addChild(new String("value"), v -> v.setValue("v" + index)));
+		}
+		ObservableConfig item0 = theConfig.getContent().get(0);
+		Assert.assertSame(item0.getName(), theConfig.getContent().get(1).getName());
+
+		DefaultObservableConfig.Footprint footprint = ((DefaultObservableConfig) theConfig).getFootprint();
+		Assert.assertEquals(201, footprint.getNodes());
+		Assert.assertEquals(3, footprint.getDistinctNames());
+		Assert.assertEquals(101, footprint.getContentLists()); // Leaves have no content list
+		Assert.assertEquals(0, footprint.getListenerTries());
+
+		ObservableConfig leaf = item0.getContent().getFirst();
+		Assert.assertTrue(leaf.getContent().isEmpty());
+		List<ObservableConfigEvent> events = new ArrayList<>();
+		Subscription sub = leaf.watch(ObservableConfigPath.buildPath("").multi(true).build()).act(events::add);
+		Assert.assertEquals(1, ((DefaultObservableConfig) theConfig).getFootprint().getListenerTries());
+		leaf.addChild("sub", c -> c.setValue("s"));
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals("s", leaf.get("sub"));
+		Assert.assertEquals(102, ((DefaultObservableConfig) theConfig).getFootprint().getContentLists());
+		sub.unsubscribe();
+	}
+
+	/** Tests that typed values backed by the same config share parsed values and don't re-parse text they formatted */
+	@Test
+	public void testParsedValueCache() {
+		SimpleObservable<Void> until = new SimpleObservable<>();
+		SettableValue<Integer> value1 = theConfig.asValue(Integer.class).withFormat(Format.INT, () -> 0).at("cached").until(until)
+			.buildValue(null);
+		SettableValue<Integer> value2 = theConfig.asValue(Integer.class).withFormat(Format.INT, () -> 0).at("cached").until(until)
+			.buildValue(null);
+		Assert.assertEquals(0, value2.get().intValue());
+
+		Integer set = Integer.valueOf(100_000);
+		value1.set(set, null);
+		Assert.assertEquals(set, Integer.valueOf(theConfig.get("cached")));
+		Assert.assertSame(set, value1.get());
+		Assert.assertSame(set, value2.get()); // Not re-parsed from the text
+
+		theConfig.set("cached", "200000");
+		Assert.assertEquals(200_000, value1.get().intValue());
+		Assert.assertSame(value1.get(), value2.get()); // Parsed once for both
+
+		theConfig.set("cached", "300000");
+		Assert.assertEquals(300_000, value2.get().intValue());
+		Assert.assertSame(value1.get(), value2.get());
+		until.onNext(null);
+	}
+
 	/**
 	 * Tests {@link ObservableConfig#asValue(TypeToken)}
 	 *
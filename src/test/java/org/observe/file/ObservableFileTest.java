@@ -0,0 +1,159 @@
+package org.observe.file;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.observe.Subscription;
+import org.observe.collect.CollectionChangeType;
+import org.observe.collect.DataControlledCollection;
+import org.observe.collect.ObservableCollectionBuilder;
+import org.qommons.ThreadConstraint;
+import org.qommons.collect.StampedLockingStrategy;
+import org.qommons.io.BetterFile;
+import org.qommons.io.NativeFileSource;
+
+/** Tests {@link ObservableFile} */
+public class ObservableFileTest {
+	/**
+	 * Tests that refreshing a directory's contents reports changes to files, and only those changes. In particular, directories must not be
+	 * reported as changed just because their size is recorded differently by different code paths.
+	 *
+	 * @throws IOException If the temporary files cannot be manipulated
+	 * @throws InterruptedException If the test is interrupted
+	 */
+	@Test
+	public void testChangeDetection() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("fileTest");
+		Path subDir = Files.createDirectory(dir.resolve("sub"));
+		Path file = dir.resolve("test.txt");
+		Files.write(file, new byte[] { 1 });
+		try {
+			// Refresh manually only
+			ObservableFile.ObservableFileSet fileSet = new ObservableFile.ObservableFileSet(
+				new ObservableCollectionBuilder.DefaultDataControlAutoRefresher(Duration.ofMinutes(1)), null);
+			fileSet.setLocking(new StampedLockingStrategy(fileSet, ThreadConstraint.ANY));
+			ObservableFile directory = ObservableFile.observe(fileSet, BetterFile.at(new NativeFileSource(), dir.toString()));
+
+			// A directory observed directly records the same size as one discovered by a scan
+			ObservableFile observedSub = ObservableFile.observe(fileSet, BetterFile.at(new NativeFileSource(), subDir.toString()));
+			Assert.assertFalse(observedSub.checkChanged());
+			Assert.assertEquals(0, ObservableFile.sizeOf(observedSub));
+			for (ObservableFile.ScannedFile scanned : ObservableFile.scan(directory, true)) {
+				if (scanned.directory)
+					Assert.assertEquals(0, scanned.size);
+				else
+					Assert.assertEquals(1, scanned.size);
+			}
+
+			DataControlledCollection<? extends ObservableFile, ?> contents = directory.listFiles();
+			Assert.assertEquals(2, contents.size());
+			List<String> events = Collections.synchronizedList(new ArrayList<>());
+			Subscription sub = contents.onChange(evt -> events.add(evt.getType() + " "//
+				+ (evt.getType() == CollectionChangeType.remove ? evt.getOldValue() : evt.getNewValue()).getName()));
+			try {
+				refresh(contents);
+				refresh(contents);
+				Assert.assertEquals(Collections.emptyList(), events);
+				for (ObservableFile child : contents)
+					Assert.assertFalse(child.getName(), child.checkChanged());
+
+				Files.write(file, new byte[] { 1, 2, 3 });
+				refresh(contents);
+				Assert.assertEquals(Collections.singletonList("set test.txt"), events);
+				events.clear();
+
+				Files.delete(file);
+				refresh(contents);
+				Assert.assertEquals(Collections.singletonList("remove test.txt"), events);
+			} finally {
+				sub.unsubscribe();
+			}
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(subDir);
+			Files.deleteIfExists(dir);
+		}
+	}
+
+	/**
+	 * Tests that the attributes of listed files are served from the directory's scan while it is recent, and that prescanned content is
+	 * discarded once it is older than the file set's scan lifetime
+	 *
+	 * @throws IOException If the temporary files cannot be manipulated
+	 * @throws InterruptedException If the test is interrupted
+	 */
+	@Test
+	public void testScanCache() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("fileTest");
+		Path subDir = Files.createDirectory(dir.resolve("sub"));
+		Path file = dir.resolve("test.txt");
+		Path added = dir.resolve("added.txt");
+		Files.write(file, new byte[] { 1 });
+		try {
+			Duration[] lifetime = new Duration[] { Duration.ofMinutes(1) };
+			ObservableFile.ObservableFileSet fileSet = new ObservableFile.ObservableFileSet(
+				new ObservableCollectionBuilder.DefaultDataControlAutoRefresher(Duration.ofMinutes(1)), null) {
+				@Override
+				public Duration getScanLifetime() {
+					return lifetime[0];
+				}
+			};
+			fileSet.setLocking(new StampedLockingStrategy(fileSet, ThreadConstraint.ANY));
+			ObservableFile directory = ObservableFile.observe(fileSet, BetterFile.at(new NativeFileSource(), dir.toString()));
+
+			// Prescanned content is used while it is recent
+			directory.prescan(1, null);
+			Files.write(added, new byte[] { 1 });
+			DataControlledCollection<? extends ObservableFile, ?> contents = directory.listFiles();
+			Assert.assertEquals(2, contents.size());
+			ObservableFile listedFile = null;
+			for (ObservableFile child : contents) {
+				if (child.getName().equals("sub"))
+					Assert.assertTrue(child.isDirectory());
+				else {
+					listedFile = child;
+					Assert.assertFalse(child.isDirectory());
+				}
+			}
+			Assert.assertNotNull(listedFile);
+
+			// Attributes are served from the scan until the directory is refreshed
+			Files.write(file, new byte[] { 1, 2, 3 });
+			Assert.assertEquals(1, listedFile.length());
+			refresh(contents);
+			Assert.assertEquals(3, contents.size());
+			Assert.assertEquals(3, listedFile.length());
+
+			// Once the scan is stale, attributes are read from the file
+			lifetime[0] = Duration.ZERO;
+			Thread.sleep(2);
+			Files.write(file, new byte[] { 1, 2, 3, 4 });
+			Assert.assertEquals(4, listedFile.length());
+
+			// Stale prescanned content is discarded
+			Files.delete(added);
+			ObservableFile directory2 = ObservableFile.observe(fileSet, BetterFile.at(new NativeFileSource(), dir.toString()));
+			directory2.prescan(1, null);
+			Files.write(added, new byte[] { 1 });
+			Thread.sleep(2);
+			Assert.assertEquals(3, directory2.listFiles().size());
+		} finally {
+			Files.deleteIfExists(added);
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(subDir);
+			Files.deleteIfExists(dir);
+		}
+	}
+
+	private static void refresh(DataControlledCollection<?, ?> collection) throws InterruptedException {
+		Thread.sleep(10); // Refreshes are throttled
+		Assert.assertTrue(collection.refresh());
+	}
+}
@@ -0,0 +1,116 @@
+package org.observe.file;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.observe.Subscription;
+import org.observe.collect.CollectionChangeType;
+import org.observe.collect.DataControlledCollection;
+import org.observe.collect.ObservableCollectionBuilder;
+import org.qommons.io.BetterFile;
+import org.qommons.io.NativeFileSource;
+
+/** Tests {@link WatchingFileSet} */
+public class WatchingFileSetTest {
+	/**
+	 * Tests that creation, modification, and deletion of files in a watched directory are reflected in the directory's contents
+	 *
+	 * @throws IOException If the temporary files cannot be manipulated
+	 * @throws InterruptedException If the test is interrupted
+	 */
+	@Test
+	public void testWatchDirectory() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("watchTest");
+		// Poll only rarely, so that the test fails if changes are not picked up by the watch
+		try (WatchingFileSet fileSet = new WatchingFileSet(
+			new ObservableCollectionBuilder.DefaultDataControlAutoRefresher(Duration.ofMinutes(1)), null, Duration.ofMillis(10))) {
+			Assert.assertTrue(fileSet.isWatching());
+			ObservableFile directory = ObservableFile.observe(fileSet, BetterFile.at(new NativeFileSource(), dir.toString()));
+			DataControlledCollection<? extends ObservableFile, ?> contents = directory.listFiles();
+			List<String> events = Collections.synchronizedList(new ArrayList<>());
+			Subscription sub = contents.onChange(evt -> events.add(evt.getType() + " "//
+				+ (evt.getType() == CollectionChangeType.remove ? evt.getOldValue() : evt.getNewValue()).getName()));
+			try {
+				Assert.assertTrue(contents.isEmpty());
+
+				Path file = dir.resolve("test.txt");
+				Files.write(file, new byte[] { 1 });
+				waitFor(() -> events.contains("add test.txt"));
+				Assert.assertEquals(1, contents.size());
+
+				Files.write(file, new byte[] { 1, 2, 3 });
+				waitFor(() -> events.contains("set test.txt"));
+				Assert.assertEquals(3, contents.get(0).length());
+
+				Files.delete(file);
+				waitFor(() -> events.contains("remove test.txt"));
+				Assert.assertTrue(contents.isEmpty());
+			} finally {
+				sub.unsubscribe();
+			}
+		} finally {
+			Files.deleteIfExists(dir.resolve("test.txt"));
+			Files.deleteIfExists(dir);
+		}
+	}
+
+	/**
+	 * Tests that many collections watching the same directory from different threads all receive changes, exercising the registration
+	 * and removal of directory watches
+	 *
+	 * @throws IOException If the temporary files cannot be manipulated
+	 * @throws InterruptedException If the test is interrupted
+	 */
+	@Test
+	public void testConcurrentWatches() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("watchTest");
+		try (WatchingFileSet fileSet = new WatchingFileSet(
+			new ObservableCollectionBuilder.DefaultDataControlAutoRefresher(Duration.ofMinutes(1)), null, Duration.ofMillis(10))) {
+			Thread[] threads = new Thread[8];
+			List<DataControlledCollection<? extends ObservableFile, ?>> collections = Collections.synchronizedList(new ArrayList<>());
+			for (int t = 0; t < threads.length; t++) {
+				threads[t] = new Thread(() -> {
+					for (int i = 0; i < 20; i++) {
+						ObservableFile directory = ObservableFile.observe(fileSet, BetterFile.at(new NativeFileSource(), dir.toString()));
+						Runnable stop = fileSet.watch(dir.toAbsolutePath().normalize(), directory.listFiles());
+						if (i % 2 == 0)
+							stop.run();
+					}
+					// Keep one watching collection per thread
+					ObservableFile directory = ObservableFile.observe(fileSet, BetterFile.at(new NativeFileSource(), dir.toString()));
+					collections.add(directory.listFiles());
+				});
+				threads[t].start();
+			}
+			for (Thread thread : threads)
+				thread.join();
+
+			Files.write(dir.resolve("test.txt"), new byte[] { 1 });
+			waitFor(() -> {
+				synchronized (collections) {
+					return collections.stream().allMatch(c -> c.size() == 1);
+				}
+			});
+		} finally {
+			Files.deleteIfExists(dir.resolve("test.txt"));
+			Files.deleteIfExists(dir);
+		}
+	}
+
+	static void waitFor(BooleanSupplier condition) throws InterruptedException {
+		long end = System.currentTimeMillis() + 10_000;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > end)
+				Assert.fail("Timed out waiting for file changes");
+			Thread.sleep(10);
+		}
+	}
+}
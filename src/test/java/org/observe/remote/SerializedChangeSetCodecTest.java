@@ -0,0 +1,219 @@
+package org.observe.remote;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.observe.remote.ObservableServiceChange.ServiceChangeType;
+import org.qommons.collect.BetterList;
+
+/** Tests {@link SerializedChangeSetCodec} */
+public class SerializedChangeSetCodecTest {
+	/**
+	 * Tests that randomly-generated change sets survive encoding and decoding intact
+	 *
+	 * @throws IOException Should not happen
+	 */
+	@Test
+	public void testRoundTrip() throws IOException {
+		Random random = new Random(9);
+		for (int i = 0; i < 20; i++) {
+			List<SerializedObservableServerChangeSet> changeSets = randomChangeSets(random, 1 + random.nextInt(5), 50);
+			List<SerializedObservableServerChangeSet> decoded = SerializedChangeSetCodec
+				.decode(SerializedChangeSetCodec.encode(changeSets));
+			Assert.assertEquals(changeSets.size(), decoded.size());
+			for (int s = 0; s < changeSets.size(); s++)
+				assertEquals(changeSets.get(s), decoded.get(s));
+		}
+		Assert.assertEquals(0, SerializedChangeSetCodec.decode(SerializedChangeSetCodec.encode(new ArrayList<>())).size());
+	}
+
+	/**
+	 * Measures the size and throughput of the codec for a large batch of changes
+	 *
+	 * @throws IOException Should not happen
+	 */
+	@Test
+	public void testThroughput() throws IOException {
+		List<SerializedObservableServerChangeSet> changeSets = randomChangeSets(new Random(11), 100, 100);
+		long naiveSize = 0;
+		int changeCount = 0;
+		for (SerializedObservableServerChangeSet changeSet : changeSets) {
+			for (SerializedObservableServerChangeSet.Change change : changeSet.getChanges()) {
+				changeCount++;
+				// The size of the change if each field were written out in full
+				naiveSize += 16;
+				if (change.getTargetConfigAddress() != null) {
+					for (ServerConfigElement element : change.getTargetConfigAddress())
+						naiveSize += element.owner.serialize().size() + element.address.size();
+				}
+				if (change.getTargetValue() != null)
+					naiveSize += change.getTargetValue().getBytes(ObservableServiceChange.UTF_8).length;
+				if (change.getSignature() != null)
+					naiveSize += change.getSignature().size();
+			}
+		}
+
+		byte[] encoded = null;
+		long encodeTime = 0, decodeTime = 0;
+		int passes = 10;
+		for (int i = 0; i < passes; i++) {
+			long start = System.nanoTime();
+			encoded = SerializedChangeSetCodec.encode(changeSets);
+			encodeTime += System.nanoTime() - start;
+			start = System.nanoTime();
+			SerializedChangeSetCodec.decode(encoded);
+			decodeTime += System.nanoTime() - start;
+		}
+		System.out.println(changeCount + " changes: " + encoded.length + " bytes (" + (encoded.length / changeCount) + "/change vs "
+			+ (naiveSize / changeCount) + " naive); encode " + (changeCount * passes * 1_000_000_000L / Math.max(1, encodeTime))
+			+ "/s, decode " + (changeCount * passes * 1_000_000_000L / Math.max(1, decodeTime)) + "/s");
+		Assert.assertTrue(encoded.length * 2 < naiveSize);
+	}
+
+	/**
+	 * Tests that lengths and counts in corrupt data are rejected, rather than used to allocate memory
+	 *
+	 * @throws IOException Should not happen
+	 */
+	@Test
+	public void testCorruptLengths() throws IOException {
+		// A change set count far larger than the data
+		try {
+			SerializedChangeSetCodec.decode(header(Integer.MAX_VALUE));
+			Assert.fail("Bad count should have been rejected");
+		} catch (IOException e) {
+			Assert.assertFalse(e instanceof EOFException);
+		}
+		// A string length far larger than the data: one change set, a new client (0), whose key algorithm is a new string (1)
+		byte[] longString = header(1, 0, 1, 10_000_001);
+		try {
+			SerializedChangeSetCodec.decode(longString);
+			Assert.fail("Bad length should have been rejected");
+		} catch (IOException e) {
+			Assert.assertFalse(e instanceof EOFException);
+		}
+		try {
+			SerializedChangeSetCodec.read(new ByteArrayInputStream(longString), 1_000_000);
+			Assert.fail("Bad length should have been rejected");
+		} catch (IOException e) {
+			Assert.assertFalse(e instanceof EOFException);
+		}
+		// Within the stream's maximum, the data simply runs out
+		try {
+			SerializedChangeSetCodec.read(new ByteArrayInputStream(longString));
+			Assert.fail("Truncated data should have been rejected");
+		} catch (EOFException e) {
+			// Expected
+		}
+	}
+
+	private static byte[] header(int... varInts) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(SerializedChangeSetCodec.MAGIC);
+		out.write(SerializedChangeSetCodec.VERSION);
+		for (int value : varInts) {
+			while ((value & ~0x7F) != 0) {
+				out.write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.write(value);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static List<SerializedObservableServerChangeSet> randomChangeSets(Random random, int setCount, int maxChanges) {
+		List<ObservableServiceClient.ClientId> clients = new ArrayList<>();
+		for (int i = 0; i < 4; i++)
+			clients.add(new ObservableServiceClient.ClientId("RSA", new ByteArray(randomBytes(random, 256)), "SHA256withRSA"));
+		List<ServerConfigElement> elements = new ArrayList<>();
+		for (int i = 0; i < 30; i++)
+			elements.add(new ServerConfigElement(clients.get(random.nextInt(clients.size())), new ByteAddress(randomBytes(random, 3))));
+		String[] values = { "true", "false", "Some value", "\u00e9l\u00e8ve \u2603", "" };
+
+		List<SerializedObservableServerChangeSet> changeSets = new ArrayList<>();
+		Instant time = Instant.ofEpochSecond(1_700_000_000L, 123_456_789);
+		int changeId = random.nextInt(1000);
+		for (int s = 0; s < setCount; s++) {
+			time = time.plusMillis(random.nextInt(10_000));
+			int changeCount = 1 + random.nextInt(maxChanges);
+			List<SerializedObservableServerChangeSet.Change> changes = new ArrayList<>(changeCount);
+			ServerConfigElement[] path = new ServerConfigElement[0];
+			for (int c = 0; c < changeCount; c++) {
+				ServiceChangeType type = ServiceChangeType.values()[random.nextInt(ServiceChangeType.values().length)];
+				changeId += random.nextInt(5) - 1;
+				// Mostly paths near the previous one
+				int depth = Math.max(1, Math.min(path.length + random.nextInt(3) - 1, 6));
+				ServerConfigElement[] newPath = Arrays.copyOf(path, depth);
+				for (int d = random.nextInt(depth); d < depth; d++)
+					newPath[d] = elements.get(random.nextInt(elements.size()));
+				path = newPath;
+				boolean config = type.name().startsWith("Config") || type == ServiceChangeType.RoleAllow;
+				boolean role = type.name().startsWith("Role");
+				String value;
+				if (!config || random.nextInt(5) == 0)
+					value = null;
+				else if (random.nextBoolean())
+					value = values[random.nextInt(values.length)];
+				else
+					value = "value " + random.nextInt(100_000);
+				changes.add(new SerializedObservableServerChangeSet.Change(time, changeId, type, //
+					config ? BetterList.of(path) : null, //
+					config ? ConfigModificationType.values()[random.nextInt(ConfigModificationType.values().length)] : null, value, //
+					role ? clients.get(random.nextInt(clients.size())) : null, role ? random.nextLong() : 0, //
+					role ? "role" + random.nextInt(3) : null, //
+					type == ServiceChangeType.RoleGrant ? clients.get(random.nextInt(clients.size())) : null, //
+					type == ServiceChangeType.RoleInherit ? clients.get(random.nextInt(clients.size())) : null, //
+					type == ServiceChangeType.RoleInherit ? random.nextInt(100) : 0, //
+					type == ServiceChangeType.RoleInherit ? "inherited" : null, //
+					random.nextInt(10) == 0 ? null : new ByteArray(randomBytes(random, 64))));
+			}
+			changeSets.add(new SerializedObservableServerChangeSet(clients.get(random.nextInt(clients.size())), time, changes));
+		}
+		return changeSets;
+	}
+
+	private static byte[] randomBytes(Random random, int length) {
+		byte[] bytes = new byte[length];
+		random.nextBytes(bytes);
+		return bytes;
+	}
+
+	private static void assertEquals(SerializedObservableServerChangeSet expected, SerializedObservableServerChangeSet actual) {
+		Assert.assertEquals(expected.getActorId(), actual.getActorId());
+		Assert.assertEquals(expected.getActorId().signatureAlgorithm, actual.getActorId().signatureAlgorithm);
+		Assert.assertEquals(expected.getTimeStamp(), actual.getTimeStamp());
+		Assert.assertEquals(expected.getChanges().size(), actual.getChanges().size());
+		for (int i = 0; i < expected.getChanges().size(); i++) {
+			SerializedObservableServerChangeSet.Change e = expected.getChanges().get(i);
+			SerializedObservableServerChangeSet.Change a = actual.getChanges().get(i);
+			Assert.assertEquals(e.getChangeId(), a.getChangeId());
+			Assert.assertEquals(e.getType(), a.getType());
+			if (e.getTargetConfigAddress() == null)
+				Assert.assertNull(a.getTargetConfigAddress());
+			else
+				Assert.assertEquals(new ArrayList<>(e.getTargetConfigAddress()), new ArrayList<>(a.getTargetConfigAddress()));
+			Assert.assertEquals(e.getConfigChangeType(), a.getConfigChangeType());
+			Assert.assertEquals(e.getTargetValue(), a.getTargetValue());
+			Assert.assertEquals(e.getTargetRoleOwner(), a.getTargetRoleOwner());
+			Assert.assertEquals(e.getTargetRoleId(), a.getTargetRoleId());
+			Assert.assertEquals(e.getTargetRoleName(), a.getTargetRoleName());
+			Assert.assertEquals(e.getGrantedClient(), a.getGrantedClient());
+			Assert.assertEquals(e.getInheritedRoleOwner(), a.getInheritedRoleOwner());
+			Assert.assertEquals(e.getInheritedRoleId(), a.getInheritedRoleId());
+			Assert.assertEquals(e.getInheritedRoleName(), a.getInheritedRoleName());
+			Assert.assertEquals(e.getSignature(), a.getSignature());
+		}
+	}
+}
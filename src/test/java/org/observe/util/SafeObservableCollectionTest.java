@@ -0,0 +1,153 @@
+package org.observe.util;
+
+import static org.observe.collect.ObservableCollectionsTest.intType;
+
+import java.awt.EventQueue;
+import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.observe.Observable;
+import org.observe.collect.ObservableCollection;
+import org.observe.util.SafeObservableCollection.FlushMetrics;
+import org.observe.util.SafeObservableCollection.FlushPolicy;
+import org.qommons.ThreadConstraint;
+
+/** Tests {@link SafeObservableCollection}'s {@link FlushPolicy flush policies}, backpressure, and {@link FlushMetrics metrics} */
+public class SafeObservableCollectionTest {
+	/**
+	 * Tests that a limit on the number of events per flush splits a large batch of changes into several flushes, and that backpressure is
+	 * signaled while the queue is deep and released when it drains
+	 *
+	 * @throws Exception If the test is interrupted or an event thread task fails
+	 */
+	@Test
+	public void testMaxEventsPerFlush() throws Exception {
+		ObservableCollection<Integer> source = ObservableCollection.create(intType);
+		SafeObservableCollection<Integer> safe = new SafeObservableCollection<>(source, ThreadConstraint.EDT, Observable.empty());
+		safe.withFlushPolicy(FlushPolicy.DEFAULT.withMaxEventsPerFlush(10).withBackpressureThreshold(50));
+		List<Boolean> backpressure = new ArrayList<>();
+		safe.getBackpressure().noInitChanges().act(evt -> {
+			synchronized (backpressure) {
+				backpressure.add(evt.getNewValue());
+			}
+		});
+
+		CountDownLatch release = blockEventThread();
+		for (int i = 0; i < 100; i++)
+			source.add(i);
+		Assert.assertEquals(100, safe.getQueueDepth());
+		Assert.assertTrue(safe.getBackpressure().get());
+		release.countDown();
+		drain(safe);
+
+		EventQueue.invokeAndWait(() -> Assert.assertEquals(new ArrayList<>(source), new ArrayList<>(safe)));
+		Assert.assertFalse(safe.getBackpressure().get());
+		synchronized (backpressure) {
+			Assert.assertEquals(Arrays.asList(true, false), backpressure);
+		}
+		FlushMetrics metrics = safe.getFlushMetrics();
+		Assert.assertEquals(0, metrics.getQueueDepth());
+		Assert.assertEquals(100, metrics.getMaxQueueDepth());
+		Assert.assertEquals(100, metrics.getFlushedEvents());
+		Assert.assertEquals(10, metrics.getFlushes());
+		Assert.assertEquals(9, metrics.getPartialFlushes());
+		Assert.assertTrue(metrics.getMaxFlushDuration().compareTo(metrics.getAverageFlushDuration()) >= 0);
+
+		// Repeated updates to a queued element are coalesced
+		release = blockEventThread();
+		for (int i = 0; i < 5; i++)
+			source.set(0, -i);
+		Assert.assertEquals(1, safe.getQueueDepth());
+		release.countDown();
+		drain(safe);
+		EventQueue.invokeAndWait(() -> Assert.assertEquals(Integer.valueOf(-4), safe.get(0)));
+		metrics = safe.getFlushMetrics();
+		Assert.assertEquals(4, metrics.getCoalescedUpdates());
+		Assert.assertEquals(101, metrics.getFlushedEvents());
+	}
+
+	/**
+	 * Tests that a frame budget limits the time spent in each flush, while still making progress
+	 *
+	 * @throws Exception If the test is interrupted or an event thread task fails
+	 */
+	@Test
+	public void testFrameBudget() throws Exception {
+		ObservableCollection<Integer> source = ObservableCollection.create(intType);
+		SafeObservableCollection<Integer> safe = new SafeObservableCollection<>(source, ThreadConstraint.EDT, Observable.empty());
+		// A budget this small is always spent after a single event
+		safe.withFlushPolicy(FlushPolicy.DEFAULT.withFrameBudget(Duration.ofNanos(1)));
+
+		CountDownLatch release = blockEventThread();
+		for (int i = 0; i < 20; i++)
+			source.add(i);
+		Assert.assertFalse(safe.getBackpressure().get()); // No threshold
+		release.countDown();
+		drain(safe);
+
+		EventQueue.invokeAndWait(() -> Assert.assertEquals(new ArrayList<>(source), new ArrayList<>(safe)));
+		FlushMetrics metrics = safe.getFlushMetrics();
+		Assert.assertEquals(20, metrics.getFlushedEvents());
+		Assert.assertEquals(20, metrics.getFlushes());
+		Assert.assertEquals(19, metrics.getPartialFlushes());
+	}
+
+	/**
+	 * Tests that the default policy flushes all queued changes at once
+	 *
+	 * @throws Exception If the test is interrupted or an event thread task fails
+	 */
+	@Test
+	public void testDefaultPolicy() throws Exception {
+		ObservableCollection<Integer> source = ObservableCollection.create(intType);
+		SafeObservableCollection<Integer> safe = new SafeObservableCollection<>(source, ThreadConstraint.EDT, Observable.empty());
+		Assert.assertFalse(safe.getFlushPolicy().isLimited());
+
+		CountDownLatch release = blockEventThread();
+		for (int i = 0; i < 50; i++)
+			source.add(i);
+		release.countDown();
+		drain(safe);
+
+		EventQueue.invokeAndWait(() -> Assert.assertEquals(new ArrayList<>(source), new ArrayList<>(safe)));
+		FlushMetrics metrics = safe.getFlushMetrics();
+		Assert.assertEquals(50, metrics.getFlushedEvents());
+		Assert.assertEquals(1, metrics.getFlushes());
+		Assert.assertEquals(0, metrics.getPartialFlushes());
+	}
+
+	/** @return A latch that will hold the event thread until it is released, so that changes queue up in the safe collection */
+	private static CountDownLatch blockEventThread() throws InterruptedException {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		EventQueue.invokeLater(() -> {
+			blocked.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		blocked.await();
+		return release;
+	}
+
+	/** Waits for the event thread to flush all of the collection's queued changes */
+	private static void drain(SafeObservableCollection<?> safe) throws InterruptedException, InvocationTargetException {
+		long end = System.currentTimeMillis() + 5000;
+		do {
+			EventQueue.invokeAndWait(() -> {
+			});
+		} while (safe.getQueueDepth() > 0 && System.currentTimeMillis() < end);
+		Assert.assertEquals(0, safe.getQueueDepth());
+		// Let any continuations scheduled by the final flush run
+		EventQueue.invokeAndWait(() -> {
+		});
+	}
+}
@@ -0,0 +1,50 @@
+package org.observe.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.observe.Subscription;
+import org.observe.collect.ObservableCollection;
+
+/** Tests {@link SubscriptionDiagnostics} */
+public class SubscriptionDiagnosticsTest {
+	/** Tests that subscriptions to base and derived collections are counted per source and released on unsubscribe */
+	@Test
+	public void testTracking() {
+		SubscriptionDiagnostics.setEnabled(true);
+		try {
+			ObservableCollection<Integer> base = ObservableCollection.build(int.class).build();
+			ObservableCollection<Integer> derived = base.flow().map(int.class, i -> i * 2).collect();
+			int derivedSubs = baseCount(base); // The derived collection's own subscriptions to the base
+			Assert.assertTrue(derivedSubs > 0);
+			List<Subscription> subs = new ArrayList<>();
+			for (int i = 0; i < 5; i++)
+				subs.add(derived.onChange(evt -> {}));
+			subs.add(base.onChange(evt -> {}));
+
+			SubscriptionDiagnostics.SourceReport top = SubscriptionDiagnostics.getTopHolders(1).get(0);
+			Assert.assertSame(derived, top.getSource());
+			Assert.assertEquals(5, top.getLiveSubscriptions());
+			Assert.assertEquals(String.valueOf(derived.getIdentity()), top.getIdentity());
+			Assert.assertEquals(derivedSubs + 1, baseCount(base));
+
+			for (Subscription sub : subs)
+				sub.unsubscribe();
+			for (SubscriptionDiagnostics.SourceReport report : SubscriptionDiagnostics.getReports())
+				Assert.assertNotSame(derived, report.getSource());
+			Assert.assertEquals(derivedSubs, baseCount(base));
+		} finally {
+			SubscriptionDiagnostics.setEnabled(false);
+		}
+	}
+
+	private static int baseCount(Object source) {
+		for (SubscriptionDiagnostics.SourceReport report : SubscriptionDiagnostics.getReports()) {
+			if (report.getSource() == source)
+				return report.getLiveSubscriptions();
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,107 @@
+package org.observe.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests {@link TimerWheel} */
+public class TimerWheelTest {
+	private static final long MILLIS = 1_000_000;
+
+	/**
+	 * Tests that tasks with the same frequency are coalesced into a single wheel entry, that they all execute at the right rate, and that
+	 * deactivated tasks are removed from the wheel
+	 */
+	@Test
+	public void testCoalescing() {
+		long[] clock = new long[1];
+		TimerWheel wheel = new TimerWheel("Test Wheel", Duration.ofMillis(1), null, () -> clock[0]);
+		AtomicInteger fast = new AtomicInteger();
+		AtomicInteger slow = new AtomicInteger();
+		List<TimerWheel.Task> tasks = new ArrayList<>();
+		for (int i = 0; i < 100; i++)
+			tasks.add(wheel.build(fast::incrementAndGet, Duration.ofMillis(20)).setActive(true));
+		for (int i = 0; i < 10; i++)
+			tasks.add(wheel.build(slow::incrementAndGet, Duration.ofMillis(100)).setActive(true));
+		TimerWheel.Metrics metrics = wheel.getMetrics();
+		Assert.assertEquals(110, metrics.getActiveTasks());
+		Assert.assertEquals(2, metrics.getFrequencyGroups());
+		Assert.assertEquals(2, metrics.getQueueDepth());
+
+		clock[0] = 19 * MILLIS;
+		wheel.runDue();
+		Assert.assertEquals(0, fast.get());
+		clock[0] = 20 * MILLIS;
+		wheel.runDue();
+		Assert.assertEquals(100, fast.get());
+		Assert.assertEquals(0, slow.get());
+
+		clock[0] = 500 * MILLIS;
+		wheel.runDue();
+		Assert.assertEquals(100 * 25, fast.get());
+		Assert.assertEquals(10 * 5, slow.get());
+
+		for (TimerWheel.Task task : tasks)
+			task.setActive(false);
+		metrics = wheel.getMetrics();
+		Assert.assertEquals(0, metrics.getActiveTasks());
+		Assert.assertEquals(0, metrics.getQueueDepth());
+		clock[0] = 1000 * MILLIS;
+		wheel.runDue();
+		Assert.assertEquals(100 * 25, fast.get());
+		Assert.assertEquals(10 * 5, slow.get());
+	}
+
+	/**
+	 * Tests that tasks whose frequency spans multiple wheel levels are cascaded correctly and that {@link TimerWheel.Task#endIn(Duration)}
+	 * is honored
+	 */
+	@Test
+	public void testLongFrequencyAndEnd() {
+		long[] clock = new long[1];
+		TimerWheel wheel = new TimerWheel("Test Wheel", Duration.ofMillis(1), null, () -> clock[0]);
+		AtomicInteger count = new AtomicInteger();
+		// 150 ticks requires a cascade from the second level
+		TimerWheel.Task task = wheel.build(count::incrementAndGet, Duration.ofMillis(150)).endIn(Duration.ofMillis(400)).setActive(true);
+		clock[0] = 149 * MILLIS;
+		wheel.runDue();
+		Assert.assertEquals(0, count.get());
+		clock[0] = 150 * MILLIS;
+		wheel.runDue();
+		Assert.assertEquals(1, count.get());
+
+		clock[0] = 700 * MILLIS;
+		wheel.runDue();
+		Assert.assertEquals(2, count.get());
+		Assert.assertFalse(task.isActive());
+		Assert.assertEquals(2, task.getExecutionCount());
+	}
+
+	/**
+	 * Tests that a wheel driven by its own thread executes its tasks
+	 *
+	 * @throws InterruptedException If the test is interrupted
+	 */
+	@Test
+	public void testThread() throws InterruptedException {
+		TimerWheel wheel = new TimerWheel("Test Wheel", Duration.ofMillis(1), null);
+		try {
+			AtomicInteger count = new AtomicInteger();
+			TimerWheel.Task task = wheel.build(count::incrementAndGet, Duration.ofMillis(5)).setActive(true);
+			long end = System.currentTimeMillis() + 10_000;
+			while (count.get() < 3) {
+				if (System.currentTimeMillis() > end)
+					Assert.fail("Timed out waiting for the task to execute");
+				Thread.sleep(5);
+			}
+			task.setActive(false);
+			Assert.assertEquals(0, wheel.getMetrics().getQueueDepth());
+		} finally {
+			wheel.shutdown();
+		}
+	}
+}
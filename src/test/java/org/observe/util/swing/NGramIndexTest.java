@@ -0,0 +1,99 @@
+package org.observe.util.swing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.observe.util.swing.TableContentControl.FilteredValue;
+
+/** Tests {@link NGramIndex} */
+public class NGramIndexTest {
+	/**
+	 * Tests that the candidates the index returns for text filters always include every row that actually matches the filter, and that
+	 * the index is updated when a row's text changes
+	 */
+	@Test
+	public void testCandidates() {
+		NGramIndex index = new NGramIndex();
+		String[][] texts = new String[][] { //
+			{ "Apple", "Red fruit" }, //
+			{ "Banana", "Yellow fruit" }, //
+			{ "Carrot", "Orange vegetable" }, //
+			{ "Blue Berry", "Blue fruit" }, //
+			{ "Grape", "Purple FRUIT" } };
+		List<FilteredValue<String>> rows = new ArrayList<>();
+		for (String[] row : texts) {
+			FilteredValue<String> fv = new FilteredValue<>(row[0], row.length);
+			index.put(fv, row);
+			rows.add(fv);
+		}
+		Assert.assertEquals(texts.length, index.size());
+
+		checkCandidates(index, rows, texts, new TableContentControl.SimpleFilter("fruit"), 0, 1, 3, 4);
+		checkCandidates(index, rows, texts, new TableContentControl.SimpleFilter("eberr"), 3); // Whitespace in rows is ignored
+		checkCandidates(index, rows, texts, new TableContentControl.SimpleFilter("Orange veg"), 2);
+		checkCandidates(index, rows, texts, new TableContentControl.SimpleFilter("xyz"));
+		Assert.assertNull(new TableContentControl.SimpleFilter("ap").findCandidates(index)); // Too short to narrow
+		checkCandidates(index, rows, texts, new TableContentControl.AndFilter(//
+			new TableContentControl.SimpleFilter("fruit"), new TableContentControl.SimpleFilter("blue")), 3);
+		checkCandidates(index, rows, texts, new TableContentControl.OrFilter(false, //
+			new TableContentControl.SimpleFilter("apple"), new TableContentControl.SimpleFilter("carrot")), 0, 2);
+		checkCandidates(index, rows, texts, new TableContentControl.SimplePatternFilter(Arrays.asList("yel", "fru")), 1);
+		Assert.assertNull(new TableContentControl.SimpleFilter("fruit").not().findCandidates(index));
+
+		// Update a row's text
+		texts[2] = new String[] { "Tomato", "Red fruit" };
+		index.put(rows.get(2), texts[2]);
+		checkCandidates(index, rows, texts, new TableContentControl.SimpleFilter("vegetable"));
+		checkCandidates(index, rows, texts, new TableContentControl.SimpleFilter("red fruit"), 0, 2);
+
+		Assert.assertTrue(index.remove(rows.get(0)));
+		Assert.assertEquals(texts.length - 1, index.size());
+		BitSet candidates = index.getCandidates(new TableContentControl.SimpleFilter("apple"));
+		Assert.assertTrue(candidates.isEmpty());
+	}
+
+	/** Tests an index of 4-character grams, which fill all the bits of a gram */
+	@Test
+	public void testFourGrams() {
+		NGramIndex index = new NGramIndex(4);
+		String[][] texts = new String[][] { //
+			{ "Apple", "Red fruit" }, //
+			{ "Banana", "Yellow fruit" }, //
+			{ "Carrot", "Orange vegetable" }, //
+			{ "Blue Berry", "Blue fruit" } };
+		List<FilteredValue<String>> rows = new ArrayList<>();
+		for (String[] row : texts) {
+			FilteredValue<String> fv = new FilteredValue<>(row[0], row.length);
+			index.put(fv, row);
+			rows.add(fv);
+		}
+		// "appl", "pple", "redf", "edfr", ... are all distinct grams
+		Assert.assertTrue(index.getGramCount() > 20);
+
+		checkCandidates(index, rows, texts, new TableContentControl.SimpleFilter("fruit"), 0, 1, 3);
+		checkCandidates(index, rows, texts, new TableContentControl.SimpleFilter("eberr"), 3);
+		checkCandidates(index, rows, texts, new TableContentControl.SimpleFilter("Orange veg"), 2);
+		checkCandidates(index, rows, texts, new TableContentControl.SimpleFilter("wxyz"));
+		Assert.assertNull(index.findContaining("xyz")); // Too short to narrow
+	}
+
+	private static void checkCandidates(NGramIndex index, List<FilteredValue<String>> rows, String[][] texts, TableContentControl filter,
+		int... expected) {
+		BitSet candidates = index.getCandidates(filter);
+		Assert.assertNotNull(candidates);
+		for (int r = 0; r < rows.size(); r++) {
+			boolean candidate = NGramIndex.isCandidate(rows.get(r), candidates);
+			boolean matches = filter.findMatches(Arrays.asList(new TableContentControl.ValueRenderer<?>[texts[r].length]), texts[r]) != null;
+			if (matches)
+				Assert.assertTrue("Row " + r + " matches " + filter + " but is not a candidate", candidate);
+			boolean isExpected = false;
+			for (int e : expected)
+				isExpected |= e == r;
+			Assert.assertEquals("Row " + r + " for " + filter, isExpected, candidate);
+		}
+	}
+}
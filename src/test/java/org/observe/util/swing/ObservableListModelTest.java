@@ -0,0 +1,133 @@
+package org.observe.util.swing;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.JList;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.observe.Observable;
+import org.observe.collect.ObservableCollection;
+
+/** Tests {@link ObservableListModel}'s {@link ObservableListModel#setCoalescing(boolean) coalescing} and its effect on selection */
+public class ObservableListModelTest {
+	/**
+	 * Tests that coalesced adds, removes and sets are each reported with a single event carrying all their causes, and that selection
+	 * follows the changes, including the move of a selected row whose removal is merged with another removal
+	 *
+	 * @throws Exception If an event thread task fails
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testCoalescedSelection() throws Exception {
+		ObservableCollection<String> source = ObservableCollection.build(String.class).build();
+		source.addAll(Arrays.asList("a", "b", "c", "d", "e"));
+		List<String> events = new ArrayList<>();
+		ObservableListModel<String>[] model = new ObservableListModel[1];
+		ObservableListSelectionModel<String>[] selection = new ObservableListSelectionModel[1];
+		EventQueue.invokeAndWait(() -> {
+			model[0] = new ObservableListModel<>(source).setCoalescing(true);
+			selection[0] = new ObservableListSelectionModel<>(model[0], null, Observable.empty());
+			model[0].addListDataListener(new ListDataListener() {
+				@Override
+				public void intervalAdded(ListDataEvent e) {
+					record("add", e);
+				}
+
+				@Override
+				public void intervalRemoved(ListDataEvent e) {
+					record("remove", e);
+				}
+
+				@Override
+				public void contentsChanged(ListDataEvent e) {
+					record("set", e);
+				}
+
+				private void record(String type, ListDataEvent e) {
+					int causes = ((ObservableListModel.CausableListEvent) e).getCauses().size();
+					events.add(type + " " + e.getIndex0() + "-" + e.getIndex1() + " (" + causes + ")");
+				}
+			});
+			// The list forwards model changes to the selection model
+			JList<String> list = new JList<>(model[0]);
+			list.setSelectionModel(selection[0]);
+			selection[0].setSelectionInterval(2, 2);
+			Assert.assertEquals(Collections.singletonList("c"), selection[0].getSelectedValues());
+		});
+
+		// Adjacent adds
+		EventQueue.invokeAndWait(() -> {
+			source.add(0, "x");
+			source.add(1, "y");
+		});
+		EventQueue.invokeAndWait(() -> {
+			Assert.assertEquals(Arrays.asList("add 0-1 (2)"), events);
+			assertContent(model[0], "x", "y", "a", "b", "c", "d", "e");
+			Assert.assertEquals(4, selection[0].getMinSelectionIndex());
+			Assert.assertEquals(Collections.singletonList("c"), selection[0].getSelectedValues());
+			events.clear();
+		});
+
+		// Adjacent removes
+		EventQueue.invokeAndWait(() -> {
+			source.remove(0);
+			source.remove(0);
+		});
+		EventQueue.invokeAndWait(() -> {
+			Assert.assertEquals(Arrays.asList("remove 0-1 (2)"), events);
+			assertContent(model[0], "a", "b", "c", "d", "e");
+			Assert.assertEquals(2, selection[0].getMinSelectionIndex());
+			Assert.assertEquals(Collections.singletonList("c"), selection[0].getSelectedValues());
+			events.clear();
+		});
+
+		// Adjacent sets, one of them to the selected row
+		EventQueue.invokeAndWait(() -> {
+			source.set(2, "C");
+			source.set(3, "D");
+		});
+		EventQueue.invokeAndWait(() -> {
+			Assert.assertEquals(Arrays.asList("set 2-3 (2)"), events);
+			assertContent(model[0], "a", "b", "C", "D", "e");
+			Assert.assertEquals(2, selection[0].getMinSelectionIndex());
+			Assert.assertEquals(Collections.singletonList("C"), selection[0].getSelectedValues());
+			Assert.assertEquals(Collections.singletonList("C"), new ArrayList<>(selection[0]));
+			events.clear();
+		});
+
+		// A removal, then a move of the selected row whose removal is merged with it
+		EventQueue.invokeAndWait(() -> {
+			source.remove(1);
+			source.move(source.getElement("C", true).getElementId(), source.getTerminalElement(false).getElementId(), null, false,
+				null);
+		});
+		EventQueue.invokeAndWait(() -> {
+			Assert.assertEquals(Arrays.asList("remove 1-2 (2)", "add 3-3 (1)"), events);
+			assertContent(model[0], "a", "D", "e", "C");
+			Assert.assertEquals(3, selection[0].getMinSelectionIndex());
+			Assert.assertEquals(Collections.singletonList("C"), selection[0].getSelectedValues());
+			events.clear();
+		});
+
+		// Turning coalescing off fires events immediately
+		EventQueue.invokeAndWait(() -> {
+			model[0].setCoalescing(false);
+			source.add("f");
+			Assert.assertEquals(Arrays.asList("add 4-4 (1)"), events);
+		});
+	}
+
+	private static void assertContent(ObservableListModel<String> model, String... values) {
+		List<String> content = new ArrayList<>(model.getSize());
+		for (int i = 0; i < model.getSize(); i++)
+			content.add(model.getElementAt(i));
+		Assert.assertEquals(Arrays.asList(values), content);
+	}
+}
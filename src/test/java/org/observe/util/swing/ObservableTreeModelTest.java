@@ -0,0 +1,260 @@
+package org.observe.util.swing;
+
+import java.awt.EventQueue;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreePath;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.observe.Observable;
+import org.observe.collect.ObservableCollection;
+import org.qommons.collect.BetterList;
+
+/**
+ * Tests {@link ObservableTreeModel}'s {@link ObservableTreeModel#withChildLoader(java.util.concurrent.Executor) background loading},
+ * {@link ObservableTreeModel#withPageSize(int) paging} and {@link ObservableTreeModel#withCollapsedUnload(Duration) unloading} at the
+ * model level, by the events it fires
+ */
+public class ObservableTreeModelTest {
+	/**
+	 * Tests that a loading placeholder is displayed while children load, that it is replaced by the children when they are loaded, and that
+	 * a load superseded by a reload is discarded
+	 *
+	 * @throws Exception If an event thread task fails
+	 */
+	@Test
+	public void testBackgroundLoading() throws Exception {
+		List<Runnable> tasks = new ArrayList<>();
+		TestTreeModel model = new TestTreeModel("root");
+		model.withChildLoader(tasks::add);
+		model.childrenOf("root", "a", "b");
+		List<String> events = model.record();
+
+		onEQ(() -> {
+			Assert.assertEquals(1, model.getChildCount("root"));
+			Object placeholder = model.getChild("root", 0);
+			Assert.assertTrue(ObservableTreeModel.isPlaceholder(placeholder));
+			Assert.assertTrue(((ObservableTreeModel.Placeholder) placeholder).isLoading());
+			Assert.assertFalse(model.loadMore(placeholder));
+		});
+		Assert.assertEquals(1, tasks.size());
+		Assert.assertEquals(0, model.retrievals);
+
+		// The loader retrieves the children off the event thread, then they replace the placeholder on it
+		runTasks(tasks);
+		Assert.assertEquals(1, model.retrievals);
+		onEQ(() -> {
+			Assert.assertEquals(Arrays.asList("inserted root [0, 1] [a, b]", "removed root [2] [Loading...]"), events);
+			Assert.assertEquals(2, model.getChildCount("root"));
+			Assert.assertEquals("b", model.getChild("root", 1));
+			events.clear();
+		});
+
+		// Reloading displays the placeholder again, and only the latest load is used
+		onEQ(() -> {
+			model.rootChanged();
+			model.rootChanged();
+		});
+		Assert.assertEquals(2, tasks.size());
+		runTasks(tasks);
+		onEQ(() -> {
+			Assert.assertEquals(Arrays.asList(//
+				"removed root [0, 1] [a, b]", "inserted root [0] [Loading...]", "changed root", //
+				"removed root [0] [Loading...]", "inserted root [0] [Loading...]", "changed root", //
+				"inserted root [0, 1] [a, b]", "removed root [2] [Loading...]"), events);
+			Assert.assertEquals(2, model.getChildCount("root"));
+		});
+	}
+
+	/**
+	 * Tests that only a page of children is displayed, followed by a placeholder counting the rest, that changes inside and outside the
+	 * page are reflected correctly, and that {@link ObservableTreeModel#loadMore(Object) loading more} displays the next page
+	 *
+	 * @throws Exception If an event thread task fails
+	 */
+	@Test
+	public void testPaging() throws Exception {
+		TestTreeModel model = new TestTreeModel("root");
+		model.withPageSize(2);
+		ObservableCollection<String> children = model.childrenOf("root", "a", "b", "c", "d", "e");
+		List<String> events = model.record();
+
+		Object[] placeholder = new Object[1];
+		onEQ(() -> {
+			Assert.assertEquals(3, model.getChildCount("root"));
+			Assert.assertEquals("a", model.getChild("root", 0));
+			Assert.assertEquals("b", model.getChild("root", 1));
+			placeholder[0] = model.getChild("root", 2);
+			Assert.assertEquals(3, ((ObservableTreeModel.Placeholder) placeholder[0]).getRemaining());
+			Assert.assertEquals(2, model.getIndexOfChild("root", placeholder[0]));
+		});
+		Assert.assertTrue(events.isEmpty());
+
+		// An add inside the page pushes the last visible child off of it
+		onEQ(() -> children.add(0, "x"));
+		assertEvents(events, "inserted root [0] [x]", "removed root [2] [b]", "changed root [2] [4 more...]");
+
+		// An add outside the page only updates the placeholder
+		onEQ(() -> children.add("f"));
+		assertEvents(events, "changed root [2] [5 more...]");
+
+		// A remove inside the page pulls the next child onto it
+		onEQ(() -> children.remove(0));
+		assertEvents(events, "removed root [0] [x]", "inserted root [1] [b]", "changed root [2] [4 more...]");
+
+		// A remove outside the page only updates the placeholder
+		onEQ(() -> children.remove("e"));
+		assertEvents(events, "changed root [2] [3 more...]");
+
+		// A replacement inside the page
+		onEQ(() -> children.set(0, "A"));
+		assertEvents(events, "removed root [0] [a]", "inserted root [0] [A]");
+
+		// Loading more displays another page, then removes the placeholder when all children are displayed
+		onEQ(() -> Assert.assertTrue(model.loadMore(placeholder[0])));
+		assertEvents(events, "inserted root [2, 3] [c, d]", "changed root [4] [1 more...]");
+		onEQ(() -> Assert.assertTrue(model.loadMore(placeholder[0])));
+		assertEvents(events, "inserted root [4] [f]", "removed root [5] [1 more...]");
+		onEQ(() -> {
+			Assert.assertFalse(model.loadMore(placeholder[0]));
+			Assert.assertEquals(5, model.getChildCount("root"));
+		});
+
+		// With a full page, adds are displayed
+		onEQ(() -> children.add("g"));
+		assertEvents(events, "inserted root [5] [g]");
+	}
+
+	/**
+	 * Tests that the children of a collapsed node are unloaded after the idle time, and retrieved again when needed
+	 *
+	 * @throws Exception If an event thread task fails
+	 */
+	@Test
+	public void testCollapsedUnload() throws Exception {
+		TestTreeModel model = new TestTreeModel("root");
+		model.withCollapsedUnload(Duration.ofMillis(10));
+		model.childrenOf("root", "a", "b");
+		model.childrenOf("a", "a1");
+		List<String> events = model.record();
+
+		onEQ(() -> {
+			Assert.assertEquals(2, model.getChildCount("root"));
+			Assert.assertEquals(1, model.getChildCount("a"));
+			model.getNode("a", false).collapsed();
+		});
+		Assert.assertEquals(2, model.retrievals);
+
+		long end = System.currentTimeMillis() + 5000;
+		boolean[] unloaded = new boolean[1];
+		while (!unloaded[0] && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+			onEQ(() -> unloaded[0] = !events.isEmpty());
+		}
+		onEQ(() -> {
+			Assert.assertEquals(Arrays.asList("structure a"), events);
+			// The root's children are not affected
+			Assert.assertNotNull(model.getNode("a", false));
+			Assert.assertNull(model.getNode("a1", false));
+			Assert.assertEquals(1, model.getChildCount("a"));
+		});
+		Assert.assertEquals(3, model.retrievals);
+	}
+
+	private static void onEQ(Runnable task) throws Exception {
+		EventQueue.invokeAndWait(task);
+		// Let anything the task scheduled on the event thread run
+		EventQueue.invokeAndWait(() -> {
+		});
+	}
+
+	private static void runTasks(List<Runnable> tasks) throws Exception {
+		List<Runnable> toRun = new ArrayList<>(tasks);
+		tasks.clear();
+		for (Runnable task : toRun)
+			task.run();
+		onEQ(() -> {
+		});
+	}
+
+	private static void assertEvents(List<String> events, String... expected) throws Exception {
+		onEQ(() -> {
+			Assert.assertEquals(Arrays.asList(expected), events);
+			events.clear();
+		});
+	}
+
+	static class TestTreeModel extends ObservableTreeModel<String> {
+		private final Map<String, ObservableCollection<String>> theChildren;
+		volatile int retrievals;
+
+		TestTreeModel(String root) {
+			super(root);
+			theChildren = new HashMap<>();
+		}
+
+		ObservableCollection<String> childrenOf(String parent, String... children) {
+			ObservableCollection<String> collection = ObservableCollection.build(String.class).build();
+			collection.addAll(Arrays.asList(children));
+			theChildren.put(parent, collection);
+			return collection;
+		}
+
+		/** @return A list into which the description of each event fired by this model will be recorded */
+		List<String> record() {
+			List<String> events = new ArrayList<>();
+			addTreeModelListener(new TreeModelListener() {
+				@Override
+				public void treeNodesInserted(TreeModelEvent e) {
+					events.add(describe("inserted", e));
+				}
+
+				@Override
+				public void treeNodesRemoved(TreeModelEvent e) {
+					events.add(describe("removed", e));
+				}
+
+				@Override
+				public void treeNodesChanged(TreeModelEvent e) {
+					events.add(describe("changed", e));
+				}
+
+				@Override
+				public void treeStructureChanged(TreeModelEvent e) {
+					events.add(describe("structure", e));
+				}
+			});
+			return events;
+		}
+
+		private static String describe(String type, TreeModelEvent e) {
+			StringBuilder str = new StringBuilder(type).append(' ').append(e.getTreePath().getLastPathComponent());
+			if (e.getChildIndices() != null && e.getChildIndices().length > 0)
+				str.append(' ').append(Arrays.toString(e.getChildIndices())).append(' ').append(Arrays.toString(e.getChildren()));
+			return str.toString();
+		}
+
+		@Override
+		protected ObservableCollection<? extends String> getChildren(BetterList<String> parentPath, Observable<?> nodeUntil) {
+			retrievals++;
+			return theChildren.get(parentPath.getLast());
+		}
+
+		@Override
+		public boolean isLeaf(Object node) {
+			return !theChildren.containsKey(node);
+		}
+
+		@Override
+		public void valueForPathChanged(TreePath path, Object newValue) {
+		}
+	}
+}